@@ -0,0 +1,321 @@
+package hr.fer.zemris.java.custom.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Represents a {@link Map} optimized for a small number of entries.
+ * 
+ * <p>Up to {@link #THRESHOLD} entries are stored in a single array of alternating keys and values
+ * and are found by a linear search, which for so few entries is faster than hashing and takes
+ * a fraction of the memory of a {@link java.util.HashMap}. Once the map grows over the threshold,
+ * entries are moved to a {@link LinkedHashMap}. Clearing the map returns it to the array,
+ * keeping the array for reuse.</p>
+ * 
+ * Map keeps the insertion order of the entries and permits <code>null</code> keys and values.
+ * It is not thread safe, see {@link ConcurrentCompactMap}.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class CompactMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Represents the maximal number of entries stored in the array.
+     */
+    public static final int THRESHOLD = 8;
+
+    /**
+     * Represents the initial number of entries the array can hold.
+     */
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * Represents the keys and values, at even and odd indexes. Created on the first use.
+     */
+    private Object[] table;
+
+    /**
+     * Represents the number of entries in the array.
+     */
+    private int size;
+
+    /**
+     * Represents the map holding the entries once there are too many of them for the array,
+     * elseway <code>null</code>.
+     */
+    private Map<K, V> large;
+
+    /**
+     * Represents the number of structural modifications, used by the iterators.
+     */
+    private int modCount;
+
+    /**
+     * Represents the view of the entries, created on the first use.
+     */
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Public constructor. Creates an empty map.
+     */
+    public CompactMap() {
+    }
+
+    /**
+     * Public constructor. Creates a map with the entries of the given map.
+     * 
+     * @param map Map whose entries are copied.
+     */
+    public CompactMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    @Override
+    public int size() {
+        return large != null ? large.size() : size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return large != null ? large.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (large != null) return large.get(key);
+
+        int index = indexOf(key);
+        return index < 0 ? null : (V) table[index + 1];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (large != null) return large.put(key, value);
+
+        int index = indexOf(key);
+        if (index >= 0) {
+	  V old = (V) table[index + 1];
+	  table[index + 1] = value;
+	  return old;
+        }
+
+        if (size == THRESHOLD) {
+	  large = new LinkedHashMap<>(THRESHOLD * 4);
+	  for (int i = 0; i < size; i++) {
+	      large.put((K) table[2 * i], (V) table[2 * i + 1]);
+	  }
+	  large.put(key, value);
+	  Arrays.fill(table, null);
+	  size = 0;
+	  modCount++;
+	  return null;
+        }
+
+        if (table == null) {
+	  table = new Object[2 * INITIAL_CAPACITY];
+        } else if (2 * size == table.length) {
+	  table = Arrays.copyOf(table, Math.min(2 * table.length, 2 * THRESHOLD));
+        }
+        table[2 * size] = key;
+        table[2 * size + 1] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (large != null) return large.remove(key);
+
+        int index = indexOf(key);
+        if (index < 0) return null;
+
+        V old = (V) table[index + 1];
+        removeAt(index);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        large = null;
+        if (table != null) {
+	  Arrays.fill(table, 0, 2 * size, null);
+        }
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+	  entrySet = new AbstractSet<Map.Entry<K, V>>() {
+
+	      @Override
+	      public Iterator<Map.Entry<K, V>> iterator() {
+		return large != null ? large.entrySet().iterator() : new ArrayIterator();
+	      }
+
+	      @Override
+	      public int size() {
+		return CompactMap.this.size();
+	      }
+
+	      @Override
+	      public void clear() {
+		CompactMap.this.clear();
+	      }
+	  };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Returns the index of the given key in the array.
+     * 
+     * @param key Key to find.
+     * @return Index of the key, or -1 if it is not in the array.
+     */
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+	  if (Objects.equals(table[2 * i], key)) return 2 * i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the entry at the given index of the array, keeping the order of the other entries.
+     * 
+     * @param index Index of the entry's key.
+     */
+    private void removeAt(int index) {
+        System.arraycopy(table, index + 2, table, index, 2 * size - index - 2);
+        size--;
+        table[2 * size] = null;
+        table[2 * size + 1] = null;
+        modCount++;
+    }
+
+    /**
+     * Represents the iterator over the entries in the array.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private class ArrayIterator implements Iterator<Map.Entry<K, V>> {
+
+        /**
+         * Represents the index of the next returned entry's key.
+         */
+        private int next;
+
+        /**
+         * Represents the index of the last returned entry's key, or -1.
+         */
+        private int last = -1;
+
+        /**
+         * Represents the expected number of modifications of the map.
+         */
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+	  return next < 2 * size;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+	  if (modCount != expectedModCount) throw new ConcurrentModificationException();
+	  if (!hasNext()) throw new NoSuchElementException();
+
+	  last = next;
+	  next += 2;
+	  return new ArrayEntry(last);
+        }
+
+        @Override
+        public void remove() {
+	  if (last < 0) throw new IllegalStateException();
+	  if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+	  removeAt(last);
+	  next = last;
+	  last = -1;
+	  expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Represents the entry in the array, which writes it's value through to the map.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private class ArrayEntry implements Map.Entry<K, V> {
+
+        /**
+         * Represents the index of the entry's key.
+         */
+        private final int index;
+
+        /**
+         * Public constructor.
+         * 
+         * @param index Index of the entry's key.
+         */
+        ArrayEntry(int index) {
+	  this.index = index;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+	  return (K) table[index];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+	  return (V) table[index + 1];
+        }
+
+        @Override
+        public V setValue(V value) {
+	  V old = getValue();
+	  table[index + 1] = value;
+	  return old;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+	  if (!(obj instanceof Map.Entry)) return false;
+	  Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+	  return Objects.equals(getKey(), other.getKey())
+		&& Objects.equals(getValue(), other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+	  return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+	  return getKey() + "=" + getValue();
+        }
+    }
+}
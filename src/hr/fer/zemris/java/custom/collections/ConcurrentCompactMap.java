@@ -0,0 +1,246 @@
+package hr.fer.zemris.java.custom.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents a thread safe {@link Map} optimized for a small number of entries.
+ * 
+ * <p>Up to {@link CompactMap#THRESHOLD} entries are stored in an immutable array of
+ * alternating keys and values. Readers search the array without locking, writers copy it
+ * while holding the map's lock and publish the new array, which is cheap for so few entries.
+ * Once the map grows over the threshold, entries are moved to a {@link ConcurrentHashMap}.</p>
+ * 
+ * Iterators see the entries at the moment they were created and never throw
+ * {@link java.util.ConcurrentModificationException}. As in {@link ConcurrentHashMap},
+ * <code>null</code> keys and values are not permitted.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class ConcurrentCompactMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Represents the array of an empty map.
+     */
+    private static final Object[] EMPTY = {};
+
+    /**
+     * Represents the keys and values, at even and odd indexes. Published arrays are never changed.
+     */
+    private volatile Object[] table = EMPTY;
+
+    /**
+     * Represents the map holding the entries once there are too many of them for the array,
+     * elseway <code>null</code>. It is set before the array is emptied.
+     */
+    private volatile Map<K, V> large;
+
+    /**
+     * Represents the view of the entries, created on the first use.
+     */
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Public constructor. Creates an empty map.
+     */
+    public ConcurrentCompactMap() {
+    }
+
+    /**
+     * Public constructor. Creates a map with the entries of the given map.
+     * 
+     * @param map Map whose entries are copied.
+     */
+    public ConcurrentCompactMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    @Override
+    public int size() {
+        Object[] current = table;
+        if (current.length > 0) return current.length / 2;
+
+        Map<K, V> map = large;
+        return map == null ? 0 : map.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) throw new NullPointerException();
+
+        Object[] current = table;
+        int index = indexOf(current, key);
+        if (index >= 0) return (V) current[index + 1];
+
+        Map<K, V> map = large;
+        return map == null ? null : map.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V put(K key, V value) {
+        if (key == null || value == null) throw new NullPointerException();
+        if (large != null) return large.put(key, value);
+
+        Object[] current = table;
+        int index = indexOf(current, key);
+        if (index >= 0) {
+	  Object[] changed = current.clone();
+	  changed[index + 1] = value;
+	  table = changed;
+	  return (V) current[index + 1];
+        }
+
+        if (current.length == 2 * CompactMap.THRESHOLD) {
+	  Map<K, V> map = new ConcurrentHashMap<>(CompactMap.THRESHOLD * 4);
+	  for (int i = 0; i < current.length; i += 2) {
+	      map.put((K) current[i], (V) current[i + 1]);
+	  }
+	  map.put(key, value);
+	  large = map;
+	  table = EMPTY;
+	  return null;
+        }
+
+        Object[] changed = new Object[current.length + 2];
+        System.arraycopy(current, 0, changed, 0, current.length);
+        changed[current.length] = key;
+        changed[current.length + 1] = value;
+        table = changed;
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(Object key) {
+        if (key == null) throw new NullPointerException();
+        if (large != null) return large.remove(key);
+
+        Object[] current = table;
+        int index = indexOf(current, key);
+        if (index < 0) return null;
+
+        Object[] changed = new Object[current.length - 2];
+        System.arraycopy(current, 0, changed, 0, index);
+        System.arraycopy(current, index + 2, changed, index, current.length - index - 2);
+        table = changed;
+        return (V) current[index + 1];
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (large != null) {
+	  large.clear();
+        }
+        table = EMPTY;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+	  entrySet = new AbstractSet<Map.Entry<K, V>>() {
+
+	      @Override
+	      public Iterator<Map.Entry<K, V>> iterator() {
+		Object[] current = table;
+		if (current.length == 0 && large != null) {
+		    return large.entrySet().iterator();
+		}
+		return new SnapshotIterator(current);
+	      }
+
+	      @Override
+	      public int size() {
+		return ConcurrentCompactMap.this.size();
+	      }
+	  };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Returns the index of the given key in the given array.
+     * 
+     * @param array Array to search.
+     * @param key Key to find.
+     * @return Index of the key, or -1 if it is not in the array.
+     */
+    private static int indexOf(Object[] array, Object key) {
+        for (int i = 0; i < array.length; i += 2) {
+	  if (array[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Represents the iterator over a published array. Removing an entry removes it from the map.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+
+        /**
+         * Represents the iterated array.
+         */
+        private final Object[] snapshot;
+
+        /**
+         * Represents the index of the next returned entry's key.
+         */
+        private int next;
+
+        /**
+         * Represents the key of the last returned entry, or <code>null</code>.
+         */
+        private Object lastKey;
+
+        /**
+         * Public constructor.
+         * 
+         * @param snapshot Iterated array.
+         */
+        SnapshotIterator(Object[] snapshot) {
+	  this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+	  return next < snapshot.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+	  if (!hasNext()) throw new NoSuchElementException();
+
+	  lastKey = snapshot[next];
+	  Map.Entry<K, V> entry = new SimpleImmutableEntry<>((K) snapshot[next],
+		(V) snapshot[next + 1]);
+	  next += 2;
+	  return entry;
+        }
+
+        @Override
+        public void remove() {
+	  if (lastKey == null) throw new IllegalStateException();
+
+	  ConcurrentCompactMap.this.remove(lastKey);
+	  lastKey = null;
+        }
+    }
+}
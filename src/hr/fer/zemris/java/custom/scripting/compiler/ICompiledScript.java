@@ -0,0 +1,22 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the interface toward any smart script which is ready to be executed.
+ * 
+ * Implementations are usually classes generated by the {@link ScriptClassCompiler}, but
+ * the tree-walking engine and the virtual machine can be adapted to it as well.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public interface ICompiledScript {
+
+    /**
+     * Executes the script, writing it's output to the given context.
+     * 
+     * @param requestContext The given context.
+     */
+    public void execute(RequestContext requestContext);
+}
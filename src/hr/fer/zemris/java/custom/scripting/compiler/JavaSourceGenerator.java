@@ -0,0 +1,355 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.elems.IElementVisitor;
+import hr.fer.zemris.java.custom.scripting.exec.OperationsUtil;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Represents the generator of the Java source code for a parsed smart script.
+ * 
+ * Generated class implements {@link ICompiledScript} and does exactly what the tree-walking
+ * {@link hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine} would do: static text is
+ * kept in already encoded constants, each for-loop becomes a Java for-loop over an <code>int</code> local
+ * variable and each echo tag becomes a straight sequence of operations on the
+ * {@link hr.fer.zemris.java.custom.scripting.vm.OperandStack}.
+ * 
+ * <p>Source is generated in two parts, so the body can be hashed before the class is named
+ * (see {@link #generateBody(DocumentNode)} and {@link #wrap(String, String, String)}).</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class JavaSourceGenerator implements INodeVisitor, IElementVisitor {
+
+    /**
+     * Represents the version of the runtime API the generated code is linked against:
+     * {@link hr.fer.zemris.java.custom.scripting.vm.OperandStack}, {@link OperationsUtil},
+     * {@link hr.fer.zemris.java.webserver.http.EncodedText},
+     * {@link hr.fer.zemris.java.webserver.RequestContext} and {@link ICompiledScript}.
+     * It is a part of the hash which names the generated classes, so it must be increased
+     * whenever the generated code or any of those classes change in a way which could break
+     * already compiled classes. Classes cached by earlier versions are then compiled again.
+     */
+    public static final int ABI_VERSION = 1;
+
+    /**
+     * Represents the maximal length of a single string literal in the generated code.
+     * Longer texts are split, since the class file format limits the size of a constant.
+     */
+    private static final int MAX_LITERAL_LENGTH = 8192;
+
+    /**
+     * Represents the line separator of the generated code.
+     */
+    private static final String NL = "\n";
+
+    /**
+     * Represents the generated constant fields.
+     */
+    private StringBuilder fields = new StringBuilder();
+
+    /**
+     * Represents the generated statements of the execute method.
+     */
+    private StringBuilder statements = new StringBuilder();
+
+    /**
+     * Represents the names of the already generated text constants.
+     */
+    private Map<String, String> texts = new HashMap<>();
+
+    /**
+     * Represents the names of the already generated function constants.
+     */
+    private Map<String, String> functions = new HashMap<>();
+
+    /**
+     * Represents the string constant pushed right before the current element, if any.
+     */
+    private String constantArgument;
+
+    /**
+     * Represents the variables of the currently open for-loops, indexed by their depth.
+     */
+    private List<String> scope = new ArrayList<>();
+
+    /**
+     * Private constructor, use {@link #generateBody(DocumentNode)}.
+     */
+    private JavaSourceGenerator() {}
+
+    /**
+     * Generates the body of the class for the given document: everything between the braces
+     * of the class declaration.
+     * 
+     * @param document Document to generate the code for.
+     * @return Generated body of the class.
+     * @throws IllegalArgumentException In case the document is <code>null</code> or it uses
+     * an unknown operator or function.
+     */
+    public static String generateBody(DocumentNode document) {
+        if (document == null) {
+	  throw new IllegalArgumentException("Document can not be null.");
+        }
+        JavaSourceGenerator generator = new JavaSourceGenerator();
+        document.accept(generator);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(generator.fields).append(NL);
+        sb.append("    @Override").append(NL);
+        sb.append("    public void execute(RequestContext rc) {").append(NL);
+        sb.append("        OperandStack s = new OperandStack();").append(NL);
+        sb.append(generator.statements);
+        sb.append("    }").append(NL).append(NL);
+        sb.append("    private static void text(RequestContext rc, EncodedText text) {").append(NL);
+        sb.append("        try {").append(NL);
+        sb.append("            rc.write(text);").append(NL);
+        sb.append("        } catch (IOException e) {").append(NL);
+        sb.append("            System.err.println(\"Exception caught during writing to Output Stream.\");").append(NL);
+        sb.append("            e.printStackTrace();").append(NL);
+        sb.append("        }").append(NL);
+        sb.append("    }").append(NL).append(NL);
+        sb.append("    private static Object unbound(String name) {").append(NL);
+        sb.append("        throw new EmptyStackException(\"Can not peek from an empty stack!\");").append(NL);
+        sb.append("    }").append(NL);
+        return sb.toString();
+    }
+
+    /**
+     * Wraps the generated body into a complete compilation unit.
+     * 
+     * @param packageName Package of the generated class.
+     * @param className Simple name of the generated class.
+     * @param body Body generated by {@link #generateBody(DocumentNode)}.
+     * @return Complete source of the class.
+     */
+    public static String wrap(String packageName, String className, String body) {
+        return "package " + packageName + ";" + NL + NL
+	      + "import java.io.IOException;" + NL
+	      + "import java.util.function.BiConsumer;" + NL + NL
+	      + "import hr.fer.zemris.java.custom.collections.ObjectStack;" + NL
+	      + "import hr.fer.zemris.java.custom.scripting.compiler.ICompiledScript;" + NL
+	      + "import hr.fer.zemris.java.custom.scripting.exec.EmptyStackException;" + NL
+	      + "import hr.fer.zemris.java.custom.scripting.exec.OperationsUtil;" + NL
+	      + "import hr.fer.zemris.java.custom.scripting.vm.OperandStack;" + NL
+	      + "import hr.fer.zemris.java.webserver.RequestContext;" + NL
+	      + "import hr.fer.zemris.java.webserver.http.EncodedText;" + NL + NL
+	      + "public final class " + className + " implements ICompiledScript {" + NL + NL
+	      + body
+	      + "}" + NL;
+    }
+
+    @Override
+    public void visitDocumentNode(DocumentNode node) {
+        int size = node.numberOfChildren();
+        for (int i = 0; i < size; i++) {
+	  node.getChild(i).accept(this);
+        }
+    }
+
+    @Override
+    public void visitTextNode(TextNode node) {
+        String name = texts.get(node.getText());
+        if (name == null) {
+	  name = "T" + texts.size();
+	  texts.put(node.getText(), name);
+	  fields.append("    private static final EncodedText ").append(name)
+		.append(" = new EncodedText(").append(literal(node.getText())).append(");").append(NL);
+        }
+        statement("text(rc, " + name + ");");
+    }
+
+    @Override
+    public void visitForLoopNode(ForLoopNode node) {
+        if (node.getStepExpression() == null) {
+	  throw new IllegalArgumentException("For-loop " + node.asText() + " has no step.");
+        }
+        String variable = "v" + scope.size();
+        statement("for (int " + variable + " = " + node.getStartExpression().getValue() + "; "
+	      + variable + " <= " + node.getEndExpression().getValue() + "; "
+	      + variable + " += " + node.getStepExpression().getValue() + ") {");
+
+        scope.add(node.getVariable().getName());
+        int children = node.numberOfChildren();
+        for (int i = 0; i < children; i++) {
+	  node.getChild(i).accept(this);
+        }
+        scope.remove(scope.size() - 1);
+
+        statement("}");
+    }
+
+    @Override
+    public void visitEchoNode(EchoNode node) {
+        constantArgument = null;
+        for (Element element : node.getElements()) {
+	  element.accept(this);
+	  constantArgument = element instanceof ElementString
+		? ((ElementString) element).getValue() : null;
+        }
+        statement("s.writeTo(rc);");
+    }
+
+    @Override
+    public void visitVariable(ElementVariable element) {
+        int slot = scope.lastIndexOf(element.getName());
+        if (slot < 0) {
+	  statement("s.push(unbound(" + literal(element.getName()) + "));");
+        } else {
+	  statement("s.pushLong(v" + slot + ");");
+        }
+    }
+
+    @Override
+    public void visitString(ElementString element) {
+        statement("s.push(" + literal(element.getValue()) + ");");
+    }
+
+    @Override
+    public void visitConstantInteger(ElementConstantInteger element) {
+        statement("s.pushLong(" + element.getValue() + ");");
+    }
+
+    @Override
+    public void visitConstantDouble(ElementConstantDouble element) {
+        double value = element.getValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+	  statement("s.pushDouble(Double.longBitsToDouble(" + Double.doubleToRawLongBits(value) + "L));");
+        } else {
+	  statement("s.pushDouble(" + Double.toString(value) + ");");
+        }
+    }
+
+    @Override
+    public void visitOperator(ElementOperator element) {
+        switch (element.getSymbol()) {
+        case "+":
+	  statement("s.add();");
+	  break;
+        case "-":
+	  statement("s.subtract();");
+	  break;
+        case "*":
+	  statement("s.multiply();");
+	  break;
+        case "/":
+	  statement("s.divide();");
+	  break;
+        case "^":
+	  statement("s.power();");
+	  break;
+        default:
+	  throw new IllegalArgumentException("Unknown operator: " + element.getSymbol());
+        }
+    }
+
+    @Override
+    public void visitFunction(ElementFunction element) {
+        String functionName = element.getValue();
+        if (OperationsUtil.resolve(functionName) == null) {
+	  throw new IllegalArgumentException("Unknown function: @" + functionName);
+        }
+        String arguments = literal(functionName)
+	      + (constantArgument == null ? "" : ", " + literal(constantArgument));
+        String name = functions.get(arguments);
+        if (name == null) {
+	  name = "F" + functions.size();
+	  functions.put(arguments, name);
+	  fields.append("    private static final BiConsumer<RequestContext, ObjectStack> ")
+		.append(name).append(" = OperationsUtil.resolve(")
+		.append(arguments).append(");").append(NL);
+        }
+        statement(name + ".accept(rc, s);");
+    }
+
+    /**
+     * Appends the statement to the execute method, indented by the current loop depth.
+     * 
+     * @param statement Statement to append.
+     */
+    private void statement(String statement) {
+        for (int i = 0; i < scope.size() + 2; i++) {
+	  statements.append("    ");
+        }
+        statements.append(statement).append(NL);
+    }
+
+    /**
+     * Creates the Java expression for the given text. Texts longer than
+     * {@link #MAX_LITERAL_LENGTH} are joined at runtime, so they are not folded into one
+     * too large constant by the Java compiler.
+     * 
+     * @param text Text to write as an expression.
+     * @return Java expression of the text.
+     */
+    private static String literal(String text) {
+        if (text.length() <= MAX_LITERAL_LENGTH) {
+	  return quote(text, 0, text.length());
+        }
+        StringBuilder sb = new StringBuilder("new StringBuilder(").append(text.length()).append(")");
+        for (int start = 0; start < text.length(); start += MAX_LITERAL_LENGTH) {
+	  int end = Math.min(text.length(), start + MAX_LITERAL_LENGTH);
+	  sb.append(".append(").append(quote(text, start, end)).append(")");
+        }
+        return sb.append(".toString()").toString();
+    }
+
+    /**
+     * Writes the part of the text as a quoted Java string literal.
+     * Control characters are written as octal escapes and other non-ASCII characters as
+     * unicode escapes, so the generated source is pure ASCII.
+     * 
+     * @param text Text to quote.
+     * @param start Index of the first character.
+     * @param end Index after the last character.
+     * @return Quoted literal.
+     */
+    private static String quote(String text, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start + 2).append('"');
+        for (int i = start; i < end; i++) {
+	  char c = text.charAt(i);
+	  switch (c) {
+	  case '"':
+	      sb.append("\\\"");
+	      break;
+	  case '\\':
+	      sb.append("\\\\");
+	      break;
+	  case '\n':
+	      sb.append("\\n");
+	      break;
+	  case '\r':
+	      sb.append("\\r");
+	      break;
+	  case '\t':
+	      sb.append("\\t");
+	      break;
+	  default:
+	      if (c < 0x20) {
+		sb.append(String.format("\\%03o", (int) c));
+	      } else if (c > 0x7e) {
+		sb.append(String.format("\\u%04x", (int) c));
+	      } else {
+		sb.append(c);
+	      }
+	  }
+        }
+        return sb.append('"').toString();
+    }
+}
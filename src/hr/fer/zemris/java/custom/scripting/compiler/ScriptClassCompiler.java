@@ -0,0 +1,515 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+
+/**
+ * Represents the ahead-of-time compiler of the smart scripts into JVM classes.
+ * 
+ * Script is translated to Java source by the {@link JavaSourceGenerator} and compiled in
+ * memory by the system {@link JavaCompiler}. Name of the generated class is derived from
+ * the hash of the generated code (together with {@link JavaSourceGenerator#ABI_VERSION} and
+ * the version of the running Java), so the same script always gives the same class. Classes are kept only in memory, unless a cache directory
+ * is given. Then class files are kept there and a script which was already compiled, even
+ * by an earlier run of the server, is only loaded.
+ * 
+ * <p>Cached class files are code the server runs, so the directory must be owned by the
+ * server and accessible only to it, and every file is signed with a secret key. Files whose
+ * signature does not match are never loaded, they are compiled again.</p>
+ * 
+ * <p>Each script is loaded by it's own class loader, so classes of changed scripts can be
+ * unloaded once they are no longer used.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ScriptClassCompiler {
+
+    /**
+     * Represents the package of the generated classes.
+     */
+    public static final String PACKAGE = "hr.fer.zemris.java.custom.scripting.compiler.generated";
+
+    /**
+     * Represents the prefix of the names of the generated classes.
+     */
+    private static final String CLASS_PREFIX = "SmartScript_";
+
+    /**
+     * Represents the number of hexadecimal digits of the hash used in class names.
+     */
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * Represents the algorithm which signs the cached class files.
+     */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * Represents the length of the signature written before the bytes of a cached class.
+     */
+    private static final int MAC_LENGTH = 32;
+
+    /**
+     * Represents the minimal length of the key which signs the cached class files.
+     */
+    public static final int MIN_KEY_LENGTH = 16;
+
+    /**
+     * Represents the directory containing the compiled classes, or <code>null</code> if
+     * classes are not kept on disk.
+     */
+    private final Path cacheDirectory;
+
+    /**
+     * Represents the key which signs the cached class files, or <code>null</code> if
+     * classes are not kept on disk.
+     */
+    private final SecretKeySpec cacheKey;
+
+    /**
+     * Represents the system Java compiler, or <code>null</code> if it is not available.
+     */
+    private final JavaCompiler compiler;
+
+    /**
+     * Represents the number of scripts compiled by the Java compiler.
+     */
+    private final AtomicLong compiled = new AtomicLong();
+
+    /**
+     * Represents the number of scripts loaded from the cache directory.
+     */
+    private final AtomicLong loaded = new AtomicLong();
+
+    /**
+     * Represents the number of scripts which could not be compiled.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Public constructor.
+     * 
+     * @param cacheDirectory Directory for the compiled classes, or <code>null</code> if
+     * classes should not be kept on disk. Directory is created if it does not exist.
+     * @param cacheKey Secret key which signs the cached class files, required if the
+     * directory is given.
+     * @throws IllegalArgumentException If the key is missing or too short, or if the
+     * directory can not be created or is accessible to other users.
+     */
+    public ScriptClassCompiler(Path cacheDirectory, byte[] cacheKey) {
+        if (cacheDirectory != null) {
+	  if (cacheKey == null || cacheKey.length < MIN_KEY_LENGTH) {
+	      throw new IllegalArgumentException("Script class cache requires a key of at least "
+		    + MIN_KEY_LENGTH + " bytes.");
+	  }
+	  checkDirectory(cacheDirectory);
+        }
+        this.cacheDirectory = cacheDirectory;
+        this.cacheKey = cacheDirectory == null ? null : new SecretKeySpec(cacheKey, MAC_ALGORITHM);
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+    }
+
+    /**
+     * Creates the cache directory, accessible only to the owner, if it does not exist, and
+     * checks that it is owned by the user running the server and that no other user can
+     * access it. Permissions are checked only on file systems which support them.
+     * 
+     * @param directory Cache directory.
+     * @throws IllegalArgumentException If the directory can not be created or is not safe.
+     */
+    private static void checkDirectory(Path directory) {
+        try {
+	  boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+	  if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+	      if (!posix) {
+		Files.createDirectories(directory);
+	      } else {
+		Files.createDirectories(directory,
+		        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+	      }
+	  }
+	  if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+	      throw new IllegalArgumentException("Script class cache " + directory + " is not a directory.");
+	  }
+
+	  UserPrincipal server = directory.getFileSystem().getUserPrincipalLookupService()
+		.lookupPrincipalByName(System.getProperty("user.name"));
+	  if (!Files.getOwner(directory).equals(server)) {
+	      throw new IllegalArgumentException("Script class cache " + directory
+		    + " is not owned by the user running the server.");
+	  }
+	  if (posix) {
+	      Set<PosixFilePermission> shared = EnumSet.complementOf(EnumSet.of(
+		    PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+		    PosixFilePermission.OWNER_EXECUTE));
+	      shared.retainAll(Files.getPosixFilePermissions(directory));
+	      if (!shared.isEmpty()) {
+		throw new IllegalArgumentException("Script class cache " + directory
+		        + " must be accessible only to it's owner, but it allows "
+		        + PosixFilePermissions.toString(EnumSet.copyOf(shared)) + ".");
+	      }
+	  }
+        } catch (IOException | UnsupportedOperationException e) {
+	  throw new IllegalArgumentException("Script class cache " + directory
+		+ " can not be prepared: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks if scripts can be compiled, which is not the case if the server runs on a JRE
+     * without the Java compiler. Scripts already in the cache directory can be loaded anyway.
+     * 
+     * @return <code>true</code> if the Java compiler is available, elseway <code>false</code>.
+     */
+    public boolean isAvailable() {
+        return compiler != null;
+    }
+
+    /**
+     * Compiles the given document into a class and returns a new instance of it.
+     * If the class is already in the cache directory, it is only loaded.
+     * 
+     * @param document Document to compile.
+     * @return Instance of the compiled class.
+     * @throws IllegalArgumentException In case the document uses an unknown operator or
+     * function.
+     * @throws IllegalStateException In case the class can not be compiled or loaded.
+     */
+    public ICompiledScript compile(DocumentNode document) {
+        String body = JavaSourceGenerator.generateBody(document);
+        String className = CLASS_PREFIX + hash(body + "\n" + JavaSourceGenerator.ABI_VERSION
+	      + "\n" + System.getProperty("java.specification.version"));
+        String binaryName = PACKAGE + "." + className;
+
+        Path classFile = cacheDirectory == null ? null : cacheDirectory.resolve(className + ".class");
+        if (classFile != null && Files.isRegularFile(classFile)) {
+	  try {
+	      ICompiledScript script = instantiate(binaryName, verify(Files.readAllBytes(classFile)));
+	      loaded.incrementAndGet();
+	      return script;
+	  } catch (IOException | LinkageError | IllegalStateException e) {
+	      System.err.println("Cached script class " + classFile + " can not be loaded, compiling it again.");
+	      e.printStackTrace();
+	  }
+        }
+
+        byte[] bytes;
+        try {
+	  bytes = javac(binaryName, JavaSourceGenerator.wrap(PACKAGE, className, body));
+        } catch (IllegalStateException e) {
+	  failed.incrementAndGet();
+	  throw e;
+        }
+        compiled.incrementAndGet();
+        if (classFile != null) {
+	  store(classFile, sign(bytes));
+        }
+        return instantiate(binaryName, bytes);
+    }
+
+    /**
+     * Compiles the source of one class in memory.
+     * 
+     * @param binaryName Binary name of the class.
+     * @param source Source of the class.
+     * @return Bytes of the compiled class.
+     * @throws IllegalStateException In case the compiler is not available or the compilation
+     * failed.
+     */
+    private byte[] javac(String binaryName, String source) {
+        if (compiler == null) {
+	  throw new IllegalStateException("Java compiler is not available, server runs on a JRE.");
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(
+	      diagnostics, null, StandardCharsets.UTF_8);
+        ClassOutput output = new ClassOutput(standard);
+        List<String> options = Arrays.asList(
+	      "-classpath", System.getProperty("java.class.path"), "-g:none", "-nowarn");
+
+        try {
+	  boolean success = compiler.getTask(null, output, diagnostics, options, null,
+		Collections.singletonList(new SourceFile(binaryName, source))).call();
+	  if (!success) {
+	      StringBuilder sb = new StringBuilder("Script class " + binaryName + " can not be compiled:");
+	      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+		sb.append("\r\n").append(diagnostic.getMessage(null));
+	      }
+	      throw new IllegalStateException(sb.toString());
+	  }
+        } catch (IllegalArgumentException e) {
+	  throw new IllegalStateException("Script class " + binaryName + " can not be compiled.", e);
+        } finally {
+	  try {
+	      output.close();
+	  } catch (IOException ignorable) {
+	  }
+        }
+
+        byte[] bytes = output.classes.get(binaryName);
+        if (bytes == null || output.classes.size() != 1) {
+	  throw new IllegalStateException("Script " + binaryName + " was not compiled into one class.");
+        }
+        return bytes;
+    }
+
+    /**
+     * Defines the class in it's own class loader and creates an instance of it.
+     * 
+     * @param binaryName Binary name of the class.
+     * @param bytes Bytes of the class.
+     * @return Instance of the class.
+     * @throws IllegalStateException In case the class can not be instantiated.
+     */
+    private static ICompiledScript instantiate(String binaryName, byte[] bytes) {
+        Class<?> scriptClass = new ScriptClassLoader().define(binaryName, bytes);
+        try {
+	  return (ICompiledScript) scriptClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+	  throw new IllegalStateException("Script class " + binaryName + " can not be instantiated.", e);
+        }
+    }
+
+    /**
+     * Calculates the signature of the given class bytes.
+     * 
+     * @param bytes Bytes to sign.
+     * @param offset Index of the first byte to sign.
+     * @return Signature of the bytes.
+     */
+    private byte[] mac(byte[] bytes, int offset) {
+        try {
+	  Mac mac = Mac.getInstance(MAC_ALGORITHM);
+	  mac.init(cacheKey);
+	  mac.update(bytes, offset, bytes.length - offset);
+	  return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+	  throw new IllegalStateException(MAC_ALGORITHM + " is not available.", e);
+        }
+    }
+
+    /**
+     * Prepends the signature to the bytes of the class, as they are stored in the cache.
+     * 
+     * @param bytes Bytes of the class.
+     * @return Signed bytes.
+     */
+    private byte[] sign(byte[] bytes) {
+        byte[] signed = new byte[MAC_LENGTH + bytes.length];
+        System.arraycopy(mac(bytes, 0), 0, signed, 0, MAC_LENGTH);
+        System.arraycopy(bytes, 0, signed, MAC_LENGTH, bytes.length);
+        return signed;
+    }
+
+    /**
+     * Checks the signature of the cached class file and returns the bytes of the class.
+     * 
+     * @param signed Content of the cached class file.
+     * @return Bytes of the class.
+     * @throws IllegalStateException If the signature does not match.
+     */
+    private byte[] verify(byte[] signed) {
+        if (signed.length <= MAC_LENGTH || !MessageDigest.isEqual(mac(signed, MAC_LENGTH),
+	      Arrays.copyOf(signed, MAC_LENGTH))) {
+	  throw new IllegalStateException("Signature of the cached script class does not match.");
+        }
+        return Arrays.copyOfRange(signed, MAC_LENGTH, signed.length);
+    }
+
+    /**
+     * Writes the class file to the cache directory. File is first written under a temporary
+     * name and then moved, so other servers sharing the directory never see a partial file.
+     * Failures are only reported, since the class is already compiled.
+     * 
+     * @param classFile Path of the class file.
+     * @param bytes Bytes of the class.
+     */
+    private static void store(Path classFile, byte[] bytes) {
+        try {
+	  Files.createDirectories(classFile.getParent());
+	  Path temporary = Files.createTempFile(classFile.getParent(), "script", ".tmp");
+	  try {
+	      Files.write(temporary, bytes);
+	      try {
+		Files.move(temporary, classFile, StandardCopyOption.ATOMIC_MOVE);
+	      } catch (AtomicMoveNotSupportedException e) {
+		Files.move(temporary, classFile, StandardCopyOption.REPLACE_EXISTING);
+	      }
+	  } finally {
+	      Files.deleteIfExists(temporary);
+	  }
+        } catch (IOException e) {
+	  System.err.println("Script class can not be written to " + classFile + ".");
+	  e.printStackTrace();
+        }
+    }
+
+    /**
+     * Calculates the hexadecimal SHA-256 hash of the given text, shortened to
+     * {@link #HASH_LENGTH} digits.
+     * 
+     * @param text Text to hash.
+     * @return Hash of the text.
+     */
+    private static String hash(String text) {
+        try {
+	  byte[] digest = MessageDigest.getInstance("SHA-256")
+		.digest(text.getBytes(StandardCharsets.UTF_8));
+	  StringBuilder sb = new StringBuilder(HASH_LENGTH);
+	  for (int i = 0; i < HASH_LENGTH / 2; i++) {
+	      sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+	      sb.append(Character.forDigit(digest[i] & 0xf, 16));
+	  }
+	  return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+	  throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Script classes: compiled=" + compiled + ", loaded=" + loaded + ", failed=" + failed
+	      + (compiler == null ? " (Java compiler is not available)" : "");
+    }
+
+    /**
+     * Represents the source of the generated class, kept in memory.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        /**
+         * Represents the source code.
+         */
+        private final String source;
+
+        /**
+         * Public constructor.
+         * 
+         * @param binaryName Binary name of the class.
+         * @param source Source code of the class.
+         */
+        public SourceFile(String binaryName, String source) {
+	  super(URI.create("string:///" + binaryName.replace('.', '/') + Kind.SOURCE.extension),
+		Kind.SOURCE);
+	  this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+	  return source;
+        }
+    }
+
+    /**
+     * Represents the file manager which keeps the compiled classes in memory instead of
+     * writing them to the disk.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class ClassOutput extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        /**
+         * Represents the compiled classes, mapped by their binary names.
+         */
+        private final Map<String, byte[]> classes = new HashMap<>();
+
+        /**
+         * Public constructor.
+         * 
+         * @param fileManager Standard file manager used for everything except the output.
+         */
+        public ClassOutput(StandardJavaFileManager fileManager) {
+	  super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location,
+	      String className, JavaFileObject.Kind kind, FileObject sibling) {
+	  return new SimpleJavaFileObject(
+		URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+
+	      @Override
+	      public OutputStream openOutputStream() {
+		return new ByteArrayOutputStream() {
+
+		    @Override
+		    public void close() {
+		        classes.put(className, toByteArray());
+		    }
+		};
+	      }
+	  };
+        }
+    }
+
+    /**
+     * Represents the class loader of one generated class.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class ScriptClassLoader extends ClassLoader {
+
+        /**
+         * Public constructor.
+         * Classes used by the generated code are loaded by the loader of this compiler.
+         */
+        public ScriptClassLoader() {
+	  super(ScriptClassCompiler.class.getClassLoader());
+        }
+
+        /**
+         * Defines the class from the given bytes.
+         * 
+         * @param binaryName Binary name of the class.
+         * @param bytes Bytes of the class.
+         * @return Defined class.
+         */
+        public Class<?> define(String binaryName, byte[] bytes) {
+	  return defineClass(binaryName, bytes, 0, bytes.length);
+        }
+    }
+}
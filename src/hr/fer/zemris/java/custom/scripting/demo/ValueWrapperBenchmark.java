@@ -0,0 +1,116 @@
+package hr.fer.zemris.java.custom.scripting.demo;
+
+import java.util.function.Supplier;
+
+import hr.fer.zemris.java.custom.scripting.exec.PrimitiveValueWrapper;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+
+/**
+ * Represents the comparison of the {@link ValueWrapper} and the {@link PrimitiveValueWrapper}.
+ * 
+ * Each case runs the same sequence of operations on a wrapper created by both classes, first
+ * to warm up the JIT compiler and then measured a few times. Printed times are the best of
+ * the measured rounds, in nanoseconds per operation. Results are summed and printed as well,
+ * so the work can not be removed as dead code.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ValueWrapperBenchmark {
+
+    /**
+     * Represents the number of operations in one round.
+     */
+    private static final int OPERATIONS = 2_000_000;
+
+    /**
+     * Represents the number of warm-up rounds.
+     */
+    private static final int WARMUP_ROUNDS = 5;
+
+    /**
+     * Represents the number of measured rounds.
+     */
+    private static final int MEASURED_ROUNDS = 5;
+
+    /**
+     * Represents the sum of the results, printed at the end.
+     */
+    private static double blackhole;
+
+    /**
+     * Entry point of the program.
+     * 
+     * @param args Command line arguments - not used.
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-28s %12s %12s%n", "case", "ValueWrapper", "Primitive");
+
+        compare("integer increment", () -> new ValueWrapper(0), () -> new PrimitiveValueWrapper(0),
+	      w -> w.increment(1));
+        compare("mixed increment", () -> new ValueWrapper(0), () -> new PrimitiveValueWrapper(0),
+	      w -> w.increment(0.5));
+        compare("string argument", () -> new ValueWrapper(1), () -> new PrimitiveValueWrapper(1),
+	      w -> w.multiply("1"));
+        compare("decimal divide", () -> new ValueWrapper(1e9), () -> new PrimitiveValueWrapper(1e9),
+	      w -> w.divide(1.0000001));
+        compare("string value compare", () -> new ValueWrapper("12.5"),
+	      () -> new PrimitiveValueWrapper("12.5"), w -> blackhole += w.numCompare(3));
+
+        System.out.println("(" + blackhole + ")");
+    }
+
+    /**
+     * Measures the operation on both classes and prints the results.
+     * 
+     * @param name Name of the case.
+     * @param plain Creates the {@link ValueWrapper}.
+     * @param primitive Creates the {@link PrimitiveValueWrapper}.
+     * @param operation Operation to measure.
+     */
+    private static void compare(String name, Supplier<ValueWrapper> plain,
+	  Supplier<ValueWrapper> primitive, IOperation operation) {
+        System.out.printf("%-28s %9.2f ns %9.2f ns%n", name,
+	      measure(plain, operation), measure(primitive, operation));
+    }
+
+    /**
+     * Runs the warm-up rounds and the measured rounds of the operation.
+     * 
+     * @param factory Creates the wrapper for each round.
+     * @param operation Operation to measure.
+     * @return Best measured time in nanoseconds per operation.
+     */
+    private static double measure(Supplier<ValueWrapper> factory, IOperation operation) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+	  ValueWrapper wrapper = factory.get();
+	  long start = System.nanoTime();
+	  for (int i = 0; i < OPERATIONS; i++) {
+	      operation.apply(wrapper);
+	  }
+	  long time = System.nanoTime() - start;
+	  blackhole += wrapper.numCompare(0);
+	  if (round >= WARMUP_ROUNDS) {
+	      best = Math.min(best, time);
+	  }
+        }
+        return (double) best / OPERATIONS;
+    }
+
+    /**
+     * Represents the measured operation.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private interface IOperation {
+
+        /**
+         * Applies the operation to the wrapper.
+         * 
+         * @param wrapper Wrapper to apply the operation to.
+         */
+        void apply(ValueWrapper wrapper);
+    }
+}
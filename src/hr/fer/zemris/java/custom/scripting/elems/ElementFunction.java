@@ -1,5 +1,10 @@
 package hr.fer.zemris.java.custom.scripting.elems;
 
+import java.util.function.BiConsumer;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.webserver.RequestContext;
+
 /**
  * Class ElementFunction represents a function. Contains only one read-only value.
  * 
@@ -13,6 +18,11 @@ public class ElementFunction extends Element {
      */
     private String value;
 
+    /**
+     * Represents the action of the function, resolved when the script was parsed.
+     */
+    private BiConsumer<RequestContext, ObjectStack> function;
+
     /**
      * Public constructor.
      * 
@@ -23,6 +33,19 @@ public class ElementFunction extends Element {
         this.value = value;
     }
 
+    /**
+     * Public constructor.
+     * 
+     * @param value
+     *            The value to be set.
+     * @param function
+     *            The resolved action of the function.
+     */
+    public ElementFunction(String value, BiConsumer<RequestContext, ObjectStack> function) {
+        this.value = value;
+        this.function = function;
+    }
+
     /**
      * The value getter.
      * 
@@ -33,6 +56,15 @@ public class ElementFunction extends Element {
         return value;
     }
 
+    /**
+     * The function getter.
+     * 
+     * @return Resolved action of the function, or <code>null</code> if it was not resolved.
+     */
+    public BiConsumer<RequestContext, ObjectStack> getFunction() {
+        return function;
+    }
+
     /**
      * Overridden method.
      * 
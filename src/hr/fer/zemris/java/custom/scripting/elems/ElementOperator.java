@@ -30,6 +30,11 @@ public class ElementOperator extends Element {
      */
     private static final BiFunction<Double, Double, Double> DIV = (a,b) -> a / b;
     
+    /**
+     * Represents the POW of the 
+     */
+    private static final BiFunction<Double, Double, Double> POW = (a,b) -> Math.pow(a, b);
+    
     /**
      * Represents the symbol (operator) of the element.
      */
@@ -79,6 +84,7 @@ public class ElementOperator extends Element {
         if(element.symbol.equals("-")) return SUB;
         if(element.symbol.equals("*")) return MUL;
         if(element.symbol.equals("/")) return DIV;
+        if(element.symbol.equals("^")) return POW;
         return null;
     }
 
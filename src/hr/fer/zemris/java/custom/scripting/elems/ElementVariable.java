@@ -13,6 +13,11 @@ public class ElementVariable extends Element {
      */
     private String name;
 
+    /**
+     * Represents the slot of the variable, or -1 if the parser did not assign it.
+     */
+    private int slot;
+
     /**
      * Public constructor.
      * 
@@ -20,7 +25,20 @@ public class ElementVariable extends Element {
      *            The name to set.
      */
     public ElementVariable(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Public constructor.
+     * 
+     * @param name
+     *            The name to set.
+     * @param slot
+     *            The slot to set, see {@link #getSlot()}.
+     */
+    public ElementVariable(String name, int slot) {
         this.name = name;
+        this.slot = slot;
     }
 
     /**
@@ -33,6 +51,18 @@ public class ElementVariable extends Element {
         return name;
     }
 
+    /**
+     * The slot getter. All variables with the same name in one document have the same slot,
+     * which is the index of the name in {@link
+     * hr.fer.zemris.java.custom.scripting.nodes.DocumentNode#getVariableNames()}.
+     * 
+     * @return int Gets the slot, or -1 if the parser did not assign it.
+     */
+    public int getSlot() {
+
+        return slot;
+    }
+
     /**
      * Overridden method.
      * 
@@ -0,0 +1,65 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.function.BiConsumer;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the interface toward a function which can be called from smart scripts
+ * (<code>@name</code>), in addition to the functions of the {@link OperationsUtil}.
+ *
+ * Functions are found by the {@link java.util.ServiceLoader}: an implementation with a public
+ * constructor without arguments is listed in the
+ * <code>META-INF/services/hr.fer.zemris.java.custom.scripting.exec.ISmartScriptFunction</code>
+ * file on the class path. They can also be registered by
+ * {@link OperationsUtil#register(ISmartScriptFunction)}. Functions are shared by all of the
+ * scripts and requests, so they must be thread-safe.
+ *
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public interface ISmartScriptFunction extends BiConsumer<RequestContext, ObjectStack> {
+
+    /**
+     * Returns the name of the function, used in the scripts without the '@'. Name must start
+     * with a letter which is followed by letters, digits or underscores.
+     *
+     * @return Name of the function.
+     */
+    public String getName();
+
+    /**
+     * Executes the function: pops it's arguments from the stack and pushes the results.
+     * Exceptions are reported by the engine, the script continues.
+     *
+     * @param requestContext Context of the request.
+     * @param stack Stack of the echo tag.
+     */
+    @Override
+    public void accept(RequestContext requestContext, ObjectStack stack);
+
+    /**
+     * Checks if the function only works with the stack: it does not use the request context
+     * and always gives the same results for the same arguments. Such functions can be
+     * evaluated once, when the script is parsed.
+     *
+     * @return <code>true</code> if the function is pure, by default <code>false</code>.
+     */
+    public default boolean isPure() {
+        return false;
+    }
+
+    /**
+     * Prepares the function for a call whose last argument is always the given string
+     * constant, so the work which depends only on it (for example, compiling a pattern) is
+     * done once, when the script is parsed. Returned function is still called with the
+     * constant on the top of the stack.
+     *
+     * @param constantArgument The constant pushed right before the function is called.
+     * @return Prepared function, by default this function.
+     */
+    public default BiConsumer<RequestContext, ObjectStack> bind(String constantArgument) {
+        return this;
+    }
+}
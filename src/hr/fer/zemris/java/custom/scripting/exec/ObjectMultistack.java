@@ -1,5 +1,6 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -10,15 +11,68 @@ import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
  * It contains elemented stored like pair key-value, but in a special direction.
  * Each key provides a stack with functions for pushing, poping and peeking from the stack.
  * 
+ * <p>Each key is given a slot, the index of it's stack. Stacks are growable arrays, so all of
+ * the operations take constant time. Slots can be registered in advance (for example, slots
+ * assigned to the variables by the parser) and used directly, without looking up the key.</p>
+ * 
  * @author Marin Grbić
  * @version 1.0
  */
 public class ObjectMultistack {
 
     /**
-     * Represents the map of the object multistack which stores the multistack entries.
+     * Represents the initial capacity of each of the stacks.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Represents the slots of the keys.
+     */
+    private Map<String, Integer> slots = new HashMap<>();
+    
+    /**
+     * Represents the stacks, indexed by their slots.
+     */
+    private ValueWrapper[][] stacks;
+    
+    /**
+     * Represents the sizes of the stacks, indexed by their slots.
+     */
+    private int[] sizes;
+    
+    /**
+     * Public constructor.
+     * Registers the given keys, so the key at index <code>i</code> gets the slot <code>i</code>.
+     * 
+     * @param names Keys to register.
+     */
+    public ObjectMultistack(String... names) {
+	int capacity = Math.max(names.length, INITIAL_CAPACITY);
+	stacks = new ValueWrapper[capacity][];
+	sizes = new int[capacity];
+	for(String name : names) {
+	    slotOf(name);
+	}
+    }
+    
+    /**
+     * Returns the slot of the given key, registering the key if it does not have a slot yet.
+     * @param name The key.
+     * @return <b>int</b> The slot of the key.
      */
-    private Map<String, MultistackEntry> map = new HashMap<>();
+    public int slotOf(String name) {
+	Integer slot = slots.get(name);
+	if(slot != null) return slot;
+	
+	int newSlot = slots.size();
+	if(newSlot == stacks.length) {
+	    stacks = Arrays.copyOf(stacks, newSlot * 2);
+	    sizes = Arrays.copyOf(sizes, newSlot * 2);
+	}
+	stacks[newSlot] = new ValueWrapper[INITIAL_CAPACITY];
+	slots.put(name, newSlot);
+	return newSlot;
+    }
     
     /**
      * Pushes an object to the stack.
@@ -27,18 +81,22 @@ public class ObjectMultistack {
      * @param valueWrapper <b>void</b> The value to push.
      */
     public void push(String name, ValueWrapper valueWrapper) {
-	
-	MultistackEntry temporary = map.get(name);
-	MultistackEntry newEntry = new MultistackEntry(valueWrapper, null);
-	
-	if(temporary == null) {
-	    map.put(name, newEntry);
-	} else {
-	    while(temporary.next != null) {
-		temporary = temporary.next;
-	    }
-	    temporary.next = newEntry;
+	push(slotOf(name), valueWrapper);
+    }
+    
+    /**
+     * Pushes an object to the stack with the given slot.
+     * @param slot The slot of the stack where to push.
+     * @param valueWrapper The value to push.
+     */
+    public void push(int slot, ValueWrapper valueWrapper) {
+	ValueWrapper[] stack = stack(slot);
+	int size = sizes[slot];
+	if(size == stack.length) {
+	    stack = stacks[slot] = Arrays.copyOf(stack, size * 2);
 	}
+	stack[size] = valueWrapper;
+	sizes[slot] = size + 1;
     }
     
     /**
@@ -48,23 +106,27 @@ public class ObjectMultistack {
      * @return <b>ValueWrapper</b> The poped value.
      */
     public ValueWrapper pop(String name) {
-	MultistackEntry entry = map.get(name);
-	ValueWrapper value = null;
-	
-	try {
-	    value = this.peek(name);
-	} catch(EmptyStackException e) {
+	Integer slot = slots.get(name);
+	if(slot == null) {
 	    throw new EmptyStackException("Can not pop from an empty stack!");
 	}
-	
-	MultistackEntry previous = entry;
-	while(entry.next != null) {
-	    previous = entry;
-	    entry = entry.next;
+	return pop(slot);
+    }
+    
+    /**
+     * Pops an object from the stack with the given slot.
+     * @param slot The slot of the stack from where to pop.
+     * @return <b>ValueWrapper</b> The poped value.
+     */
+    public ValueWrapper pop(int slot) {
+	ValueWrapper[] stack = stack(slot);
+	int size = sizes[slot];
+	if(size == 0) {
+	    throw new EmptyStackException("Can not pop from an empty stack!");
 	}
-	previous.next = null;
-	entry = null;
-	
+	ValueWrapper value = stack[--size];
+	stack[size] = null;
+	sizes[slot] = size;
 	return value;
     }
     
@@ -75,18 +137,24 @@ public class ObjectMultistack {
      * @return <b>ValueWrapper</b> The peeked value.
      */
     public ValueWrapper peek(String name) {
-	
-	MultistackEntry entry = map.get(name);
-	
-	if(entry == null) {
+	Integer slot = slots.get(name);
+	if(slot == null) {
 	    throw new EmptyStackException("Can not peek from an empty stack!");
 	}
-	
-	while(entry.next != null) {
-	    entry = entry.next;
+	return peek(slot);
+    }
+    
+    /**
+     * Peeks an object from the stack with the given slot.
+     * @param slot The slot of the stack from where to peek.
+     * @return <b>ValueWrapper</b> The peeked value.
+     */
+    public ValueWrapper peek(int slot) {
+	int size = sizes[checkSlot(slot)];
+	if(size == 0) {
+	    throw new EmptyStackException("Can not peek from an empty stack!");
 	}
-	
-	return entry.getValue();
+	return stacks[slot][size - 1];
     }
     
     /**
@@ -96,69 +164,39 @@ public class ObjectMultistack {
      * @return <b>boolean</b> True if the stack is empty, elseway false.
      */
     public boolean isEmpty(String name) {
-	return map.get(name) == null;
+	Integer slot = slots.get(name);
+	return slot == null || sizes[slot] == 0;
     }
     
     /**
-     * Represents a single entry of the stack. 
-     * Contains a stored value and a reference to the next entry which is stored upon the current one.
-     * @author Marin Grbić
-     * @version 1.0
+     * Checks if the stack with the given slot is empty.
+     * @param slot The slot where to check.
+     * @return <b>boolean</b> True if the stack is empty, elseway false.
      */
-    public static class MultistackEntry {
-	
-	/**
-	 * Represents the value of the entry.
-	 */
-	private ValueWrapper value;
-	
-	/**
-	 * Represents the next entry of the current one. 
-	 */
-	private MultistackEntry next;
-
-	/** Public constructor.
-	 * Sets fields to the given values.
-	 * @param value The value to be set, allowed to be null.
-	 * @param next Next entry in the stack.
-	 */
-	public MultistackEntry(ValueWrapper value, MultistackEntry next) {
-	    this.value = value;
-	    this.next = next;
-	}
-
-	/**
-	 * The value getter.
-	 * @return ValueWrapper gets the value
-	 */
-	public ValueWrapper getValue() {
-	    return value;
-	}
-
-	/**
-	 * The value setter.
-	 * @param value The value to set.
-	 */
-	public void setValue(ValueWrapper value) {
-	    this.value = value;
-	}
-
-	/**
-	 * The next getter.
-	 * @return MultistackEntry gets the next
-	 */
-	public MultistackEntry getNext() {
-	    return next;
+    public boolean isEmpty(int slot) {
+	return sizes[checkSlot(slot)] == 0;
+    }
+    
+    /**
+     * Returns the stack with the given slot.
+     * @param slot The slot of the stack.
+     * @return <b>ValueWrapper[]</b> The stack.
+     * @throws IllegalArgumentException If the slot was not registered.
+     */
+    private ValueWrapper[] stack(int slot) {
+	return stacks[checkSlot(slot)];
+    }
+    
+    /**
+     * Checks if the slot was registered.
+     * @param slot The slot to check.
+     * @return <b>int</b> The checked slot.
+     * @throws IllegalArgumentException If the slot was not registered.
+     */
+    private int checkSlot(int slot) {
+	if(slot < 0 || slot >= slots.size()) {
+	    throw new IllegalArgumentException("Slot " + slot + " is not registered!");
 	}
-
-	/**
-	 * The next setter.
-	 * @param next The next to set.
-	 */
-	public void setNext(MultistackEntry next) {
-	    this.next = next;
-	}	
-	
-	
+	return slot;
     }
 }
@@ -1,8 +1,12 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -92,7 +96,7 @@ public class OperationsUtil {
      */
     private static final SmartScriptBiConsumer SIN = new SmartScriptBiConsumer(
 	  (e,s) -> {
-	      double x = (double) s.pop();
+	      double x = toDouble(s.pop());
 	      double r = Math.sin(Math.toRadians(x));
 		  
 	      s.push(r);
@@ -104,16 +108,7 @@ public class OperationsUtil {
      * Represents the decimal format action.
      * Formats double to the given format.
      */
-    private static final SmartScriptBiConsumer DECFMT = new SmartScriptBiConsumer(
-	  (e,s) -> {
-	      DecimalFormat f = new DecimalFormat((String) s.pop());
-	      double x = (double) s.pop();
-	      String str = f.format(x);
-	      double r = Double.parseDouble(str.replaceAll(",", "."));
-	      s.push(r);
-	  }, 
-	  DECFMT_NAME
-	  );
+    private static final SmartScriptBiConsumer DECFMT = new DecimalFormatter();
     
     /**
      * Represents the dup action.
@@ -214,7 +209,13 @@ public class OperationsUtil {
      * Represents the map of the actions.
      * Actions can be fetched from this map only using the appropriate public method for resolving.
      */
-    private static final Map<String, SmartScriptBiConsumer> map = new HashMap<>();
+    private static final Map<String, SmartScriptBiConsumer> map = new ConcurrentHashMap<>();
+
+    /**
+     * Represents the names of the actions which only work with the stack: they do not use
+     * the request context and always give the same result for the same arguments.
+     */
+    private static final Set<String> PURE_NAMES = ConcurrentHashMap.newKeySet();
     
     static {
         map.put(SIN_NAME,SIN);
@@ -229,6 +230,45 @@ public class OperationsUtil {
         map.put(TPARAM_GET_NAME,TPARAM_GET);
         map.put(TPARAM_SET_NAME,TPARAM_SET);
         map.put(TPARAM_DEL_NAME,TPARAM_DEL);
+        PURE_NAMES.addAll(Arrays.asList(SIN_NAME, DECFMT_NAME, DUP_NAME, SWAP_NAME));
+        
+        try {
+	  for(ISmartScriptFunction function : ServiceLoader.load(ISmartScriptFunction.class)) {
+	      try {
+		register(function);
+	      } catch(IllegalArgumentException e) {
+		System.err.println("Smart script function " + function.getClass().getName()
+		        + " not registered: " + e.getMessage());
+	      }
+	  }
+        } catch(ServiceConfigurationError e) {
+	  System.err.println("Smart script functions could not be loaded.");
+	  e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Registers the function, so it can be called from the smart scripts parsed from now on.
+     * Functions listed for the {@link ServiceLoader} are registered automatically.
+     * 
+     * @param function The function to register.
+     * @throws IllegalArgumentException In case the name of the function is not valid or a
+     * function with the same name already exists.
+     */
+    public static void register(ISmartScriptFunction function) {
+        if(function == null) {
+	  throw new IllegalArgumentException("Function can not be null.");
+        }
+        String name = function.getName();
+        if(name == null || !name.matches("\\p{L}[\\p{L}\\p{Nd}_]*")) {
+	  throw new IllegalArgumentException("Function name " + name + " is not valid.");
+        }
+        if(map.putIfAbsent(name, new RegisteredFunction(function)) != null) {
+	  throw new IllegalArgumentException("Function @" + name + " already exists.");
+        }
+        if(function.isPure()) {
+	  PURE_NAMES.add(name);
+        }
     }
     
     /**
@@ -242,6 +282,64 @@ public class OperationsUtil {
         return map.get(key);
     }
 
+    /**
+     * Resolves the action for the given string key, prepared for a call whose last argument
+     * is always the given constant (see {@link ISmartScriptFunction#bind(String)}). For example,
+     * <code>"0.000" @decfmt</code> gets an action with an already compiled format.
+     * If such action does not exist, returns <code>null</code>.
+     * 
+     * @param key The key used for resolving the action.
+     * @param constantArgument The constant pushed right before the action is called, or
+     * <code>null</code> if it is not a constant.
+     * @return Action by the given key.
+     */
+    public static BiConsumer<RequestContext, ObjectStack> resolve(String key, String constantArgument) {
+        SmartScriptBiConsumer action = map.get(key);
+        if(action == null || constantArgument == null) {
+	  return action;
+        }
+        return action.bind(constantArgument);
+    }
+
+    /**
+     * Resolves the pure action (one which only works with the stack) for the given string key,
+     * so it can be evaluated ahead of time. Returned action does not handle it's errors, all
+     * exceptions are thrown to the caller.
+     * If such pure action does not exist, returns <code>null</code>.
+     * 
+     * @param key The key used for resolving the action.
+     * @return Pure action by the given key.
+     */
+    public static BiConsumer<RequestContext, ObjectStack> resolvePure(String key) {
+        return PURE_NAMES.contains(key) ? map.get(key).action : null;
+    }
+
+    /**
+     * Converts the argument of an action to a double. Arguments can be integers or decimal
+     * numbers of any type, or strings representing a number.
+     * 
+     * @param value Argument to convert.
+     * @return Argument as a double.
+     * @throws NumberFormatException In case the argument is a string which is not a number.
+     */
+    private static double toDouble(Object value) {
+        if(value instanceof Number) {
+	  return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble((String) value);
+    }
+
+    /**
+     * Formats the number and parses the result back, the way the decfmt action does.
+     * 
+     * @param format Format to use.
+     * @param x Number to format.
+     * @return Formatted number.
+     */
+    private static double format(DecimalFormat format, double x) {
+        return Double.parseDouble(format.format(x).replace(',', '.'));
+    }
+
     /**
      * Represents the edited {@link BiConsumer} adjusted for working with the smart script
      * operations. 
@@ -286,6 +384,113 @@ public class OperationsUtil {
 	        }
         }
         
+        /**
+         * Prepares the action for a call whose last argument is always the given constant,
+         * see {@link ISmartScriptFunction#bind(String)}.
+         * 
+         * @param constantArgument The constant pushed right before the action is called.
+         * @return Prepared action, by default this action.
+         */
+        public BiConsumer<RequestContext, ObjectStack> bind(String constantArgument) {
+	  return this;
+        }
+        
+    }
+    
+    /**
+     * Represents the action which formats a double to the given {@link DecimalFormat} pattern.
+     * 
+     * Creating a format means parsing it's pattern, so formats are not created on each call:
+     * each thread remembers the last used format and a constant pattern is compiled only once,
+     * when the script is parsed (see {@link #bind(String)}). Formats are not thread-safe, so
+     * each thread uses it's own copy.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class DecimalFormatter extends SmartScriptBiConsumer {
+        
+        /**
+         * Represents the last pattern used by each thread and it's format.
+         */
+        private static final ThreadLocal<Object[]> LAST_FORMAT = ThreadLocal.withInitial(() -> new Object[2]);
+
+        /** 
+         * Public constructor.
+         */
+        public DecimalFormatter() {
+	  super((e,s) -> {
+	      DecimalFormat f = formatFor((String) s.pop());
+	      double x = toDouble(s.pop());
+	      s.push(format(f, x));
+	  }, DECFMT_NAME);
+        }
+        
+        @Override
+        public BiConsumer<RequestContext, ObjectStack> bind(String pattern) {
+	  DecimalFormat prototype;
+	  try {
+	      prototype = new DecimalFormat(pattern);
+	  } catch(IllegalArgumentException e) {
+	      return this;
+	  }
+	  ThreadLocal<DecimalFormat> formats = ThreadLocal.withInitial(
+		() -> (DecimalFormat) prototype.clone());
+	  
+	  return new SmartScriptBiConsumer((e,s) -> {
+	      String actualPattern = (String) s.pop();
+	      DecimalFormat f = pattern.equals(actualPattern) ? formats.get() : formatFor(actualPattern);
+	      double x = toDouble(s.pop());
+	      s.push(format(f, x));
+	  }, DECFMT_NAME);
+        }
+        
+        /**
+         * Returns the format for the given pattern, reusing the last format of the thread
+         * if it has the same pattern.
+         * 
+         * @param pattern The pattern of the format.
+         * @return Format for the pattern.
+         */
+        private static DecimalFormat formatFor(String pattern) {
+	  Object[] last = LAST_FORMAT.get();
+	  if(!pattern.equals(last[0])) {
+	      last[1] = new DecimalFormat(pattern);
+	      last[0] = pattern;
+	  }
+	  return (DecimalFormat) last[1];
+        }
+    }
+    
+    /**
+     * Represents the function registered from outside of this class.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class RegisteredFunction extends SmartScriptBiConsumer {
+        
+        /**
+         * Represents the registered function.
+         */
+        private ISmartScriptFunction function;
+
+        /** 
+         * Public constructor.
+         * Sets fields to the given values.
+         * 
+         * @param function The registered function.
+         */
+        public RegisteredFunction(ISmartScriptFunction function) {
+	  super(function, function.getName());
+	  this.function = function;
+        }
+        
+        @Override
+        public BiConsumer<RequestContext, ObjectStack> bind(String constantArgument) {
+	  BiConsumer<RequestContext, ObjectStack> bound = function.bind(constantArgument);
+	  return bound == function ? this : new SmartScriptBiConsumer(bound, function.getName());
+        }
     }
     
     /**
@@ -343,11 +548,7 @@ public class OperationsUtil {
 	      Object valueObject = s.pop();
 	      String value;
 	      if(valueObject instanceof Number) {
-		if(valueObject instanceof Double) {
-		    value = ((Double) valueObject).toString();
-		} else {
-		    value = ((Integer)valueObject).toString();
-		}
+		value = valueObject.toString();
 	      } else {
 		value = (String) valueObject;
 	      }
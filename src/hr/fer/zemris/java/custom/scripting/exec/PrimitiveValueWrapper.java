@@ -0,0 +1,338 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.scripting.vm.OperandStack;
+
+/**
+ * Represents the {@link ValueWrapper} which keeps numbers as primitive values.
+ * 
+ * It has exactly the same semantics as the {@link ValueWrapper}: integers stay integers while
+ * they are combined with integers, everything else is calculated with doubles, <code>null</code>
+ * is considered to be 0 and strings are parsed as integers, or as doubles if they contain
+ * '.' or 'E'. But arithmetic is done on primitive values, without boxing the result and
+ * without formatting and parsing the numbers again. If the wrapper holds a string, it's
+ * decimal value is parsed only once.
+ * 
+ * <p>Boxed value is created only when it is asked for by {@link #getValue()}. Loop variables
+ * can be updated with {@link #setValue(int)} and pushed to the
+ * {@link OperandStack} with {@link #pushTo(OperandStack)} without creating objects.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class PrimitiveValueWrapper extends ValueWrapper {
+
+    /**
+     * Represents the type of the <code>null</code> value.
+     */
+    private static final byte NULL = 0;
+
+    /**
+     * Represents the type of an {@link Integer} value.
+     */
+    private static final byte INT = 1;
+
+    /**
+     * Represents the type of a {@link Double} value.
+     */
+    private static final byte DOUBLE = 2;
+
+    /**
+     * Represents the type of any other value, usually a {@link String}.
+     */
+    private static final byte REF = 3;
+
+    /**
+     * Represents the type of the value.
+     */
+    private byte type;
+
+    /**
+     * Represents the value if it is an integer.
+     */
+    private int intValue;
+
+    /**
+     * Represents the value if it is a double, or the parsed value of the reference.
+     */
+    private double doubleValue;
+
+    /**
+     * Represents the value if it is neither a number nor <code>null</code>.
+     */
+    private Object reference;
+
+    /**
+     * Represents the flag which indicates if the reference was already parsed to
+     * {@link #doubleValue}.
+     */
+    private boolean parsed;
+
+    /**
+     * Represents the type of the last argument converted by {@link #argument(Object)}.
+     */
+    private byte argumentType;
+
+    /**
+     * Represents the last integer argument converted by {@link #argument(Object)}.
+     */
+    private int intArgument;
+
+    /**
+     * Represents the last double argument converted by {@link #argument(Object)}.
+     */
+    private double doubleArgument;
+
+    /**
+     * Public constructor.
+     * Sets fields to the given values.
+     * 
+     * @param value The value to set.
+     * @throws RuntimeException In case the value is not an integer, a double, a string or
+     * <code>null</code>.
+     */
+    public PrimitiveValueWrapper(Object value) {
+        super(value);
+        setValue(value);
+    }
+
+    /**
+     * Public constructor.
+     * Sets the value to the given integer.
+     * 
+     * @param value The value to set.
+     */
+    public PrimitiveValueWrapper(int value) {
+        super(null);
+        setValue(value);
+    }
+
+    @Override
+    public void increment(Object incValue) {
+        if (incValue == null) return;
+
+        argument(incValue);
+        if (argumentType == INT) {
+	  increment(intArgument);
+        } else {
+	  add(doubleArgument);
+        }
+    }
+
+    /**
+     * Increments the actual value with the given integer.
+     * 
+     * @param incValue A value used for incrementation.
+     */
+    public void increment(int incValue) {
+        if (type == NULL || type == INT) {
+	  setValue((type == NULL ? 0 : intValue) + incValue);
+        } else {
+	  setDouble(doubleValue() + incValue);
+        }
+    }
+
+    @Override
+    public void decrement(Object decValue) {
+        if (decValue == null) return;
+
+        argument(decValue);
+        if (argumentType == INT) {
+	  increment(-intArgument);
+        } else {
+	  add(-doubleArgument);
+        }
+    }
+
+    @Override
+    public void multiply(Object mulValue) {
+        if (mulValue == null) {
+	  setValue(0);
+	  return;
+        }
+
+        argument(mulValue);
+        if (type == NULL) {
+	  setValue(0);
+        } else if (type == INT && argumentType == INT) {
+	  setValue(intValue * intArgument);
+        } else {
+	  setDouble(doubleValue() * (argumentType == INT ? intArgument : doubleArgument));
+        }
+    }
+
+    @Override
+    public void divide(Object divValue) {
+        if (divValue == null) {
+	  throw new ArithmeticException("You can not divide by zero!");
+        }
+
+        argument(divValue);
+        if (type == NULL) {
+	  setValue(0);
+	  return;
+        }
+        double divisor = argumentType == INT ? intArgument : doubleArgument;
+        if ((int) divisor == 0) {
+	  throw new ArithmeticException("You can not divide by zero!");
+        }
+        setDouble(doubleValue() / divisor);
+    }
+
+    @Override
+    public int numCompare(Object withValue) {
+        double first = type == NULL ? 0.0 : doubleValue();
+        double second;
+        if (withValue == null) {
+	  second = 0.0;
+        } else if (withValue instanceof Integer) {
+	  second = (Integer) withValue;
+        } else if (withValue instanceof Double) {
+	  second = (Double) withValue;
+        } else {
+	  second = Double.valueOf(withValue.toString());
+        }
+
+        if (first > second) return 1;
+        if (first < second) return -1;
+        return 0;
+    }
+
+    @Override
+    public Object getValue() {
+        switch (type) {
+        case INT:
+	  return Integer.valueOf(intValue);
+        case DOUBLE:
+	  return Double.valueOf(doubleValue);
+        case REF:
+	  return reference;
+        default:
+	  return null;
+        }
+    }
+
+    @Override
+    public void setValue(Object value) {
+        if (value instanceof Integer) {
+	  setValue(((Integer) value).intValue());
+        } else if (value instanceof Double) {
+	  setDouble((Double) value);
+        } else if (value == null) {
+	  type = NULL;
+	  reference = null;
+        } else {
+	  type = REF;
+	  reference = value;
+	  parsed = false;
+        }
+    }
+
+    /**
+     * Sets the value to the given integer.
+     * 
+     * @param value The value to set.
+     */
+    public void setValue(int value) {
+        type = INT;
+        intValue = value;
+        reference = null;
+    }
+
+    /**
+     * Pushes the value to the operand stack. Numbers are pushed as primitive values.
+     * 
+     * @param stack The stack to push to.
+     */
+    public void pushTo(OperandStack stack) {
+        switch (type) {
+        case INT:
+	  stack.pushLong(intValue);
+	  break;
+        case DOUBLE:
+	  stack.pushDouble(doubleValue);
+	  break;
+        default:
+	  stack.push(reference);
+        }
+    }
+
+    /**
+     * Sets the value to the given double.
+     * 
+     * @param value The value to set.
+     */
+    private void setDouble(double value) {
+        type = DOUBLE;
+        doubleValue = value;
+        reference = null;
+    }
+
+    /**
+     * Adds the double to the value. Result is always a double, unless the value is
+     * <code>null</code> in which case the result is the argument.
+     * 
+     * @param value The value to add.
+     */
+    private void add(double value) {
+        setDouble(type == NULL ? value : doubleValue() + value);
+    }
+
+    /**
+     * Returns the value as a double. Value must not be <code>null</code>.
+     * References are parsed only the first time.
+     * 
+     * @return Value as a double.
+     * @throws NumberFormatException In case the reference is not a number.
+     */
+    private double doubleValue() {
+        switch (type) {
+        case INT:
+	  return intValue;
+        case DOUBLE:
+	  return doubleValue;
+        default:
+	  if (!parsed) {
+	      doubleValue = Double.parseDouble(reference.toString());
+	      parsed = true;
+	  }
+	  return doubleValue;
+        }
+    }
+
+    /**
+     * Converts the argument of an operation, the same way as the {@link ValueWrapper} does,
+     * into {@link #argumentType} and {@link #intArgument} or {@link #doubleArgument}.
+     * 
+     * @param value Argument to convert, not <code>null</code>.
+     * @throws RuntimeException In case the argument is not an integer, a double or a string
+     * representation of one.
+     */
+    private void argument(Object value) {
+        if (value instanceof Integer) {
+	  argumentType = INT;
+	  intArgument = (Integer) value;
+        } else if (value instanceof Double) {
+	  argumentType = DOUBLE;
+	  doubleArgument = (Double) value;
+        } else if (value instanceof String) {
+	  String text = (String) value;
+	  if (text.contains(".") || text.contains("E")) {
+	      try {
+		doubleArgument = Double.parseDouble(text);
+	      } catch (NumberFormatException e) {
+		throw new RuntimeException(text + " can not be parsed to double!");
+	      }
+	      argumentType = DOUBLE;
+	  } else {
+	      try {
+		intArgument = Integer.parseInt(text);
+	      } catch (NumberFormatException e) {
+		throw new RuntimeException(text + " can not be parsed to integer!");
+	      }
+	      argumentType = INT;
+	  }
+        } else {
+	  throw new RuntimeException("Arithmetic operations are allowed only with integers, doubles or strings!");
+        }
+    }
+}
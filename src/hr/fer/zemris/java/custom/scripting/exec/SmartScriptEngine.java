@@ -2,7 +2,6 @@ package hr.fer.zemris.java.custom.scripting.exec;
 
 import java.io.IOException;
 import java.util.function.BiConsumer;
-import java.util.function.BiFunction;
 
 import hr.fer.zemris.java.custom.collections.ObjectStack;
 import hr.fer.zemris.java.custom.scripting.elems.Element;
@@ -19,8 +18,8 @@ import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
 import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
 import hr.fer.zemris.java.custom.scripting.nodes.Node;
 import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.vm.OperandStack;
 import hr.fer.zemris.java.webserver.RequestContext;
-import hr.fer.zemris.java.custom.collections.EmptyStackException;
 
 /**
  * Represents the engine which can understand, compile and execute a smart script file.
@@ -48,7 +47,17 @@ public class SmartScriptEngine {
     /**
      * Represents the multistack of the engine.
      */
-    private ObjectMultistack multistack = new ObjectMultistack();
+    private ObjectMultistack multistack;
+    
+    /**
+     * Represents the stack used for evaluating the echo tags, shared by all of them.
+     */
+    private OperandStack temporaryStack = new OperandStack();
+    
+    /**
+     * Represents the processor of the elements of the echo tags.
+     */
+    private IElementVisitor elementProcessor = new ElementProcessor(temporaryStack);
     
     /**
      * Represents the visitor of the engine.
@@ -71,71 +80,36 @@ public class SmartScriptEngine {
         @Override
         public void visitForLoopNode(ForLoopNode node) {
 	  
-	  ElementVariable variable = node.getVariable();
+	  int slot = slotOf(node.getVariable());
 	  int start = node.getStartExpression().getValue();
 	  int end = node.getEndExpression().getValue();
 	  int step = node.getStepExpression().getValue();
 	  
 	  int size = node.numberOfChildren();
 	  
-	  multistack.push(variable.getName(), new ValueWrapper(start));
-	  int currentValue;
-	  while(true) {
-	      currentValue = (int)multistack.pop(variable.getName()).getValue();
-	      
-	      if(currentValue > end) break;
-	      
-	      multistack.push(variable.getName(), new ValueWrapper(currentValue));
+	  PrimitiveValueWrapper variable = new PrimitiveValueWrapper(start);
+	  multistack.push(slot, variable);
+	  for(int currentValue = start; currentValue <= end; currentValue += step) {
+	      variable.setValue(currentValue);
 	      for(int i = 0; i < size; i++) {
 		node.getChild(i).accept(this);
 	      }
-
-	      currentValue = (int)multistack.pop(variable.getName()).getValue();
-	      currentValue += step;
-	      
-	      multistack.push(variable.getName(), new ValueWrapper(currentValue));
 	  }
+	  multistack.pop(slot);
 	  
         }
 
         @Override
         public void visitEchoNode(EchoNode node) {
 
-	  ObjectStack temporaryStack = new ObjectStack();
-	  IElementVisitor elementProcessor = new ElementProcessor(temporaryStack);
+	  temporaryStack.clear();
 	  
 	  Element[] elements = node.getElements();
 	  for(Element e : elements) {
 	      e.accept(elementProcessor);
 	  }
 
-	  ObjectStack reversedStack = new ObjectStack();
-	  
-	  while(true) {
-	      Object poppedValue;
-	      try {
-		poppedValue = temporaryStack.pop();
-	      }catch(EmptyStackException e) {
-		break;
-	      }
-	      reversedStack.push(poppedValue);
-	  }
-	  
-	  while(true) {
-	      Object poppedValue;
-	      try {
-		poppedValue = reversedStack.pop();
-	      }catch(EmptyStackException e) {
-		break;
-	      }
-	      try {
-		requestContext.write(poppedValue.toString());
-	      } catch (IOException e1) {
-		System.err.println("Error during writing request context.");
-		e1.printStackTrace();
-		return;
-	      }
-	  }
+	  temporaryStack.writeTo(requestContext);
         }
 
         @Override
@@ -161,6 +135,7 @@ public class SmartScriptEngine {
         }
         this.documentNode = documentNode;
         this.requestContext = requestContext;
+        this.multistack = new ObjectMultistack(documentNode.getVariableNames());
     }
 
     /**
@@ -173,6 +148,18 @@ public class SmartScriptEngine {
         documentNode.accept(visitor);
     }
     
+    /**
+     * Returns the slot of the variable in the multistack. Uses the slot assigned by the parser,
+     * if there is one, elseway looks the variable up by it's name.
+     * 
+     * @param variable The variable.
+     * @return Slot of the variable.
+     */
+    private int slotOf(ElementVariable variable) {
+        int slot = variable.getSlot();
+        return slot >= 0 ? slot : multistack.slotOf(variable.getName());
+    }
+    
     /**
      * Represents the concrete implementation of the {@link IElementVisitor}.
      * Assures that each type of {@link Element} will be processed on the correct way.
@@ -187,21 +174,25 @@ public class SmartScriptEngine {
         /**
          * Represents the temporary stack of the visitor.
          */
-        private ObjectStack temporaryStack;
+        private OperandStack temporaryStack;
         
         /** 
          * Public constructor. Sets the temporary stack.
          * 
          * @param temporaryStack Temporary stack used for visiting the elements.
          */
-        public ElementProcessor(ObjectStack temporaryStack) {
+        public ElementProcessor(OperandStack temporaryStack) {
 	  this.temporaryStack = temporaryStack;
         }
 
         @Override
         public void visitVariable(ElementVariable element) {
-            ValueWrapper value = multistack.peek(element.getName());
-            temporaryStack.push(value.getValue());
+            ValueWrapper value = multistack.peek(slotOf(element));
+            if(value instanceof PrimitiveValueWrapper) {
+                ((PrimitiveValueWrapper) value).pushTo(temporaryStack);
+            } else {
+                temporaryStack.push(value.getValue());
+            }
         }
         
         @Override
@@ -211,39 +202,29 @@ public class SmartScriptEngine {
         
         @Override
         public void visitOperator(ElementOperator element) {
-            BiFunction<Double,Double,Double> function = ElementOperator.resolve(element);
-            
-            Object firstArgumentObject = temporaryStack.pop();
-            Object secondArgumentObject = temporaryStack.pop();
-            
-            double firstArgument, secondArgument;
-            if(firstArgumentObject instanceof Number) {
-                firstArgument = ((Number)firstArgumentObject).doubleValue();
-            } else {
-                firstArgument = Double.parseDouble((String) firstArgumentObject);
-            }
-            if(secondArgumentObject instanceof Number) {
-                secondArgument = ((Number)secondArgumentObject).doubleValue();
-            } else {
-                secondArgument = Double.parseDouble((String) secondArgumentObject);
-            }
-            temporaryStack.push(function.apply(firstArgument, secondArgument));
+            temporaryStack.operate(element.getSymbol());
         }
         
         @Override
         public void visitFunction(ElementFunction element) {
-            BiConsumer<RequestContext, ObjectStack> action = OperationsUtil.resolve(element.getValue());
+            BiConsumer<RequestContext, ObjectStack> action = element.getFunction();
+            if (action == null) {
+                action = OperationsUtil.resolve(element.getValue());
+                if (action == null) {
+                    throw new IllegalArgumentException("Unknown function: @" + element.getValue());
+                }
+            }
             action.accept(SmartScriptEngine.this.requestContext, temporaryStack);
         }
         
         @Override
         public void visitConstantInteger(ElementConstantInteger element) {
-	  temporaryStack.push(element.getValue());
+	  temporaryStack.pushLong(element.getValue());
         }
         
         @Override
         public void visitConstantDouble(ElementConstantDouble element) {
-	  temporaryStack.push(element.getValue());
+	  temporaryStack.pushDouble(element.getValue());
         }
 
     }
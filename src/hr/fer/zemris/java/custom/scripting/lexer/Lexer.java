@@ -1,19 +1,31 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.util.Arrays;
+
 /**
  * Class Lexer represents a simple lexer which processes a given text into tokens. Lexer can work in
  * different states (basic and extended) and can produce two types of tokens: text and tag. Tag
  * token is created of the elements between the brackets {}.
  * 
+ * <p>Lexer goes through the text only once and does not copy it: tokens are views over the
+ * parts of the text (see {@link Token}), so lexing takes linear time even for very large
+ * documents.</p>
+ * 
  * @author Marin Grbić
  * @version 1.0
  */
 public class Lexer {
 
     /**
-     * Represents the input text represented as char array.
+     * Represents the input text.
      */
-    private char[] data;
+    private CharSequence data;
+
+    /**
+     * Represents the index after the last processed character, leading and trailing whitespaces
+     * of the text are not processed.
+     */
+    private int end;
 
     /**
      * Represents the last generated token.
@@ -38,13 +50,22 @@ public class Lexer {
      * @throws IllegalArgumentException
      *             If the text is null.
      */
-    public Lexer(String text) {
+    public Lexer(CharSequence text) {
         if (text == null) {
 	  throw new IllegalArgumentException("Text must not be null!");
         }
-        this.data = text.trim().toCharArray();
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+	  start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+	  end--;
+        }
+        this.data = text;
+        this.end = end;
         this.token = null;
-        this.currentIndex = 0;
+        this.currentIndex = start;
         this.state = LexerState.BASIC;
     }
 
@@ -58,17 +79,17 @@ public class Lexer {
      */
     public Token nextToken() {
 
-        if (currentIndex == data.length) {
+        while (currentIndex < end && Character.isSpaceChar(data.charAt(currentIndex))) {
+	  currentIndex++;
+        }
+
+        if (currentIndex == end) {
 	  if (token != null && token.getType().equals(TokenType.EOF)) {
 	      throw new LexerException("There are no more tokens after EOF!");
 	  }
 	  return token = new Token(TokenType.EOF, null);
         }
 
-        while (Character.isSpaceChar(data[currentIndex])) {
-	  currentIndex++;
-        }
-
         if (this.state.equals(LexerState.BASIC)) {
 	  return basicToken();
         } else {
@@ -86,40 +107,31 @@ public class Lexer {
      */
     private Token basicToken() {
 
-        if (data[currentIndex] != '{') {
+        if (data.charAt(currentIndex) != '{') {
+	  boolean escaped = false;
 	  int i;
-	  for (i = currentIndex; i < data.length && data[i] != '{'; i++) {
-	      if (data[i] == '\\') {
-		if (i + 1 >= data.length) {
+	  for (i = currentIndex; i < end; i++) {
+	      char c = data.charAt(i);
+	      if (c == '{') {
+		break;
+	      }
+	      if (c == '\\') {
+		if (i + 1 >= end) {
 		    throw new LexerException("Wrong escaping!");
 		}
-		if (data[i + 1] == '\\' || data[i + 1] == '{') {
+		char next = data.charAt(i + 1);
+		if (next == '\\' || next == '{') {
+		    escaped = true;
 		    i++;
 		} else {
 		    throw new LexerException("Wrong escaping!");
 		}
-
-	      }
-	  }
-
-	  char[] outputAsArray = new String(data, currentIndex, i - currentIndex).toCharArray();
-	  String output = "";
-
-	  // removes all unnecessary escapes from the string
-	  for (int j = 0; j < outputAsArray.length; j++) {
-	      if (outputAsArray[j] == '\\' && !Character.isWhitespace(outputAsArray[j + 1])
-		    && (outputAsArray[j + 1] == '\\' || outputAsArray[j + 1] == '{')) {
-		output += outputAsArray[j + 1];
-		j++;
-	      } else {
-		output += outputAsArray[j];
 	      }
 	  }
 
+	  token = new Token(data, currentIndex, i, escaped);
 	  this.currentIndex = i;
-
-	  token = new Token(TokenType.TEXT, output);
-        } else if (data[currentIndex] == '{') {
+        } else {
 	  this.setState(LexerState.EXTENDED);
 	  token = extendedToken();
         }
@@ -137,22 +149,20 @@ public class Lexer {
 
         int i = currentIndex;
 
-        if (data[i] == '{') {
+        if (data.charAt(i) == '{') {
 
-	  i++;
-	  try {
-	      do {
-		i++;
-	      } while (data[i] != '}');
+	  // the first '}' closes the tag, searched from the second character after the '{'
+	  i += 2;
+	  while (i < end && data.charAt(i) != '}') {
 	      i++;
-	  } catch (IndexOutOfBoundsException e) {
+	  }
+	  if (i >= end) {
 	      throw new LexerException("Tag was never closed!");
 	  }
+	  i++;
 
-	  String output = new String(data, currentIndex, i - currentIndex).trim();
+	  token = new Token(data, currentIndex, i, tagBounds(currentIndex, i));
 	  currentIndex = i;
-
-	  token = new Token(TokenType.TAG, output);
         } else {
 	  this.setState(LexerState.BASIC);
 	  token = basicToken();
@@ -161,6 +171,90 @@ public class Lexer {
         return token;
     }
 
+    /**
+     * Finds the name and the elements of the tag, which has the form
+     * <code>{$ name elements $}</code> with optional whitespaces around the '$'. Name of the echo
+     * tag is "=", otherwise it is the first word. Elements are separated by whitespaces, except
+     * inside of the quotes, where a backslash escapes the following character (which is kept in
+     * the element).
+     * 
+     * @param start
+     *            The index of the '{'.
+     * @param tagEnd
+     *            The index after the '}'.
+     * @return int[] Start and end indexes of the name and of each element, or <code>null</code>
+     *         if the tag is not well formed.
+     */
+    private int[] tagBounds(int start, int tagEnd) {
+
+        int from = skipWhitespaces(start + 1, tagEnd);
+        int to = tagEnd - 1;
+        while (to > from && Character.isWhitespace(data.charAt(to - 1))) {
+	  to--;
+        }
+        if (data.charAt(from) != '$' || to - 1 <= from || data.charAt(to - 1) != '$') {
+	  return null;
+        }
+        to--;
+
+        int nameStart = skipWhitespaces(from + 1, to);
+        int nameEnd = nameStart;
+        if (nameEnd < to && data.charAt(nameEnd) == '=') {
+	  nameEnd++;
+        } else {
+	  while (nameEnd < to && !Character.isWhitespace(data.charAt(nameEnd))) {
+	      nameEnd++;
+	  }
+        }
+        if (nameStart == nameEnd) {
+	  return null;
+        }
+
+        int[] bounds = new int[8];
+        bounds[0] = nameStart;
+        bounds[1] = nameEnd;
+        int size = 2;
+        for (int i = skipWhitespaces(nameEnd, to); i < to; i = skipWhitespaces(i, to)) {
+	  int elementStart = i;
+	  while (i < to && !Character.isWhitespace(data.charAt(i))) {
+	      if (data.charAt(i++) == '"') {
+		while (i < to && data.charAt(i) != '"') {
+		    if (data.charAt(i) == '\\' && i + 1 < to) {
+		        i++;
+		    }
+		    i++;
+		}
+		if (i < to) {
+		    i++;
+		}
+	      }
+	  }
+	  if (size == bounds.length) {
+	      bounds = Arrays.copyOf(bounds, 2 * size);
+	  }
+	  bounds[size++] = elementStart;
+	  bounds[size++] = i;
+        }
+        return Arrays.copyOf(bounds, size);
+    }
+
+    /**
+     * Skips the whitespaces.
+     * 
+     * @param from
+     *            The index of the first character to check.
+     * @param to
+     *            The index after the last character to check.
+     * @return int Index of the first character which is not a whitespace, or <code>to</code>.
+     */
+    private int skipWhitespaces(int from, int to) {
+
+        while (from < to && Character.isWhitespace(data.charAt(from))) {
+	  from++;
+        }
+        return from;
+    }
+
     /**
      * The token getter.
      * 
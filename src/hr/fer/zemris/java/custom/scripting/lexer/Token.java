@@ -4,6 +4,11 @@ package hr.fer.zemris.java.custom.scripting.lexer;
  * Class Token represents a token which contains a value. The value can be any object, like strings,
  * characters, integers and etc.
  * 
+ * <p>Tokens created by the {@link Lexer} are views over the part of the source text: the value is
+ * created only when it is asked for, and escapes in the text are resolved only then. Tag tokens
+ * also know the name of the tag and the bounds of it's elements, so they do not have to be split
+ * again.</p>
+ * 
  * @author Marin Grbić
  * @version 1.0
  */
@@ -19,6 +24,32 @@ public class Token {
      */
     private String value;
 
+    /**
+     * Represents the source text of the token, <code>null</code> if the value is given.
+     */
+    private CharSequence source;
+
+    /**
+     * Represents the index of the first character of the token in the source.
+     */
+    private int start;
+
+    /**
+     * Represents the index after the last character of the token in the source.
+     */
+    private int end;
+
+    /**
+     * Represents the flag which indicates if the text contains escapes.
+     */
+    private boolean escaped;
+
+    /**
+     * Represents the bounds of the tag name and the tag elements in the source, as pairs of start
+     * and end indexes. <code>null</code> if the tag is not well formed.
+     */
+    private int[] bounds;
+
     /**
      * Public constructor. Sets the type and value.
      * 
@@ -36,12 +67,57 @@ public class Token {
     }
 
     /**
-     * The value getter.
+     * Constructor of the text token over the part of the source.
+     * 
+     * @param source
+     *            The source text.
+     * @param start
+     *            The index of the first character.
+     * @param end
+     *            The index after the last character.
+     * @param escaped
+     *            The flag which indicates if the text contains escapes.
+     */
+    Token(CharSequence source, int start, int end, boolean escaped) {
+        this(TokenType.TEXT, null);
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.escaped = escaped;
+    }
+
+    /**
+     * Constructor of the tag token over the part of the source.
+     * 
+     * @param source
+     *            The source text.
+     * @param start
+     *            The index of the '{'.
+     * @param end
+     *            The index after the '}'.
+     * @param bounds
+     *            The bounds of the name and the elements, <code>null</code> if the tag is not
+     *            well formed.
+     */
+    Token(CharSequence source, int start, int end, int[] bounds) {
+        this(TokenType.TAG, null);
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.bounds = bounds;
+    }
+
+    /**
+     * The value getter. Text tokens return the text with resolved escapes and tag tokens return
+     * the whole tag.
      * 
      * @return Object Gets the value.
      */
     public String getValue() {
 
+        if (value == null && source != null) {
+	  value = escaped ? unescape() : source.subSequence(start, end).toString();
+        }
         return value;
     }
 
@@ -54,4 +130,53 @@ public class Token {
 
         return type;
     }
+
+    /**
+     * Returns the name of the tag: "=" for echo tags, otherwise the first word after the '$'.
+     * 
+     * @return String Name of the tag, <code>null</code> if this is not a well formed tag.
+     */
+    public String getName() {
+
+        if (bounds == null) {
+	  return null;
+        }
+        return source.subSequence(bounds[0], bounds[1]).toString();
+    }
+
+    /**
+     * Returns the elements of the tag which follow it's name. Elements are separated by
+     * whitespaces, except inside of the quotes.
+     * 
+     * @return String[] Elements of the tag, empty if this is not a well formed tag.
+     */
+    public String[] getElements() {
+
+        if (bounds == null) {
+	  return new String[0];
+        }
+        String[] elements = new String[bounds.length / 2 - 1];
+        for (int i = 0; i < elements.length; i++) {
+	  elements[i] = source.subSequence(bounds[2 * i + 2], bounds[2 * i + 3]).toString();
+        }
+        return elements;
+    }
+
+    /**
+     * Creates the text of the token without the escaping backslashes.
+     * 
+     * @return String Unescaped text.
+     */
+    private String unescape() {
+
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+	  char c = source.charAt(i);
+	  if (c == '\\') {
+	      c = source.charAt(++i);
+	  }
+	  sb.append(c);
+        }
+        return sb.toString();
+    }
 }
@@ -9,6 +9,33 @@ package hr.fer.zemris.java.custom.scripting.nodes;
  */
 public class DocumentNode extends Node {
 
+    /**
+     * Represents the names of the variables, indexed by their slots.
+     */
+    private String[] variableNames = new String[0];
+
+    /**
+     * The variable names getter.
+     * 
+     * @return String[] Gets the names of the variables indexed by their slots, empty if the
+     * parser did not assign the slots.
+     */
+    public String[] getVariableNames() {
+        return variableNames;
+    }
+
+    /**
+     * The variable names setter.
+     * 
+     * @param variableNames The names of the variables indexed by their slots.
+     */
+    public void setVariableNames(String[] variableNames) {
+        if (variableNames == null) {
+	  throw new IllegalArgumentException("Variable names can not be null.");
+        }
+        this.variableNames = variableNames;
+    }
+
     @Override
     public void accept(INodeVisitor visitor) {
         visitor.visitDocumentNode(this);
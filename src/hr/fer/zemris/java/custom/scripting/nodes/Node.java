@@ -48,6 +48,10 @@ public abstract class Node {
      */
     public int numberOfChildren() {
 
+        if (collectionEmpty) {
+	  return 0;
+        }
+
         return children.size();
     }
 
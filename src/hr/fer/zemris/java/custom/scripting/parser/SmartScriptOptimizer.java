@@ -0,0 +1,291 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.OperationsUtil;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.vm.OperandStack;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the optimization pass over a document created by the {@link SmartScriptParser}.
+ * 
+ * <p>Optimizer evaluates ahead of time everything which does not depend on the request:</p>
+ * <ul>
+ * <li>echo tags which use only constants, operators and pure functions (ones which only work
+ * with the stack, see {@link OperationsUtil#resolvePure(String)}) are replaced by their
+ * output,</li>
+ * <li>for-loops whose bodies are made only of text and such echo tags (using the loop
+ * variables as constants) are rendered, if the output is not longer than the given limit,</li>
+ * <li>adjacent texts are merged into a single {@link TextNode}.</li>
+ * </ul>
+ * 
+ * <p>Anything which would fail during the evaluation is left as it is, so errors are still
+ * reported when the script is executed. Optimized document produces exactly the same output
+ * as the original one.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SmartScriptOptimizer {
+
+    /**
+     * Represents the default maximal length of the text rendered from a single for-loop.
+     */
+    public static final int DEFAULT_MAX_RENDERED_LENGTH = 16 * 1024;
+
+    /**
+     * Represents the maximal number of loop iterations evaluated while rendering a single
+     * for-loop, which also stops the loops that would never end.
+     */
+    private static final int MAX_ITERATIONS = 10_000;
+
+    /**
+     * Represents the maximal length of the text rendered from a single for-loop.
+     */
+    private final int maxRenderedLength;
+
+    /**
+     * Public constructor.
+     * 
+     * @param maxRenderedLength Maximal length of the text rendered from a single for-loop,
+     * 0 disables rendering of for-loops.
+     * @throws IllegalArgumentException In case of a negative length.
+     */
+    public SmartScriptOptimizer(int maxRenderedLength) {
+        if (maxRenderedLength < 0) {
+	  throw new IllegalArgumentException("Maximal rendered length can not be negative.");
+        }
+        this.maxRenderedLength = maxRenderedLength;
+    }
+
+    /**
+     * Creates an optimized copy of the given document. Given document is not changed.
+     * 
+     * @param document Document to optimize.
+     * @return Optimized document.
+     */
+    public DocumentNode optimize(DocumentNode document) {
+        if (document == null) {
+	  throw new IllegalArgumentException("Document can not be null.");
+        }
+        DocumentNode optimized = new DocumentNode();
+        optimized.setVariableNames(document.getVariableNames());
+        optimizeChildren(document, optimized);
+        return optimized;
+    }
+
+    /**
+     * Adds the optimized children of the source node to the target node.
+     * 
+     * @param source Node whose children are optimized.
+     * @param target Node to which the optimized children are added.
+     */
+    private void optimizeChildren(Node source, Node target) {
+        StringBuilder text = new StringBuilder();
+        int size = source.numberOfChildren();
+        for (int i = 0; i < size; i++) {
+	  Node child = source.getChild(i);
+
+	  if (child instanceof TextNode) {
+	      text.append(((TextNode) child).getText());
+	      continue;
+	  }
+
+	  String rendered = null;
+	  if (child instanceof EchoNode) {
+	      rendered = evaluate((EchoNode) child, new Scope());
+	  } else if (child instanceof ForLoopNode && maxRenderedLength > 0) {
+	      StringBuilder sb = new StringBuilder();
+	      if (render((ForLoopNode) child, new Scope(), sb, new int[1])) {
+		rendered = sb.toString();
+	      }
+	  }
+	  if (rendered != null) {
+	      text.append(rendered);
+	      continue;
+	  }
+
+	  flushText(text, target);
+	  if (child instanceof ForLoopNode) {
+	      ForLoopNode loop = (ForLoopNode) child;
+	      ForLoopNode optimizedLoop = new ForLoopNode(loop.getVariable(),
+		    loop.getStartExpression(), loop.getEndExpression(), loop.getStepExpression());
+	      optimizeChildren(loop, optimizedLoop);
+	      target.addChildNode(optimizedLoop);
+	  } else {
+	      target.addChildNode(child);
+	  }
+        }
+        flushText(text, target);
+    }
+
+    /**
+     * Adds the collected text as a single {@link TextNode} to the target node, if it is not
+     * empty, and clears it.
+     * 
+     * @param text Collected text.
+     * @param target Node to which the text is added.
+     */
+    private static void flushText(StringBuilder text, Node target) {
+        if (text.length() > 0) {
+	  target.addChildNode(new TextNode(text.toString()));
+	  text.setLength(0);
+        }
+    }
+
+    /**
+     * Renders the for-loop into the given builder, the same way the engine would execute it.
+     * 
+     * @param loop Loop to render.
+     * @param scope Values of the variables of the enclosing rendered loops.
+     * @param sb Builder of the rendered text.
+     * @param iterations Number of iterations evaluated so far, shared by the nested loops.
+     * @return <code>true</code> if the loop was rendered, <code>false</code> if it depends on
+     * the request, would fail, or it's output is too long.
+     */
+    private boolean render(ForLoopNode loop, Scope scope, StringBuilder sb, int[] iterations) {
+        if (loop.getStepExpression() == null) return false;
+
+        String variable = loop.getVariable().getName();
+        int end = loop.getEndExpression().getValue();
+        int step = loop.getStepExpression().getValue();
+        int size = loop.numberOfChildren();
+
+        for (int value = loop.getStartExpression().getValue(); value <= end; value += step) {
+	  if (++iterations[0] > MAX_ITERATIONS) return false;
+
+	  scope.push(variable, value);
+	  for (int i = 0; i < size; i++) {
+	      Node child = loop.getChild(i);
+	      if (child instanceof TextNode) {
+		sb.append(((TextNode) child).getText());
+	      } else if (child instanceof EchoNode) {
+		String echo = evaluate((EchoNode) child, scope);
+		if (echo == null) return false;
+		sb.append(echo);
+	      } else if (child instanceof ForLoopNode) {
+		if (!render((ForLoopNode) child, scope, sb, iterations)) return false;
+	      } else {
+		return false;
+	      }
+	      if (sb.length() > maxRenderedLength) return false;
+	  }
+	  scope.pop();
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the echo tag the same way the engine would, if it does not depend on
+     * the request.
+     * 
+     * @param echo Echo tag to evaluate.
+     * @param scope Values of the variables of the enclosing rendered loops.
+     * @return Output of the echo tag, or <code>null</code> if it can not be evaluated ahead
+     * of time.
+     */
+    private static String evaluate(EchoNode echo, Scope scope) {
+        OperandStack stack = new OperandStack();
+        try {
+	  for (Element element : echo.getElements()) {
+	      if (element instanceof ElementVariable) {
+		Integer value = scope.get(((ElementVariable) element).getName());
+		if (value == null) return null;
+		stack.pushLong(value);
+	      } else if (element instanceof ElementString) {
+		stack.push(((ElementString) element).getValue());
+	      } else if (element instanceof ElementConstantInteger) {
+		stack.pushLong(((ElementConstantInteger) element).getValue());
+	      } else if (element instanceof ElementConstantDouble) {
+		stack.pushDouble(((ElementConstantDouble) element).getValue());
+	      } else if (element instanceof ElementOperator) {
+		stack.operate(((ElementOperator) element).getSymbol());
+	      } else if (element instanceof ElementFunction) {
+		BiConsumer<RequestContext, ObjectStack> function =
+		        OperationsUtil.resolvePure(((ElementFunction) element).getValue());
+		if (function == null) return null;
+		function.accept(null, stack);
+	      } else {
+		return null;
+	      }
+	  }
+        } catch (RuntimeException e) {
+	  return null;
+        }
+
+        Object[] values = new Object[stack.size()];
+        for (int i = values.length - 1; i >= 0; i--) {
+	  values[i] = stack.pop();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+	  sb.append(value.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Represents the values of the loop variables while loops are rendered. Inner loops hide
+     * the variables of the outer loops with the same name.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Scope {
+
+        /**
+         * Represents the names of the variables, from the outermost loop.
+         */
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * Represents the values of the variables, from the outermost loop.
+         */
+        private final List<Integer> values = new ArrayList<>();
+
+        /**
+         * Sets the variable of the inner loop.
+         * 
+         * @param name Name of the variable.
+         * @param value Value of the variable.
+         */
+        public void push(String name, int value) {
+	  names.add(name);
+	  values.add(value);
+        }
+
+        /**
+         * Removes the variable of the innermost loop.
+         */
+        public void pop() {
+	  names.remove(names.size() - 1);
+	  values.remove(values.size() - 1);
+        }
+
+        /**
+         * Returns the value of the variable from the innermost loop which defines it.
+         * 
+         * @param name Name of the variable.
+         * @return Value of the variable, or <code>null</code> if it is not defined.
+         */
+        public Integer get(String name) {
+	  int index = names.lastIndexOf(name);
+	  return index < 0 ? null : values.get(index);
+        }
+    }
+}
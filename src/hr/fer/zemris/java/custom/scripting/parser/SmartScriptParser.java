@@ -1,7 +1,8 @@
 package hr.fer.zemris.java.custom.scripting.parser;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 import hr.fer.zemris.java.custom.collections.EmptyStackException;
 import hr.fer.zemris.java.custom.collections.ObjectStack;
@@ -12,6 +13,7 @@ import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
 import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
 import hr.fer.zemris.java.custom.scripting.elems.ElementString;
 import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.OperationsUtil;
 import hr.fer.zemris.java.custom.scripting.lexer.Lexer;
 import hr.fer.zemris.java.custom.scripting.lexer.LexerException;
 import hr.fer.zemris.java.custom.scripting.lexer.Token;
@@ -21,6 +23,7 @@ import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
 import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
 import hr.fer.zemris.java.custom.scripting.nodes.Node;
 import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Class SmartScriptParser represents a parser for a previously defined language. The parser can
@@ -46,6 +49,12 @@ public class SmartScriptParser {
      */
     private Lexer lexer;
 
+    /**
+     * Represents the slots of the variables by their names, or <code>null</code> if slots
+     * are not assigned.
+     */
+    private Map<String, Integer> slots;
+
     /**
      * Public constructor. Creates an instance of lexer and initializes it with obtained text.
      * Starts the parsing by calling the appropriate method.
@@ -54,6 +63,22 @@ public class SmartScriptParser {
      *            The given text to parse.
      */
     public SmartScriptParser(String text) {
+        this(text, false);
+    }
+
+    /**
+     * Public constructor. Creates an instance of lexer and initializes it with obtained text.
+     * Starts the parsing by calling the appropriate method.
+     * 
+     * If asked, each variable gets a slot (see {@link ElementVariable#getSlot()}), so the
+     * engine can find the variable by an index instead of by it's name.
+     * 
+     * @param text
+     *            The given text to parse.
+     * @param resolveSlots
+     *            Flag which indicates if slots are assigned to the variables.
+     */
+    public SmartScriptParser(String text, boolean resolveSlots) {
 
         if (text == null) {
 	  throw new SmartScriptParserException("Given text is null!");
@@ -62,7 +87,13 @@ public class SmartScriptParser {
         this.text = text;
         this.lexer = new Lexer(this.text);
         this.documentNode = new DocumentNode();
+        if (resolveSlots) {
+	  this.slots = new LinkedHashMap<>();
+        }
         parse();
+        if (resolveSlots) {
+	  documentNode.setVariableNames(slots.keySet().toArray(new String[slots.size()]));
+        }
     }
 
     /**
@@ -108,71 +139,40 @@ public class SmartScriptParser {
 	      temp.addChildNode(value);
 	  } else if (token.getType().equals(TokenType.TAG)) {
 
-	      String tag = token.getValue();
-	      Pattern pattern = Pattern.compile(
-		    "\\s*[{]{1}\\s*[$]{1}\\s*END\\s*[$]{1}\\s*[}]{1}\\s*",
-		    Pattern.CASE_INSENSITIVE); // END TAG
-	      Matcher matcher = pattern.matcher(tag);
+	      String name = token.getName();
+	      String[] elements = token.getElements();
 
-	      if (matcher.matches()) {
+	      if ("END".equalsIgnoreCase(name) && elements.length == 0) { // END TAG
 		if (stack.size() > 1) {
 		    stack.pop();
 		} else {
 		    throw new SmartScriptParserException(
 			  "Error while parsing, there are more END tags than it should be!");
 		}
-	      } else {
+	      } else if ("=".equals(name)) { // ECHO TAG
 
-		pattern = Pattern.compile("\\s*[{]{1}\\s*[$]{1}\\s*=.+\\s*[$]{1}\\s*[}]{1}\\s*",
-		        Pattern.CASE_INSENSITIVE); // ECHO TAG
-		matcher = pattern.matcher(tag);
-
-		if (matcher.matches()) {
-
-		    try {
-		        temp = (Node) stack.peek();
-		    } catch (EmptyStackException e) {
-		        throw new SmartScriptParserException(
-			      "Error while parsing! " + e.getLocalizedMessage());
-		    }
-
-		    try {
-		        value = NodeUtil.createEchoNode(tag);
-		    } catch (IllegalArgumentException e) {
-		        throw new SmartScriptParserException(
-			      "Problem during parsing: " + e.getLocalizedMessage());
-		    }
-
-		    temp.addChildNode(value);
-		} else {
-
-		    pattern = Pattern.compile(
-			  "\\s*[{]{1}\\s*[$]{1}\\s*FOR.+\\s*[$]{1}\\s*[}]{1}\\s*",
-			  Pattern.CASE_INSENSITIVE); // FOR TAG
-		    matcher = pattern.matcher(tag);
+		try {
+		    value = NodeUtil.createEchoNode(elements, slots);
+		} catch (IllegalArgumentException e) {
+		    throw new SmartScriptParserException(
+			  "Problem during parsing: " + e.getLocalizedMessage());
+		}
 
-		    if (matcher.matches()) {
-		        try {
-			  temp = (Node) stack.peek();
-		        } catch (EmptyStackException e) {
-			  throw new SmartScriptParserException(
-				"Error while parsing! " + e.getLocalizedMessage());
-		        }
+		temp.addChildNode(value);
+	      } else if ("FOR".equalsIgnoreCase(name)) { // FOR TAG
 
-		        try {
-			  value = NodeUtil.createForLoopNode(tag);
-		        } catch (IllegalArgumentException e) {
-			  throw new SmartScriptParserException(
-				"Problem during parsing: " + e.getLocalizedMessage());
-		        }
+		try {
+		    value = NodeUtil.createForLoopNode(elements, slots);
+		} catch (IllegalArgumentException e) {
+		    throw new SmartScriptParserException(
+			  "Problem during parsing: " + e.getLocalizedMessage());
+		}
 
-		        temp.addChildNode(value);
+		temp.addChildNode(value);
 
-		        stack.push(value);
-		    } else {
-		        throw new SmartScriptParserException("Unknown tag name!" + tag);
-		    }
-		}
+		stack.push(value);
+	      } else {
+		throw new SmartScriptParserException("Unknown tag name!" + token.getValue());
 	      }
 	  } else {
 	      throw new SmartScriptParserException("Unknown token type!");
@@ -220,45 +220,21 @@ public class SmartScriptParser {
 	   * Creates new echo node from the given tag. Echo node paramaters can be all type of
 	   * elements: numbers, functions, operators, strings and variables.
 	   * 
-	   * @param tag
-	   *            The tag represented as a text.
+	   * @param text
+	   *            The elements of the tag.
+	   * @param slots
+	   *            The slots of the variables, <code>null</code> if slots are not assigned.
 	   * @throws IllegalArgumentException
 	   *             In case of illegal element, a tag without elements...
 	   * @return Node The created node.
 	   */
-	  private static EchoNode createEchoNode(String tag) {
-
-	      String[] text = tag.replaceAll("\\s*[{]{1}\\s*[$]{1}\\s*=\\s*", "")
-		    .replaceAll("\\s*[$]{1}\\s*[}]{1}\\s*", "").split("\\s+");
+	  private static EchoNode createEchoNode(String[] text, Map<String, Integer> slots) {
 
-	      //if the text was splitted between two '"', it will stick it together
-	      int numOfNulls = 0;
-	      for (int i = 0; i < text.length; i++) {
-		if(text[i] == null) {
-		    numOfNulls++;
-		    continue;
-		}
-		if(text[i].startsWith("\"") && text[i].endsWith("\"") && text[i].length() > 1) continue;
-		if(!text[i].startsWith("\"") && !text[i].endsWith("\"")) continue;
-		for(int j = i + 1;; j++) {
-		    text[i] = new String(text[i] + " " + text[j]);
-		    if(text[j].endsWith("\"")) {
-		        text[j] = null;
-		        break;
-		    }
-		    text[j] = null;
-		}
-	      }
-	      Element[] elements = new Element[text.length - numOfNulls];
+	      Element[] elements = new Element[text.length];
 
 	      if (text.length > 0) {
-		int k = 0;
 		for (int i = 0; i < text.length; i++) {
-		    
-		    if(text[i] == null) {
-		        k++;
-		        continue;
-		    }
+
 		    if (Character.isLetter(text[i].charAt(0))) { // VARIABLE
 
 		        try {
@@ -267,7 +243,7 @@ public class SmartScriptParser {
 			  throw new IllegalArgumentException(e.getLocalizedMessage());
 		        }
 
-		        elements[i-k] = new ElementVariable(text[i]);
+		        elements[i] = createVariable(text[i], slots);
 		    } else if (text[i].charAt(0) == '@') { // FUNCTION
 
 		        try {
@@ -276,21 +252,30 @@ public class SmartScriptParser {
 			  throw new IllegalArgumentException(e.getLocalizedMessage());
 		        }
 
-		        elements[i-k] = new ElementFunction(text[i].substring(1));
+		        String name = text[i].substring(1);
+		        String constantArgument = i > 0 && elements[i-1] instanceof ElementString
+			      ? ((ElementString) elements[i-1]).getValue() : null;
+		        BiConsumer<RequestContext, ObjectStack> function =
+			      OperationsUtil.resolve(name, constantArgument);
+		        if (function == null) {
+			  throw new IllegalArgumentException("Unknown function: " + text[i]);
+		        }
+		        elements[i] = new ElementFunction(name, function);
 		    } else if (operators.contains(String.valueOf(text[i].charAt(0)))
 			  && text[i].length() == 1) { // OPERATOR
 
-		        elements[i-k] = new ElementOperator(String.valueOf(text[i].charAt(0)));
-		    } else if (text[i].startsWith("\"") && text[i].endsWith("\"")) { // STRING
-		        elements[i-k] = new ElementString(
+		        elements[i] = new ElementOperator(String.valueOf(text[i].charAt(0)));
+		    } else if (text[i].length() > 1 && text[i].startsWith("\"")
+			  && text[i].endsWith("\"")) { // STRING
+		        elements[i] = new ElementString(
 			      text[i].substring(1, text[i].length() - 1));
 		    } else {
 
 		        try {
-			  elements[i-k] = new ElementConstantInteger(Integer.parseInt(text[i])); // INTEGER
+			  elements[i] = new ElementConstantInteger(Integer.parseInt(text[i])); // INTEGER
 		        } catch (NumberFormatException e1) {
 			  try {
-			      elements[i-k] = new ElementConstantDouble(
+			      elements[i] = new ElementConstantDouble(
 				    Double.parseDouble(text[i])); // DOUBLE
 			  } catch (NumberFormatException e2) {
 			      throw new IllegalArgumentException(text[i]
@@ -311,17 +296,16 @@ public class SmartScriptParser {
 	   * paramaters. It has one ElementVariable, two or three Elements of type variable,
 	   * number or string.
 	   * 
-	   * @param tag
-	   *            The tag represented as a text.
+	   * @param text
+	   *            The elements of the tag.
+	   * @param slots
+	   *            The slots of the variables, <code>null</code> if slots are not assigned.
 	   * @throws IllegalArgumentException
 	   *             In case of illegal element, a tag with an uncorrect number of
 	   *             parameters...
 	   * @return Node The created node.
 	   */
-	  private static ForLoopNode createForLoopNode(String tag) {
-
-	      String[] text = tag.replaceAll("\\s*[{]{1}\\s*[$]{1}\\s*FOR\\s*", "")
-		    .replaceAll("\\s*[$]{1}\\s*[}]{1}\\s*", "").split("\\s+");
+	  private static ForLoopNode createForLoopNode(String[] text, Map<String, Integer> slots) {
 
 	      ElementVariable variable;
 	      Element[] elements = new Element[3];
@@ -334,7 +318,7 @@ public class SmartScriptParser {
 		    throw new IllegalArgumentException(e.getLocalizedMessage());
 		}
 
-		variable = new ElementVariable(text[0]);
+		variable = createVariable(text[0], slots);
 
 		for (int i = 1; i < text.length; i++) {
 
@@ -346,8 +330,9 @@ public class SmartScriptParser {
 			  throw new IllegalArgumentException(e.getLocalizedMessage());
 		        }
 
-		        elements[i - 1] = new ElementVariable(text[i]);
-		    } else if (text[i].startsWith("\"") && text[i].endsWith("\"")) { // STRING
+		        elements[i - 1] = createVariable(text[i], slots);
+		    } else if (text[i].length() > 1 && text[i].startsWith("\"")
+			  && text[i].endsWith("\"")) { // STRING
 
 		        elements[i - 1] = new ElementString(
 			      text[i].substring(1, text[i].length() - 1));
@@ -375,6 +360,29 @@ public class SmartScriptParser {
 			  );
 	  }
 
+	  /**
+	   * Creates new variable with the given name. If slots are assigned, variable gets the
+	   * slot of it's name, or the next free slot if the name is new.
+	   * 
+	   * @param name
+	   *            The name of the variable.
+	   * @param slots
+	   *            The slots of the variables, <code>null</code> if slots are not assigned.
+	   * @return ElementVariable The created variable.
+	   */
+	  private static ElementVariable createVariable(String name, Map<String, Integer> slots) {
+
+	      if (slots == null) {
+		return new ElementVariable(name);
+	      }
+	      Integer slot = slots.get(name);
+	      if (slot == null) {
+		slot = slots.size();
+		slots.put(name, slot);
+	      }
+	      return new ElementVariable(name, slot);
+	  }
+
 	  /**
 	   * Confirms if a given text is a variable. Valid variable name starts by letter and
 	   * after follows zero or more letters, digits or underscores.
@@ -0,0 +1,145 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+/**
+ * Represents the instruction set of the {@link SmartScriptVM}.
+ * 
+ * Each instruction is written to the code of a {@link Program} as it's operation code,
+ * followed by a fixed number of integer operands. Operands are indexes into the constant pool,
+ * indexes of variable slots, plain integer values or addresses in the code.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public final class OpCode {
+
+    /**
+     * Private constructor. Does not have it's implementation.
+     */
+    private OpCode() {}
+
+    /**
+     * Writes the encoded text constant to the request context.
+     * Operands: index of the constant.
+     */
+    public static final int TEXT = 0;
+
+    /**
+     * Pushes the constant to the operand stack.
+     * Operands: index of the constant.
+     */
+    public static final int PUSH_CONST = 1;
+
+    /**
+     * Pushes the current value of the variable to the operand stack.
+     * Operands: index of the slot.
+     */
+    public static final int LOAD_VAR = 2;
+
+    /**
+     * Fails because the variable is used outside of any for-loop which defines it.
+     * Operands: index of the variable name constant.
+     */
+    public static final int LOAD_UNBOUND = 3;
+
+    /**
+     * Pops two operands and pushes their sum.
+     */
+    public static final int OP_ADD = 4;
+
+    /**
+     * Pops two operands and pushes their difference.
+     */
+    public static final int OP_SUB = 5;
+
+    /**
+     * Pops two operands and pushes their product.
+     */
+    public static final int OP_MUL = 6;
+
+    /**
+     * Pops two operands and pushes their quotient.
+     */
+    public static final int OP_DIV = 7;
+
+    /**
+     * Calls the function on the operand stack.
+     * Operands: index of the function constant.
+     */
+    public static final int CALL_FN = 8;
+
+    /**
+     * Writes the whole operand stack, from bottom to top, and empties it.
+     */
+    public static final int WRITE = 9;
+
+    /**
+     * Sets the variable to the start value and jumps over the loop if it is already greater
+     * than the end value.
+     * Operands: index of the slot, start value, end value, address after the loop.
+     */
+    public static final int LOOP_BEGIN = 10;
+
+    /**
+     * Adds the step to the variable and jumps back to the loop body if it is not greater than
+     * the end value.
+     * Operands: index of the slot, step value, end value, address of the loop body.
+     */
+    public static final int LOOP_END = 11;
+
+    /**
+     * Pops two operands and pushes the first one raised to the power of the second one.
+     */
+    public static final int OP_POW = 12;
+
+    /**
+     * Represents the names of the operation codes, indexed by the operation code.
+     */
+    private static final String[] NAMES = {
+        "TEXT", "PUSH_CONST", "LOAD_VAR", "LOAD_UNBOUND", "OP_ADD", "OP_SUB", "OP_MUL",
+        "OP_DIV", "CALL_FN", "WRITE", "LOOP_BEGIN", "LOOP_END", "OP_POW"
+    };
+
+    /**
+     * Returns the name of the given operation code.
+     * 
+     * @param opCode Operation code.
+     * @return Name of the operation code.
+     * @throws IllegalArgumentException In case of an unknown operation code.
+     */
+    public static String name(int opCode) {
+        if (opCode < 0 || opCode >= NAMES.length) {
+	  throw new IllegalArgumentException("Unknown operation code: " + opCode);
+        }
+        return NAMES[opCode];
+    }
+
+    /**
+     * Returns the number of operands which follow the given operation code.
+     * 
+     * @param opCode Operation code.
+     * @return Number of operands.
+     * @throws IllegalArgumentException In case of an unknown operation code.
+     */
+    public static int operands(int opCode) {
+        switch (opCode) {
+        case TEXT:
+        case PUSH_CONST:
+        case LOAD_VAR:
+        case LOAD_UNBOUND:
+        case CALL_FN:
+	  return 1;
+        case OP_ADD:
+        case OP_SUB:
+        case OP_MUL:
+        case OP_DIV:
+        case OP_POW:
+        case WRITE:
+	  return 0;
+        case LOOP_BEGIN:
+        case LOOP_END:
+	  return 4;
+        default:
+	  throw new IllegalArgumentException("Unknown operation code: " + opCode);
+        }
+    }
+}
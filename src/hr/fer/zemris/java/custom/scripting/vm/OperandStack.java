@@ -0,0 +1,548 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import hr.fer.zemris.java.custom.collections.EmptyStackException;
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the operand stack used for evaluating the echo tags of smart scripts.
+ * 
+ * Values are kept in parallel primitive arrays with a type tag for each of them: integers
+ * as <code>long</code>, decimal numbers as <code>double</code> and everything else
+ * (strings) as a reference. Numbers are therefore never boxed while an echo tag is
+ * evaluated and written, unless a function pops them as objects.
+ * 
+ * <p>Operators preserve integers: if both arguments are integers (or strings of integers),
+ * the result of <code>+</code>, <code>-</code>, <code>*</code> and <code>^</code> with a
+ * non-negative exponent is an integer as well, unless it would overflow. Division, like
+ * in the {@link hr.fer.zemris.java.custom.scripting.exec.ValueWrapper}, always gives
+ * a decimal number. Strings are parsed when they are used as an argument and the most
+ * recently parsed strings are remembered, so the same string constant is not parsed on
+ * each iteration of a loop.</p>
+ * 
+ * <p>It is an {@link ObjectStack}, so functions from the
+ * {@link hr.fer.zemris.java.custom.scripting.exec.OperationsUtil} work on it directly:
+ * integers are popped as {@link Integer} (or {@link Long} if they do not fit) and decimal
+ * numbers as {@link Double}.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class OperandStack extends ObjectStack {
+
+    /**
+     * Represents the tag of an integer value.
+     */
+    private static final byte LONG = 0;
+
+    /**
+     * Represents the tag of a decimal value.
+     */
+    private static final byte DOUBLE = 1;
+
+    /**
+     * Represents the tag of a reference value.
+     */
+    private static final byte REF = 2;
+
+    /**
+     * Represents the initial capacity of the stack.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Represents the number of remembered parsed strings, must be a power of two.
+     */
+    private static final int CACHE_SIZE = 16;
+
+    /**
+     * Represents the maximal number of digits of a string which is parsed as an integer.
+     * Longer strings may not fit into a <code>long</code>, so they are parsed as decimals.
+     */
+    private static final int MAX_INTEGER_DIGITS = 18;
+
+    /**
+     * Represents the type tags of the values on the stack.
+     */
+    private byte[] tags = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Represents the integer values on the stack.
+     */
+    private long[] longs = new long[INITIAL_CAPACITY];
+
+    /**
+     * Represents the decimal values on the stack.
+     */
+    private double[] doubles = new double[INITIAL_CAPACITY];
+
+    /**
+     * Represents the reference values on the stack.
+     */
+    private Object[] refs = new Object[INITIAL_CAPACITY];
+
+    /**
+     * Represents the number of values on the stack.
+     */
+    private int size;
+
+    /**
+     * Represents the recently parsed strings, indexed by their identity hash codes.
+     */
+    private final String[] cachedStrings = new String[CACHE_SIZE];
+
+    /**
+     * Represents the tags of the recently parsed strings.
+     */
+    private final byte[] cachedTags = new byte[CACHE_SIZE];
+
+    /**
+     * Represents the integer values of the recently parsed strings.
+     */
+    private final long[] cachedLongs = new long[CACHE_SIZE];
+
+    /**
+     * Represents the decimal values of the recently parsed strings.
+     */
+    private final double[] cachedDoubles = new double[CACHE_SIZE];
+
+    /**
+     * Represents the buffer used for writing integers.
+     */
+    private final char[] digits = new char[20];
+
+    /**
+     * Public constructor.
+     */
+    public OperandStack() {
+        super(1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pushes the value to the stack. Integers and decimal numbers are kept as primitive
+     * values.
+     * 
+     * @param value Value to push.
+     * @throws IllegalArgumentException In case the value is <code>null</code>.
+     */
+    @Override
+    public void push(Object value) {
+        if (value instanceof Integer || value instanceof Long
+	      || value instanceof Short || value instanceof Byte) {
+	  pushLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+	  pushDouble(((Number) value).doubleValue());
+        } else {
+	  if (value == null) {
+	      throw new IllegalArgumentException("Can not push null to the stack.");
+	  }
+	  ensureCapacity();
+	  tags[size] = REF;
+	  refs[size++] = value;
+        }
+    }
+
+    /**
+     * Pushes the integer to the stack.
+     * 
+     * @param value Value to push.
+     */
+    public void pushLong(long value) {
+        ensureCapacity();
+        tags[size] = LONG;
+        longs[size++] = value;
+    }
+
+    /**
+     * Pushes the decimal number to the stack.
+     * 
+     * @param value Value to push.
+     */
+    public void pushDouble(double value) {
+        ensureCapacity();
+        tags[size] = DOUBLE;
+        doubles[size++] = value;
+    }
+
+    /**
+     * Pops the value from the stack. Numbers are boxed, see the class documentation.
+     * 
+     * @return Popped value.
+     */
+    @Override
+    public Object pop() {
+        checkNotEmpty();
+        Object value = peek();
+        refs[--size] = null;
+        return value;
+    }
+
+    @Override
+    public Object peek() {
+        if (size == 0) {
+	  throw new EmptyStackException("Can not peek from an empty stack.");
+        }
+        int top = size - 1;
+        switch (tags[top]) {
+        case LONG:
+	  long value = longs[top];
+	  if (value == (int) value) {
+	      return Integer.valueOf((int) value);
+	  }
+	  return Long.valueOf(value);
+        case DOUBLE:
+	  return Double.valueOf(doubles[top]);
+        default:
+	  return refs[top];
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(refs, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Pops the value and converts it to a double. Strings are parsed.
+     * 
+     * @return Popped value as a double.
+     * @throws NumberFormatException In case the value is a string which is not a number.
+     * @throws ClassCastException In case the value is neither a number nor a string.
+     */
+    public double popDouble() {
+        checkNotEmpty();
+        int top = size - 1;
+        double value = toNumber(top) == LONG ? longs[top] : doubles[top];
+        refs[top] = null;
+        size = top;
+        return value;
+    }
+
+    /**
+     * Applies the operator with the given symbol, see {@link #add()}.
+     * 
+     * @param symbol Symbol of the operator: <code>+</code>, <code>-</code>, <code>*</code>,
+     * <code>/</code> or <code>^</code>.
+     * @throws IllegalArgumentException In case of an unknown operator.
+     */
+    public void operate(String symbol) {
+        switch (symbol) {
+        case "+":
+	  add();
+	  break;
+        case "-":
+	  subtract();
+	  break;
+        case "*":
+	  multiply();
+	  break;
+        case "/":
+	  divide();
+	  break;
+        case "^":
+	  power();
+	  break;
+        default:
+	  throw new IllegalArgumentException("Unknown operator: " + symbol);
+        }
+    }
+
+    /**
+     * Pops the first argument (from the top of the stack) and the second argument and pushes
+     * their sum. Same order of arguments is used by all of the operators.
+     */
+    public void add() {
+        int first = size - 1;
+        if (prepareArguments()) {
+	  try {
+	      replaceWithLong(Math.addExact(longs[first], longs[first - 1]));
+	      return;
+	  } catch (ArithmeticException overflow) {
+	  }
+        }
+        replaceWithDouble(doubleAt(first) + doubleAt(first - 1));
+    }
+
+    /**
+     * Pops the two arguments and pushes the first one minus the second one.
+     */
+    public void subtract() {
+        int first = size - 1;
+        if (prepareArguments()) {
+	  try {
+	      replaceWithLong(Math.subtractExact(longs[first], longs[first - 1]));
+	      return;
+	  } catch (ArithmeticException overflow) {
+	  }
+        }
+        replaceWithDouble(doubleAt(first) - doubleAt(first - 1));
+    }
+
+    /**
+     * Pops the two arguments and pushes their product.
+     */
+    public void multiply() {
+        int first = size - 1;
+        if (prepareArguments()) {
+	  try {
+	      replaceWithLong(Math.multiplyExact(longs[first], longs[first - 1]));
+	      return;
+	  } catch (ArithmeticException overflow) {
+	  }
+        }
+        replaceWithDouble(doubleAt(first) * doubleAt(first - 1));
+    }
+
+    /**
+     * Pops the two arguments and pushes the first one divided by the second one.
+     * Result is always a decimal number.
+     */
+    public void divide() {
+        int first = size - 1;
+        prepareArguments();
+        replaceWithDouble(doubleAt(first) / doubleAt(first - 1));
+    }
+
+    /**
+     * Pops the two arguments and pushes the first one raised to the power of the second one.
+     */
+    public void power() {
+        int first = size - 1;
+        if (prepareArguments() && longs[first - 1] >= 0) {
+	  long base = longs[first];
+	  long exponent = longs[first - 1];
+	  long result = 1;
+	  try {
+	      while (exponent > 0) {
+		if ((exponent & 1) != 0) {
+		    result = Math.multiplyExact(result, base);
+		}
+		exponent >>= 1;
+		if (exponent > 0) {
+		    base = Math.multiplyExact(base, base);
+		}
+	      }
+	      replaceWithLong(result);
+	      return;
+	  } catch (ArithmeticException overflow) {
+	  }
+        }
+        replaceWithDouble(Math.pow(doubleAt(first), doubleAt(first - 1)));
+    }
+
+    /**
+     * Writes all of the values, from bottom to top, to the given context and empties
+     * the stack. Numbers are written without creating strings.
+     * 
+     * @param requestContext Context to write to.
+     */
+    public void writeTo(RequestContext requestContext) {
+        try {
+	  for (int i = 0; i < size; i++) {
+	      switch (tags[i]) {
+	      case LONG:
+		writeLong(requestContext, longs[i]);
+		break;
+	      case DOUBLE:
+		requestContext.write(Double.toString(doubles[i]));
+		break;
+	      default:
+		requestContext.write(refs[i].toString());
+	      }
+	  }
+        } catch (IOException e) {
+	  System.err.println("Error during writing request context.");
+	  e.printStackTrace();
+        } finally {
+	  clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+	  if (i > 0) sb.append(',');
+	  switch (tags[i]) {
+	  case LONG:
+	      sb.append(longs[i]);
+	      break;
+	  case DOUBLE:
+	      sb.append(doubles[i]);
+	      break;
+	  default:
+	      sb.append(refs[i]);
+	  }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Checks that there are two arguments on the stack and converts them to numbers.
+     * 
+     * @return <code>true</code> if both of the arguments are integers.
+     * @throws EmptyStackException In case there are less than two values on the stack.
+     */
+    private boolean prepareArguments() {
+        if (size < 2) {
+	  throw new EmptyStackException("Can not pop from an empty stack.");
+        }
+        byte first = toNumber(size - 1);
+        byte second = toNumber(size - 2);
+        return first == LONG && second == LONG;
+    }
+
+    /**
+     * Returns the numeric value at the given index as a double.
+     * Value must already be converted to a number.
+     * 
+     * @param index Index of the value.
+     * @return Value as a double.
+     */
+    private double doubleAt(int index) {
+        return tags[index] == LONG ? longs[index] : doubles[index];
+    }
+
+    /**
+     * Replaces the two arguments on the top of the stack with the integer result.
+     * 
+     * @param value Result of the operator.
+     */
+    private void replaceWithLong(long value) {
+        size -= 2;
+        refs[size] = null;
+        refs[size + 1] = null;
+        pushLong(value);
+    }
+
+    /**
+     * Replaces the two arguments on the top of the stack with the decimal result.
+     * 
+     * @param value Result of the operator.
+     */
+    private void replaceWithDouble(double value) {
+        size -= 2;
+        refs[size] = null;
+        refs[size + 1] = null;
+        pushDouble(value);
+    }
+
+    /**
+     * Converts the value at the given index to a number, parsing it if it is a string.
+     * 
+     * @param index Index of the value.
+     * @return Tag of the converted value, {@link #LONG} or {@link #DOUBLE}.
+     * @throws NumberFormatException In case the value is a string which is not a number.
+     * @throws ClassCastException In case the value is neither a number nor a string.
+     */
+    private byte toNumber(int index) {
+        if (tags[index] != REF) return tags[index];
+
+        String text = (String) refs[index];
+        int slot = System.identityHashCode(text) & (CACHE_SIZE - 1);
+        if (cachedStrings[slot] != text) {
+	  parse(text, slot);
+        }
+        tags[index] = cachedTags[slot];
+        longs[index] = cachedLongs[slot];
+        doubles[index] = cachedDoubles[slot];
+        refs[index] = null;
+        return tags[index];
+    }
+
+    /**
+     * Parses the string and remembers it in the given slot of the cache. Strings made of
+     * an optional sign and at most {@link #MAX_INTEGER_DIGITS} digits are integers,
+     * everything else is parsed by {@link Double#parseDouble(String)}.
+     * 
+     * @param text String to parse.
+     * @param slot Slot of the cache.
+     * @throws NumberFormatException In case the string is not a number.
+     */
+    private void parse(String text, int slot) {
+        String trimmed = text.trim();
+        int length = trimmed.length();
+        int start = length > 0 && (trimmed.charAt(0) == '-' || trimmed.charAt(0) == '+') ? 1 : 0;
+        boolean integer = length > start && length - start <= MAX_INTEGER_DIGITS;
+        long value = 0;
+        for (int i = start; i < length && integer; i++) {
+	  char c = trimmed.charAt(i);
+	  if (c < '0' || c > '9') {
+	      integer = false;
+	  } else {
+	      value = value * 10 + (c - '0');
+	  }
+        }
+
+        if (integer) {
+	  cachedTags[slot] = LONG;
+	  cachedLongs[slot] = trimmed.charAt(0) == '-' ? -value : value;
+        } else {
+	  cachedTags[slot] = DOUBLE;
+	  cachedDoubles[slot] = Double.parseDouble(trimmed);
+        }
+        cachedStrings[slot] = text;
+    }
+
+    /**
+     * Writes the integer to the context without creating a string.
+     * 
+     * @param requestContext Context to write to.
+     * @param value Value to write.
+     * @throws IOException In case of IO error.
+     */
+    private void writeLong(RequestContext requestContext, long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+	  requestContext.write(Long.toString(value));
+	  return;
+        }
+        int position = digits.length;
+        long rest = value < 0 ? -value : value;
+        do {
+	  digits[--position] = (char) ('0' + rest % 10);
+	  rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+	  digits[--position] = '-';
+        }
+        requestContext.write(digits, position, digits.length - position);
+    }
+
+    /**
+     * Checks that the stack is not empty.
+     * 
+     * @throws EmptyStackException In case the stack is empty.
+     */
+    private void checkNotEmpty() {
+        if (size == 0) {
+	  throw new EmptyStackException("Can not pop from an empty stack.");
+        }
+    }
+
+    /**
+     * Makes room for one more value.
+     */
+    private void ensureCapacity() {
+        if (size == tags.length) {
+	  int capacity = size * 2;
+	  tags = Arrays.copyOf(tags, capacity);
+	  longs = Arrays.copyOf(longs, capacity);
+	  doubles = Arrays.copyOf(doubles, capacity);
+	  refs = Arrays.copyOf(refs, capacity);
+        }
+    }
+}
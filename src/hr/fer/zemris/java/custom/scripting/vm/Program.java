@@ -0,0 +1,128 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+
+/**
+ * Represents a smart script compiled by the {@link ProgramCompiler}.
+ * 
+ * Program consists of a flat array of instructions (see {@link OpCode}), a pool of constants
+ * used by the instructions and the number of variable slots needed for it's execution.
+ * Program is immutable, so one instance can be executed by many threads at the same time.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class Program {
+
+    /**
+     * Represents the instructions of the program.
+     */
+    private final int[] code;
+
+    /**
+     * Represents the constants used by the instructions.
+     */
+    private final Object[] constants;
+
+    /**
+     * Represents the number of variable slots.
+     */
+    private final int slotCount;
+
+    /**
+     * Represents the document from which the program was compiled.
+     */
+    private final DocumentNode document;
+
+    /**
+     * Package-private constructor, programs are created by the {@link ProgramCompiler}.
+     * 
+     * @param code Instructions of the program.
+     * @param constants Constants used by the instructions.
+     * @param slotCount Number of variable slots.
+     * @param document Document from which the program was compiled.
+     */
+    Program(int[] code, Object[] constants, int slotCount, DocumentNode document) {
+        this.code = code;
+        this.constants = constants;
+        this.slotCount = slotCount;
+        this.document = document;
+    }
+
+    /**
+     * The code getter.
+     * 
+     * @return int[] Gets the code.
+     */
+    int[] getCode() {
+        return code;
+    }
+
+    /**
+     * The constants getter.
+     * 
+     * @return Object[] Gets the constants.
+     */
+    Object[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * The slot count getter.
+     * 
+     * @return int Gets the slot count.
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * The document getter.
+     * 
+     * @return DocumentNode Gets the document.
+     */
+    public DocumentNode getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the number of instructions of the program.
+     * 
+     * @return Number of instructions.
+     */
+    public int getInstructionCount() {
+        int count = 0;
+        for (int pc = 0; pc < code.length; pc += 1 + OpCode.operands(code[pc])) {
+	  count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the listing of the program, one instruction per line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+	  int opCode = code[pc];
+	  sb.append(pc).append(": ").append(OpCode.name(opCode));
+	  int operands = OpCode.operands(opCode);
+	  for (int i = 1; i <= operands; i++) {
+	      sb.append(' ').append(code[pc + i]);
+	  }
+	  if (opCode == OpCode.TEXT || opCode == OpCode.PUSH_CONST
+		|| opCode == OpCode.LOAD_UNBOUND) {
+	      Object constant = constants[code[pc + 1]];
+	      String text = constant instanceof Number
+		    ? String.valueOf(constant)
+		    : '"' + constant.toString().replace("\r", "\\r").replace("\n", "\\n") + '"';
+	      sb.append(" (").append(text).append(')');
+	  }
+	  sb.append("\r\n");
+	  pc += 1 + operands;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,249 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.elems.IElementVisitor;
+import hr.fer.zemris.java.custom.scripting.exec.OperationsUtil;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.http.EncodedText;
+
+/**
+ * Represents the compiler of the parsed smart scripts into a {@link Program}.
+ * 
+ * Compiler walks the tree only once, so all of the work which the tree-walking
+ * {@link hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine} repeats on every execution
+ * is done here: operators and functions are resolved, constants are collected into the
+ * constant pool, static text is encoded and each variable is bound to the slot of the
+ * innermost for-loop which defines it.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ProgramCompiler implements INodeVisitor, IElementVisitor {
+
+    /**
+     * Represents the initial size of the code.
+     */
+    private static final int INITIAL_CODE_SIZE = 64;
+
+    /**
+     * Represents the instructions written so far.
+     */
+    private int[] code = new int[INITIAL_CODE_SIZE];
+
+    /**
+     * Represents the number of used places in the code.
+     */
+    private int size;
+
+    /**
+     * Represents the constants collected so far.
+     */
+    private List<Object> constants = new ArrayList<>();
+
+    /**
+     * Represents the indexes of the already collected constants.
+     */
+    private Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    /**
+     * Represents the indexes of the already collected static texts.
+     */
+    private Map<String, Integer> textIndexes = new HashMap<>();
+
+    /**
+     * Represents the variables of the currently open for-loops, indexed by their slots.
+     */
+    private List<String> scope = new ArrayList<>();
+
+    /**
+     * Represents the maximal number of for-loops open at the same time.
+     */
+    private int slotCount;
+
+    /**
+     * Private constructor, use {@link #compile(DocumentNode)}.
+     */
+    private ProgramCompiler() {}
+
+    /**
+     * Compiles the given document.
+     * 
+     * @param document Document to compile.
+     * @return Compiled program.
+     * @throws IllegalArgumentException In case the document is <code>null</code> or it uses
+     * an unknown operator or function.
+     */
+    public static Program compile(DocumentNode document) {
+        if (document == null) {
+	  throw new IllegalArgumentException("Document can not be null.");
+        }
+        ProgramCompiler compiler = new ProgramCompiler();
+        document.accept(compiler);
+
+        return new Program(Arrays.copyOf(compiler.code, compiler.size),
+	      compiler.constants.toArray(), compiler.slotCount, document);
+    }
+
+    @Override
+    public void visitDocumentNode(DocumentNode node) {
+        int size = node.numberOfChildren();
+        for (int i = 0; i < size; i++) {
+	  node.getChild(i).accept(this);
+        }
+    }
+
+    @Override
+    public void visitTextNode(TextNode node) {
+        Integer index = textIndexes.get(node.getText());
+        if (index == null) {
+	  index = constants.size();
+	  constants.add(new EncodedText(node.getText()));
+	  textIndexes.put(node.getText(), index);
+        }
+        emit(OpCode.TEXT, index);
+    }
+
+    @Override
+    public void visitForLoopNode(ForLoopNode node) {
+        if (node.getStepExpression() == null) {
+	  throw new IllegalArgumentException("For-loop " + node.asText() + " has no step.");
+        }
+        int slot = scope.size();
+        int end = node.getEndExpression().getValue();
+
+        int begin = size;
+        emit(OpCode.LOOP_BEGIN, slot, node.getStartExpression().getValue(), end, -1);
+        int body = size;
+
+        scope.add(node.getVariable().getName());
+        slotCount = Math.max(slotCount, scope.size());
+        int children = node.numberOfChildren();
+        for (int i = 0; i < children; i++) {
+	  node.getChild(i).accept(this);
+        }
+        scope.remove(slot);
+
+        emit(OpCode.LOOP_END, slot, node.getStepExpression().getValue(), end, body);
+        code[begin + 4] = size;
+    }
+
+    @Override
+    public void visitEchoNode(EchoNode node) {
+        for (Element element : node.getElements()) {
+	  element.accept(this);
+        }
+        emit(OpCode.WRITE);
+    }
+
+    @Override
+    public void visitVariable(ElementVariable element) {
+        String name = element.getName();
+        int slot = scope.lastIndexOf(name);
+        if (slot < 0) {
+	  emit(OpCode.LOAD_UNBOUND, constant(name));
+        } else {
+	  emit(OpCode.LOAD_VAR, slot);
+        }
+    }
+
+    @Override
+    public void visitString(ElementString element) {
+        emit(OpCode.PUSH_CONST, constant(element.getValue()));
+    }
+
+    @Override
+    public void visitConstantInteger(ElementConstantInteger element) {
+        emit(OpCode.PUSH_CONST, constant(element.getValue()));
+    }
+
+    @Override
+    public void visitConstantDouble(ElementConstantDouble element) {
+        emit(OpCode.PUSH_CONST, constant(element.getValue()));
+    }
+
+    @Override
+    public void visitOperator(ElementOperator element) {
+        switch (element.getSymbol()) {
+        case "+":
+	  emit(OpCode.OP_ADD);
+	  break;
+        case "-":
+	  emit(OpCode.OP_SUB);
+	  break;
+        case "*":
+	  emit(OpCode.OP_MUL);
+	  break;
+        case "/":
+	  emit(OpCode.OP_DIV);
+	  break;
+        case "^":
+	  emit(OpCode.OP_POW);
+	  break;
+        default:
+	  throw new IllegalArgumentException("Unknown operator: " + element.getSymbol());
+        }
+    }
+
+    @Override
+    public void visitFunction(ElementFunction element) {
+        BiConsumer<RequestContext, ObjectStack> function = element.getFunction();
+        if (function == null) {
+	  function = OperationsUtil.resolve(element.getValue());
+        }
+        if (function == null) {
+	  throw new IllegalArgumentException("Unknown function: @" + element.getValue());
+        }
+        emit(OpCode.CALL_FN, constant(function));
+    }
+
+    /**
+     * Returns the index of the given constant, adding it to the pool if needed.
+     * 
+     * @param value Value of the constant.
+     * @return Index of the constant.
+     */
+    private int constant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+	  index = constants.size();
+	  constants.add(value);
+	  constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Writes the instruction to the code.
+     * 
+     * @param opCode Operation code of the instruction.
+     * @param operands Operands of the instruction.
+     */
+    private void emit(int opCode, int... operands) {
+        if (size + 1 + operands.length > code.length) {
+	  code = Arrays.copyOf(code, Math.max(code.length * 2, size + 1 + operands.length));
+        }
+        code[size++] = opCode;
+        for (int operand : operands) {
+	  code[size++] = operand;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.http.EncodedText;
+
+/**
+ * Represents the virtual machine which executes a compiled {@link Program}.
+ * 
+ * It is a drop-in replacement for the
+ * {@link hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine} and produces exactly the same
+ * output, but instead of visiting the nodes and elements of the tree on each execution, it runs
+ * a single loop over the flat array of instructions. Variables are kept in an array of slots
+ * resolved at compile time and echo tags share one operand stack.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SmartScriptVM {
+
+    /**
+     * Represents the program to execute.
+     */
+    private Program program;
+
+    /**
+     * Represents the request context of the virtual machine.
+     */
+    private RequestContext requestContext;
+
+    /**
+     * Public constructor.
+     * Sets fields to the given values.
+     * 
+     * @param program The program to execute.
+     * @param requestContext The request context attached to this virtual machine.
+     */
+    public SmartScriptVM(Program program, RequestContext requestContext) {
+        if (program == null || requestContext == null) {
+	  throw new IllegalArgumentException("Some of the arguments was null which is not allowed.");
+        }
+        this.program = program;
+        this.requestContext = requestContext;
+    }
+
+    /**
+     * Executes the program, from the first to the last instruction.
+     */
+    @SuppressWarnings("unchecked")
+    public void execute() {
+        int[] code = program.getCode();
+        Object[] constants = program.getConstants();
+        int[] slots = new int[program.getSlotCount()];
+        OperandStack stack = new OperandStack();
+
+        int pc = 0;
+        int length = code.length;
+        while (pc < length) {
+	  switch (code[pc]) {
+	  case OpCode.TEXT:
+	      try {
+		requestContext.write((EncodedText) constants[code[pc + 1]]);
+	      } catch (IOException e) {
+		System.err.println("Exception caught during writing to Output Stream.");
+		e.printStackTrace();
+	      }
+	      pc += 2;
+	      break;
+	  case OpCode.PUSH_CONST:
+	      stack.push(constants[code[pc + 1]]);
+	      pc += 2;
+	      break;
+	  case OpCode.LOAD_VAR:
+	      stack.pushLong(slots[code[pc + 1]]);
+	      pc += 2;
+	      break;
+	  case OpCode.LOAD_UNBOUND:
+	      throw new hr.fer.zemris.java.custom.scripting.exec.EmptyStackException(
+		    "Can not peek from an empty stack!");
+	  case OpCode.OP_ADD:
+	      stack.add();
+	      pc++;
+	      break;
+	  case OpCode.OP_SUB:
+	      stack.subtract();
+	      pc++;
+	      break;
+	  case OpCode.OP_MUL:
+	      stack.multiply();
+	      pc++;
+	      break;
+	  case OpCode.OP_DIV:
+	      stack.divide();
+	      pc++;
+	      break;
+	  case OpCode.OP_POW:
+	      stack.power();
+	      pc++;
+	      break;
+	  case OpCode.CALL_FN:
+	      ((BiConsumer<RequestContext, ObjectStack>) constants[code[pc + 1]])
+		    .accept(requestContext, stack);
+	      pc += 2;
+	      break;
+	  case OpCode.WRITE:
+	      stack.writeTo(requestContext);
+	      pc++;
+	      break;
+	  case OpCode.LOOP_BEGIN: {
+	      int slot = code[pc + 1];
+	      slots[slot] = code[pc + 2];
+	      pc = slots[slot] > code[pc + 3] ? code[pc + 4] : pc + 5;
+	      break;
+	  }
+	  case OpCode.LOOP_END: {
+	      int slot = code[pc + 1];
+	      slots[slot] += code[pc + 2];
+	      pc = slots[slot] > code[pc + 3] ? pc + 5 : code[pc + 4];
+	      break;
+	  }
+	  default:
+	      throw new IllegalStateException("Unknown operation code " + code[pc] + " at " + pc + ".");
+	  }
+        }
+    }
+}
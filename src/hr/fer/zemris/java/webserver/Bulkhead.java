@@ -0,0 +1,194 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents a named executor with bounded concurrency and a bounded queue, used for
+ * isolating the routes of the server from each other.
+ * 
+ * <p>If all threads of the bulkhead are busy and it's queue is full, new tasks are rejected
+ * instead of waiting, so a slow route can only exhaust it's own bulkhead.</p>
+ * 
+ * Each bulkhead counts it's own accepted, rejected and completed tasks.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class Bulkhead {
+
+    /**
+     * Represents the name of the bulkhead.
+     */
+    private final String name;
+
+    /**
+     * Represents the maximal number of tasks running at the same time.
+     */
+    private final int maxConcurrency;
+
+    /**
+     * Represents the maximal number of waiting tasks.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Represents the executor running the tasks.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Represents the number of accepted tasks.
+     */
+    private final LongAdder accepted = new LongAdder();
+
+    /**
+     * Represents the number of rejected tasks.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Public constructor.
+     * 
+     * @param name Name of the bulkhead.
+     * @param maxConcurrency Maximal number of tasks running at the same time.
+     * @param queueCapacity Maximal number of waiting tasks.
+     * @throws IllegalArgumentException In case of invalid limits.
+     */
+    public Bulkhead(String name, int maxConcurrency, int queueCapacity) {
+        if (maxConcurrency < 1 || queueCapacity < 1) {
+	  throw new IllegalArgumentException("Executor " + name
+		+ " must have at least one thread and a queue of at least one task.");
+        }
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60,
+	      TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+		Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	      });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executes the task if the bulkhead has a free thread or a free place in the queue.
+     * 
+     * @param task Task to execute.
+     * @return <code>true</code> if the task was accepted, <code>false</code> if it was rejected.
+     */
+    public boolean execute(Runnable task) {
+        try {
+	  executor.execute(task);
+        } catch (RejectedExecutionException e) {
+	  rejected.increment();
+	  return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * Stops accepting new tasks, already accepted tasks are still executed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * The name getter.
+     * 
+     * @return String Gets the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The max concurrency getter.
+     * 
+     * @return int Gets the maximal number of tasks running at the same time.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * The queue capacity getter.
+     * 
+     * @return int Gets the maximal number of waiting tasks.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the approximate number of running tasks.
+     * 
+     * @return Number of running tasks.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of waiting tasks.
+     * 
+     * @return Number of waiting tasks.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of accepted tasks.
+     * 
+     * @return Number of accepted tasks.
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of rejected tasks.
+     * 
+     * @return Number of rejected tasks.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the approximate number of completed tasks.
+     * 
+     * @return Number of completed tasks.
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Returns the saturation of the bulkhead: number of running and waiting tasks divided
+     * by the number of tasks the bulkhead can hold.
+     * 
+     * @return Saturation between 0 and 1, bulkhead rejects tasks at 1.
+     */
+    public double getSaturation() {
+        return (double) (getActiveCount() + getQueuedCount()) / (maxConcurrency + queueCapacity);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: active=%d/%d queued=%d/%d saturation=%.2f accepted=%d "
+	      + "rejected=%d completed=%d", name, getActiveCount(), maxConcurrency,
+	      getQueuedCount(), queueCapacity, getSaturation(), getAcceptedCount(),
+	      getRejectedCount(), getCompletedCount());
+    }
+}
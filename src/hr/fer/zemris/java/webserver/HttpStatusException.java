@@ -0,0 +1,41 @@
+package hr.fer.zemris.java.webserver;
+
+/**
+ * Represents an exception which is thrown while processing a request, if the request
+ * can not be fulfilled and an error response with the given status should be sent instead.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class HttpStatusException extends RuntimeException {
+
+    /**
+     * Represents the serialVersionUID of the exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Represents the status code of the response.
+     */
+    private final int statusCode;
+
+    /**
+     * Public constructor.
+     * 
+     * @param statusCode Status code of the error response.
+     * @param message Description of the error.
+     */
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * The status code getter.
+     * 
+     * @return int Gets the status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
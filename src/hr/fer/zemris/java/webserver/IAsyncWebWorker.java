@@ -0,0 +1,36 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Represents the interface toward any object that can process a {@link RequestContext}
+ * without blocking the server's thread.
+ * 
+ * <p>Worker returns a {@link CompletionStage} which is completed once the whole content was
+ * written to the context; the server finishes the response and closes the connection only
+ * then. If the stage is not completed in time, server revokes the context (see
+ * {@link RequestContext#revoke()}) and sends an error response if nothing was sent yet. Every
+ * later write to the context fails with an {@link java.io.IOException}, so the worker should
+ * stop and complete the stage; connection's resources are released only then.</p>
+ * 
+ * Async workers can also be used as ordinary {@link IWebWorker}s, in which case the calling
+ * thread waits for the stage to complete.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public interface IAsyncWebWorker extends IWebWorker {
+
+    /**
+     * Starts creating the content for the client from the given context.
+     * 
+     * @param context The given context.
+     * @return Stage which is completed once the content was created.
+     */
+    public CompletionStage<Void> processRequestAsync(RequestContext context);
+
+    @Override
+    public default void processRequest(RequestContext context) {
+        processRequestAsync(context).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,23 @@
+package hr.fer.zemris.java.webserver;
+
+/**
+ * Represents the interface toward any object which wants to be notified right before
+ * the header of a {@link RequestContext} is generated.
+ * 
+ * At that moment, listener is still allowed to change the status, mime type and cookies
+ * of the response.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public interface ICommitListener {
+
+    /**
+     * Called right before the header of the given context is generated.
+     * 
+     * @param context The context whose header is going to be generated.
+     * @param complete <code>true</code> if the response was already finished, which means
+     * no more changes of the context are expected, elseway <code>false</code>.
+     */
+    public void beforeCommit(RequestContext context, boolean complete);
+}
@@ -2,16 +2,29 @@ package hr.fer.zemris.java.webserver;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.custom.collections.CompactMap;
+import hr.fer.zemris.java.webserver.http.DateHeader;
+import hr.fer.zemris.java.webserver.http.EncodedText;
+import hr.fer.zemris.java.webserver.http.HeaderFragments;
 
 /**
  * Represents the request context which can store all necesarry informations about client's request.
@@ -28,6 +41,26 @@ import java.util.Set;
  */
 public class RequestContext {
 
+    /**
+     * Represents the state of the response in which nobody has written to the output stream yet.
+     */
+    private static final int OPEN = 0;
+
+    /**
+     * Represents the state of the response whose header was written by this context.
+     */
+    private static final int COMMITTED = 1;
+
+    /**
+     * Represents the state of the response which was taken away from this context.
+     */
+    private static final int REVOKED = 2;
+
+    /**
+     * Represents the bytes which end a header line.
+     */
+    private static final byte[] CRLF = { '\r', '\n' };
+
     /**
      * Represents the output stream used for writing the response to the client.
      */
@@ -36,7 +69,7 @@ public class RequestContext {
     /**
      * Represents the charset used for encoding.
      */
-    private Charset charset;
+    private Charset charset = StandardCharsets.UTF_8;
 
     /**
      * Represents the name of encoding.
@@ -66,7 +99,7 @@ public class RequestContext {
     /**
      * Represents the temporary parameters of the request.
      */
-    private Map<String, String> temporaryParameters = new HashMap<>();
+    private Map<String, String> temporaryParameters = new CompactMap<>();
 
     /**
      * Represents the persistent parameters of the request.
@@ -83,6 +116,70 @@ public class RequestContext {
      */
     private boolean headerGenerated;
 
+    /**
+     * Represents the ownership of the output stream: {@link #OPEN}, {@link #COMMITTED} or
+     * {@link #REVOKED}, see {@link #revoke()}.
+     */
+    private final AtomicInteger state = new AtomicInteger(OPEN);
+
+    /**
+     * Represents the flag which indicates if the "Date" header should be generated.
+     */
+    private boolean dateHeader;
+
+    /**
+     * Represents the channel the output stream writes to, used for gathering writes.
+     * If <code>null</code>, everything is written to the output stream.
+     */
+    private GatheringByteChannel gatheringChannel;
+
+    /**
+     * Represents the array used for copying buffers to the output stream, created on the first use.
+     */
+    private byte[] copyBuffer;
+
+    /**
+     * Represents the buffer which holds the response body until the header is generated.
+     * If <code>null</code>, everything is written directly to the output stream.
+     */
+    private byte[] buffer;
+
+    /**
+     * Represents the number of bytes currently stored in the buffer.
+     */
+    private int bufferedBytes;
+
+    /**
+     * Represents the number of bytes written after the header, after which the output stream is
+     * flushed. If 0, it is flushed after each write.
+     */
+    private int flushThreshold;
+
+    /**
+     * Represents the number of bytes written to the output stream since it was last flushed.
+     */
+    private int unflushedBytes;
+
+    /**
+     * Represents the listener which is notified right before the header is generated.
+     */
+    private ICommitListener commitListener;
+
+    /**
+     * Represents the writer of the response, created on the first use.
+     */
+    private ResponseWriter writer;
+
+    /**
+     * Represents the binary stream of the response, created on the first use.
+     */
+    private OutputStream stream;
+
+    /**
+     * Represents the channel of the response, created on the first use.
+     */
+    private WritableByteChannel channel;
+
     /**
      * Public constructor.
      * Sets fields to the given values. 
@@ -103,13 +200,52 @@ public class RequestContext {
 
         this.outputStream = outputStream;
         this.parameters = 
-	      parameters == null ? new HashMap<String, String>() : parameters;
+	      parameters == null ? new CompactMap<String, String>() : parameters;
         this.persistentParameters = 
-	      persistentParameters == null ? new HashMap<String, String>() : persistentParameters;
+	      persistentParameters == null ? new CompactMap<String, String>() : persistentParameters;
         this.outputCookies = 
 	      outputCookies == null ? new ArrayList<RCCookie>() : outputCookies;
     }
 
+    /**
+     * Prepares the context for a new request, so it can be reused instead of creating a new one.
+     * 
+     * All response state (encoding, status, mime type, header and buffered data), temporary
+     * parameters, commit listener, date header flag and gathering channel are set to their initial
+     * values. Buffers of the context and it's writer are kept. Parameters and output cookies are
+     * the collections given to the constructor, so they are owned, and cleared, by the caller.
+     * 
+     * @param outputStream The client's output stream, must not be <code>null</code>.
+     * @param persistentParameters Persistent parameters of the request, if <code>null</code>
+     * will be considered as an empty {@link Map}.
+     */
+    public void reset(OutputStream outputStream, Map<String, String> persistentParameters) {
+        if (outputStream == null) {
+	  throw new IllegalArgumentException("Output stream must not be null!");
+        }
+
+        this.outputStream = outputStream;
+        this.persistentParameters = 
+	      persistentParameters == null ? new CompactMap<String, String>() : persistentParameters;
+        this.charset = StandardCharsets.UTF_8;
+        this.encoding = "UTF-8";
+        this.statusCode = 200;
+        this.statusText = "OK";
+        this.mimeType = "text/html";
+        this.temporaryParameters.clear();
+        this.headerGenerated = false;
+        this.state.set(OPEN);
+        this.dateHeader = false;
+        this.gatheringChannel = null;
+        this.bufferedBytes = 0;
+        this.flushThreshold = 0;
+        this.unflushedBytes = 0;
+        this.commitListener = null;
+        if(writer != null) {
+	  writer.reset(charset);
+        }
+    }
+
     /**
      * The encoding setter. 
      * Can be invoked only before the header of the response was generated.
@@ -118,7 +254,11 @@ public class RequestContext {
      */
     public void setEncoding(String encoding) {
         assumeHeaderNotGenerated();
+        this.charset = Charset.forName(encoding);
         this.encoding = encoding;
+        if(writer != null) {
+	  writer.setCharset(charset);
+        }
     }
 
    
@@ -155,6 +295,109 @@ public class RequestContext {
         this.mimeType = mimeType;
     }
 
+    /**
+     * The buffer size setter.
+     * Can be invoked only before the header of the response was generated and before
+     * anything was written.
+     * 
+     * <p>While buffered data fits in the buffer, the header is not generated, which means
+     * status, mime type and cookies can still be changed. Once the buffer overflows or
+     * the response is finished, header is generated and the buffered data is written.
+     * Size 0 disables buffering.</p>
+     * 
+     * @param bufferSize The buffer size to set.
+     */
+    public void setBufferSize(int bufferSize) {
+        assumeHeaderNotGenerated();
+        if (bufferSize < 0 || bufferedBytes > 0) {
+	  throw new IllegalArgumentException("Buffer size can not be changed now.");
+        }
+        if (buffer == null || buffer.length != bufferSize) {
+	  this.buffer = bufferSize == 0 ? null : new byte[bufferSize];
+        }
+    }
+
+    /**
+     * The flush threshold setter.
+     * 
+     * <p>Once the header is generated, each write is flushed to the client by default. With a
+     * threshold, written bytes are left in the output stream until at least that many of them
+     * are collected (or the response is finished), so a response produced in many small writes,
+     * like the output of a smart script, is sent in a few large ones.</p>
+     * 
+     * @param flushThreshold The flush threshold to set, 0 flushes after each write.
+     */
+    public void setFlushThreshold(int flushThreshold) {
+        if (flushThreshold < 0) {
+	  throw new IllegalArgumentException("Flush threshold can not be negative.");
+        }
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * The commit listener setter.
+     * Listener is notified right before the header of the response is generated.
+     * 
+     * @param commitListener The commit listener to set.
+     */
+    public void setCommitListener(ICommitListener commitListener) {
+        this.commitListener = commitListener;
+    }
+
+    /**
+     * The date header setter.
+     * If set, the generated header contains the shared {@link DateHeader} line.
+     * 
+     * @param dateHeader Flag which indicates if the "Date" header should be generated.
+     */
+    public void setDateHeader(boolean dateHeader) {
+        this.dateHeader = dateHeader;
+    }
+
+    /**
+     * The gathering channel setter.
+     * 
+     * Channel must be the one the output stream of this context writes to. If set, the header,
+     * the buffered body and the given body buffers are written with a single gathering write,
+     * so small responses leave in one system call. Output stream is flushed before the channel
+     * is used, so the order of the written data is kept.
+     * 
+     * @param gatheringChannel Channel of the output stream, or <code>null</code>.
+     */
+    public void setGatheringChannel(GatheringByteChannel gatheringChannel) {
+        this.gatheringChannel = gatheringChannel;
+    }
+
+    /**
+     * Checks if the header of the response is already generated.
+     * 
+     * @return <code>true</code> if the header is generated, elseway <code>false</code>.
+     */
+    public boolean isHeaderGenerated() {
+        return headerGenerated;
+    }
+
+    /**
+     * Takes the response away from this context, for example when it took too long and someone
+     * else answers the client instead. Can be called from any thread.
+     * 
+     * Context and the caller race for the output stream with a single compare-and-set: if the
+     * header was not generated yet, caller wins and may write it's own response, since this
+     * context will never touch the output stream again. Elseway, part of the response was
+     * already sent and the caller must not write anything. In both cases, every later write or
+     * finish of this context fails with an {@link IOException}.
+     * 
+     * @return <code>true</code> if the caller now owns the output stream, <code>false</code>
+     * if the response was already committed by this context.
+     */
+    public boolean revoke() {
+        if(state.compareAndSet(OPEN, REVOKED)) {
+	  return true;
+        }
+        state.set(REVOKED);
+        return false;
+    }
+
     /**
      * Retrieves value from parameters map (or null if no association exists).
      * 
@@ -262,19 +505,103 @@ public class RequestContext {
      * @throws IOException In case of IO error.
      */
     public RequestContext write(byte[] data) throws IOException {
+        return write(data, 0, data.length);
+    }
+
+    /**
+     * Writes a part of the byte array to the clients output stream.
+     * 
+     * @param data Array of bytes to be written to the {@link OutputStream}.
+     * @param offset Index of the first byte to write.
+     * @param length Number of bytes to write.
+     * @return Returns this.
+     * @throws IOException In case of IO error.
+     */
+    public RequestContext write(byte[] data, int offset, int length) throws IOException {
+        if(writer != null) {
+	  writer.flush();
+        }
+        writeBytes(data, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer, which can be a heap, direct or
+     * mapped buffer. Buffer is consumed.
+     * 
+     * Small buffers are buffered as any other data. Otherwise, if the gathering channel is set,
+     * buffer is written to it directly (together with the header, if it was not generated yet),
+     * elseway it is copied to the output stream.
+     * 
+     * @param data Buffer to write.
+     * @return This context.
+     * @throws IOException In case of IO error.
+     */
+    public RequestContext write(ByteBuffer data) throws IOException {
+        if(writer != null) {
+	  writer.flush();
+        }
 
+        assumeNotRevoked();
+        int length = data.remaining();
         if(!headerGenerated) {
-	  charset = Charset.forName(encoding);
-	  generateHeader();
-	  headerGenerated = true;
+	  if(buffer != null && buffer.length - bufferedBytes >= length) {
+	      data.get(buffer, bufferedBytes, length);
+	      bufferedBytes += length;
+	      return this;
+	  }
+	  commit(false, data);
+        } else {
+	  writeBuffer(data);
+        }
+
+        if(gatheringChannel != null) {
+	  // the output stream was flushed before the channel write
+	  unflushedBytes = 0;
+        } else {
+	  countUnflushed(length);
         }
-        
-        outputStream.write(data);
-        outputStream.flush();
-        
         return this;
     }
 
+    /**
+     * Writes the bytes to the buffer, or to the clients output stream if they do not fit.
+     * 
+     * @param data Array of bytes to be written.
+     * @param offset Index of the first byte to write.
+     * @param length Number of bytes to write.
+     * @throws IOException In case of IO error.
+     */
+    private void writeBytes(byte[] data, int offset, int length) throws IOException {
+        assumeNotRevoked();
+        if(!headerGenerated) {
+	  if(buffer != null && buffer.length - bufferedBytes >= length) {
+	      System.arraycopy(data, offset, buffer, bufferedBytes, length);
+	      bufferedBytes += length;
+	      return;
+	  }
+	  commit(false);
+        }
+        
+        outputStream.write(data, offset, length);
+        countUnflushed(length);
+    }
+
+    /**
+     * Counts the bytes written to the clients output stream since the last flush and flushes it
+     * once the flush threshold is reached.
+     * 
+     * @param length Number of written bytes.
+     * @throws IOException In case of IO error.
+     */
+    private void countUnflushed(int length) throws IOException {
+        unflushedBytes += length;
+        if(unflushedBytes >= flushThreshold) {
+	  outputStream.flush();
+	  unflushedBytes = 0;
+        }
+    }
+
     /**
      * Writes a string to the clients output stream.
      * 
@@ -286,12 +613,298 @@ public class RequestContext {
      * @throws IOException In case of IO error.
      */
     public RequestContext write(String text) throws IOException {
+        ResponseWriter writer = getWriter();
+        writer.write(text);
+        writer.endOfInput();
+        return this;
+    }
+
+    /**
+     * Writes a part of the character array to the clients output stream, the same way as
+     * {@link #write(String)}, without creating a string.
+     * 
+     * @param chars Array of characters to be written.
+     * @param offset Index of the first character to write.
+     * @param length Number of characters to write.
+     * @return Returns this.
+     * @throws IOException In case of IO error.
+     */
+    public RequestContext write(char[] chars, int offset, int length) throws IOException {
+        ResponseWriter writer = getWriter();
+        writer.write(chars, offset, length);
+        writer.endOfInput();
+        return this;
+    }
+
+    /**
+     * Writes an already encoded static text to the clients output stream.
+     * Text is written the same way as by {@link #write(String)}, but it is not encoded again.
+     * 
+     * @param text Text to be written to the {@link OutputStream}.
+     * @return Returns this.
+     * @throws IOException In case of IO error.
+     */
+    public RequestContext write(EncodedText text) throws IOException {
+        if(writer != null) {
+	  writer.flush();
+        }
+        byte[] bytes = text.getBytes(charset);
+        writeBytes(bytes, 0, bytes.length);
+        return this;
+    }
+
+    /**
+     * Returns the writer of the response, which encodes the characters with the
+     * encoding of the response and writes them the same way as {@link #write(String)}.
+     * 
+     * Writer buffers the characters, so it must be flushed to keep it's output in order with
+     * the bytes written to this context directly. That is done by all write methods of this
+     * context and by {@link #finish()}. Encoding can still be changed before the header is
+     * generated, writer is flushed in that case.
+     * 
+     * @return Writer of the response.
+     */
+    public ResponseWriter getWriter() {
+        if(writer == null) {
+	  writer = new ResponseWriter(charset);
+        }
+        return writer;
+    }
+
+    /**
+     * Returns the binary stream of the response, which writes the bytes the same way
+     * as {@link #write(byte[], int, int)}. Closing the stream does not finish the response.
+     * 
+     * @return Output stream of the response.
+     */
+    public OutputStream getOutputStream() {
+        if(stream == null) {
+	  stream = new OutputStream() {
+
+	      /**
+	       * Represents the array used for writing single bytes.
+	       */
+	      private final byte[] single = new byte[1];
+
+	      @Override
+	      public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		RequestContext.this.write(single, 0, 1);
+	      }
+
+	      @Override
+	      public void write(byte[] b, int off, int len) throws IOException {
+		RequestContext.this.write(b, off, len);
+	      }
+	  };
+        }
+        return stream;
+    }
+
+    /**
+     * Returns the channel of the response, which writes the bytes the same way
+     * as {@link #write(byte[], int, int)}. Closing the channel does not finish the response.
+     * 
+     * @return Channel of the response.
+     */
+    public WritableByteChannel getChannel() {
+        if(channel == null) {
+	  channel = new WritableByteChannel() {
+
+	      @Override
+	      public boolean isOpen() {
+		return true;
+	      }
+
+	      @Override
+	      public void close() {}
+
+	      @Override
+	      public int write(ByteBuffer src) throws IOException {
+		int length = src.remaining();
+		RequestContext.this.write(src);
+		return length;
+	      }
+	  };
+        }
+        return channel;
+    }
+
+    /**
+     * Finishes the response.
+     * 
+     * Generates the header if it was not generated yet (even if nothing was written) and
+     * writes all of the buffered data to the {@link OutputStream}.
+     * 
+     * @throws IOException In case of IO error.
+     */
+    public void finish() throws IOException {
+        if(writer != null) {
+	  writer.endOfInput();
+        }
+        assumeNotRevoked();
         if(!headerGenerated) {
-	  charset = Charset.forName(encoding);
-	  generateHeader();
+	  commit(true);
+        }
+        outputStream.flush();
+        unflushedBytes = 0;
+    }
+
+    /**
+     * Writes a complete, already encoded response: it's head, followed by the cookies of this
+     * context, and it's body. Can be invoked only before the header of the response was generated,
+     * response is finished afterwards.
+     * 
+     * @param head Encoded status line and header lines, without cookies and the empty line.
+     * @param body Encoded body of the response.
+     * @throws IOException In case of IO error.
+     */
+    public void writeEncoded(byte[] head, byte[] body) throws IOException {
+        assumeHeaderNotGenerated();
+        if(commitListener != null) {
+	  commitListener.beforeCommit(this, true);
+        }
+        takeOwnership();
+        bufferedBytes = 0;
+
+        if(gatheringChannel != null) {
+	  gather(head, ByteBuffer.wrap(body));
+	  headerGenerated = true;
+	  return;
+        }
+
+        outputStream.write(head);
+        if(dateHeader) {
+	  outputStream.write(DateHeader.get());
+        }
+        for(RCCookie cookie : this.outputCookies) {
+	  outputStream.write(cookie.getHeaderBytes());
+        }
+        outputStream.write(CRLF);
+        headerGenerated = true;
+
+        outputStream.write(body);
+        outputStream.flush();
+    }
+
+    /**
+     * Generates the header and writes the buffered data, if any.
+     * Notifies the commit listener before the header is generated.
+     * 
+     * @param complete Flag which indicates if the whole response is already known.
+     * @throws IOException In case of IO error.
+     */
+    private void commit(boolean complete) throws IOException {
+        commit(complete, null);
+    }
+
+    /**
+     * Generates the header and writes the buffered data, if any, followed by the given body.
+     * If the gathering channel is set, everything is written with a single gathering write.
+     * Notifies the commit listener before the header is generated.
+     * 
+     * @param complete Flag which indicates if the whole response is already known.
+     * @param body Body to write after the buffered data, or <code>null</code>.
+     * @throws IOException In case of IO error.
+     */
+    private void commit(boolean complete, ByteBuffer body) throws IOException {
+        if(commitListener != null) {
+	  commitListener.beforeCommit(this, complete);
+        }
+        takeOwnership();
+
+        if(gatheringChannel != null) {
+	  ByteBuffer buffered = bufferedBytes > 0 ? ByteBuffer.wrap(buffer, 0, bufferedBytes) : null;
+	  gather(null, buffered, body);
 	  headerGenerated = true;
+	  bufferedBytes = 0;
+	  return;
+        }
+
+        generateHeader();
+        headerGenerated = true;
+
+        if(bufferedBytes > 0) {
+	  outputStream.write(buffer, 0, bufferedBytes);
+	  bufferedBytes = 0;
+        }
+        if(body != null) {
+	  writeBuffer(body);
+        }
+    }
+
+    /**
+     * Writes the header, followed by the given body buffers, to the gathering channel with
+     * a single gathering write (repeated only if the channel did not accept everything).
+     * 
+     * @param head Encoded status line and header lines without cookies, or <code>null</code>
+     * if they should be generated from this context.
+     * @param body Body buffers, <code>null</code> elements are skipped.
+     * @throws IOException In case of IO error.
+     */
+    private void gather(byte[] head, ByteBuffer... body) throws IOException {
+        ByteBuffer[] parts = new ByteBuffer[outputCookies.size() + body.length + 4];
+        int count = 0;
+        if(head == null) {
+	  parts[count++] = ByteBuffer.wrap(HeaderFragments.statusLine(statusCode, statusText));
+	  parts[count++] = ByteBuffer.wrap(HeaderFragments.contentType(mimeType, encoding));
+        } else {
+	  parts[count++] = ByteBuffer.wrap(head);
+        }
+        if(dateHeader) {
+	  parts[count++] = ByteBuffer.wrap(DateHeader.get());
+        }
+        for(RCCookie cookie : this.outputCookies) {
+	  parts[count++] = ByteBuffer.wrap(cookie.getHeaderBytes());
+        }
+        parts[count++] = ByteBuffer.wrap(CRLF);
+
+        for(ByteBuffer part : body) {
+	  if(part != null) {
+	      parts[count++] = part;
+	  }
+        }
+
+        long remaining = 0;
+        for(int i = 0; i < count; i++) {
+	  remaining += parts[i].remaining();
+        }
+
+        outputStream.flush();
+        while(remaining > 0) {
+	  remaining -= gatheringChannel.write(parts, 0, count);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer after the header was generated, either
+     * directly to the gathering channel or by copying it to the output stream.
+     * 
+     * @param data Buffer to write.
+     * @throws IOException In case of IO error.
+     */
+    private void writeBuffer(ByteBuffer data) throws IOException {
+        if(gatheringChannel != null) {
+	  outputStream.flush();
+	  while(data.hasRemaining()) {
+	      gatheringChannel.write(data);
+	  }
+	  return;
+        }
+
+        if(data.hasArray()) {
+	  outputStream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+	  data.position(data.limit());
+	  return;
+        }
+        if(copyBuffer == null) {
+	  copyBuffer = new byte[8192];
+        }
+        while(data.hasRemaining()) {
+	  int n = Math.min(copyBuffer.length, data.remaining());
+	  data.get(copyBuffer, 0, n);
+	  outputStream.write(copyBuffer, 0, n);
         }
-        return write(text.getBytes(charset));
     }
     
     /**
@@ -309,41 +922,43 @@ public class RequestContext {
      * Writes a predefined header layout to the client's {@link OutputStream}.
      * 
      * Header contains informations about the response, such as HTTP version, mime type, 
-     * cookies and etc.
-     *s
+     * cookies and etc. Status and content type lines are taken from {@link HeaderFragments},
+     * so only the cached arrays are copied.
+     *
      * @throws IOException In case of IO error during writing.
      */
     private void generateHeader() throws IOException {
+        outputStream.write(HeaderFragments.statusLine(statusCode, statusText));
+        outputStream.write(HeaderFragments.contentType(mimeType, encoding));
+        if(dateHeader) {
+	  outputStream.write(DateHeader.get());
+        }
+        for(RCCookie cookie : this.outputCookies) {
+	  outputStream.write(cookie.getHeaderBytes());
+        }
+        outputStream.write(CRLF);
+    }
 
-        StringBuilder sb = new StringBuilder();
-        
-        sb.append("HTTP/1.1 "+statusCode+" "+statusText+"\r\n");
-        sb.append("Content-Type: "+mimeType);
-        sb.append(mimeType.startsWith("text/") ? "; charset=" + encoding : "");
-        sb.append("\r\n");
-        
-        if(!this.outputCookies.isEmpty()) {
-	  for(RCCookie cookie : this.outputCookies) {
-	      sb.append("Set-Cookie: ");
-	      if(cookie.name != null && cookie.value != null) {
-		sb.append(cookie.name+"=\""+cookie.value+"\"");
-	      }
-	      if(cookie.domain != null) {
-		sb.append("; Domain="+cookie.domain);
-	      }
-	      if(cookie.path != null) {
-		sb.append("; Path="+cookie.path);
-	      }
-    	      if(cookie.maxAge != null) {
-    		sb.append("; Max-Age="+cookie.maxAge);
-    	      }
-    	      sb.append("; HttpOnly");
-    	      sb.append("\r\n");
-	  }
+    /**
+     * Takes the ownership of the output stream right before the header is written.
+     * 
+     * @throws IOException If the response was revoked.
+     */
+    private void takeOwnership() throws IOException {
+        if(!state.compareAndSet(OPEN, COMMITTED)) {
+	  throw new IOException("Response was revoked.");
         }
-        sb.append("\r\n");
+    }
 
-        outputStream.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+    /**
+     * Fails fast if the response was revoked, see {@link #revoke()}.
+     * 
+     * @throws IOException If the response was revoked.
+     */
+    private void assumeNotRevoked() throws IOException {
+        if(state.get() == REVOKED) {
+	  throw new IOException("Response was revoked.");
+        }
     }
 
     /**
@@ -359,6 +974,195 @@ public class RequestContext {
     }
 
 
+    /**
+     * Represents the writer of the response.
+     * 
+     * Characters are collected in a buffer and encoded with a reused {@link CharsetEncoder}
+     * into a reused byte buffer, which is written to the context once it is full or
+     * the writer is flushed. Malformed and unmappable characters are replaced, the same way
+     * {@link String#getBytes(Charset)} does.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    public class ResponseWriter extends Writer {
+
+        /**
+         * Represents the size of the character buffer.
+         */
+        private static final int CHAR_BUFFER_SIZE = 1024;
+
+        /**
+         * Represents the size of the byte buffer.
+         */
+        private static final int BYTE_BUFFER_SIZE = 4096;
+
+        /**
+         * Represents the characters which are not encoded yet.
+         */
+        private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+        /**
+         * Represents the encoded bytes which are not written yet.
+         */
+        private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+        /**
+         * Represents the encoder of the characters.
+         */
+        private CharsetEncoder encoder;
+
+        /**
+         * Private constructor.
+         * 
+         * @param charset Charset of the response.
+         */
+        private ResponseWriter(Charset charset) {
+	  setCharset(charset);
+        }
+
+        /**
+         * Discards all written characters and encodes the following ones with the given charset.
+         * 
+         * @param charset Charset of the response.
+         */
+        private void reset(Charset charset) {
+	  chars.clear();
+	  bytes.clear();
+	  if(encoder.charset().equals(charset)) {
+	      encoder.reset();
+	  } else {
+	      encoder = null;
+	      setCharset(charset);
+	  }
+        }
+
+        /**
+         * Flushes the written characters and encodes the following ones with the given charset.
+         * 
+         * @param charset Charset of the response.
+         */
+        private void setCharset(Charset charset) {
+	  if(encoder != null) {
+	      try {
+		endOfInput();
+	      } catch (IOException e) {
+		throw new IllegalStateException("Writer could not be flushed.", e);
+	      }
+	  }
+	  encoder = charset.newEncoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+	  while(len > 0) {
+	      int n = Math.min(len, chars.remaining());
+	      chars.put(cbuf, off, n);
+	      off += n;
+	      len -= n;
+	      if(!chars.hasRemaining()) {
+		encode(false);
+	      }
+	  }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+	  while(len > 0) {
+	      int n = Math.min(len, chars.remaining());
+	      chars.put(str, off, off + n);
+	      off += n;
+	      len -= n;
+	      if(!chars.hasRemaining()) {
+		encode(false);
+	      }
+	  }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+	  chars.put((char) c);
+	  if(!chars.hasRemaining()) {
+	      encode(false);
+	  }
+        }
+
+        @Override
+        public Writer append(CharSequence csq, int start, int end) throws IOException {
+	  CharSequence sequence = csq == null ? "null" : csq;
+	  for(int i = start; i < end; i++) {
+	      write(sequence.charAt(i));
+	  }
+	  return this;
+        }
+
+        /**
+         * Writes all encoded characters to the context. If the last written character is
+         * the first half of a surrogate pair, it waits for the second half.
+         */
+        @Override
+        public void flush() throws IOException {
+	  if(chars.position() == 0 && bytes.position() == 0) return;
+
+	  encode(false);
+	  drain();
+        }
+
+        /**
+         * Flushes the writer; response is not finished.
+         */
+        @Override
+        public void close() throws IOException {
+	  flush();
+        }
+
+        /**
+         * Encodes and writes all characters, including an unpaired surrogate, and resets
+         * the encoder.
+         * 
+         * @throws IOException In case of IO error.
+         */
+        private void endOfInput() throws IOException {
+	  encode(true);
+	  while(encoder.flush(bytes).isOverflow()) {
+	      drain();
+	  }
+	  drain();
+	  encoder.reset();
+        }
+
+        /**
+         * Encodes the buffered characters, writing the encoded bytes whenever the byte
+         * buffer is full.
+         * 
+         * @param endOfInput Flag which indicates if there are no more characters.
+         * @throws IOException In case of IO error.
+         */
+        private void encode(boolean endOfInput) throws IOException {
+	  chars.flip();
+	  while(true) {
+	      CoderResult result = encoder.encode(chars, bytes, endOfInput);
+	      if(!result.isOverflow()) break;
+	      drain();
+	  }
+	  chars.compact();
+        }
+
+        /**
+         * Writes the encoded bytes to the context.
+         * 
+         * @throws IOException In case of IO error.
+         */
+        private void drain() throws IOException {
+	  if(bytes.position() == 0) return;
+
+	  writeBytes(bytes.array(), 0, bytes.position());
+	  bytes.clear();
+        }
+    }
+
     /**
      * Represents the cookie used in this type of request - {@link RequestContext}.
      * This cookie is available to store informations such as name, value, domain, path and maxAge
@@ -390,13 +1194,18 @@ public class RequestContext {
         /**
          * Represents the path of the cookie.
          */
-        private final Path path;
+        private final String path;
 
         /**
          * Represents the maximal age of the cookie.
          */
         private final Integer maxAge;
 
+        /**
+         * Represents the encoded "Set-Cookie" header line of this cookie, created on first use.
+         */
+        private byte[] headerBytes;
+
         /**
          * Public constructor.
          * Sets fields to the given values.
@@ -412,7 +1221,7 @@ public class RequestContext {
 	  this.name = name;
 	  this.value = value;
 	  this.domain = domain;
-	  this.path = Paths.get(path);
+	  this.path = path;
 	  this.maxAge = maxAge;
         }
 
@@ -449,7 +1258,7 @@ public class RequestContext {
          * @return Path Gets the path.
          */
         public Path getPath() {
-	  return path;
+	  return path == null ? null : Paths.get(path);
         }
 
         /**
@@ -460,5 +1269,36 @@ public class RequestContext {
         public Integer getMaxAge() {
 	  return maxAge;
         }
+
+        /**
+         * Returns the "Set-Cookie" header line of this cookie, including the line ending,
+         * encoded in ISO-8859-1.
+         * 
+         * Cookie is immutable, so the line is encoded only once.
+         * 
+         * @return Encoded header line, must not be modified.
+         */
+        public byte[] getHeaderBytes() {
+	  byte[] bytes = headerBytes;
+	  if (bytes == null) {
+	      StringBuilder sb = new StringBuilder("Set-Cookie: ");
+	      if (name != null && value != null) {
+		sb.append(name).append("=\"").append(value).append('"');
+	      }
+	      if (domain != null) {
+		sb.append("; Domain=").append(domain);
+	      }
+	      if (path != null) {
+		sb.append("; Path=").append(path);
+	      }
+	      if (maxAge != null) {
+		sb.append("; Max-Age=").append(maxAge);
+	      }
+	      sb.append("; HttpOnly\r\n");
+	      bytes = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	      headerBytes = bytes;
+	  }
+	  return bytes;
+        }
     }
 }
@@ -0,0 +1,204 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.collections.CompactMap;
+import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+
+/**
+ * Represents the reusable objects of a single request: it's parameters, output cookies and
+ * {@link RequestContext}.
+ * 
+ * <p>Scopes are pooled per thread. A scope is acquired by the thread which reads the request
+ * and is owned by that request until it is released, after which it is returned to the pool
+ * of the acquiring thread (even if the request was finished by another thread).</p>
+ * 
+ * <p>A scope may be reused only if nothing refers to it after the response was finished.
+ * That is known only for responses which were completed synchronously, so once a response
+ * continues asynchronously, it's scope must be {@link #detach() detached}: it is never
+ * returned to the pool and asynchronous code may keep using it.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class RequestScope {
+
+    /**
+     * Represents the maximal number of idle scopes kept by a single thread.
+     */
+    private static final int POOL_CAPACITY = 16;
+
+    /**
+     * Represents the pools of idle scopes, by thread.
+     */
+    private static final ThreadLocal<Pool> POOLS = ThreadLocal.withInitial(Pool::new);
+
+    /**
+     * Represents the pool the scope is returned to.
+     */
+    private final Pool pool;
+
+    /**
+     * Represents the parameters of the request.
+     */
+    private final Map<String, String> parameters = new CompactMap<>();
+
+    /**
+     * Represents the output cookies of the request.
+     */
+    private final List<RCCookie> outputCookies = new ArrayList<>();
+
+    /**
+     * Represents the context of the request, created on the first use.
+     */
+    private RequestContext context;
+
+    /**
+     * Represents the flag which indicates if the scope is owned by a request.
+     */
+    private boolean active;
+
+    /**
+     * Represents the flag which indicates if the scope will not be reused.
+     */
+    private boolean detached;
+
+    /**
+     * Private constructor, scopes are created by {@link #acquire()}.
+     * 
+     * @param pool Pool the scope is returned to.
+     */
+    private RequestScope(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Acquires an idle scope from the current thread's pool, or creates a new one.
+     * Parameters and output cookies of the returned scope are empty.
+     * 
+     * @return Acquired scope.
+     */
+    public static RequestScope acquire() {
+        Pool pool = POOLS.get();
+        RequestScope scope = pool.poll();
+        if (scope == null) {
+	  scope = new RequestScope(pool);
+        }
+        scope.active = true;
+        return scope;
+    }
+
+    /**
+     * The parameters getter.
+     * 
+     * @return Map Gets the parameters of the request.
+     */
+    public Map<String, String> getParameters() {
+        assumeActive();
+        return parameters;
+    }
+
+    /**
+     * The output cookies getter.
+     * 
+     * @return List Gets the output cookies of the request.
+     */
+    public List<RCCookie> getOutputCookies() {
+        assumeActive();
+        return outputCookies;
+    }
+
+    /**
+     * Returns the reset context of the request, which uses the parameters and the output
+     * cookies of this scope.
+     * 
+     * @param outputStream The client's output stream.
+     * @param persistentParameters Persistent parameters of the request.
+     * @return Context of the request.
+     */
+    public RequestContext context(OutputStream outputStream,
+	  Map<String, String> persistentParameters) {
+        assumeActive();
+        if (context == null) {
+	  context = new RequestContext(outputStream, parameters, persistentParameters,
+		outputCookies);
+        } else {
+	  context.reset(outputStream, persistentParameters);
+        }
+        return context;
+    }
+
+    /**
+     * Marks the scope as not reusable, since the response continues asynchronously.
+     */
+    public void detach() {
+        assumeActive();
+        detached = true;
+    }
+
+    /**
+     * Ends the ownership of the request. Scope is cleared and returned to the pool of the
+     * thread which acquired it, unless it was detached.
+     * 
+     * @throws IllegalStateException If the scope was already released.
+     */
+    public void release() {
+        assumeActive();
+        active = false;
+        if (detached) return;
+
+        parameters.clear();
+        outputCookies.clear();
+        pool.offer(this);
+    }
+
+    /**
+     * Checks if the scope is owned by a request.
+     * 
+     * @throws IllegalStateException If the scope was already released.
+     */
+    private void assumeActive() {
+        if (!active) {
+	  throw new IllegalStateException("Request scope was already released.");
+        }
+    }
+
+    /**
+     * Represents the idle scopes of a single thread. Scopes may be returned by other threads,
+     * so the pool is synchronized.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Pool {
+
+        /**
+         * Represents the idle scopes.
+         */
+        private final ArrayDeque<RequestScope> idle = new ArrayDeque<>(POOL_CAPACITY);
+
+        /**
+         * Takes an idle scope.
+         * 
+         * @return Idle scope, or <code>null</code> if there is none.
+         */
+        synchronized RequestScope poll() {
+	  return idle.pollLast();
+        }
+
+        /**
+         * Returns the scope to the pool, if it is not full.
+         * 
+         * @param scope Scope to return.
+         */
+        synchronized void offer(RequestScope scope) {
+	  if (idle.size() < POOL_CAPACITY) {
+	      idle.addLast(scope);
+	  }
+        }
+    }
+}
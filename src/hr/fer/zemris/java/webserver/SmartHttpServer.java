@@ -1,23 +1,28 @@
 package hr.fer.zemris.java.webserver;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -25,14 +30,46 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import hr.fer.zemris.java.custom.collections.CompactMap;
+import hr.fer.zemris.java.custom.collections.ConcurrentCompactMap;
+import hr.fer.zemris.java.custom.scripting.compiler.ICompiledScript;
+import hr.fer.zemris.java.custom.scripting.compiler.ScriptClassCompiler;
 import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptOptimizer;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.vm.Program;
+import hr.fer.zemris.java.custom.scripting.vm.ProgramCompiler;
+import hr.fer.zemris.java.custom.scripting.vm.SmartScriptVM;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.buffers.BufferPool;
+import hr.fer.zemris.java.webserver.buffers.PooledBuffer;
+import hr.fer.zemris.java.webserver.buffers.PooledOutputStream;
+import hr.fer.zemris.java.webserver.cache.CachePolicy;
+import hr.fer.zemris.java.webserver.cache.CachedResponse;
+import hr.fer.zemris.java.webserver.cache.ResponseCache;
+import hr.fer.zemris.java.webserver.cache.SmartScriptCache;
+import hr.fer.zemris.java.webserver.http.CannedResponses;
+import hr.fer.zemris.java.webserver.http.CookieParser;
+import hr.fer.zemris.java.webserver.routing.IRouteHandler;
+import hr.fer.zemris.java.webserver.routing.Route;
+import hr.fer.zemris.java.webserver.routing.RouteTable;
+import hr.fer.zemris.java.webserver.session.SessionCookieCodec;
+import hr.fer.zemris.java.webserver.session.SessionCookieCodec.DecodedCookie;
+import hr.fer.zemris.java.webserver.session.SessionKey;
 import hr.fer.zemris.java.webserver.workers.CircleWorker;
 import hr.fer.zemris.java.webserver.workers.EchoParams;
 import hr.fer.zemris.java.webserver.workers.HelloWorker;
@@ -100,9 +137,260 @@ public class SmartHttpServer {
     private static final String WORKERS_KEY = "server.workers";
 
     /**
-     * Represents the default buffer size. 
+     * Represents the key used for the size of the response buffer.
+     */
+    private static final String RESPONSE_BUFFER_KEY = "server.responseBuffer";
+
+    /**
+     * Represents the key used for enabling the sessions stored in signed cookies.
+     */
+    private static final String COOKIE_SESSION_KEY = "session.cookie.enabled";
+
+    /**
+     * Represents the key used for the keys which sign the session cookies.
+     */
+    private static final String COOKIE_SESSION_KEYS_KEY = "session.cookie.keys";
+
+    /**
+     * Represents the key used for enabling the encryption of session cookies.
+     */
+    private static final String COOKIE_SESSION_ENCRYPT_KEY = "session.cookie.encrypt";
+
+    /**
+     * Represents the key used for the maximal size of session cookies.
+     */
+    private static final String COOKIE_SESSION_MAX_SIZE_KEY = "session.cookie.maxSize";
+
+    /**
+     * Represents the key used for instantiating all workers at startup.
+     */
+    private static final String PRELOAD_WORKERS_KEY = "server.preloadWorkers";
+
+    /**
+     * Represents the key used for the number of milliseconds an asynchronous response may take.
+     */
+    private static final String ASYNC_TIMEOUT_KEY = "server.asyncTimeout";
+
+    /**
+     * Represents the default number of milliseconds an asynchronous response may take.
+     */
+    private static final long DEFAULT_ASYNC_TIMEOUT = 30 * 1000;
+
+    /**
+     * Represents the key used for the flag which indicates if responses contain the "Date" header.
+     */
+    private static final String DATE_HEADER_KEY = "server.dateHeader";
+
+    /**
+     * Represents the prefix of the worker configuration keys which define executors.
+     */
+    private static final String EXECUTOR_PREFIX = "executor.";
+
+    /**
+     * Represents the name of the executor used by dynamic routes which do not name one.
+     */
+    private static final String DEFAULT_EXECUTOR = "default";
+
+    /**
+     * Represents the default number of tasks waiting in an executor's queue.
+     */
+    private static final int DEFAULT_EXECUTOR_QUEUE = 64;
+
+    /**
+     * Represents the route which lists the executors and their metrics.
+     */
+    private static final String EXECUTORS_ROUTE = "/server/executors";
+
+    /**
+     * Represents the key used for the token which allows access to the diagnostic routes.
+     */
+    private static final String DIAGNOSTICS_TOKEN_KEY = "server.diagnosticsToken";
+
+    /**
+     * Represents the key used for the number of buffers per size class cached by each thread.
+     */
+    private static final String BUFFERS_THREAD_CACHE_KEY = "buffers.threadCache";
+
+    /**
+     * Represents the default number of buffers per size class cached by each thread.
+     */
+    private static final int DEFAULT_BUFFERS_THREAD_CACHE = 4;
+
+    /**
+     * Represents the key used for the number of buffers per size class shared by all threads.
+     */
+    private static final String BUFFERS_SHARED_KEY = "buffers.shared";
+
+    /**
+     * Represents the default number of buffers per size class shared by all threads.
+     */
+    private static final int DEFAULT_BUFFERS_SHARED = 64;
+
+    /**
+     * Represents the key used for the flag which enables detection of not released buffers.
+     */
+    private static final String BUFFERS_LEAK_DETECTION_KEY = "buffers.leakDetection";
+
+    /**
+     * Represents the route which lists the buffer pools and their metrics.
+     */
+    private static final String BUFFERS_ROUTE = "/server/buffers";
+
+    /**
+     * Represents the maximal size of a request header in bytes.
+     */
+    private static final int MAX_REQUEST_HEADER = 16 * 1024;
+
+    /**
+     * Represents the size of the client's output stream buffer in bytes.
      */
-    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Represents the key used for the maximal number of bytes of cached responses.
+     */
+    private static final String CACHE_SIZE_KEY = "cache.maxBytes";
+
+    /**
+     * Represents the key used for the default number of seconds responses are cached.
+     */
+    private static final String CACHE_TTL_KEY = "cache.ttl";
+
+    /**
+     * Represents the key used for the token which allows purging the cache.
+     */
+    private static final String CACHE_PURGE_TOKEN_KEY = "cache.purgeToken";
+
+    /**
+     * Represents the key used for the minimal number of milliseconds between two checks
+     * whether a compiled smart script's file changed.
+     */
+    private static final String SCRIPT_REVALIDATE_KEY = "scripts.revalidateMillis";
+
+    /**
+     * Represents the default number of milliseconds between two checks of a smart script's file.
+     */
+    private static final long DEFAULT_SCRIPT_REVALIDATE = 1000;
+
+    /**
+     * Represents the key used for the way smart scripts are executed: "tree" for the
+     * {@link SmartScriptEngine}, "vm" for the {@link SmartScriptVM} or "class" for classes
+     * compiled by the {@link ScriptClassCompiler}.
+     */
+    private static final String SCRIPT_ENGINE_KEY = "scripts.engine";
+
+    /**
+     * Represents the default way of executing smart scripts.
+     */
+    private static final String DEFAULT_SCRIPT_ENGINE = "vm";
+
+    /**
+     * Represents the key used for the directory of the smart scripts compiled to classes.
+     */
+    private static final String SCRIPT_CLASS_CACHE_KEY = "scripts.classCache";
+
+    /**
+     * Represents the key used for the secret which signs the smart scripts compiled to classes.
+     */
+    private static final String SCRIPT_CLASS_CACHE_SECRET_KEY = "scripts.classCacheKey";
+
+    /**
+     * Represents the key used for the number of bytes of smart script output which are
+     * collected before they are flushed to the client.
+     */
+    private static final String SCRIPT_FLUSH_THRESHOLD_KEY = "scripts.flushThreshold";
+
+    /**
+     * Represents the default number of bytes of smart script output collected before a flush.
+     */
+    private static final int DEFAULT_SCRIPT_FLUSH_THRESHOLD = 8 * 1024;
+
+    /**
+     * Represents the key used for turning on the {@link SmartScriptOptimizer} for parsed
+     * smart scripts.
+     */
+    private static final String SCRIPT_OPTIMIZE_KEY = "scripts.optimize";
+
+    /**
+     * Represents the key used for the maximal number of characters of text rendered from
+     * a single for-loop by the {@link SmartScriptOptimizer}.
+     */
+    private static final String SCRIPT_PRE_RENDER_LIMIT_KEY = "scripts.preRenderLimit";
+
+    /**
+     * Represents the default maximal number of bytes of cached responses.
+     */
+    private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Represents the default number of seconds responses are cached.
+     */
+    private static final int DEFAULT_CACHE_TTL = 5;
+
+    /**
+     * Represents the route which shows the cache metrics.
+     */
+    private static final String CACHE_ROUTE = "/server/cache";
+
+    /**
+     * Represents the route which purges the cache.
+     */
+    private static final String CACHE_PURGE_ROUTE = "/server/cache/purge";
+
+    /**
+     * Represents the name of the handler which executes smart scripts, usable in routes.
+     */
+    private static final String SCRIPT_HANDLER = "script";
+
+    /**
+     * Represents the name of the handler which serves files, usable in routes.
+     */
+    private static final String FILE_HANDLER = "file";
+
+    /**
+     * Represents the path prefix of the workers which are reachable by their class name.
+     */
+    private static final String EXT_PREFIX = "/ext/";
+
+    /**
+     * Represents the route of the workers which are reachable by their class name.
+     */
+    private static final String EXT_ROUTE = EXT_PREFIX + "*";
+
+    /**
+     * Represents the route of the smart scripts.
+     */
+    private static final String SMART_SCRIPT_ROUTE = "*.smscr";
+
+    /**
+     * Represents the default mime type in case none was provided.
+     */
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    /**
+     * Represents the default size of the response buffer.
+     */
+    private static final int DEFAULT_RESPONSE_BUFFER = 8 * 1024;
+
+    /**
+     * Represents the default maximal size of session cookies.
+     */
+    private static final int DEFAULT_COOKIE_SESSION_MAX_SIZE = 3 * 1024;
+
+    /**
+     * Represents the name of the cookie which stores the session parameters.
+     */
+    private static final String SESSION_COOKIE_NAME = "session";
+
+    /**
+     * Represents the size of files which are read to the memory, larger files are mapped. 
+     */
+    private static final int MAPPED_FILE_THRESHOLD = 64 * 1024;
+
+    /**
+     * Represents the maximal size of a single mapped region of a file.
+     */
+    private static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
 
     /**
      * Represents the number of seconds per day.
@@ -139,6 +427,42 @@ public class SmartHttpServer {
      */
     private int sessionTimeout;
 
+    /**
+     * Represents the size of the buffer used for each response.
+     */
+    private int responseBufferSize;
+
+    /**
+     * Represents the number of milliseconds an asynchronous response may take.
+     */
+    private long asyncTimeout;
+
+    /**
+     * Represents the flag which indicates if responses contain the "Date" header.
+     */
+    private boolean dateHeader;
+
+    /**
+     * Represents the scheduler of the asynchronous response timeouts.
+     */
+    private ScheduledThreadPoolExecutor timeoutScheduler;
+
+    /**
+     * Represents the pool of direct buffers used for socket reads and writes.
+     */
+    private BufferPool directBuffers;
+
+    /**
+     * Represents the pool of heap buffers used for parsing.
+     */
+    private BufferPool heapBuffers;
+
+    /**
+     * Represents the codec used for storing sessions in signed cookies.
+     * If <code>null</code>, all sessions are stored on the server.
+     */
+    private SessionCookieCodec sessionCodec;
+
     /**
      * Represents the provided mime types of the server.
      */
@@ -162,7 +486,7 @@ public class SmartHttpServer {
     /**
      * Represents the map of all sessions of the server.
      */
-    private Map<String, SessionMapEntry> sessions = new HashMap<String, SessionMapEntry>();
+    private Map<String, SessionMapEntry> sessions = new ConcurrentHashMap<String, SessionMapEntry>();
 
     /**
      * Represents the session random of the server, used to create random session IDs.
@@ -170,9 +494,70 @@ public class SmartHttpServer {
     private static Random sessionRandom = new Random();
 
     /**
-     * Represents the workers map of the server.
+     * Represents the routes of the server.
+     */
+    private RouteTable routes;
+
+    /**
+     * Represents the cache of responses, or <code>null</code> if caching is disabled.
+     */
+    private ResponseCache responseCache;
+
+    /**
+     * Represents the cache of parsed and compiled smart scripts.
+     */
+    private SmartScriptCache<ICompiledScript> scriptCache;
+
+    /**
+     * Represents the way smart scripts are executed, see {@link #SCRIPT_ENGINE_KEY}.
+     */
+    private String scriptEngine;
+
+    /**
+     * Represents the compiler of smart scripts to classes, or <code>null</code> if scripts
+     * are not compiled to classes.
+     */
+    private ScriptClassCompiler classCompiler;
+
+    /**
+     * Represents the number of bytes of smart script output collected before a flush.
      */
-    private Map<String, IWebWorker> workersMap = new HashMap<>();
+    private int scriptFlushThreshold;
+
+    /**
+     * Represents the optimizer of parsed smart scripts, or <code>null</code> if scripts
+     * are not optimized.
+     */
+    private SmartScriptOptimizer scriptOptimizer;
+
+    /**
+     * Represents the caching rules of the cacheable routes.
+     */
+    private Map<Route, CachePolicy> cachePolicies = new IdentityHashMap<>();
+
+    /**
+     * Represents the token which allows purging the cache, or <code>null</code> if
+     * purging is disabled.
+     */
+    private String cachePurgeToken;
+
+    /**
+     * Represents the token which allows access to the diagnostic routes, or <code>null</code>
+     * if they are disabled.
+     */
+    private String diagnosticsToken;
+
+    /**
+     * Represents the executors of the routes, by their names.
+     * Routes without an executor are run on the thread which read the request.
+     */
+    private Map<String, Bulkhead> bulkheads = new HashMap<>();
+
+    /**
+     * Represents the registry of workers reachable through the "/ext/" path.
+     */
+    private WorkerRegistry workerRegistry =
+	  new WorkerRegistry(WORKERS_PACKAGE, SmartHttpServer.class.getClassLoader());
 
     /**
      * Represents the thread which periodically (every 5 minutes) removes expired sessions.
@@ -227,6 +612,70 @@ public class SmartHttpServer {
 	  this.workerThreads = Integer.parseInt(serverProperties.getProperty(WORKER_THREADS_KEY));
 	  this.documentRoot = Paths.get(serverProperties.getProperty(DOCUMENT_ROOT_KEY));
 	  this.sessionTimeout = Integer.parseInt(serverProperties.getProperty(TIMEOUT_KEY));
+	  this.responseBufferSize = Integer.parseInt(serverProperties.getProperty(
+		RESPONSE_BUFFER_KEY, String.valueOf(DEFAULT_RESPONSE_BUFFER)));
+	  this.asyncTimeout = Long.parseLong(serverProperties.getProperty(
+		ASYNC_TIMEOUT_KEY, String.valueOf(DEFAULT_ASYNC_TIMEOUT)));
+	  this.dateHeader = Boolean.parseBoolean(serverProperties.getProperty(DATE_HEADER_KEY, "true"));
+
+	  int threadCache = Integer.parseInt(serverProperties.getProperty(
+		BUFFERS_THREAD_CACHE_KEY, String.valueOf(DEFAULT_BUFFERS_THREAD_CACHE)));
+	  int sharedBuffers = Integer.parseInt(serverProperties.getProperty(
+		BUFFERS_SHARED_KEY, String.valueOf(DEFAULT_BUFFERS_SHARED)));
+	  boolean leakDetection = Boolean.parseBoolean(
+		serverProperties.getProperty(BUFFERS_LEAK_DETECTION_KEY));
+	  this.directBuffers = new BufferPool("direct", true, threadCache, sharedBuffers,
+		leakDetection);
+	  this.heapBuffers = new BufferPool("heap", false, threadCache, sharedBuffers, leakDetection);
+
+	  long cacheSize = Long.parseLong(serverProperties.getProperty(
+		CACHE_SIZE_KEY, String.valueOf(DEFAULT_CACHE_SIZE)));
+	  if (cacheSize > 0) {
+	      this.responseCache = new ResponseCache(cacheSize);
+	  }
+	  this.cachePurgeToken = serverProperties.getProperty(CACHE_PURGE_TOKEN_KEY);
+	  this.diagnosticsToken = serverProperties.getProperty(DIAGNOSTICS_TOKEN_KEY);
+	  this.scriptEngine = serverProperties.getProperty(SCRIPT_ENGINE_KEY, DEFAULT_SCRIPT_ENGINE).trim();
+	  if (!scriptEngine.equals("tree") && !scriptEngine.equals("vm") && !scriptEngine.equals("class")) {
+	      throw new IllegalArgumentException("Unknown smart script engine: " + scriptEngine);
+	  }
+	  if (scriptEngine.equals("class")) {
+	      String classCache = serverProperties.getProperty(SCRIPT_CLASS_CACHE_KEY);
+	      String classCacheKey = serverProperties.getProperty(SCRIPT_CLASS_CACHE_SECRET_KEY);
+	      this.classCompiler = classCache == null || classCache.trim().isEmpty()
+		    ? new ScriptClassCompiler(null, null)
+		    : new ScriptClassCompiler(Paths.get(classCache.trim()), classCacheKey == null
+		        ? null : Base64.getDecoder().decode(classCacheKey.trim()));
+	      if (!classCompiler.isAvailable()) {
+		System.err.println("Java compiler is not available, only already compiled scripts "
+		        + "will run as classes.");
+	      }
+	  }
+	  this.scriptFlushThreshold = Integer.parseInt(serverProperties.getProperty(
+		SCRIPT_FLUSH_THRESHOLD_KEY, String.valueOf(DEFAULT_SCRIPT_FLUSH_THRESHOLD)));
+	  if (Boolean.parseBoolean(serverProperties.getProperty(SCRIPT_OPTIMIZE_KEY, "true").trim())) {
+	      this.scriptOptimizer = new SmartScriptOptimizer(Integer.parseInt(serverProperties.getProperty(
+		    SCRIPT_PRE_RENDER_LIMIT_KEY,
+		    String.valueOf(SmartScriptOptimizer.DEFAULT_MAX_RENDERED_LENGTH)).trim()));
+	  }
+	  this.scriptCache = new SmartScriptCache<>(this::compileScript,
+		Long.parseLong(serverProperties.getProperty(SCRIPT_REVALIDATE_KEY,
+		      String.valueOf(DEFAULT_SCRIPT_REVALIDATE))));
+
+	  if (Boolean.parseBoolean(serverProperties.getProperty(COOKIE_SESSION_KEY))) {
+	      List<SessionKey> keys =
+		    SessionKey.parseKeys(serverProperties.getProperty(COOKIE_SESSION_KEYS_KEY));
+	      if (keys.isEmpty()) {
+		throw new IllegalArgumentException(COOKIE_SESSION_KEY + " is set, but no "
+		        + COOKIE_SESSION_KEYS_KEY + " are configured.");
+	      }
+	      this.sessionCodec = new SessionCookieCodec(
+		    keys,
+		    Boolean.parseBoolean(serverProperties.getProperty(COOKIE_SESSION_ENCRYPT_KEY)),
+		    Integer.parseInt(serverProperties.getProperty(COOKIE_SESSION_MAX_SIZE_KEY,
+			  String.valueOf(DEFAULT_COOKIE_SESSION_MAX_SIZE))),
+		    sessionTimeout);
+	  }
         } catch (NumberFormatException e) {
 	  throw new IllegalArgumentException(
 		"Problem during reading properties. " + e.getMessage());
@@ -251,38 +700,125 @@ public class SmartHttpServer {
 	  throw new IllegalArgumentException("Worker configuration file not opened.");
         }
 
-        Set<String> workerPaths = workerProperties.stringPropertyNames();
-        workerPaths.forEach(path -> {
-	  String fqcn = workerProperties.getProperty(path);
-	  IWebWorker iww = createWorker(fqcn);
-	  workersMap.put(path, iww);
-        });
+        RouteTable.Builder builder = new RouteTable.Builder();
+        Set<String> workerPaths = new HashSet<>();
+        for (String key : workerProperties.stringPropertyNames()) {
+	  if (!key.startsWith(EXECUTOR_PREFIX)) {
+	      workerPaths.add(key);
+	  }
+        }
+        loadBulkheads(workerProperties);
+
+        workerPaths.forEach(path -> builder.add(withExecutor(Route.parse(path,
+	      workerProperties.getProperty(path), this::workerHandler))));
+
+        if (!workerPaths.contains(EXT_ROUTE)) {
+	  builder.add(withExecutor(new Route(EXT_ROUTE, new WorkerHandler(this::extWorker))));
+        }
+        if (!workerPaths.contains(SMART_SCRIPT_ROUTE)) {
+	  builder.add(withExecutor(new Route(SMART_SCRIPT_ROUTE, this::smartScriptResponse)));
+        }
+        if (diagnosticsToken != null && !workerPaths.contains(EXECUTORS_ROUTE)) {
+	  builder.add(new Route(EXECUTORS_ROUTE, this::executorsResponse));
+        }
+        if (diagnosticsToken != null && !workerPaths.contains(BUFFERS_ROUTE)) {
+	  builder.add(new Route(BUFFERS_ROUTE, this::buffersResponse));
+        }
+        if (responseCache != null && diagnosticsToken != null
+	      && !workerPaths.contains(CACHE_ROUTE)) {
+	  builder.add(new Route(CACHE_ROUTE, this::cacheResponse));
+        }
+        if (responseCache != null && cachePurgeToken != null
+	      && !workerPaths.contains(CACHE_PURGE_ROUTE)) {
+	  builder.add(new Route(CACHE_PURGE_ROUTE, this::cachePurgeResponse));
+        }
+        // static files are served on the thread which read the request, so they never wait
+        // behind dynamic routes
+        builder.setFallback(new Route("/", this::defaultResponse));
+        this.routes = builder.build();
+
+        if (responseCache != null) {
+	  long defaultTtl;
+	  try {
+	      defaultTtl = Long.parseLong(serverProperties.getProperty(CACHE_TTL_KEY,
+		    String.valueOf(DEFAULT_CACHE_TTL))) * 1000;
+	  } catch (NumberFormatException e) {
+	      throw new IllegalArgumentException("Problem during reading properties. "
+		    + e.getMessage());
+	  }
+	  routes.getRoutes().stream().filter(Route::isCacheable)
+		.forEach(route -> cachePolicies.put(route, new CachePolicy(route, defaultTtl)));
+        }
+
+        if (Boolean.parseBoolean(serverProperties.getProperty(PRELOAD_WORKERS_KEY))) {
+	  try {
+	      workerRegistry.preload();
+	  } catch (IOException e) {
+	      throw new IllegalArgumentException("Workers package can not be listed.");
+	  }
+        }
 
         expiredSessionRemover.setDaemon(true);
         expiredSessionRemover.start();
     }
 
     /**
-     * Creates a worker depending on the specified fqcn. 
+     * Creates the executors defined in the workers configuration file.
      * 
-     * Fqcn is the relative path to the package where the JVM can find the {@link IWebWorker}
-     * implementation. Instance of that implementation is then going to be created.
+     * Each executor is defined with the keys <code>executor.name.threads</code> (maximal number
+     * of requests processed at the same time) and <code>executor.name.queue</code> (maximal
+     * number of waiting requests).
      * 
-     * @param fqcn Relative path to the worker class.
-     * @return Instance of the created worker.
+     * @param workerProperties Workers configuration.
+     * @throws IllegalArgumentException In case of not correctly defined executors.
      */
-    private IWebWorker createWorker(String fqcn) {
+    private void loadBulkheads(Properties workerProperties) {
+        for (String key : workerProperties.stringPropertyNames()) {
+	  if (!key.startsWith(EXECUTOR_PREFIX)) continue;
+
+	  int dot = key.lastIndexOf('.');
+	  String name = dot > EXECUTOR_PREFIX.length()
+		? key.substring(EXECUTOR_PREFIX.length(), dot) : "";
+	  String attribute = key.substring(dot + 1);
+	  if (name.isEmpty() || (!attribute.equals("threads") && !attribute.equals("queue"))) {
+	      throw new IllegalArgumentException("Unknown executor property: " + key);
+	  }
+	  if (bulkheads.containsKey(name)) continue;
 
-        Class<?> referenceToClass;
-        Object newObject = null;
-        try {
-	  referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
-	  newObject = referenceToClass.newInstance();
-        } catch (Exception e) {
-	  System.err.println("Can not create worker.");
+	  String threads = workerProperties.getProperty(EXECUTOR_PREFIX + name + ".threads");
+	  String queue = workerProperties.getProperty(EXECUTOR_PREFIX + name + ".queue",
+		String.valueOf(DEFAULT_EXECUTOR_QUEUE));
+	  if (threads == null) {
+	      throw new IllegalArgumentException("Executor " + name + " has no threads defined.");
+	  }
+	  try {
+	      bulkheads.put(name, new Bulkhead(name, Integer.parseInt(threads.trim()),
+		    Integer.parseInt(queue.trim())));
+	  } catch (NumberFormatException e) {
+	      throw new IllegalArgumentException("Executor " + name + " is not correctly defined.");
+	  }
         }
+    }
 
-        return (IWebWorker) newObject;
+    /**
+     * Checks the executor of the route. Routes without an executor are assigned
+     * the default executor, if it is defined.
+     * 
+     * @param route Route to check.
+     * @return Route with a defined executor.
+     * @throws IllegalArgumentException If the route's executor is not defined.
+     */
+    private Route withExecutor(Route route) {
+        String executor = route.getExecutor();
+        if (executor == null) {
+	  return bulkheads.containsKey(DEFAULT_EXECUTOR)
+		? route.withAttribute(Route.EXECUTOR_ATTRIBUTE, DEFAULT_EXECUTOR) : route;
+        }
+        if (!bulkheads.containsKey(executor)) {
+	  throw new IllegalArgumentException(
+		"Route " + route.getPattern() + " uses unknown executor " + executor + ".");
+        }
+        return route;
     }
 
     /**
@@ -293,6 +829,12 @@ public class SmartHttpServer {
      */
     protected synchronized void start() {
         threadPool = Executors.newFixedThreadPool(workerThreads);
+        timeoutScheduler = new ScheduledThreadPoolExecutor(1, r -> {
+	  Thread thread = new Thread(r, "async-timeouts");
+	  thread.setDaemon(true);
+	  return thread;
+        });
+        timeoutScheduler.setRemoveOnCancelPolicy(true);
         this.serverThread = new ServerThread();
         this.serverThread.setDaemon(true);
         this.serverThread.start();
@@ -303,6 +845,8 @@ public class SmartHttpServer {
      */
     protected synchronized void stop() {
         threadPool.shutdown();
+        timeoutScheduler.shutdownNow();
+        bulkheads.values().forEach(Bulkhead::shutdown);
     }
 
     /**
@@ -321,12 +865,15 @@ public class SmartHttpServer {
         @Override
         public void run() {
 
-	  try (ServerSocket serverSocket = new ServerSocket(port)) {
+	  // channels are used so responses can be written with gathering writes
+	  try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+	      serverChannel.bind(new InetSocketAddress(port));
 
 	      while (true) {
 		Socket client = null;
 		try {
-		    client = serverSocket.accept();
+		    SocketChannel clientChannel = serverChannel.accept();
+		    client = clientChannel.socket();
 		} catch (IOException e) {
 		    System.err
 			  .println("Error accepting new socket, waiting for another one...");
@@ -357,14 +904,9 @@ public class SmartHttpServer {
     private class ClientWorker implements Runnable {
 
         /**
-         * Represents the default mime type in case none was provided.
-         */
-        private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
-
-        /**
-         * Represents the extension of a smart script file.
+         * Represents the name of the request header which contains cookies.
          */
-        private static final String SMART_SCRIPT_EXTENSION = "smscr";
+        private static final String COOKIE_HEADER = "Cookie:";
 
         /**
          * Represents the default response status.
@@ -376,11 +918,6 @@ public class SmartHttpServer {
          */
         private Socket csocket;
 
-        /**
-         * Represents the client's input stream.
-         */
-        private PushbackInputStream istream;
-
         /**
          * Represents the client's output stream.
          */
@@ -396,10 +933,15 @@ public class SmartHttpServer {
          */
         private String method;
 
+        /**
+         * Represents the reusable objects of the request.
+         */
+        private RequestScope scope;
+
         /**
          * Represents the parameters of the request.
          */
-        private Map<String, String> params = new HashMap<String, String>();
+        private Map<String, String> params;
 
         /**
          * Represents the persistent parameters of the request.
@@ -409,13 +951,34 @@ public class SmartHttpServer {
         /**
          * Represents the output cookies of the request.
          */
-        private List<RCCookie> outputCookies = new ArrayList<RequestContext.RCCookie>();
+        private List<RCCookie> outputCookies;
 
         /**
          * Represents the session ID of the request.
          */
         private String SID;
 
+        /**
+         * Represents the session cookie sent by the client, if sessions are stored in cookies.
+         */
+        private DecodedCookie sessionCookie;
+
+        /**
+         * Represents the lines of the request header.
+         */
+        private List<String> requestHeader;
+
+        /**
+         * Represents the asynchronous response which is still being created, if any.
+         */
+        private volatile CompletableFuture<Void> pending;
+
+        /**
+         * Represents the persistent parameters at the moment the header was generated,
+         * if that happened before the response was finished.
+         */
+        private Map<String, String> committedParams;
+
         /**
          * Public constructor. Sets the given client's socket.
          * 
@@ -428,53 +991,70 @@ public class SmartHttpServer {
 
         @Override
         public void run() {
-
-	  // obtain input stream from socket and wrap it to pushback input stream
+	  boolean dispatched = false;
 	  try {
-	      this.istream = new PushbackInputStream(csocket.getInputStream());
-	  } catch (IOException e) {
-	      System.err.println("Error creating socket input stream.");
-	      e.printStackTrace();
+	      dispatched = dispatch();
+	  } finally {
+	      // responses which were not dispatched to a handler are already written
+	      if (!dispatched) {
+		closeSocket();
+	      }
 	  }
+        }
+
+        /**
+         * Reads and parses the request and dispatches it to the handler of it's route.
+         * Invalid requests are answered with a canned error response.
+         * 
+         * @return <code>true</code> if the request was dispatched and the handler is now
+         * responsible for closing the connection, elseway <code>false</code>.
+         */
+        private boolean dispatch() {
+	  scope = RequestScope.acquire();
+	  params = scope.getParameters();
+	  outputCookies = scope.getOutputCookies();
+
+	  // everything is read and written through the socket's channel and pooled buffers
+	  SocketChannel channel = csocket.getChannel();
+	  ostream = new PooledOutputStream(channel, directBuffers, OUTPUT_BUFFER_SIZE);
 
-	  // obtain output stream from socket
+	  // Then read complete request header from your client in separate method...
+	  List<String> request;
 	  try {
-	      ostream = new BufferedOutputStream(csocket.getOutputStream());
+	      csocket.setTcpNoDelay(true);
+	      request = readRequest(channel);
 	  } catch (IOException e) {
-	      System.err.println("Error getting output stream.");
-	      e.printStackTrace();
+	      System.err.println("Error reading the request.");
+	      return false;
 	  }
-
-	  // Then read complete request header from your client in separate method...
-	  List<String> request = readRequest(istream);
+	  this.requestHeader = request;
 
 	  // If header is invalid (less then a line at least) return response status 400
-	  if (request.isEmpty()) {
-	      System.err.println("Empty list.");
-	      sendError(ostream, 400, "Bad request.", method, version);
-	      return;
+	  if (request == null || request.isEmpty()) {
+	      sendError(400);
+	      return false;
 	  }
 	  String firstLine = request.get(0);
 	  String[] firstLineArguments = firstLine.isEmpty() ? null : firstLine.split(" ");
 
 	  if (firstLineArguments == null || firstLineArguments.length != 3) {
-	      sendError(ostream, 400, "Bad request", method, version);
-	      return;
+	      sendError(400);
+	      return false;
 	  }
 
 	  // Extract (method, requestedPath, version) from firstLine
-	  // if method not GET or version not HTTP/1.0 or HTTP/1.1 return response status 400
+	  // if method not GET return response status 405, if version not HTTP/1.0 or HTTP/1.1 400
 	  String method = firstLineArguments[0].toUpperCase();
 	  if (!method.equals("GET")) {
-	      sendError(ostream, 400, "Method not allowed", method, version);
-	      return;
+	      sendError(405);
+	      return false;
 	  }
 	  this.method = method;
 
 	  String version = firstLineArguments[2].toUpperCase();
 	  if (!version.equals("HTTP/1.1") && !version.equals("HTTP/1.0")) {
-	      sendError(ostream, 400, "HTTP version not supported", method, version);
-	      return;
+	      sendError(400);
+	      return false;
 	  }
 	  this.version = version;
 
@@ -488,71 +1068,299 @@ public class SmartHttpServer {
 
 	  // parseParameters(paramString); ==> your method to fill map parameters
 	  parseParameters(paramString);
-	  loadCookies(request, path);
-	  // requestedPath = resolve path with respect to documentRoot
-	  // if requestedPath is not below documentRoot, return response status 403 forbidden
-	  IWebWorker worker = workersMap.get(path);
-	  if (worker != null || path.startsWith("/ext")) {
-
-	      if (worker == null) {
-		String workerName = Paths.get(path).getFileName().toString();
-		String fqcn = WORKERS_PACKAGE + "." + workerName;
-		worker = SmartHttpServer.this.createWorker(fqcn);
-	      }
+	  loadCookies(request);
+
+	  Route route = routes.lookup(path);
+	  RequestContext rc = createContext();
+	  if (route.getMimeType() != null) {
+	      rc.setMimeType(route.getMimeType());
+	  }
+	  rc.setStatusCode(DEFAULT_STATUS);
 
-	      RequestContext rc = new RequestContext(ostream, params, permParams, outputCookies);
+	  Bulkhead bulkhead = bulkheads.get(route.getExecutor());
+	  if (bulkhead == null) {
+	      respond(route, path, rc);
+	  } else if (!bulkhead.execute(() -> respond(route, path, rc))) {
+	      complete(rc, new HttpStatusException(503, "Service unavailable."));
+	  }
+	  return true;
+        }
 
-	      if (worker instanceof HelloWorker) {
-		rc.setMimeType(mimeTypes.get("html"));
-	      } else if (worker instanceof CircleWorker) {
-		rc.setMimeType(mimeTypes.get("png"));
-	      }
+        /**
+         * Creates the response using the handler of the given route.
+         * Connection is closed once the response is completed.
+         * 
+         * @param route Route of the request.
+         * @param path Requested path.
+         * @param rc Context of the response.
+         */
+        private void respond(Route route, String path, RequestContext rc) {
+	  CachePolicy policy = cachePolicies.get(route);
+	  CompletableFuture<Void> response;
+	  try {
+	      response = policy == null
+		    ? route.getHandler().handleAsync(path, rc).toCompletableFuture()
+		    : cachedResponse(route, policy, path, rc);
+	  } catch (IOException | RuntimeException e) {
+	      response = new CompletableFuture<>();
+	      response.completeExceptionally(e);
+	  }
+
+	  // asynchronous responses release this thread, connection is closed on completion;
+	  // their scope may still be referenced by the asynchronous code, so it is not reused
+	  if (!response.isDone()) {
+	      scope.detach();
+	      pending = response;
+	      response = withTimeout(response);
+	  }
+	  response.whenComplete((result, error) -> complete(rc, error));
+        }
+
+        /**
+         * Writes the cached response of the request. If it is not cached, response is created
+         * by the route's handler (once for all concurrent requests with the same key) and
+         * cached.
+         * 
+         * @param route Route of the request.
+         * @param policy Caching rules of the route.
+         * @param path Requested path.
+         * @param rc Context of the response.
+         * @return Stage which is completed once the response was written.
+         */
+        private CompletableFuture<Void> cachedResponse(Route route, CachePolicy policy,
+	      String path, RequestContext rc) {
+	  String key = policy.key(route, path, params, requestHeader);
+	  return responseCache.get(key, policy.getTtlMillis(), () -> captureResponse(route, path))
+		.thenAccept(cached -> {
+		    try {
+			rc.writeEncoded(cached.getHead(), cached.getBody());
+		    } catch (IOException e) {
+			throw new CompletionException(e);
+		    }
+		});
+        }
+
+        /**
+         * Creates the response with the route's handler, without writing it to the client.
+         * Response is created without cookies and with empty persistent parameters, whose
+         * changes are discarded, so no session data of the first client can end up in the
+         * response shared between clients.
+         * 
+         * @param route Route of the request.
+         * @param path Requested path.
+         * @return Stage which is completed with the encoded response.
+         */
+        private CompletableFuture<CachedResponse> captureResponse(Route route, String path) {
+	  ByteArrayOutputStream bos = new ByteArrayOutputStream();
+	  RequestContext capture = new RequestContext(bos, params, new CompactMap<>(), null);
+	  if (route.getMimeType() != null) {
+	      capture.setMimeType(route.getMimeType());
+	  }
+	  capture.setStatusCode(DEFAULT_STATUS);
 
-	      rc.setStatusCode(DEFAULT_STATUS);
-	      worker.processRequest(rc);
-	  } else {
-	      Path requestedPath = null;
+	  CompletableFuture<Void> stage;
+	  try {
+	      stage = route.getHandler().handleAsync(path, capture).toCompletableFuture();
+	  } catch (IOException e) {
+	      throw new CompletionException(e);
+	  }
+	  return stage.thenApply(v -> {
 	      try {
-		requestedPath = documentRoot.resolve(path.substring(1, path.length()));
-	      } catch (InvalidPathException e) {
-		sendError(ostream, 403, "Forbidden.", method, version);
-		return;
+		capture.finish();
+	      } catch (IOException e) {
+		throw new CompletionException(e);
 	      }
+	      return CachedResponse.parse(bos.toByteArray());
+	  });
+        }
 
-	      // check if requestedPath exists, is file and is readable; if not, return status 404
-	      if (!Files.exists(requestedPath) || !Files.isReadable(requestedPath)) {
-		sendError(ostream, 404, "File not accessible.", method, version);
-		return;
+        /**
+         * Creates a stage which is completed when the given response is, or exceptionally
+         * with {@link TimeoutException} if the response takes too long. The given response is
+         * not cancelled, since that would not stop the worker behind it: context is revoked
+         * instead (see {@link #complete(RequestContext, Throwable)}) and the connection's
+         * resources are released once the worker completes it.
+         * 
+         * @param response Asynchronous response.
+         * @return Stage completed with the response or the timeout.
+         */
+        private CompletableFuture<Void> withTimeout(CompletableFuture<Void> response) {
+	  CompletableFuture<Void> result = new CompletableFuture<>();
+	  ScheduledFuture<?> timeout = timeoutScheduler.schedule(
+		() -> result.completeExceptionally(new TimeoutException()),
+		asyncTimeout, TimeUnit.MILLISECONDS);
+
+	  response.whenComplete((value, error) -> {
+	      timeout.cancel(false);
+	      if (error == null) {
+		result.complete(value);
+	      } else {
+		result.completeExceptionally(error);
 	      }
-	      // else extract file extension
-	      int indexOfDot = requestedPath.toString().lastIndexOf('.');
-	      String fileExtension = requestedPath.toString().substring(indexOfDot + 1);
+	  });
+	  return result;
+        }
 
-	      // find in mimeTypes map appropriate mimeType for current file extension
-	      // (you filled that map during the construction of SmartHttpServer from mime.properties)
-	      String mimeType = mimeTypes.get(fileExtension);
+        /**
+         * Completes the response: finishes the context if the response was created,
+         * elseway sends the error response. Closes the client's socket in both cases.
+         * 
+         * Error response is sent only if the context is revoked before it committed the response,
+         * so a worker which is still running (after a timeout) and this method never both write.
+         * 
+         * @param rc Context of the response.
+         * @param error Error which occurred during the response, or <code>null</code>.
+         */
+        private void complete(RequestContext rc, Throwable error) {
+	  if (error instanceof CompletionException && error.getCause() != null) {
+	      error = error.getCause();
+	  }
 
-	      // if no mime type found, assume application/octet-stream
-	      // create a rc = new RequestContext(...); set mime-type; set status to 200
+	  try {
+	      if (error == null) {
+		finish(rc);
+	      } else if (!rc.revoke()) {
+		// part of the response is already sent, so the connection is just closed
+		System.err.println("Exception after the response was committed.");
+		error.printStackTrace();
+	      } else if (error instanceof HttpStatusException) {
+		sendError(((HttpStatusException) error).getStatusCode());
+	      } else if (error instanceof TimeoutException) {
+		sendError(504);
+	      } else {
+		System.err.println("Exception during responsing.");
+		error.printStackTrace();
+		sendError(500);
+	      }
+	  } catch (IOException e) {
+	      System.err.println("Exception during responsing.");
+	      e.printStackTrace();
+	  } finally {
+	      closeSocket();
+	  }
+        }
+
+        /**
+         * Sends the canned error response with the given status code to the client.
+         * Failures are only reported, since the connection is closed afterwards anyway.
+         * 
+         * @param status Status code of the response.
+         */
+        private void sendError(int status) {
+	  try {
+	      CannedResponses.write(ostream, status, dateHeader);
+	  } catch (IOException e) {
+	      System.err.println("Error sending the " + status + " response.");
+	  }
+        }
 
-	      RequestContext rc = new RequestContext(ostream, params, permParams, outputCookies);
-	      rc.setMimeType(mimeType == null ? DEFAULT_MIME_TYPE : mimeType);
-	      rc.setStatusCode(DEFAULT_STATUS);
+        /**
+         * Flushes the client's output stream, releasing it's buffer, and closes the client's socket.
+         * Request scope is released afterwards.
+         * 
+         * If the response timed out while it's worker is still running, only the socket is closed
+         * now. The worker can not write anymore (see {@link RequestContext#revoke()}), but it may
+         * still hold the stream and the scope, so they are released once it finishes.
+         */
+        private void closeSocket() {
+	  CompletableFuture<Void> running = pending;
+	  if (running != null && !running.isDone()) {
+	      pending = null;
+	      try {
+		csocket.close();
+	      } catch (IOException e) {}
+	      running.whenComplete((result, error) -> closeSocket());
+	      return;
+	  }
 
+	  try {
+	      if (ostream != null) {
+		ostream.close();
+	      }
+	  } catch (IOException e) {
+	  } finally {
 	      try {
-		if (fileExtension.equals(SMART_SCRIPT_EXTENSION)) {
-		    smartScriptResponse(rc, requestedPath);
-		} else {
-		    defaultResponse(rc, requestedPath);
-		}
-	      } catch (IOException e) {
-		System.err.println("Exception during responsing.");
-		e.printStackTrace();
+		csocket.close();
+	      } catch (IOException e) {}
+	      if (scope != null) {
+		scope.release();
 	      }
 	  }
-	  try {
-	      csocket.close();
-	  } catch (IOException e) {}
+        }
+
+        /**
+         * Creates a new {@link RequestContext} for this request.
+         * 
+         * Context buffers the response, so the header can be generated once the response
+         * is known. If sessions are stored in cookies, the session cookie is set
+         * right before the header is generated.
+         * 
+         * @return The created context.
+         */
+        private RequestContext createContext() {
+	  RequestContext rc = scope.context(ostream, permParams);
+	  rc.setBufferSize(responseBufferSize);
+	  rc.setDateHeader(dateHeader);
+	  rc.setGatheringChannel(csocket.getChannel());
+	  if (sessionCodec != null && SID == null) {
+	      rc.setCommitListener(this::storeSessionCookie);
+	  }
+	  return rc;
+        }
+
+        /**
+         * Finishes the response of the given context.
+         * 
+         * If persistent parameters were changed after the header was already sent to the client,
+         * such changes can not be stored in the session cookie, so a warning is written.
+         * 
+         * @param rc Context to finish.
+         * @throws IOException In case of IO error.
+         */
+        private void finish(RequestContext rc) throws IOException {
+	  rc.finish();
+	  if (committedParams != null && SID == null && !committedParams.equals(permParams)) {
+	      System.err.println("Persistent parameters changed after the response was committed, "
+		    + "increase " + RESPONSE_BUFFER_KEY + " to keep them.");
+	  }
+        }
+
+        /**
+         * Stores the persistent parameters to the session cookie, if they were changed.
+         * 
+         * If the encoded parameters are too large for a cookie, session is moved to the
+         * server and the client gets the session ID cookie instead.
+         * 
+         * @param rc Context whose header is going to be generated.
+         * @param complete Flag which indicates if the response was already finished.
+         */
+        private void storeSessionCookie(RequestContext rc, boolean complete) {
+	  if (!complete) {
+	      committedParams = new CompactMap<>(permParams);
+	  }
+
+	  boolean changed = sessionCookie == null ? !permParams.isEmpty()
+		: !sessionCookie.getParameters().equals(permParams);
+	  if (!changed && (sessionCookie == null || !sessionCookie.isStale())) return;
+
+	  String value = sessionCodec.encode(permParams);
+	  if (value != null) {
+	      rc.addRCCookie(
+		    new RCCookie(SESSION_COOKIE_NAME, value, sessionTimeout, address, "/"));
+	      return;
+	  }
+
+	  SessionMapEntry entry = new SessionMapEntry();
+	  entry.sid = generateRandomSid();
+	  entry.validUntil = (LocalTime.now().toSecondOfDay() + sessionTimeout) % SECS_PER_DAY;
+	  entry.map = permParams;
+	  sessions.put(entry.sid, entry);
+	  SID = entry.sid;
+
+	  rc.addRCCookie(new RCCookie("sid", SID, null, address, "/"));
+	  if (sessionCookie != null) {
+	      rc.addRCCookie(new RCCookie(SESSION_COOKIE_NAME, "", 0, address, "/"));
+	  }
         }
 
         /**
@@ -588,126 +1396,142 @@ public class SmartHttpServer {
          * 
          * This way, the second time client tries to attempt the request, the entry from 
          * the map will be fetched with the session ID, which means client can reuse it's parameters.
+         * 
+         * If sessions are stored in signed cookies, client's parameters are decoded from the
+         * session cookie instead, so no session lookup is needed. Only the sessions which were
+         * too large for a cookie are stored on the server.
+         * 
+         * @param request Lines of the request header.
          */
-        private synchronized void loadCookies(List<String> request, String path) {
+        private void loadCookies(List<String> request) {
 	  String sidCandidate = null;
-	  SessionMapEntry entry = new SessionMapEntry();
-	  entry.validUntil = (LocalTime.now().toSecondOfDay() + sessionTimeout) % SECS_PER_DAY;
-	  l: for (String singleLine : request) {
+	  String sessionCookieCandidate = null;
+	  for (String singleLine : request) {
 
-	      if (!singleLine.startsWith("Cookie: ")) continue;
-	      //creates new entry, may not be used in the future if entry with the loaded SID
-	      //already exists
-
-	      String[] cookies = singleLine.replaceAll("Cookie: ", "").split(";");
-	      for (String cookie : cookies) {
-		String[] pair = cookie.split("=");
-
-		if (pair.length != 2) {
-		    throw new IllegalArgumentException("Wrong cookie format: " + cookie);
-		}
-
-		//if loaded cookie is sid set the sitCandidate
-		if (pair[0].equals("sid")) {
-		    sidCandidate = pair[1].replaceAll("\"", "");
-		    break l;
-		    //elseway, it is some type of a cookie: store it to the entry map and to
-		    //output cookies
-		} else {
+	      if (!singleLine.regionMatches(true, 0, COOKIE_HEADER, 0, COOKIE_HEADER.length())) {
+		continue;
+	      }
 
-		    outputCookies.add(new RCCookie(pair[0], pair[1], sessionTimeout, address, path));
+	      //inbound cookies are not sent back, only sid and session cookie are needed
+	      CookieParser parser = new CookieParser(singleLine, COOKIE_HEADER.length(),
+		    singleLine.length());
+	      while (parser.next()) {
+		if (parser.nameEquals("sid")) {
+		    sidCandidate = parser.getValue();
+		} else if (sessionCodec != null && parser.nameEquals(SESSION_COOKIE_NAME)) {
+		    sessionCookieCandidate = parser.getValue();
 		}
 	      }
 	  }
 
-	  //if no SID was provided, generate some random SID -> this automatically means
-	  //that no such SID is in the session map
-	  if (sidCandidate == null) {
-
-	      sidCandidate = generateRandomSid();
-	      entry.sid = sidCandidate;
+	  SessionMapEntry existingEntry = sidCandidate == null ? null : sessions.get(sidCandidate);
+	  long currentTime = LocalTime.now().toSecondOfDay() % SECS_PER_DAY;
 
-	      outputCookies.add(new RCCookie("sid", sidCandidate, null, address, "/"));
-	      //elseway, sid was provided -> such session already exists in the map
-	  } else {
-
-	      SessionMapEntry existingEntry = sessions.get(sidCandidate);
-	      long entryValidUntil = existingEntry.validUntil;
-	      long currentTime = LocalTime.now().toSecondOfDay() % SECS_PER_DAY;
+	  //if session exists and did not expire, refresh the validUntil value
+	  if (existingEntry != null && currentTime < existingEntry.validUntil) {
+	      existingEntry.validUntil = (LocalTime.now().toSecondOfDay() + sessionTimeout)
+		    % SECS_PER_DAY;
+	      SID = existingEntry.sid;
+	      permParams = existingEntry.map;
+	      return;
+	  }
 
-	      //if session time did not expire, refresh the validUntil value and and store
-	      //it to the current session map (rewrite it)
-	      if (currentTime < entryValidUntil) {
-		existingEntry.validUntil = (LocalTime.now().toSecondOfDay() + sessionTimeout)
-		        % SECS_PER_DAY;
-		entry = existingEntry;
+	  //if sessions are stored in cookies, no session lookup is needed
+	  if (sessionCodec != null) {
+	      sessionCookie = sessionCodec.decode(sessionCookieCandidate);
+	      permParams = new ConcurrentCompactMap<>();
+	      if (sessionCookie != null) {
+		permParams.putAll(sessionCookie.getParameters());
 	      }
-	      //elseway, new entry should be put in the map -> the one which was created during
-	      //the for-loop (variable entry will not be re-referenced)
+	      return;
 	  }
+
+	  //elseway, a new session is created with a randomly generated SID
+	  SessionMapEntry entry = new SessionMapEntry();
+	  entry.sid = generateRandomSid();
+	  entry.validUntil = (LocalTime.now().toSecondOfDay() + sessionTimeout) % SECS_PER_DAY;
+	  outputCookies.add(new RCCookie("sid", entry.sid, null, address, "/"));
+
 	  SID = entry.sid;
 	  permParams = entry.map;
-
 	  sessions.put(SID, entry);
         }
     }
 
     /**
-     * Reads the client's request using it's {@link InputStream}.
+     * Reads the client's request from it's channel.
      * Request consists header lines which will be read and returned.
      * 
+     * Request is read into a pooled direct buffer until the empty line is found, then the
+     * header is copied into a pooled heap buffer, from which the lines are decoded.
      * Standard charset used for encoding HTML headers is ISO-8859-1.
      * 
-     * @return Lines of the read header.
+     * @param channel Client's channel.
+     * @return Lines of the read header, an empty list if the header is too large,
+     * or <code>null</code> if the client closed the connection.
+     * @throws IOException In case of IO error.
+     */
+    private List<String> readRequest(ReadableByteChannel channel) throws IOException {
+        int end;
+        try (PooledBuffer pooledInput = directBuffers.acquire(MAX_REQUEST_HEADER)) {
+	  ByteBuffer input = pooledInput.buffer();
+	  input.limit(MAX_REQUEST_HEADER);
+	  int scanned = 0;
+	  while (true) {
+	      if (!input.hasRemaining()) return new ArrayList<>();
+	      if (channel.read(input) < 0) return null;
+
+	      end = headerEnd(input, scanned);
+	      if (end >= 0) break;
+	      scanned = Math.max(0, input.position() - 2);
+	  }
+
+	  try (PooledBuffer pooledText = heapBuffers.acquire(end)) {
+	      byte[] text = pooledText.buffer().array();
+	      input.flip();
+	      input.get(text, 0, end);
+	      return splitLines(text, end);
+	  }
+        }
+    }
+
+    /**
+     * Finds the end of the request header (an empty line) in the read bytes.
+     * 
+     * @param input Buffer with the read bytes, between zero and it's position.
+     * @param from Index from which the search starts.
+     * @return Index after the empty line, or -1 if it was not read yet.
      */
-    private static List<String> readRequest(InputStream istream) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        int state = 0;
+    private static int headerEnd(ByteBuffer input, int from) {
+        int position = input.position();
+        for (int i = from; i < position; i++) {
+	  if (input.get(i) != '\n') continue;
 
-        l: while (true) {
-	  int b = 0;
-	  try {
-	      b = istream.read();
-	  } catch (IOException e) {
-	      continue;
-	  }
-	  if (b == -1) return null;
-	  if (b != 13) {
-	      bos.write(b);
-	  }
-
-	  switch (state) {
-	  case 0:
-	      if (b == 13) {
-		state = 1;
-	      } else if (b == 10) state = 4;
-	      break;
-	  case 1:
-	      if (b == 10) {
-		state = 2;
-	      } else state = 0;
-	      break;
-	  case 2:
-	      if (b == 13) {
-		break l;
-	      } else state = 0;
-	      break;
-	  case 3:
-	      if (b == 10) {
-		break l;
-	      } else state = 0;
-	      break;
-	  case 4:
-	      if (b == 10) {
-		break l;
-	      } else state = 0;
-	      break;
-	  }
-
-        }
-        String[] lines = new String(bos.toByteArray(), StandardCharsets.ISO_8859_1)
-	      .split("\\r?\\n");
-        return Arrays.asList(lines);
+	  if (i + 1 < position && input.get(i + 1) == '\n') return i + 2;
+	  if (i + 2 < position && input.get(i + 1) == '\r' && input.get(i + 2) == '\n') return i + 3;
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the header bytes into lines, without the ending empty line.
+     * 
+     * @param text Header bytes.
+     * @param length Number of the header bytes.
+     * @return Lines of the header.
+     */
+    private static List<String> splitLines(byte[] text, int length) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+	  if (text[i] != '\n') continue;
+
+	  int end = i > start && text[i - 1] == '\r' ? i - 1 : i;
+	  if (end == start) break;
+	  lines.add(new String(text, start, end - start, StandardCharsets.ISO_8859_1));
+	  start = i + 1;
+        }
+        return lines;
     }
 
     /**
@@ -727,48 +1551,240 @@ public class SmartHttpServer {
     }
 
     /**
-     * Represents a type of response where the client requested to execute the smart script.
+     * Creates the route handler with the given name: "script" executes smart scripts,
+     * "file" serves files and any other name is the fully qualified class name of the worker
+     * which will process the requests.
      * 
-     * This method is obligated to read the script and reproduce the result to the client.
-     * Relays on implementations of {@link SmartScriptEngine} and {@link SmartScriptParser}
-     * as the basic tool for parsing and executing the script.
+     * @param fqcn Name of the handler or fully qualified class name of the worker.
+     * @return Created handler.
+     */
+    private IRouteHandler workerHandler(String fqcn) {
+        if (fqcn.equals(SCRIPT_HANDLER)) return this::smartScriptResponse;
+        if (fqcn.equals(FILE_HANDLER)) return this::defaultResponse;
+
+        IWebWorker worker = workerRegistry.createWorker(fqcn);
+        return new WorkerHandler(path -> worker);
+    }
+
+    /**
+     * Finds the worker requested by it's class name, using the "/ext/" path prefix.
+     * 
+     * @param path Requested path.
+     * @return Requested worker.
+     * @throws HttpStatusException If the worker does not exist.
+     */
+    private IWebWorker extWorker(String path) {
+        IWebWorker worker = workerRegistry.getWorker(path.substring(EXT_PREFIX.length()));
+        if (worker == null) {
+	  throw new HttpStatusException(404, "Worker not found.");
+        }
+        return worker;
+    }
+
+    /**
+     * Represents the route handler which delegates the request to a worker.
+     * 
+     * Asynchronous workers are not waited for, their responses are completed once
+     * the returned stage completes.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class WorkerHandler implements IRouteHandler {
+
+        /**
+         * Represents the function which finds the worker for the requested path.
+         */
+        private final Function<String, IWebWorker> workers;
+
+        /**
+         * Public constructor.
+         * 
+         * @param workers Function which finds the worker for the requested path.
+         */
+        public WorkerHandler(Function<String, IWebWorker> workers) {
+	  this.workers = workers;
+        }
+
+        @Override
+        public void handle(String path, RequestContext context) {
+	  workers.apply(path).processRequest(context);
+        }
+
+        @Override
+        public CompletionStage<Void> handleAsync(String path, RequestContext context) {
+	  IWebWorker worker = workers.apply(path);
+	  if (worker instanceof IAsyncWebWorker) {
+	      return ((IAsyncWebWorker) worker).processRequestAsync(context);
+	  }
+	  worker.processRequest(context);
+	  return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Checks that the request contains the given token as the "token" parameter.
      * 
      * @param rc Request context used in this request.
-     * @param requestedPath Path to the smart script.
-     * @throws IOException In case of IO error during reading.
+     * @param expected Expected token.
+     * @throws HttpStatusException If the token is missing or not correct.
      */
-    private static void smartScriptResponse(RequestContext rc, Path requestedPath)
-	  throws IOException {
+    private static void checkToken(RequestContext rc, String expected) {
+        String token = rc.getParameter("token");
+        if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+	      expected.getBytes(StandardCharsets.UTF_8))) {
+	  throw new HttpStatusException(403, "Forbidden.");
+        }
+    }
 
+    /**
+     * Represents a type of response which lists the executors of the server
+     * with their current metrics, one executor per line.
+     * Request must contain the configured diagnostics token as the "token" parameter.
+     * 
+     * @param path Requested path.
+     * @param rc Request context used in this request.
+     * @throws IOException In case of IO error during writing.
+     * @throws HttpStatusException If the token is not correct.
+     */
+    private void executorsResponse(String path, RequestContext rc) throws IOException {
+        checkToken(rc, diagnosticsToken);
+        rc.setMimeType("text/plain");
         StringBuilder sb = new StringBuilder();
-        Files.readAllLines(requestedPath).forEach(l -> sb.append(l + "\r\n"));
-        String documentBody = sb.toString();
+        bulkheads.values().forEach(b -> sb.append(b).append("\r\n"));
+        rc.write(sb.toString());
+    }
 
-        new SmartScriptEngine(new SmartScriptParser(documentBody).getDocumentNode(), rc).execute();
+    /**
+     * Represents a type of response which lists the buffer pools of the server
+     * with their current metrics, one pool per line.
+     * Request must contain the configured diagnostics token as the "token" parameter.
+     * 
+     * @param path Requested path.
+     * @param rc Request context used in this request.
+     * @throws IOException In case of IO error during writing.
+     * @throws HttpStatusException If the token is not correct.
+     */
+    private void buffersResponse(String path, RequestContext rc) throws IOException {
+        checkToken(rc, diagnosticsToken);
+        rc.setMimeType("text/plain");
+        rc.write(directBuffers + "\r\n" + heapBuffers + "\r\n");
     }
 
     /**
-     * Sends a header containing an error report to the client.
+     * Represents a type of response which shows the metrics of the response cache.
+     * Request must contain the configured diagnostics token as the "token" parameter.
      * 
-     * Depending on error description, each error has it's status number (for example, Error 400).
+     * @param path Requested path.
+     * @param rc Request context used in this request.
+     * @throws IOException In case of IO error during writing.
+     * @throws HttpStatusException If the token is not correct.
+     */
+    private void cacheResponse(String path, RequestContext rc) throws IOException {
+        checkToken(rc, diagnosticsToken);
+        rc.setMimeType("text/plain");
+        rc.write(responseCache + "\r\n" + scriptCache + "\r\n"
+	      + (classCompiler == null ? "" : classCompiler + "\r\n"));
+    }
+
+    /**
+     * Represents a type of response which removes the cached responses, either all of them or
+     * only the responses of the route given with the "route" parameter.
+     * Request must contain the configured purge token as the "token" parameter.
      * 
-     * @param cos Client's output stream.
-     * @param i Number of the error.
-     * @param string Method used when the error occurred.
-     * @param version HTML version used when the error occured.
+     * @param path Requested path.
+     * @param rc Request context used in this request.
+     * @throws IOException In case of IO error during writing.
+     * @throws HttpStatusException If the token is not correct.
      */
-    private static void sendError(OutputStream cos, int i, String string, String method,
-	  String version) {
+    private void cachePurgeResponse(String path, RequestContext rc) throws IOException {
+        checkToken(rc, cachePurgeToken);
 
+        String route = rc.getParameter("route");
+        int removed = responseCache.purge(route == null ? "" : route + " ");
+        rc.setMimeType("text/plain");
+        rc.write("Purged " + removed + " responses.\r\n");
+    }
+
+    /**
+     * Resolves the requested path with respect to the document root and sets the mime type
+     * of the response according to the file extension.
+     * 
+     * @param path Requested path.
+     * @param rc Request context used in this request.
+     * @return Resolved path of the file.
+     * @throws HttpStatusException If the file is not below the document root (403)
+     * or is not a readable file (404).
+     */
+    private Path resolveFile(String path, RequestContext rc) {
+        Path requestedPath = null;
         try {
-	  cos.write((i + method + " OK\r\n" + "Server: simple Java server\r\n" + "HTML Version: "
-		+ version + "\r\n" + "Content-Type: text/html;charset=UTF-8\r\n"
-		+ "Content-Length: " + string + "\r\n" + "Connection: close\r\n" + "\r\n")
-		        .getBytes(StandardCharsets.UTF_8));
-	  cos.flush();
-        } catch (IOException e) {
-	  sendError(cos, i, string, method, version);
+	  requestedPath = documentRoot.resolve(path.substring(1)).normalize();
+        } catch (InvalidPathException e) {
+	  throw new HttpStatusException(403, "Forbidden.");
+        }
+        if (!requestedPath.startsWith(documentRoot.normalize())) {
+	  throw new HttpStatusException(403, "Forbidden.");
         }
+
+        // check if requestedPath exists, is file and is readable; if not, return status 404
+        if (!Files.isRegularFile(requestedPath) || !Files.isReadable(requestedPath)) {
+	  throw new HttpStatusException(404, "File not accessible.");
+        }
+
+        // if no mime type found, assume application/octet-stream
+        String fileName = requestedPath.getFileName().toString();
+        String mimeType = mimeTypes.get(fileName.substring(fileName.lastIndexOf('.') + 1));
+        rc.setMimeType(mimeType == null ? DEFAULT_MIME_TYPE : mimeType);
+        return requestedPath;
+    }
+
+    /**
+     * Represents a type of response where the client requested to execute the smart script.
+     * 
+     * This method is obligated to read the script and reproduce the result to the client.
+     * Relays on implementations of {@link SmartScriptEngine} and {@link SmartScriptParser}
+     * as the basic tool for parsing and executing the script. Parsed scripts are compiled
+     * and kept in the {@link SmartScriptCache}, so only the execution is done per request.
+     * Output of the script is flushed to the client in chunks of at least
+     * {@link #SCRIPT_FLUSH_THRESHOLD_KEY} bytes, not after each text and echo tag.
+     * 
+     * @param path Requested path.
+     * @param rc Request context used in this request.
+     * @throws IOException In case of IO error during reading.
+     */
+    private void smartScriptResponse(String path, RequestContext rc) throws IOException {
+        Path requestedPath = resolveFile(path, rc);
+        ICompiledScript script = scriptCache.get(requestedPath);
+        rc.setFlushThreshold(scriptFlushThreshold);
+        script.execute(rc);
+    }
+
+    /**
+     * Parses the smart script and prepares it for the configured engine.
+     * 
+     * If enabled, the parsed script is first optimized by the {@link SmartScriptOptimizer}.
+     * If the script can not be compiled to a class, it is executed by the {@link SmartScriptVM}.
+     * 
+     * @param text Text of the script.
+     * @return Script ready to be executed.
+     */
+    private ICompiledScript compileScript(String text) {
+        DocumentNode parsed = new SmartScriptParser(text, scriptEngine.equals("tree")).getDocumentNode();
+        DocumentNode document = scriptOptimizer == null ? parsed : scriptOptimizer.optimize(parsed);
+        if (scriptEngine.equals("tree")) {
+	  return rc -> new SmartScriptEngine(document, rc).execute();
+        }
+        if (classCompiler != null) {
+	  try {
+	      return classCompiler.compile(document);
+	  } catch (IllegalStateException e) {
+	      System.err.println("Smart script can not be compiled to a class, using the virtual machine.");
+	      e.printStackTrace();
+	  }
+        }
+        Program program = ProgramCompiler.compile(document);
+        return rc -> new SmartScriptVM(program, rc).execute();
     }
 
     /**
@@ -777,24 +1793,30 @@ public class SmartHttpServer {
      * Depending on mime type, user will see the file in different ways. For example, HTML files 
      * will be rendered as a html web site, png files will be rendered as images and etc.
      * 
+     * @param path Requested path.
      * @param rc Request context used in this request.
-     * @param requestedPath Path to the smart script.
      * @throws IOException In case of IO error during reading.
      */
-    private static void defaultResponse(RequestContext rc, Path requestedPath) throws IOException {
-
-        InputStream is = new BufferedInputStream(Files.newInputStream(requestedPath));
-
-        byte[] data = new byte[DEFAULT_BUFFER_SIZE];
-        while (true) {
-	  int r = is.read(data);
+    private void defaultResponse(String path, RequestContext rc) throws IOException {
+        Path requestedPath = resolveFile(path, rc);
+
+        try (FileChannel file = FileChannel.open(requestedPath, StandardOpenOption.READ)) {
+	  long size = file.size();
+	  if (size <= MAPPED_FILE_THRESHOLD) {
+	      ByteBuffer data = ByteBuffer.allocate((int) size);
+	      while (data.hasRemaining()) {
+		if (file.read(data) < 0) break;
+	      }
+	      data.flip();
+	      rc.write(data);
+	      return;
+	  }
 
-	  if (r == -1) break;
-	  //if read less then full buffer
-	  if (r < DEFAULT_BUFFER_SIZE) {
-	      data = Arrays.copyOf(data, r);
+	  // larger files are written from mapped regions, without copying them to the heap
+	  for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+	      long length = Math.min(MAPPED_REGION_SIZE, size - position);
+	      rc.write(file.map(FileChannel.MapMode.READ_ONLY, position, length));
 	  }
-	  rc.write(data);
         }
     }
 
@@ -821,7 +1843,7 @@ public class SmartHttpServer {
         /**
          * Represents the map containing session parameters.
          */
-        Map<String, String> map = new ConcurrentHashMap<>();
+        Map<String, String> map = new ConcurrentCompactMap<>();
     }
 
     /**
@@ -0,0 +1,242 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Represents the registry of {@link IWebWorker}s which are reachable by their simple class name,
+ * for example through the "/ext/EchoParams" path.
+ * 
+ * <p>Each worker is resolved and instantiated only once, even if many requests for it arrive
+ * at the same time, and that instance is used for all further requests. Constructors are
+ * invoked through cached {@link MethodHandle}s.</p>
+ * 
+ * <p>Names which do not resolve to a worker are remembered as well, so repeated requests for
+ * unknown workers do not reach the class loader. Number of remembered unknown names is limited,
+ * so it can not grow without bounds. Workers whose constructor fails are not remembered, they
+ * are instantiated again on the next request.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class WorkerRegistry {
+
+    /**
+     * Represents the maximal number of remembered unknown worker names.
+     */
+    private static final int MAX_UNKNOWN_NAMES = 1024;
+
+    /**
+     * Represents the type of a constructor without arguments.
+     */
+    private static final MethodType DEFAULT_CONSTRUCTOR = MethodType.methodType(void.class);
+
+    /**
+     * Represents the package where the workers are searched for.
+     */
+    private final String workersPackage;
+
+    /**
+     * Represents the class loader used for loading the workers.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * Represents the instantiated workers, mapped by their simple name.
+     */
+    private final Map<String, IWebWorker> workers = new ConcurrentHashMap<>();
+
+    /**
+     * Represents the names which do not resolve to a worker.
+     */
+    private final Set<String> unknownNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Represents the cached constructors of worker classes.
+     */
+    private final Map<Class<?>, MethodHandle> constructors = new ConcurrentHashMap<>();
+
+    /**
+     * Public constructor.
+     * Sets fields to the given values.
+     * 
+     * @param workersPackage Package where the workers are searched for.
+     * @param classLoader Class loader used for loading the workers.
+     */
+    public WorkerRegistry(String workersPackage, ClassLoader classLoader) {
+        if (workersPackage == null || classLoader == null) {
+	  throw new IllegalArgumentException("Arguments must not be null.");
+        }
+        this.workersPackage = workersPackage;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns the worker with the given simple class name from the workers package.
+     * 
+     * The worker is instantiated on the first request for it. If no such worker exists,
+     * returns <code>null</code> and remembers the name, so next requests for it are cheap.
+     * 
+     * @param name Simple class name of the worker.
+     * @return Instance of the worker, or <code>null</code> if no such worker exists.
+     * @throws IllegalStateException If the worker's constructor failed.
+     */
+    public IWebWorker getWorker(String name) {
+        IWebWorker worker = workers.get(name);
+        if (worker != null) return worker;
+        if (unknownNames.contains(name) || !isValidName(name)) return null;
+
+        worker = workers.computeIfAbsent(name, n -> {
+	  try {
+	      return createWorker(workersPackage + "." + n);
+	  } catch (IllegalArgumentException e) {
+	      return null;
+	  }
+        });
+
+        if (worker == null) {
+	  if (unknownNames.size() >= MAX_UNKNOWN_NAMES) {
+	      unknownNames.clear();
+	  }
+	  unknownNames.add(name);
+        }
+        return worker;
+    }
+
+    /**
+     * Creates a new instance of the worker with the given fully qualified class name.
+     * 
+     * @param fqcn Fully qualified class name of the worker.
+     * @return Created instance of the worker.
+     * @throws IllegalArgumentException If the class does not exist, is not an {@link IWebWorker}
+     * or has no public constructor without arguments.
+     * @throws IllegalStateException If the constructor failed. Errors thrown by the constructor
+     * are rethrown as they are.
+     */
+    public IWebWorker createWorker(String fqcn) {
+        Class<?> workerClass;
+        try {
+	  workerClass = Class.forName(fqcn, true, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+	  throw new IllegalArgumentException("Worker class not found: " + fqcn);
+        }
+        if (!IWebWorker.class.isAssignableFrom(workerClass)
+	      || Modifier.isAbstract(workerClass.getModifiers())) {
+	  throw new IllegalArgumentException(fqcn + " is not a web worker.");
+        }
+
+        MethodHandle constructor = constructors.computeIfAbsent(workerClass, c -> {
+	  try {
+	      return MethodHandles.publicLookup().findConstructor(c, DEFAULT_CONSTRUCTOR);
+	  } catch (NoSuchMethodException | IllegalAccessException e) {
+	      return null;
+	  }
+        });
+        if (constructor == null) {
+	  throw new IllegalArgumentException(fqcn + " has no public constructor without arguments.");
+        }
+
+        try {
+	  return (IWebWorker) constructor.invoke();
+        } catch (Error e) {
+	  throw e;
+        } catch (Throwable e) {
+	  throw new IllegalStateException("Can not create worker " + fqcn + ".", e);
+        }
+    }
+
+    /**
+     * Instantiates all workers found in the workers package, so no request has to wait
+     * for the instantiation later.
+     * 
+     * Works for packages stored in directories and in jar files.
+     * 
+     * @return Number of instantiated workers.
+     * @throws IOException In case of IO error while listing the package.
+     */
+    public int preload() throws IOException {
+        String packagePath = workersPackage.replace('.', '/');
+        List<String> names = new ArrayList<>();
+
+        Enumeration<URL> resources = classLoader.getResources(packagePath);
+        while (resources.hasMoreElements()) {
+	  URL url = resources.nextElement();
+	  if ("file".equals(url.getProtocol())) {
+	      File[] files = new File(URLDecoder.decode(url.getPath(), "UTF-8")).listFiles();
+	      if (files == null) continue;
+	      for (File file : files) {
+		addClassName(names, file.getName());
+	      }
+	  } else if ("jar".equals(url.getProtocol())) {
+	      JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+	      Enumeration<JarEntry> entries = jar.entries();
+	      while (entries.hasMoreElements()) {
+		String entryName = entries.nextElement().getName();
+		int slash = entryName.lastIndexOf('/');
+		if (slash >= 0 && entryName.substring(0, slash).equals(packagePath)) {
+		    addClassName(names, entryName.substring(slash + 1));
+		}
+	      }
+	  }
+        }
+
+        int count = 0;
+        for (String name : names) {
+	  try {
+	      IWebWorker worker = createWorker(workersPackage + "." + name);
+	      if (workers.putIfAbsent(name, worker) == null) count++;
+	  } catch (IllegalArgumentException e) {
+	      // not a worker, for example a helper class
+	  } catch (IllegalStateException e) {
+	      // created on the first request instead
+	      System.err.println("Worker " + name + " can not be preloaded.");
+	      e.printStackTrace();
+	  }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the class name to the list if the file name belongs to a top level class.
+     * 
+     * @param names List of class names.
+     * @param fileName Name of the file.
+     */
+    private static void addClassName(List<String> names, String fileName) {
+        if (fileName.endsWith(".class") && fileName.indexOf('$') < 0) {
+	  names.add(fileName.substring(0, fileName.length() - ".class".length()));
+        }
+    }
+
+    /**
+     * Checks if the given name is a valid simple Java class name.
+     * Other names are rejected without reaching the class loader.
+     * 
+     * @param name Name to check.
+     * @return <code>true</code> if the name is valid, elseway <code>false</code>.
+     */
+    private static boolean isValidName(String name) {
+        if (name == null || name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+	  return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+	  if (!Character.isJavaIdentifierPart(name.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,359 @@
+package hr.fer.zemris.java.webserver.buffers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.webserver.buffers.PooledBuffer.LeakTracker;
+
+/**
+ * Represents a pool of reusable {@link ByteBuffer}s, either direct (for socket reads and
+ * writes) or heap buffers (for parsers, which need the backing array).
+ * 
+ * <p>Buffers are grouped in size classes, powers of two from 1 KB to 64 KB, and each request
+ * is served by the smallest class which is large enough. Larger buffers are not pooled.
+ * Every thread first uses it's own small cache of released buffers, so most requests
+ * need no synchronization. If it is empty, buffers are taken from the shared stack of
+ * the size class, and only if that one is empty a new buffer is allocated.</p>
+ * 
+ * <p>If leak detection is enabled, place of each acquisition is recorded and buffers which
+ * were garbage collected without being released are reported. It is meant for debugging,
+ * since recording the stack trace is expensive.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class BufferPool {
+
+    /**
+     * Represents the binary logarithm of the smallest size class.
+     */
+    private static final int MIN_CLASS_SHIFT = 10;
+
+    /**
+     * Represents the number of size classes.
+     */
+    private static final int CLASSES = 7;
+
+    /**
+     * Represents the name of the pool.
+     */
+    private final String name;
+
+    /**
+     * Represents the flag which indicates if the pool hands out direct buffers.
+     */
+    private final boolean direct;
+
+    /**
+     * Represents the maximal number of buffers per size class in a thread's cache.
+     */
+    private final int threadCacheSize;
+
+    /**
+     * Represents the maximal number of buffers per size class in the shared stacks.
+     */
+    private final int sharedCapacity;
+
+    /**
+     * Represents the shared stacks of released buffers, by size class.
+     */
+    private final ArrayDeque<ByteBuffer>[] shared;
+
+    /**
+     * Represents the per-thread caches of released buffers.
+     */
+    private final ThreadLocal<ThreadCache> threadCaches;
+
+    /**
+     * Represents the trackers of the not yet released buffers, or <code>null</code> if
+     * leaks are not detected.
+     */
+    private final Set<LeakTracker> trackers;
+
+    /**
+     * Represents the queue of trackers whose buffers became unreachable.
+     */
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<>();
+
+    /**
+     * Represents the number of acquired buffers.
+     */
+    private final LongAdder acquired = new LongAdder();
+
+    /**
+     * Represents the number of buffers taken from the thread caches.
+     */
+    private final LongAdder threadHits = new LongAdder();
+
+    /**
+     * Represents the number of buffers taken from the shared stacks.
+     */
+    private final LongAdder sharedHits = new LongAdder();
+
+    /**
+     * Represents the number of released buffers.
+     */
+    private final LongAdder released = new LongAdder();
+
+    /**
+     * Represents the number of buffers which were never released.
+     */
+    private final LongAdder leaks = new LongAdder();
+
+    /**
+     * Public constructor.
+     * 
+     * @param name Name of the pool.
+     * @param direct Flag which indicates if the pool hands out direct buffers.
+     * @param threadCacheSize Maximal number of buffers per size class in a thread's cache.
+     * @param sharedCapacity Maximal number of buffers per size class in the shared stacks.
+     * @param leakDetection Flag which indicates if the buffers which were never released
+     * should be reported.
+     * @throws IllegalArgumentException In case of negative limits.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(String name, boolean direct, int threadCacheSize, int sharedCapacity,
+	  boolean leakDetection) {
+        if (threadCacheSize < 0 || sharedCapacity < 0) {
+	  throw new IllegalArgumentException("Buffer pool " + name + " can not have negative limits.");
+        }
+        this.name = name;
+        this.direct = direct;
+        this.threadCacheSize = threadCacheSize;
+        this.sharedCapacity = sharedCapacity;
+        this.trackers = leakDetection ? ConcurrentHashMap.newKeySet() : null;
+
+        this.shared = new ArrayDeque[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+	  shared[i] = new ArrayDeque<>();
+        }
+        this.threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+    }
+
+    /**
+     * Acquires a cleared buffer with the capacity of at least the given size.
+     * Buffer must be released once it is not used anymore.
+     * 
+     * @param size Minimal capacity of the buffer.
+     * @return Acquired buffer.
+     * @throws IllegalArgumentException If the size is negative.
+     */
+    public PooledBuffer acquire(int size) {
+        if (size < 0) {
+	  throw new IllegalArgumentException("Buffer size can not be negative: " + size);
+        }
+        if (trackers != null) {
+	  reportLeaks();
+        }
+
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+	  buffer = threadCaches.get().pop(sizeClass);
+	  if (buffer != null) {
+	      threadHits.increment();
+	  } else {
+	      ArrayDeque<ByteBuffer> stack = shared[sizeClass];
+	      synchronized (stack) {
+		buffer = stack.pollLast();
+	      }
+	      if (buffer != null) {
+		sharedHits.increment();
+	      }
+	  }
+        }
+        if (buffer == null) {
+	  buffer = allocate(sizeClass >= 0 ? 1 << (sizeClass + MIN_CLASS_SHIFT) : size);
+        }
+        buffer.clear();
+        acquired.increment();
+
+        PooledBuffer pooled = new PooledBuffer(this, buffer, sizeClass);
+        if (trackers != null) {
+	  pooled.tracker = new LeakTracker(pooled, leakQueue);
+	  trackers.add(pooled.tracker);
+        }
+        return pooled;
+    }
+
+    /**
+     * Returns the released buffer to the cache of the current thread, or to the shared stack
+     * if the cache is full. If the stack is full as well, buffer is left to the garbage collector.
+     * 
+     * @param pooled Released buffer.
+     * @param buffer The buffer of the released buffer.
+     */
+    void release(PooledBuffer pooled, ByteBuffer buffer) {
+        if (pooled.tracker != null) {
+	  trackers.remove(pooled.tracker);
+	  pooled.tracker.clear();
+        }
+        released.increment();
+
+        int sizeClass = pooled.sizeClass;
+        if (sizeClass < 0 || threadCaches.get().push(sizeClass, buffer)) return;
+
+        ArrayDeque<ByteBuffer> stack = shared[sizeClass];
+        synchronized (stack) {
+	  if (stack.size() < sharedCapacity) {
+	      stack.addLast(buffer);
+	  }
+        }
+    }
+
+    /**
+     * Reports the buffers which became unreachable without being released.
+     */
+    private void reportLeaks() {
+        Reference<? extends PooledBuffer> reference;
+        while ((reference = leakQueue.poll()) != null) {
+	  if (trackers.remove(reference)) {
+	      leaks.increment();
+	      System.err.println("Buffer from pool " + name + " was not released.");
+	      ((LeakTracker) reference).acquiredAt.printStackTrace();
+	  }
+        }
+    }
+
+    /**
+     * Returns the index of the smallest size class which can hold the given size.
+     * 
+     * @param size Requested size.
+     * @return Index of the size class, or -1 if the size is too large to be pooled.
+     */
+    static int sizeClass(int size) {
+        if (size <= 1 << MIN_CLASS_SHIFT) return 0;
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+        return sizeClass < CLASSES ? sizeClass : -1;
+    }
+
+    /**
+     * Allocates a new buffer.
+     * 
+     * @param capacity Capacity of the buffer.
+     * @return Allocated buffer.
+     */
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * The name getter.
+     * 
+     * @return String Gets the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of acquired buffers.
+     * 
+     * @return Number of acquired buffers.
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * Returns the number of buffers which were not newly allocated.
+     * 
+     * @return Number of reused buffers.
+     */
+    public long getHitCount() {
+        return threadHits.sum() + sharedHits.sum();
+    }
+
+    /**
+     * Returns the share of acquired buffers which were not newly allocated.
+     * 
+     * @return Hit rate between 0 and 1.
+     */
+    public double getHitRate() {
+        long acquiredCount = getAcquiredCount();
+        return acquiredCount == 0 ? 0 : (double) getHitCount() / acquiredCount;
+    }
+
+    /**
+     * Returns the number of acquired buffers which were not released yet.
+     * 
+     * @return Number of outstanding buffers.
+     */
+    public long getOutstandingCount() {
+        return acquired.sum() - released.sum() - leaks.sum();
+    }
+
+    /**
+     * Returns the number of buffers which were garbage collected without being released.
+     * Always 0 if leaks are not detected.
+     * 
+     * @return Number of leaked buffers.
+     */
+    public long getLeakCount() {
+        return leaks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: acquired=%d hitRate=%.3f threadHits=%d sharedHits=%d "
+	      + "outstanding=%d leaks=%d%s", name, getAcquiredCount(), getHitRate(),
+	      threadHits.sum(), sharedHits.sum(), getOutstandingCount(), getLeakCount(),
+	      trackers == null ? "" : " (leak detection on)");
+    }
+
+    /**
+     * Represents the cache of released buffers of a single thread.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private class ThreadCache {
+
+        /**
+         * Represents the cached buffers, by size class.
+         */
+        private final ByteBuffer[][] buffers = new ByteBuffer[CLASSES][threadCacheSize];
+
+        /**
+         * Represents the number of cached buffers, by size class.
+         */
+        private final int[] counts = new int[CLASSES];
+
+        /**
+         * Takes the most recently cached buffer of the size class.
+         * 
+         * @param sizeClass Index of the size class.
+         * @return Cached buffer, or <code>null</code> if there is none.
+         */
+        ByteBuffer pop(int sizeClass) {
+	  int count = counts[sizeClass];
+	  if (count == 0) return null;
+
+	  ByteBuffer buffer = buffers[sizeClass][--count];
+	  buffers[sizeClass][count] = null;
+	  counts[sizeClass] = count;
+	  return buffer;
+        }
+
+        /**
+         * Caches the buffer of the size class, if the cache is not full.
+         * 
+         * @param sizeClass Index of the size class.
+         * @param buffer Buffer to cache.
+         * @return <code>true</code> if the buffer was cached, elseway <code>false</code>.
+         */
+        boolean push(int sizeClass, ByteBuffer buffer) {
+	  int count = counts[sizeClass];
+	  if (count == threadCacheSize) return false;
+
+	  buffers[sizeClass][count] = buffer;
+	  counts[sizeClass] = count + 1;
+	  return true;
+        }
+    }
+}
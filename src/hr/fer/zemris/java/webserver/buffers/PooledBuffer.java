@@ -0,0 +1,112 @@
+package hr.fer.zemris.java.webserver.buffers;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a buffer acquired from a {@link BufferPool}.
+ * 
+ * <p>Buffer belongs to the holder until it is released, afterwards it may be handed out again,
+ * so neither the buffer nor any of it's views may be used after {@link #release()}.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class PooledBuffer implements AutoCloseable {
+
+    /**
+     * Represents the pool the buffer belongs to.
+     */
+    private final BufferPool pool;
+
+    /**
+     * Represents the index of the size class of the buffer, or -1 if it is not pooled.
+     */
+    final int sizeClass;
+
+    /**
+     * Represents the buffer, <code>null</code> once it is released.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Represents the tracker which detects if the buffer was never released, or
+     * <code>null</code> if leaks are not detected.
+     */
+    LeakTracker tracker;
+
+    /**
+     * Package-private constructor, buffers are created by the pool.
+     * 
+     * @param pool Pool the buffer belongs to.
+     * @param buffer Cleared buffer.
+     * @param sizeClass Index of the size class, or -1 if the buffer is not pooled.
+     */
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * Returns the buffer. It's capacity is at least the requested size.
+     * 
+     * @return The buffer.
+     * @throws IllegalStateException If the buffer was already released.
+     */
+    public ByteBuffer buffer() {
+        if (buffer == null) {
+	  throw new IllegalStateException("Buffer was already released.");
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to it's pool.
+     * 
+     * @throws IllegalStateException If the buffer was already released.
+     */
+    public void release() {
+        ByteBuffer released = buffer();
+        buffer = null;
+        pool.release(this, released);
+    }
+
+    /**
+     * Releases the buffer, if it was not released yet.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+	  release();
+        }
+    }
+
+    /**
+     * Represents the tracker of a single acquired buffer. If the buffer becomes unreachable
+     * before it was released, tracker is enqueued and the leak is reported together with the
+     * place where the buffer was acquired.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    static class LeakTracker extends WeakReference<PooledBuffer> {
+
+        /**
+         * Represents the place where the buffer was acquired.
+         */
+        final Throwable acquiredAt;
+
+        /**
+         * Package-private constructor.
+         * 
+         * @param buffer Tracked buffer.
+         * @param queue Queue the tracker is enqueued to once the buffer is unreachable.
+         */
+        LeakTracker(PooledBuffer buffer, ReferenceQueue<PooledBuffer> queue) {
+	  super(buffer, queue);
+	  this.acquiredAt = new Throwable("Buffer acquired here was never released.");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package hr.fer.zemris.java.webserver.buffers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Represents a buffered {@link OutputStream} which writes to a channel through a buffer
+ * acquired from a {@link BufferPool}.
+ * 
+ * Closing the stream flushes it and releases the buffer, but does not close the channel.
+ * Once the buffer is released, it may already be used by someone else, so any later write
+ * or flush fails with an {@link IOException}.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class PooledOutputStream extends OutputStream {
+
+    /**
+     * Represents the channel the stream writes to.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Represents the acquired buffer.
+     */
+    private final PooledBuffer pooled;
+
+    /**
+     * Represents the buffer of the stream, <code>null</code> once it is released.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Public constructor.
+     * 
+     * @param channel Channel to write to.
+     * @param pool Pool of the buffer.
+     * @param size Minimal size of the buffer.
+     */
+    public PooledOutputStream(WritableByteChannel channel, BufferPool pool, int size) {
+        this.channel = channel;
+        this.pooled = pool.acquire(size);
+        this.buffer = pooled.buffer();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+	  drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len > buffer.remaining()) {
+	  drain();
+	  if (len > buffer.capacity()) {
+	      writeFully(ByteBuffer.wrap(b, off, len));
+	      return;
+	  }
+        }
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) return;
+
+        try {
+	  drain();
+        } finally {
+	  buffer = null;
+	  pooled.close();
+        }
+    }
+
+    /**
+     * Checks that the buffer was not released yet.
+     * 
+     * @throws IOException If the stream is closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+	  throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     * 
+     * @throws IOException In case of IO error.
+     */
+    private void drain() throws IOException {
+        if (buffer.position() == 0) return;
+
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes all remaining bytes of the given buffer to the channel.
+     * 
+     * @param data Buffer to write.
+     * @throws IOException In case of IO error.
+     */
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+	  channel.write(data);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.webserver.routing.Route;
+
+/**
+ * Represents the caching rules of a single {@link Route}, read from it's metadata attributes:
+ * </br>
+ * * <code>cache=true</code> - responses of the route are cached
+ * </br>
+ * * <code>ttl=seconds</code> - how long the responses are valid, server's default if not set
+ * </br>
+ * * <code>vary=a,b,header:Accept-Language</code> - parameters (and request headers, prefixed
+ * with "header:") whose values are a part of the key; all other parameters are ignored
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CachePolicy {
+
+    /**
+     * Represents the attribute which sets the time to live in seconds.
+     */
+    public static final String TTL_ATTRIBUTE = "ttl";
+
+    /**
+     * Represents the attribute which lists the parameters and headers the responses vary by.
+     */
+    public static final String VARY_ATTRIBUTE = "vary";
+
+    /**
+     * Represents the prefix of the headers in the vary attribute.
+     */
+    private static final String HEADER_PREFIX = "header:";
+
+    /**
+     * Represents the time to live of the responses in milliseconds.
+     */
+    private final long ttlMillis;
+
+    /**
+     * Represents the parameters the responses vary by.
+     */
+    private final String[] parameters;
+
+    /**
+     * Represents the headers the responses vary by, each written as "Name:".
+     */
+    private final String[] headers;
+
+    /**
+     * Public constructor.
+     * 
+     * @param route Cacheable route.
+     * @param defaultTtlMillis Time to live used if the route does not set it.
+     * @throws IllegalArgumentException In case of invalid attributes.
+     */
+    public CachePolicy(Route route, long defaultTtlMillis) {
+        String ttl = route.getAttribute(TTL_ATTRIBUTE);
+        try {
+	  this.ttlMillis = ttl == null ? defaultTtlMillis : Long.parseLong(ttl) * 1000;
+        } catch (NumberFormatException e) {
+	  throw new IllegalArgumentException("Invalid ttl of route " + route.getPattern());
+        }
+
+        List<String> parameters = new ArrayList<>();
+        List<String> headers = new ArrayList<>();
+        String vary = route.getAttribute(VARY_ATTRIBUTE);
+        if (vary != null) {
+	  for (String name : vary.split(",")) {
+	      name = name.trim();
+	      if (name.isEmpty()) continue;
+
+	      if (name.startsWith(HEADER_PREFIX)) {
+		headers.add(name.substring(HEADER_PREFIX.length()).trim() + ":");
+	      } else {
+		parameters.add(name);
+	      }
+	  }
+        }
+        this.parameters = parameters.toArray(new String[0]);
+        this.headers = headers.toArray(new String[0]);
+    }
+
+    /**
+     * The ttl getter.
+     * 
+     * @return long Gets the time to live in milliseconds.
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Creates the cache key of the request.
+     * 
+     * @param route Route of the request.
+     * @param path Requested path.
+     * @param parameters Parameters of the request.
+     * @param header Lines of the request header.
+     * @return Created key.
+     */
+    public String key(Route route, String path, Map<String, String> parameters,
+	  List<String> header) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(route.getPattern()).append(' ').append(path);
+        for (String name : this.parameters) {
+	  // values are length-prefixed, so no value can imitate another parameter
+	  String value = parameters.get(name);
+	  sb.append('\n').append(name).append('=');
+	  if (value != null) {
+	      sb.append(value.length()).append(':').append(value);
+	  }
+        }
+        for (String name : headers) {
+	  sb.append('\n').append(name);
+	  for (String line : header) {
+	      if (line.regionMatches(true, 0, name, 0, name.length())) {
+		sb.append(line.length() - name.length()).append(':')
+		      .append(line, name.length(), line.length());
+		break;
+	      }
+	  }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Represents a single response stored in the {@link ResponseCache}, already encoded to bytes.
+ * 
+ * Response is split to the head (status line and header lines, without cookies and without
+ * the empty line which ends the header) and the body, so each client can get it's own
+ * cookies written between them.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CachedResponse {
+
+    /**
+     * Represents the status line which marks the responses that can be stored.
+     */
+    private static final byte[] OK_STATUS = "HTTP/1.1 200 ".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Represents the encoded head of the response.
+     */
+    private final byte[] head;
+
+    /**
+     * Represents the encoded body of the response.
+     */
+    private final byte[] body;
+
+    /**
+     * Public constructor.
+     * 
+     * @param head Encoded head of the response, without cookies and the empty line.
+     * @param body Encoded body of the response.
+     */
+    public CachedResponse(byte[] head, byte[] body) {
+        this.head = head;
+        this.body = body;
+    }
+
+    /**
+     * Creates the cached response from the complete response, as written by
+     * a {@link hr.fer.zemris.java.webserver.RequestContext} without cookies.
+     * 
+     * @param response Bytes of the complete response.
+     * @return Created response.
+     * @throws IllegalArgumentException If the response has no complete header.
+     */
+    public static CachedResponse parse(byte[] response) {
+        for (int i = 0; i + 3 < response.length; i++) {
+	  if (response[i] == '\r' && response[i + 1] == '\n' && response[i + 2] == '\r'
+		&& response[i + 3] == '\n') {
+	      return new CachedResponse(Arrays.copyOf(response, i + 2),
+		    Arrays.copyOfRange(response, i + 4, response.length));
+	  }
+        }
+        throw new IllegalArgumentException("Response has no complete header.");
+    }
+
+    /**
+     * The head getter.
+     * 
+     * @return byte[] Gets the encoded head, without cookies and the empty line.
+     */
+    public byte[] getHead() {
+        return head;
+    }
+
+    /**
+     * The body getter.
+     * 
+     * @return byte[] Gets the encoded body.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the number of bytes the response takes.
+     * 
+     * @return Number of bytes.
+     */
+    public int size() {
+        return head.length + body.length;
+    }
+
+    /**
+     * Checks if the response can be stored: only successful responses are.
+     * 
+     * @return <code>true</code> if the response has status 200, elseway <code>false</code>.
+     */
+    public boolean isStorable() {
+        if (head.length < OK_STATUS.length) return false;
+        for (int i = 0; i < OK_STATUS.length; i++) {
+	  if (head[i] != OK_STATUS[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,249 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Represents the cache of encoded responses, limited by the total number of bytes
+ * of the stored responses.
+ * 
+ * <p>Each response is stored for it's time to live. If the cache is full, least recently used
+ * responses are removed first.</p>
+ * 
+ * <p>Concurrent misses for the same key are coalesced: only the first request creates
+ * the response, all other requests wait for it and get the same response.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ResponseCache {
+
+    /**
+     * Represents the maximal number of bytes of all stored responses.
+     */
+    private final long maxBytes;
+
+    /**
+     * Represents the stored responses, in order of their usage.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Represents the responses which are being created.
+     */
+    private final Map<String, CompletableFuture<CachedResponse>> inFlight =
+	  new ConcurrentHashMap<>();
+
+    /**
+     * Represents the number of bytes of all stored responses.
+     */
+    private long bytes;
+
+    /**
+     * Represents the number of requests served from the cache.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Represents the number of requests which created the response.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Represents the number of requests which waited for another request's response.
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Represents the number of responses removed because the cache was full.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Public constructor.
+     * 
+     * @param maxBytes Maximal number of bytes of all stored responses.
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    public ResponseCache(long maxBytes) {
+        if (maxBytes <= 0) {
+	  throw new IllegalArgumentException("Cache size must be positive.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the response stored under the given key. If there is no such response,
+     * it is created with the given loader and stored, if it is storable.
+     * 
+     * If the response for the same key is already being created, no new response is created,
+     * returned stage completes once the existing one does. Returned stage is always completed,
+     * exceptionally if the loader fails or creates no response.
+     * 
+     * @param key Key of the response.
+     * @param ttlMillis Time to live of a created response, in milliseconds.
+     * @param loader Creates the response.
+     * @return Stage which completes with the response.
+     */
+    public CompletableFuture<CachedResponse> get(String key, long ttlMillis,
+	  Supplier<CompletableFuture<CachedResponse>> loader) {
+        CachedResponse stored = lookup(key);
+        if (stored != null) {
+	  hits.increment();
+	  return CompletableFuture.completedFuture(stored);
+        }
+
+        CompletableFuture<CachedResponse> created = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+	  coalesced.increment();
+	  return existing;
+        }
+
+        // the previous creator could have finished between the lookup and the registration
+        stored = lookup(key);
+        if (stored != null) {
+	  inFlight.remove(key, created);
+	  created.complete(stored);
+	  hits.increment();
+	  return created;
+        }
+
+        misses.increment();
+        CompletableFuture<CachedResponse> loading;
+        try {
+	  loading = loader.get();
+	  if (loading == null) {
+	      throw new IllegalStateException("Loader of " + key + " returned no stage.");
+	  }
+        } catch (RuntimeException e) {
+	  loading = new CompletableFuture<>();
+	  loading.completeExceptionally(e);
+        }
+        loading.whenComplete((response, error) -> {
+	  try {
+	      if (error == null && response != null && response.isStorable()) {
+		store(key, response, ttlMillis);
+	      }
+	  } finally {
+	      inFlight.remove(key, created);
+	      if (error != null) {
+		created.completeExceptionally(error);
+	      } else if (response == null) {
+		created.completeExceptionally(
+		        new IllegalStateException("Loader of " + key + " created no response."));
+	      } else {
+		created.complete(response);
+	      }
+	  }
+        });
+        return created;
+    }
+
+    /**
+     * Removes all stored responses whose key starts with the given prefix.
+     * 
+     * @param prefix Prefix of the keys, empty to remove all responses.
+     * @return Number of removed responses.
+     */
+    public synchronized int purge(String prefix) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+	  Map.Entry<String, Entry> entry = it.next();
+	  if (entry.getKey().startsWith(prefix)) {
+	      bytes -= entry.getValue().response.size();
+	      it.remove();
+	      removed++;
+	  }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the stored, not expired response.
+     * 
+     * @param key Key of the response.
+     * @return Stored response, or <code>null</code> if there is none.
+     */
+    private synchronized CachedResponse lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        if (entry.expiresAt - System.nanoTime() < 0) {
+	  entries.remove(key);
+	  bytes -= entry.response.size();
+	  return null;
+        }
+        return entry.response;
+    }
+
+    /**
+     * Stores the response, removing the least recently used responses if needed.
+     * Responses larger than the quarter of the cache are not stored.
+     * 
+     * @param key Key of the response.
+     * @param response Response to store.
+     * @param ttlMillis Time to live of the response, in milliseconds.
+     */
+    private synchronized void store(String key, CachedResponse response, long ttlMillis) {
+        if (ttlMillis <= 0 || response.size() > maxBytes / 4) return;
+
+        Entry previous = entries.put(key, new Entry(response,
+	      System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        if (previous != null) {
+	  bytes -= previous.response.size();
+        }
+        bytes += response.size();
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+	  bytes -= it.next().response.size();
+	  it.remove();
+	  evictions.increment();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("entries=%d bytes=%d/%d hits=%d misses=%d coalesced=%d "
+	      + "evictions=%d", entries.size(), bytes, maxBytes, hits.sum(), misses.sum(),
+	      coalesced.sum(), evictions.sum());
+    }
+
+    /**
+     * Represents a single stored response with it's expiry time.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Entry {
+
+        /**
+         * Represents the stored response.
+         */
+        final CachedResponse response;
+
+        /**
+         * Represents the value of {@link System#nanoTime()} when the response expires.
+         */
+        final long expiresAt;
+
+        /**
+         * Public constructor.
+         * 
+         * @param response Stored response.
+         * @param expiresAt Value of {@link System#nanoTime()} when the response expires.
+         */
+        Entry(CachedResponse response, long expiresAt) {
+	  this.response = response;
+	  this.expiresAt = expiresAt;
+        }
+    }
+}
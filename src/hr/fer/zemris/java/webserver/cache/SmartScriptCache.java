@@ -0,0 +1,278 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Represents the cache of compiled smart scripts, by their paths.
+ * 
+ * <p>Each script is compiled once and reused until it's file changes. Modification time and size
+ * of the file are checked at most once per revalidation interval, so most requests do not even
+ * touch the file system.</p>
+ * 
+ * <p>Concurrent requests for a script which is not compiled yet are coalesced: only the first one
+ * compiles it, others wait for the result. Compilation failures are cached as well, so a broken
+ * script is not parsed again on every request, but only once it's file changes. Failures to read
+ * the file are not cached.</p>
+ * 
+ * Compiled scripts are shared by all threads, so they must not be changed by their users.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ * @param <T> Type of the compiled scripts.
+ */
+public class SmartScriptCache<T> {
+
+    /**
+     * Represents the compiler which creates a compiled script from it's text.
+     */
+    private final Function<String, T> compiler;
+
+    /**
+     * Represents the minimal number of nanoseconds between two checks of the same file.
+     */
+    private final long revalidateNanos;
+
+    /**
+     * Represents the compiled scripts, by their paths.
+     */
+    private final Map<Path, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Represents the number of requests served with an already compiled script.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Represents the number of compilations.
+     */
+    private final LongAdder compilations = new LongAdder();
+
+    /**
+     * Represents the number of requests which waited for another request's compilation.
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Represents the number of failed compilations.
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Public constructor.
+     * 
+     * @param compiler Compiler which creates a compiled script from it's text.
+     * @param revalidateMillis Minimal number of milliseconds between two checks of the same
+     * file, 0 checks the file on every request.
+     * @throws IllegalArgumentException If the interval is negative.
+     */
+    public SmartScriptCache(Function<String, T> compiler, long revalidateMillis) {
+        if (revalidateMillis < 0) {
+	  throw new IllegalArgumentException("Revalidation interval can not be negative.");
+        }
+        this.compiler = compiler;
+        this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+    }
+
+    /**
+     * Returns the compiled script of the given file, compiling it if it was not compiled yet
+     * or if it's file changed since.
+     * 
+     * @param path Path of the script's file.
+     * @return Compiled script.
+     * @throws IOException If the file could not be read.
+     * @throws RuntimeException If the script could not be compiled, the compiler's exception.
+     */
+    public T get(Path path) throws IOException {
+        while (true) {
+	  Entry<T> entry = entries.get(path);
+	  long now = System.nanoTime();
+	  if (entry != null && !entry.result.isDone()) {
+	      coalesced.increment();
+	      return entry.get();
+	  }
+	  if (entry != null && now - entry.checkedAt < revalidateNanos) {
+	      hits.increment();
+	      return entry.get();
+	  }
+
+	  BasicFileAttributes attributes;
+	  try {
+	      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+	  } catch (NoSuchFileException e) {
+	      entries.remove(path);
+	      throw e;
+	  }
+	  if (entry != null && entry.matches(attributes)) {
+	      entry.checkedAt = now;
+	      hits.increment();
+	      return entry.get();
+	  }
+
+	  Entry<T> created = new Entry<>(attributes, now);
+	  boolean registered = entry == null ? entries.putIfAbsent(path, created) == null
+		: entries.replace(path, entry, created);
+	  if (!registered) continue;
+
+	  compile(path, created);
+	  return created.get();
+        }
+    }
+
+    /**
+     * Compiles the script of the given file and completes the entry with the result. The entry
+     * is always completed, so requests waiting for it never hang. Errors are not cached: the
+     * entry is removed and the error is rethrown, so the next request compiles the script again.
+     * 
+     * @param path Path of the script's file.
+     * @param entry Entry of the script.
+     */
+    private void compile(Path path, Entry<T> entry) {
+        compilations.increment();
+        String text;
+        try {
+	  text = read(path);
+        } catch (IOException e) {
+	  entries.remove(path, entry);
+	  entry.result.completeExceptionally(e);
+	  return;
+        }
+
+        try {
+	  entry.result.complete(compiler.apply(text));
+        } catch (RuntimeException e) {
+	  failures.increment();
+	  entry.result.completeExceptionally(e);
+        } catch (Throwable e) {
+	  failures.increment();
+	  entries.remove(path, entry);
+	  entry.result.completeExceptionally(e);
+	  throw e;
+        }
+    }
+
+    /**
+     * Reads the text of the script. Each line ends with "\r\n", regardless of the line endings
+     * used in the file.
+     * 
+     * @param path Path of the script's file.
+     * @return Text of the script.
+     * @throws IOException In case of IO error.
+     */
+    static String read(Path path) throws IOException {
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(content.length() + content.length() / 16 + 2);
+        int length = content.length();
+        for (int i = 0; i < length; i++) {
+	  char c = content.charAt(i);
+	  if (c == '\r' || c == '\n') {
+	      sb.append("\r\n");
+	      if (c == '\r' && i + 1 < length && content.charAt(i + 1) == '\n') {
+		i++;
+	      }
+	  } else {
+	      sb.append(c);
+	  }
+        }
+        char last = length == 0 ? '\n' : content.charAt(length - 1);
+        if (last != '\r' && last != '\n') {
+	  sb.append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes all compiled scripts.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("scripts=%d hits=%d compilations=%d coalesced=%d failures=%d",
+	      entries.size(), hits.sum(), compilations.sum(), coalesced.sum(), failures.sum());
+    }
+
+    /**
+     * Represents the compiled script of a single version of a file.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     * @param <T> Type of the compiled scripts.
+     */
+    private static class Entry<T> {
+
+        /**
+         * Represents the modification time of the compiled file.
+         */
+        final FileTime modified;
+
+        /**
+         * Represents the size of the compiled file.
+         */
+        final long size;
+
+        /**
+         * Represents the compiled script or the compilation failure.
+         */
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        /**
+         * Represents the time of the last check of the file, in nanoseconds.
+         */
+        volatile long checkedAt;
+
+        /**
+         * Public constructor.
+         * 
+         * @param attributes Attributes of the compiled file.
+         * @param checkedAt Time of the check of the file, in nanoseconds.
+         */
+        Entry(BasicFileAttributes attributes, long checkedAt) {
+	  this.modified = attributes.lastModifiedTime();
+	  this.size = attributes.size();
+	  this.checkedAt = checkedAt;
+        }
+
+        /**
+         * Checks if the entry was compiled from the file with the given attributes.
+         * 
+         * @param attributes Current attributes of the file.
+         * @return <code>true</code> if the file did not change, elseway <code>false</code>.
+         */
+        boolean matches(BasicFileAttributes attributes) {
+	  return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+
+        /**
+         * Waits for the compilation and returns it's result.
+         * 
+         * @return Compiled script.
+         * @throws IOException If the file could not be read.
+         */
+        T get() throws IOException {
+	  try {
+	      return result.join();
+	  } catch (CompletionException e) {
+	      Throwable cause = e.getCause();
+	      if (cause instanceof IOException) throw (IOException) cause;
+	      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+	      if (cause instanceof Error) throw (Error) cause;
+	      throw e;
+	  }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents the complete, pre-encoded error responses of the server.
+ * 
+ * Responses for 400, 403, 404, 405 and 503 are created in advance, responses for other
+ * status codes are created on their first use. Each response contains a short HTML page,
+ * it's length and closes the connection.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CannedResponses {
+
+    /**
+     * Represents the status texts of the known status codes.
+     */
+    private static final Map<Integer, String> STATUS_TEXTS = new ConcurrentHashMap<>();
+
+    /**
+     * Represents the created responses, by their status codes.
+     */
+    private static final Map<Integer, Response> RESPONSES = new ConcurrentHashMap<>();
+
+    static {
+        STATUS_TEXTS.put(400, "Bad Request");
+        STATUS_TEXTS.put(403, "Forbidden");
+        STATUS_TEXTS.put(404, "Not Found");
+        STATUS_TEXTS.put(405, "Method Not Allowed");
+        STATUS_TEXTS.put(500, "Internal Server Error");
+        STATUS_TEXTS.put(503, "Service Unavailable");
+        STATUS_TEXTS.put(504, "Gateway Timeout");
+
+        for (int status : new int[] { 400, 403, 404, 405, 503 }) {
+	  RESPONSES.put(status, create(status));
+        }
+    }
+
+    /**
+     * Private constructor, this class should not be instantiated.
+     */
+    private CannedResponses() {}
+
+    /**
+     * Returns the status text of the status code.
+     * 
+     * @param status Status code.
+     * @return Status text, or "Error" for unknown codes.
+     */
+    public static String statusText(int status) {
+        return STATUS_TEXTS.getOrDefault(status, "Error");
+    }
+
+    /**
+     * Writes the complete response with the given status code and flushes the stream.
+     * 
+     * @param os Stream to write to.
+     * @param status Status code of the response.
+     * @param date Flag which indicates if the "Date" header should be written.
+     * @throws IOException In case of IO error.
+     */
+    public static void write(OutputStream os, int status, boolean date) throws IOException {
+        Response response = RESPONSES.computeIfAbsent(status, CannedResponses::create);
+        os.write(response.head);
+        if (date) {
+	  os.write(DateHeader.get());
+        }
+        os.write(response.rest);
+        os.flush();
+    }
+
+    /**
+     * Creates the response with the given status code.
+     * 
+     * @param status Status code of the response.
+     * @return Created response.
+     */
+    private static Response create(int status) {
+        String title = status + " " + statusText(status);
+        byte[] body = ("<html><head><title>" + title + "</title></head><body><h1>" + title
+	      + "</h1></body></html>\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] head = ("HTTP/1.1 " + title + "\r\n"
+	      + "Content-Type: text/html; charset=ISO-8859-1\r\n"
+	      + "Content-Length: " + body.length + "\r\n"
+	      + "Connection: close\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] rest = new byte[body.length + 2];
+        rest[0] = '\r';
+        rest[1] = '\n';
+        System.arraycopy(body, 0, rest, 2, body.length);
+        return new Response(head, rest);
+    }
+
+    /**
+     * Represents a single encoded response, split where the "Date" header can be inserted.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Response {
+
+        /**
+         * Represents the status line and the header lines.
+         */
+        final byte[] head;
+
+        /**
+         * Represents the empty line ending the header and the body.
+         */
+        final byte[] rest;
+
+        /**
+         * Public constructor.
+         * 
+         * @param head Status line and header lines.
+         * @param rest Empty line ending the header and the body.
+         */
+        Response(byte[] head, byte[] rest) {
+	  this.head = head;
+	  this.rest = rest;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package hr.fer.zemris.java.webserver.http;
+
+/**
+ * Represents a single-pass parser of the value of a "Cookie" request header, as described
+ * in RFC 6265.
+ * 
+ * <p>Parser works as a cursor over the given characters: each call of {@link #next()} moves
+ * to the next cookie pair. Name and value of the current pair are kept as offsets into
+ * the original text, so names can be compared with {@link #nameEquals(String)} and values
+ * are created only if they are requested.</p>
+ * 
+ * <p>Parser is lenient: values may contain '=' characters, surrounding double quotes are
+ * removed from values and malformed pairs (without '=' or without name) are skipped
+ * instead of failing the whole request.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CookieParser {
+
+    /**
+     * Represents the text which is parsed.
+     */
+    private final CharSequence text;
+
+    /**
+     * Represents the index after the last character which is parsed.
+     */
+    private final int end;
+
+    /**
+     * Represents the current position of the parser.
+     */
+    private int position;
+
+    /**
+     * Represents the start of the current name.
+     */
+    private int nameStart;
+
+    /**
+     * Represents the end of the current name.
+     */
+    private int nameEnd;
+
+    /**
+     * Represents the start of the current value.
+     */
+    private int valueStart;
+
+    /**
+     * Represents the end of the current value.
+     */
+    private int valueEnd;
+
+    /**
+     * Public constructor.
+     * Parser will parse the characters between the given indexes.
+     * 
+     * @param text Text containing the header value.
+     * @param start Index of the first character of the value.
+     * @param end Index after the last character of the value.
+     */
+    public CookieParser(CharSequence text, int start, int end) {
+        if (text == null || start < 0 || end > text.length() || start > end) {
+	  throw new IllegalArgumentException("Invalid cookie header bounds.");
+        }
+        this.text = text;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Moves the parser to the next cookie pair.
+     * 
+     * @return <code>true</code> if the next pair was found, <code>false</code> if there are
+     * no more pairs.
+     */
+    public boolean next() {
+        while (position < end) {
+	  while (position < end && isWhitespace(text.charAt(position))) {
+	      position++;
+	  }
+
+	  nameStart = position;
+	  int equals = -1;
+	  while (position < end) {
+	      char c = text.charAt(position);
+	      if (c == ';') break;
+	      if (c == '=' && equals < 0) equals = position;
+	      position++;
+	  }
+	  int pairEnd = position;
+	  position++; // skips ';'
+
+	  if (equals < 0) continue;
+
+	  nameEnd = trimEnd(nameStart, equals);
+	  if (nameEnd == nameStart) continue;
+
+	  valueStart = equals + 1;
+	  while (valueStart < pairEnd && isWhitespace(text.charAt(valueStart))) {
+	      valueStart++;
+	  }
+	  valueEnd = trimEnd(valueStart, pairEnd);
+	  if (valueEnd - valueStart >= 2 && text.charAt(valueStart) == '"'
+		&& text.charAt(valueEnd - 1) == '"') {
+	      valueStart++;
+	      valueEnd--;
+	  }
+	  return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the name of the current pair is equal to the given name.
+     * Does not create any new objects.
+     * 
+     * @param name Name to compare with.
+     * @return <code>true</code> if names are equal, elseway <code>false</code>.
+     */
+    public boolean nameEquals(String name) {
+        int length = nameEnd - nameStart;
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+	  if (text.charAt(nameStart + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of the current pair.
+     * 
+     * @return Name of the current pair.
+     */
+    public String getName() {
+        return text.subSequence(nameStart, nameEnd).toString();
+    }
+
+    /**
+     * Returns the value of the current pair, without surrounding double quotes.
+     * 
+     * @return Value of the current pair.
+     */
+    public String getValue() {
+        return text.subSequence(valueStart, valueEnd).toString();
+    }
+
+    /**
+     * Returns the index after the last non-whitespace character in the given range.
+     * 
+     * @param start Start of the range.
+     * @param end End of the range.
+     * @return Index after the last non-whitespace character, or start if there is none.
+     */
+    private int trimEnd(int start, int end) {
+        while (end > start && isWhitespace(text.charAt(end - 1))) {
+	  end--;
+        }
+        return end;
+    }
+
+    /**
+     * Checks if the given character is a space or a horizontal tab.
+     * 
+     * @param c Character to check.
+     * @return <code>true</code> if the character is whitespace, elseway <code>false</code>.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -0,0 +1,80 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Represents the shared "Date" response header line.
+ * 
+ * The line has the precision of one second, so it is encoded at most once per second and
+ * all threads share the encoded line in between.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class DateHeader {
+
+    /**
+     * Represents the format of the date, as required by HTTP.
+     */
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    /**
+     * Represents the most recently encoded line.
+     */
+    private static volatile Line current;
+
+    /**
+     * Private constructor, this class should not be instantiated.
+     */
+    private DateHeader() {}
+
+    /**
+     * Returns the encoded line of the current second, for example
+     * "Date: Tue, 3 Jun 2008 11:05:30 GMT\r\n". Returned array must not be modified.
+     * 
+     * @return Encoded date line.
+     */
+    public static byte[] get() {
+        long second = System.currentTimeMillis() / 1000;
+        Line line = current;
+        if (line == null || line.second != second) {
+	  String date = FORMAT.format(Instant.ofEpochSecond(second).atOffset(ZoneOffset.UTC));
+	  line = new Line(second, ("Date: " + date + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+	  current = line;
+        }
+        return line.bytes;
+    }
+
+    /**
+     * Represents the encoded line of a single second.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Line {
+
+        /**
+         * Represents the second of the line, since the epoch.
+         */
+        final long second;
+
+        /**
+         * Represents the encoded line.
+         */
+        final byte[] bytes;
+
+        /**
+         * Public constructor.
+         * 
+         * @param second Second of the line, since the epoch.
+         * @param bytes Encoded line.
+         */
+        Line(long second, byte[] bytes) {
+	  this.second = second;
+	  this.bytes = bytes;
+        }
+    }
+}
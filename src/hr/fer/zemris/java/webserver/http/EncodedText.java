@@ -0,0 +1,108 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Represents a static text which is written to many responses, together with it's encoded bytes.
+ * 
+ * The text is encoded in UTF-8, the default charset of the responses, right away. Bytes for
+ * any other charset are encoded on first use and kept until the text is requested in yet
+ * another charset, which is enough, since a server rarely uses more than one charset.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class EncodedText {
+
+    /**
+     * Represents the text.
+     */
+    private final String text;
+
+    /**
+     * Represents the text encoded in UTF-8.
+     */
+    private final byte[] utf8;
+
+    /**
+     * Represents the text encoded in the most recently used other charset.
+     */
+    private volatile Encoded other;
+
+    /**
+     * Public constructor.
+     * 
+     * @param text Text to encode, must not be <code>null</code>.
+     */
+    public EncodedText(String text) {
+        if (text == null) {
+	  throw new IllegalArgumentException("Text must not be null.");
+        }
+        this.text = text;
+        this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the text encoded in the given charset. Returned array must not be modified.
+     * 
+     * @param charset Charset of the bytes.
+     * @return Encoded text.
+     */
+    public byte[] getBytes(Charset charset) {
+        if (charset == StandardCharsets.UTF_8) return utf8;
+
+        Encoded encoded = other;
+        if (encoded == null || !encoded.charset.equals(charset)) {
+	  if (charset.equals(StandardCharsets.UTF_8)) return utf8;
+	  encoded = new Encoded(charset, text.getBytes(charset));
+	  other = encoded;
+        }
+        return encoded.bytes;
+    }
+
+    /**
+     * The text getter.
+     * 
+     * @return String Gets the text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Represents the text encoded in one charset.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Encoded {
+
+        /**
+         * Represents the charset of the bytes.
+         */
+        private final Charset charset;
+
+        /**
+         * Represents the encoded bytes.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Public constructor.
+         * Sets fields to the given values.
+         * 
+         * @param charset Charset of the bytes.
+         * @param bytes Encoded bytes.
+         */
+        public Encoded(Charset charset, byte[] bytes) {
+	  this.charset = charset;
+	  this.bytes = bytes;
+        }
+    }
+}
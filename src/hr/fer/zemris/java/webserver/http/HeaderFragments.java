@@ -0,0 +1,133 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents the cache of encoded response header lines.
+ * 
+ * <p>Status lines are cached per status code and content type lines per mime type and
+ * encoding, so generating a header is only a matter of copying the cached arrays. If a status
+ * code is used with different status texts (or a mime type with different encodings),
+ * the most recently used line is kept.</p>
+ * 
+ * All lines are encoded with ISO-8859-1 and end with CRLF. Returned arrays must not be modified.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class HeaderFragments {
+
+    /**
+     * Represents the largest cached status code.
+     */
+    private static final int MAX_STATUS = 599;
+
+    /**
+     * Represents the maximal number of cached mime types.
+     */
+    private static final int MAX_MIME_TYPES = 256;
+
+    /**
+     * Represents the cached status lines, by their status codes.
+     */
+    private static final Fragment[] STATUS_LINES = new Fragment[MAX_STATUS + 1];
+
+    /**
+     * Represents the cached content type lines, by their mime types.
+     */
+    private static final Map<String, Fragment> CONTENT_TYPES = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor, this class should not be instantiated.
+     */
+    private HeaderFragments() {}
+
+    /**
+     * Returns the encoded status line, for example "HTTP/1.1 200 OK\r\n".
+     * 
+     * @param statusCode Status code of the response.
+     * @param statusText Status text of the response.
+     * @return Encoded status line.
+     */
+    public static byte[] statusLine(int statusCode, String statusText) {
+        boolean cacheable = statusCode >= 0 && statusCode <= MAX_STATUS;
+        if (cacheable) {
+	  Fragment fragment = STATUS_LINES[statusCode];
+	  if (fragment != null && fragment.variant.equals(statusText)) {
+	      return fragment.bytes;
+	  }
+        }
+
+        byte[] bytes = encode("HTTP/1.1 " + statusCode + " " + statusText + "\r\n");
+        if (cacheable) {
+	  STATUS_LINES[statusCode] = new Fragment(statusText, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the encoded content type line, for example
+     * "Content-Type: text/html; charset=UTF-8\r\n". Charset is written only for text types.
+     * 
+     * @param mimeType Mime type of the response.
+     * @param encoding Encoding of the response.
+     * @return Encoded content type line.
+     */
+    public static byte[] contentType(String mimeType, String encoding) {
+        boolean text = mimeType.startsWith("text/");
+        String variant = text ? encoding : "";
+        Fragment fragment = CONTENT_TYPES.get(mimeType);
+        if (fragment != null && fragment.variant.equals(variant)) {
+	  return fragment.bytes;
+        }
+
+        byte[] bytes = encode("Content-Type: " + mimeType
+	      + (text ? "; charset=" + encoding : "") + "\r\n");
+        if (fragment != null || CONTENT_TYPES.size() < MAX_MIME_TYPES) {
+	  CONTENT_TYPES.put(mimeType, new Fragment(variant, bytes));
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes the header line.
+     * 
+     * @param line Line to encode.
+     * @return Encoded line.
+     */
+    private static byte[] encode(String line) {
+        return line.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Represents a single cached line with the variable part it was created for.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Fragment {
+
+        /**
+         * Represents the variable part of the line (status text or encoding).
+         */
+        final String variant;
+
+        /**
+         * Represents the encoded line.
+         */
+        final byte[] bytes;
+
+        /**
+         * Public constructor.
+         * 
+         * @param variant Variable part of the line.
+         * @param bytes Encoded line.
+         */
+        Fragment(String variant, byte[] bytes) {
+	  this.variant = variant;
+	  this.bytes = bytes;
+        }
+    }
+}
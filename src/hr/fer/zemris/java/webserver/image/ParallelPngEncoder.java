@@ -0,0 +1,396 @@
+package hr.fer.zemris.java.webserver.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.image.PngEncoder.Filter;
+
+/**
+ * Represents an encoder of 8-bit RGB PNG images which uses multiple threads for large images.
+ * 
+ * <p>Image is split into bands of rows which are filtered and compressed in parallel on
+ * a {@link ForkJoinPool}. Each band is compressed separately, primed with the last 32 KB
+ * of the previous band as the dictionary, and ends on a byte boundary, so the compressed bands
+ * simply follow each other in a single zlib stream. Checksums of the bands are combined
+ * into the checksum of the whole stream.</p>
+ * 
+ * Each band is written as it's own IDAT chunk, in order, as soon as it is compressed,
+ * so the whole encoded image is never kept in memory.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ParallelPngEncoder {
+
+    /**
+     * Represents the approximate number of uncompressed bytes in a single band.
+     */
+    private static final int BAND_BYTES = 128 * 1024;
+
+    /**
+     * Represents the size of the deflate dictionary.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Represents the modulus of the Adler-32 checksum.
+     */
+    private static final int ADLER_BASE = 65521;
+
+    /**
+     * Represents the type of the chunks containing image data.
+     */
+    private static final byte[] IDAT = { 'I', 'D', 'A', 'T' };
+
+    /**
+     * Represents the compression level, from 0 to 9.
+     */
+    private final int compressionLevel;
+
+    /**
+     * Represents the row filter.
+     */
+    private final Filter filter;
+
+    /**
+     * Represents the pool compressing the bands.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Represents the per-thread compressors, without zlib header and checksum.
+     */
+    private final ThreadLocal<Deflater> deflaters;
+
+    /**
+     * Public constructor.
+     * 
+     * @param compressionLevel Compression level, from 0 (none) to 9 (best).
+     * @param filter Row filter.
+     * @param pool Pool compressing the bands.
+     * @throws IllegalArgumentException In case of invalid arguments.
+     */
+    public ParallelPngEncoder(int compressionLevel, Filter filter, ForkJoinPool pool) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+	  throw new IllegalArgumentException("Compression level must be between 0 and 9.");
+        }
+        if (filter == null || pool == null) {
+	  throw new IllegalArgumentException("Filter and pool must not be null.");
+        }
+        this.compressionLevel = compressionLevel;
+        this.filter = filter;
+        this.pool = pool;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(compressionLevel, true));
+    }
+
+    /**
+     * Public constructor which uses the common {@link ForkJoinPool}.
+     * 
+     * @param compressionLevel Compression level, from 0 (none) to 9 (best).
+     * @param filter Row filter.
+     */
+    public ParallelPngEncoder(int compressionLevel, Filter filter) {
+        this(compressionLevel, filter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encodes the image and writes it to the given context.
+     * Sets the mime type of the response to "image/png" if the header was not sent yet.
+     * 
+     * @param image Image to encode.
+     * @param context Context to write to.
+     * @throws IOException In case of IO error.
+     */
+    public void write(BufferedImage image, RequestContext context) throws IOException {
+        context.setMimeType("image/png");
+        write(image, context::write);
+    }
+
+    /**
+     * Encodes the image and writes it to the given stream.
+     * 
+     * @param image Image to encode.
+     * @param os Stream to write to.
+     * @throws IOException In case of IO error.
+     */
+    public void write(BufferedImage image, OutputStream os) throws IOException {
+        write(image, os::write);
+    }
+
+    /**
+     * Encodes the image and writes it to the given sink.
+     * At most two bands per thread of the pool are compressed or waiting at any moment.
+     * 
+     * @param image Image to encode.
+     * @param sink Sink to write to.
+     * @throws IOException In case of IO error.
+     */
+    private void write(BufferedImage image, ISink sink) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowsPerBand = Math.max(1, BAND_BYTES / (width * PngEncoder.BYTES_PER_PIXEL + 1));
+        int bands = (height + rowsPerBand - 1) / rowsPerBand;
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+
+        sink.write(PngEncoder.SIGNATURE);
+        writeChunk(sink, new byte[] { 'I', 'H', 'D', 'R' }, PngEncoder.header(width, height));
+
+        Deque<CompletableFuture<Band>> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+        long adler = 1;
+        try {
+	  for (int i = 0; i < bands; i++) {
+	      while (submitted < bands && inFlight.size() < maxInFlight) {
+		int start = submitted * rowsPerBand;
+		int end = Math.min(height, start + rowsPerBand);
+		boolean last = ++submitted == bands;
+		inFlight.add(CompletableFuture.supplyAsync(
+		      () -> encodeBand(image, start, end, last), pool));
+	      }
+
+	      Band band = inFlight.poll().join();
+	      adler = combineAdler(adler, band.adler, band.length);
+
+	      byte[] data = band.data;
+	      if (i == 0) {
+		data = concat(zlibHeader(), data);
+	      }
+	      if (i == bands - 1) {
+		byte[] checksum = new byte[4];
+		PngEncoder.writeInt(checksum, 0, (int) adler);
+		data = concat(data, checksum);
+	      }
+	      writeChunk(sink, IDAT, data);
+	  }
+        } catch (CompletionException e) {
+	  throw new IOException("Image band was not encoded.", e.getCause());
+        } finally {
+	  inFlight.forEach(future -> future.cancel(false));
+        }
+
+        writeChunk(sink, new byte[] { 'I', 'E', 'N', 'D' }, new byte[0]);
+    }
+
+    /**
+     * Filters and compresses the rows of a single band.
+     * 
+     * @param image Image to encode.
+     * @param start Index of the first row of the band.
+     * @param end Index after the last row of the band.
+     * @param last Flag which indicates if the band is the last one.
+     * @return Compressed band.
+     */
+    private Band encodeBand(BufferedImage image, int start, int end, boolean last) {
+        int rowLength = image.getWidth() * PngEncoder.BYTES_PER_PIXEL;
+        byte[] previous = new byte[rowLength];
+        byte[] current = new byte[rowLength];
+        byte[] filtered = new byte[rowLength + 1];
+        byte[] best = new byte[rowLength + 1];
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+
+        // the dictionary are the last filtered rows of the previous band, filtering them again
+        // is cheaper than waiting for the previous band
+        if (start > 0) {
+	  int dictionaryRows = (DICTIONARY_SIZE + rowLength) / (rowLength + 1);
+	  int dictionaryStart = Math.max(0, start - dictionaryRows);
+	  if (dictionaryStart > 0) {
+	      PngEncoder.readRow(image, dictionaryStart - 1, previous);
+	  }
+
+	  byte[] dictionary = new byte[(start - dictionaryStart) * (rowLength + 1)];
+	  for (int y = dictionaryStart, offset = 0; y < start; y++, offset += rowLength + 1) {
+	      PngEncoder.readRow(image, y, current);
+	      byte[] row = PngEncoder.filterRow(filter, current, previous, filtered, best);
+	      System.arraycopy(row, 0, dictionary, offset, row.length);
+
+	      byte[] swap = previous;
+	      previous = current;
+	      current = swap;
+	  }
+	  int length = Math.min(DICTIONARY_SIZE, dictionary.length);
+	  deflater.setDictionary(dictionary, dictionary.length - length, length);
+        }
+
+        Adler32 adler = new Adler32();
+        ByteArrayOutputStream out = new ByteArrayOutputStream((end - start) * rowLength / 4 + 64);
+        byte[] chunk = new byte[8192];
+
+        for (int y = start; y < end; y++) {
+	  PngEncoder.readRow(image, y, current);
+	  byte[] row = PngEncoder.filterRow(filter, current, previous, filtered, best);
+	  adler.update(row, 0, row.length);
+
+	  deflater.setInput(row, 0, row.length);
+	  while (!deflater.needsInput()) {
+	      out.write(chunk, 0, deflater.deflate(chunk));
+	  }
+
+	  byte[] swap = previous;
+	  previous = current;
+	  current = swap;
+        }
+
+        if (last) {
+	  deflater.finish();
+	  while (!deflater.finished()) {
+	      out.write(chunk, 0, deflater.deflate(chunk));
+	  }
+        } else {
+	  // ends the band on a byte boundary, without ending the stream
+	  int n;
+	  do {
+	      n = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+	      out.write(chunk, 0, n);
+	  } while (n == chunk.length);
+        }
+
+        return new Band(out.toByteArray(), adler.getValue(),
+	      (long) (end - start) * (rowLength + 1));
+    }
+
+    /**
+     * Creates the zlib header for the compression level, without a preset dictionary.
+     * 
+     * @return Two bytes of the header.
+     */
+    private byte[] zlibHeader() {
+        int flags;
+        if (compressionLevel <= 1) {
+	  flags = 0x01;
+        } else if (compressionLevel <= 5) {
+	  flags = 0x5E;
+        } else if (compressionLevel == 6) {
+	  flags = 0x9C;
+        } else {
+	  flags = 0xDA;
+        }
+        return new byte[] { 0x78, (byte) flags };
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive parts of data into the checksum
+     * of the whole data.
+     * 
+     * @param first Checksum of the first part.
+     * @param second Checksum of the second part.
+     * @param secondLength Length of the second part.
+     * @return Checksum of both parts.
+     */
+    static long combineAdler(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((first >> 16) & 0xFFFF) + ((second >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1)) sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Writes a single chunk: it's length, type, data and checksum.
+     * 
+     * @param sink Sink to write to.
+     * @param type Type of the chunk.
+     * @param data Data of the chunk.
+     * @throws IOException In case of IO error.
+     */
+    private static void writeChunk(ISink sink, byte[] type, byte[] data) throws IOException {
+        byte[] head = new byte[8];
+        PngEncoder.writeInt(head, 0, data.length);
+        System.arraycopy(type, 0, head, 4, 4);
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        byte[] checksum = new byte[4];
+        PngEncoder.writeInt(checksum, 0, (int) crc.getValue());
+
+        sink.write(head);
+        sink.write(data);
+        sink.write(checksum);
+    }
+
+    /**
+     * Concatenates two arrays.
+     * 
+     * @param first First array.
+     * @param second Second array.
+     * @return New array containing both arrays.
+     */
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * Represents a single compressed band.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Band {
+
+        /**
+         * Represents the compressed data.
+         */
+        final byte[] data;
+
+        /**
+         * Represents the checksum of the uncompressed data.
+         */
+        final long adler;
+
+        /**
+         * Represents the length of the uncompressed data.
+         */
+        final long length;
+
+        /**
+         * Public constructor.
+         * 
+         * @param data Compressed data.
+         * @param adler Checksum of the uncompressed data.
+         * @param length Length of the uncompressed data.
+         */
+        Band(byte[] data, long adler, long length) {
+	  this.data = data;
+	  this.adler = adler;
+	  this.length = length;
+        }
+    }
+
+    /**
+     * Represents the interface toward any destination of the encoded bytes.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private interface ISink {
+
+        /**
+         * Writes the whole array.
+         * 
+         * @param data Bytes to write.
+         * @throws IOException In case of IO error.
+         */
+        void write(byte[] data) throws IOException;
+    }
+}
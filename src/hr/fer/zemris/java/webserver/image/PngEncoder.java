@@ -0,0 +1,373 @@
+package hr.fer.zemris.java.webserver.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Represents a simple encoder of 8-bit RGB PNG images.
+ * 
+ * <p>Unlike {@link javax.imageio.ImageIO}, encoder lets the user choose the compression level
+ * and the row filter, which are the main trade-offs between the encoding time and the size
+ * of the image. Images of type {@link BufferedImage#TYPE_3BYTE_BGR} are read directly from
+ * their rasters, other types are converted pixel by pixel.</p>
+ * 
+ * Encoder is thread safe, each thread uses it's own {@link Deflater}.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class PngEncoder {
+
+    /**
+     * Represents the signature which starts every PNG file.
+     */
+    static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+
+    /**
+     * Represents the number of bytes per pixel.
+     */
+    static final int BYTES_PER_PIXEL = 3;
+
+    /**
+     * Enumeration Filter represents the row filters of the PNG format.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    public enum Filter {
+
+        /**
+         * Represents rows without filtering; fastest, but compresses worst.
+         */
+        NONE(0),
+
+        /**
+         * Represents the difference to the pixel on the left.
+         */
+        SUB(1),
+
+        /**
+         * Represents the difference to the pixel above.
+         */
+        UP(2),
+
+        /**
+         * Represents the difference to the average of the left and the upper pixel.
+         */
+        AVERAGE(3),
+
+        /**
+         * Represents the difference to the Paeth predictor of the neighbouring pixels.
+         */
+        PAETH(4),
+
+        /**
+         * Represents the choice of the best filter for each row separately; compresses best,
+         * but filters each row five times.
+         */
+        ADAPTIVE(-1);
+
+        /**
+         * Represents the type of the filter written before each row.
+         */
+        private final int type;
+
+        /**
+         * Private constructor.
+         * 
+         * @param type Type of the filter written before each row.
+         */
+        private Filter(int type) {
+	  this.type = type;
+        }
+    }
+
+    /**
+     * Represents the compression level, from 0 to 9.
+     */
+    private final int compressionLevel;
+
+    /**
+     * Represents the row filter.
+     */
+    private final Filter filter;
+
+    /**
+     * Represents the per-thread compressors.
+     */
+    private final ThreadLocal<Deflater> deflaters;
+
+    /**
+     * Public constructor.
+     * 
+     * @param compressionLevel Compression level, from 0 (none) to 9 (best).
+     * @param filter Row filter.
+     * @throws IllegalArgumentException In case of invalid level or filter.
+     */
+    public PngEncoder(int compressionLevel, Filter filter) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+	  throw new IllegalArgumentException("Compression level must be between 0 and 9.");
+        }
+        if (filter == null) {
+	  throw new IllegalArgumentException("Filter must not be null.");
+        }
+        this.compressionLevel = compressionLevel;
+        this.filter = filter;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(compressionLevel));
+    }
+
+    /**
+     * The compression level getter.
+     * 
+     * @return int Gets the compression level.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * The filter getter.
+     * 
+     * @return Filter Gets the filter.
+     */
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Encodes the given image.
+     * 
+     * @param image Image to encode.
+     * @return Bytes of the PNG file.
+     */
+    public byte[] encode(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowLength = width * BYTES_PER_PIXEL;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rowLength * height / 4 + 64);
+        out.write(SIGNATURE, 0, SIGNATURE.length);
+
+        byte[] header = header(width, height);
+        writeChunk(out, "IHDR", header, header.length);
+
+        byte[] previous = new byte[rowLength];
+        byte[] current = new byte[rowLength];
+        byte[] filtered = new byte[rowLength + 1];
+        byte[] best = filter == Filter.ADAPTIVE ? new byte[rowLength + 1] : null;
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        ByteArrayOutputStream data = new ByteArrayOutputStream(rowLength * height / 4 + 64);
+        byte[] chunk = new byte[8192];
+
+        for (int y = 0; y < height; y++) {
+	  readRow(image, y, current);
+
+	  byte[] row = filterRow(filter, current, previous, filtered, best);
+	  deflater.setInput(row, 0, row.length);
+	  while (!deflater.needsInput()) {
+	      int n = deflater.deflate(chunk);
+	      data.write(chunk, 0, n);
+	  }
+
+	  byte[] swap = previous;
+	  previous = current;
+	  current = swap;
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+	  int n = deflater.deflate(chunk);
+	  data.write(chunk, 0, n);
+        }
+
+        byte[] compressed = data.toByteArray();
+        writeChunk(out, "IDAT", compressed, compressed.length);
+        writeChunk(out, "IEND", new byte[0], 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Filters the row with the given filter; adaptive filter tries all other filters and
+     * chooses the one with the smallest sum of absolute filtered values.
+     * 
+     * @param filter Filter to apply.
+     * @param row Row to filter.
+     * @param previous Previous row, zeros for the first row.
+     * @param filtered Array of row length + 1 bytes used for the filtered row.
+     * @param best Array of row length + 1 bytes used for the best filtered row,
+     * needed only by {@link Filter#ADAPTIVE}.
+     * @return Filter type followed by the filtered row, either the filtered or the best array.
+     */
+    static byte[] filterRow(Filter filter, byte[] row, byte[] previous, byte[] filtered,
+	  byte[] best) {
+        if (filter != Filter.ADAPTIVE) {
+	  applyFilter(filter, row, previous, filtered);
+	  return filtered;
+        }
+
+        long bestSum = Long.MAX_VALUE;
+        for (Filter candidate : Filter.values()) {
+	  if (candidate == Filter.ADAPTIVE) continue;
+
+	  long sum = applyFilter(candidate, row, previous, filtered);
+	  if (sum < bestSum) {
+	      bestSum = sum;
+	      System.arraycopy(filtered, 0, best, 0, filtered.length);
+	  }
+        }
+        return best;
+    }
+
+    /**
+     * Reads a single row of the image as RGB bytes.
+     * 
+     * @param image Image to read.
+     * @param y Index of the row.
+     * @param row Array to fill.
+     */
+    static void readRow(BufferedImage image, int y, byte[] row) {
+        int width = image.getWidth();
+
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+	      && image.getRaster().getDataBuffer() instanceof DataBufferByte
+	      && image.getRaster().getParent() == null) {
+	  byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	  int offset = y * width * BYTES_PER_PIXEL;
+	  for (int i = 0; i < row.length; i += BYTES_PER_PIXEL) {
+	      row[i] = bgr[offset + i + 2];
+	      row[i + 1] = bgr[offset + i + 1];
+	      row[i + 2] = bgr[offset + i];
+	  }
+	  return;
+        }
+
+        for (int x = 0, i = 0; x < width; x++, i += BYTES_PER_PIXEL) {
+	  int rgb = image.getRGB(x, y);
+	  row[i] = (byte) (rgb >> 16);
+	  row[i + 1] = (byte) (rgb >> 8);
+	  row[i + 2] = (byte) rgb;
+        }
+    }
+
+    /**
+     * Filters the row with the given filter.
+     * 
+     * @param filter Filter to apply, must not be {@link Filter#ADAPTIVE}.
+     * @param row Row to filter.
+     * @param previous Previous row, zeros for the first row.
+     * @param out Array to fill with the filter type followed by the filtered row.
+     * @return Sum of the absolute values of the filtered bytes, used for choosing the filter.
+     */
+    static long applyFilter(Filter filter, byte[] row, byte[] previous, byte[] out) {
+        out[0] = (byte) filter.type;
+        long sum = 0;
+
+        for (int i = 0; i < row.length; i++) {
+	  int x = row[i] & 0xFF;
+	  int a = i >= BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xFF : 0;
+	  int b = previous[i] & 0xFF;
+	  int c = i >= BYTES_PER_PIXEL ? previous[i - BYTES_PER_PIXEL] & 0xFF : 0;
+
+	  int predicted;
+	  switch (filter) {
+	  case SUB:
+	      predicted = a;
+	      break;
+	  case UP:
+	      predicted = b;
+	      break;
+	  case AVERAGE:
+	      predicted = (a + b) >>> 1;
+	      break;
+	  case PAETH:
+	      predicted = paeth(a, b, c);
+	      break;
+	  default:
+	      predicted = 0;
+	  }
+
+	  byte value = (byte) (x - predicted);
+	  out[i + 1] = value;
+	  sum += Math.abs(value);
+        }
+        return sum;
+    }
+
+    /**
+     * Calculates the Paeth predictor of the given neighbouring bytes.
+     * 
+     * @param a Byte on the left.
+     * @param b Byte above.
+     * @param c Byte above on the left.
+     * @return The neighbour closest to a + b - c.
+     */
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Creates the data of the IHDR chunk for an 8-bit RGB image.
+     * 
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return Data of the chunk.
+     */
+    static byte[] header(int width, int height) {
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 2; // color type: RGB
+        return header;
+    }
+
+    /**
+     * Writes a single chunk: it's length, type, data and checksum.
+     * 
+     * @param out Stream to write to.
+     * @param type Type of the chunk.
+     * @param data Data of the chunk.
+     * @param length Number of data bytes.
+     */
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data,
+	  int length) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] number = new byte[4];
+
+        writeInt(number, 0, length);
+        out.write(number, 0, 4);
+        out.write(typeBytes, 0, 4);
+        out.write(data, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(number, 0, (int) crc.getValue());
+        out.write(number, 0, 4);
+    }
+
+    /**
+     * Writes the integer in big-endian order.
+     * 
+     * @param array Array to write to.
+     * @param offset Index of the first byte.
+     * @param value Value to write.
+     */
+    static void writeInt(byte[] array, int offset, int value) {
+        array[offset] = (byte) (value >>> 24);
+        array[offset + 1] = (byte) (value >>> 16);
+        array[offset + 2] = (byte) (value >>> 8);
+        array[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,43 @@
+package hr.fer.zemris.java.webserver.routing;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import hr.fer.zemris.java.webserver.HttpStatusException;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the interface toward any object which can create a response for a {@link Route}.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public interface IRouteHandler {
+
+    /**
+     * Creates the response for the given path.
+     * 
+     * @param path Requested path, without parameters.
+     * @param context Context of the request, already initialized with route's metadata.
+     * @throws IOException In case of IO error.
+     * @throws HttpStatusException If an error response should be sent instead.
+     */
+    public void handle(String path, RequestContext context) throws IOException;
+
+    /**
+     * Starts creating the response for the given path, without waiting for it to be created.
+     * By default, response is created synchronously by {@link #handle(String, RequestContext)}.
+     * 
+     * @param path Requested path, without parameters.
+     * @param context Context of the request, already initialized with route's metadata.
+     * @return Stage which is completed once the response was created.
+     * @throws IOException In case of IO error.
+     * @throws HttpStatusException If an error response should be sent instead.
+     */
+    public default CompletionStage<Void> handleAsync(String path, RequestContext context)
+	  throws IOException {
+        handle(path, context);
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,270 @@
+package hr.fer.zemris.java.webserver.routing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Represents a single route of the server: a pattern of the paths it matches, a handler which
+ * creates the response and the metadata of the route.
+ * 
+ * <p>Type of the route is determined from the pattern:
+ * </br>
+ * * "*.ext" - {@link RouteType#EXTENSION}, matches all paths with the given file extension
+ * </br>
+ * * "/path/*" - {@link RouteType#PREFIX}, matches all paths starting with "/path/"
+ * </br>
+ * * "/path/&#42;/more" - {@link RouteType#WILDCARD}, '*' segments match any single segment
+ * </br>
+ * * "/path" - {@link RouteType#EXACT}, matches only the given path
+ * </p>
+ * 
+ * Known metadata attributes are {@link #MIME_ATTRIBUTE}, {@link #CACHE_ATTRIBUTE} and
+ * {@link #EXECUTOR_ATTRIBUTE}, other attributes are kept for the handlers.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class Route {
+
+    /**
+     * Represents the attribute which sets the mime type of the response.
+     */
+    public static final String MIME_ATTRIBUTE = "mime";
+
+    /**
+     * Represents the attribute which marks the responses of the route as cacheable.
+     */
+    public static final String CACHE_ATTRIBUTE = "cache";
+
+    /**
+     * Represents the attribute which names the executor the route is run on.
+     */
+    public static final String EXECUTOR_ATTRIBUTE = "executor";
+
+    /**
+     * Represents the pattern of the route.
+     */
+    private final String pattern;
+
+    /**
+     * Represents the type of the route.
+     */
+    private final RouteType type;
+
+    /**
+     * Represents the handler of the route.
+     */
+    private final IRouteHandler handler;
+
+    /**
+     * Represents all metadata attributes of the route.
+     */
+    private final Map<String, String> attributes;
+
+    /**
+     * Represents the mime type of the response, or <code>null</code> if handler sets it.
+     */
+    private final String mimeType;
+
+    /**
+     * Represents the flag which indicates if the responses of the route can be cached.
+     */
+    private final boolean cacheable;
+
+    /**
+     * Represents the name of the executor, or <code>null</code> for the default one.
+     */
+    private final String executor;
+
+    /**
+     * Public constructor.
+     * 
+     * @param pattern Pattern of the paths this route matches.
+     * @param handler Handler which creates the response.
+     * @param attributes Metadata attributes, may be <code>null</code>.
+     * @throws IllegalArgumentException In case of invalid pattern or handler.
+     */
+    public Route(String pattern, IRouteHandler handler, Map<String, String> attributes) {
+        if (handler == null) {
+	  throw new IllegalArgumentException("Route handler must not be null.");
+        }
+        this.type = typeOf(pattern);
+        this.pattern = pattern;
+        this.handler = handler;
+        this.attributes = attributes == null ? Collections.emptyMap()
+	      : Collections.unmodifiableMap(new HashMap<>(attributes));
+        this.mimeType = this.attributes.get(MIME_ATTRIBUTE);
+        this.cacheable = Boolean.parseBoolean(this.attributes.get(CACHE_ATTRIBUTE));
+        this.executor = this.attributes.get(EXECUTOR_ATTRIBUTE);
+    }
+
+    /**
+     * Public constructor which creates the route without metadata.
+     * 
+     * @param pattern Pattern of the paths this route matches.
+     * @param handler Handler which creates the response.
+     */
+    public Route(String pattern, IRouteHandler handler) {
+        this(pattern, handler, null);
+    }
+
+    /**
+     * Creates a copy of this route with the given metadata attribute.
+     * 
+     * @param name Name of the attribute.
+     * @param value Value of the attribute.
+     * @return Created route.
+     */
+    public Route withAttribute(String name, String value) {
+        Map<String, String> copy = new HashMap<>(attributes);
+        copy.put(name, value);
+        return new Route(pattern, handler, copy);
+    }
+
+    /**
+     * Creates a route from it's definition, written as the handler's name followed by
+     * the metadata attributes separated by ';', for example
+     * <code>hr.fer.zemris.java.webserver.workers.CircleWorker; mime=image/png; cache=true</code>.
+     * 
+     * @param pattern Pattern of the paths the route matches.
+     * @param definition Definition of the route.
+     * @param handlers Function which creates the handler from the handler's name.
+     * @return Created route.
+     * @throws IllegalArgumentException In case of not correctly formatted definition.
+     */
+    public static Route parse(String pattern, String definition,
+	  Function<String, IRouteHandler> handlers) {
+        String[] parts = definition.split(";");
+        String name = parts[0].trim();
+        if (name.isEmpty()) {
+	  throw new IllegalArgumentException("Route " + pattern + " has no handler.");
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+	  String part = parts[i].trim();
+	  if (part.isEmpty()) continue;
+
+	  int equals = part.indexOf('=');
+	  if (equals <= 0) {
+	      throw new IllegalArgumentException("Wrong route attribute format: " + part);
+	  }
+	  attributes.put(part.substring(0, equals).trim(), part.substring(equals + 1).trim());
+        }
+        return new Route(pattern, handlers.apply(name), attributes);
+    }
+
+    /**
+     * Determines the type of the route from it's pattern.
+     * 
+     * @param pattern Pattern of the route.
+     * @return Type of the route.
+     * @throws IllegalArgumentException In case of invalid pattern.
+     */
+    private static RouteType typeOf(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+	  throw new IllegalArgumentException("Route pattern must not be empty.");
+        }
+
+        if (pattern.startsWith("*.")) {
+	  if (pattern.length() == 2 || pattern.indexOf('*', 1) >= 0
+		|| pattern.indexOf('/') >= 0) {
+	      throw new IllegalArgumentException("Invalid extension route: " + pattern);
+	  }
+	  return RouteType.EXTENSION;
+        }
+
+        if (pattern.charAt(0) != '/') {
+	  throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+        }
+
+        boolean prefix = pattern.endsWith("/*");
+        int end = prefix ? pattern.length() - 1 : pattern.length();
+        boolean wildcard = false;
+        for (int i = 0; i < end; i++) {
+	  if (pattern.charAt(i) != '*') continue;
+
+	  boolean segmentStart = pattern.charAt(i - 1) == '/';
+	  boolean segmentEnd = i + 1 == pattern.length() || pattern.charAt(i + 1) == '/';
+	  if (!segmentStart || !segmentEnd) {
+	      throw new IllegalArgumentException(
+		    "Wildcard must be a whole path segment: " + pattern);
+	  }
+	  wildcard = true;
+        }
+
+        if (prefix) return RouteType.PREFIX;
+        return wildcard ? RouteType.WILDCARD : RouteType.EXACT;
+    }
+
+    /**
+     * The pattern getter.
+     * 
+     * @return String Gets the pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * The type getter.
+     * 
+     * @return RouteType Gets the type.
+     */
+    public RouteType getType() {
+        return type;
+    }
+
+    /**
+     * The handler getter.
+     * 
+     * @return IRouteHandler Gets the handler.
+     */
+    public IRouteHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the value of the given metadata attribute.
+     * 
+     * @param name Name of the attribute.
+     * @return Value of the attribute, or <code>null</code> if not set.
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * The mime type getter.
+     * 
+     * @return String Gets the mime type, or <code>null</code> if handler sets it.
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * The cacheable getter.
+     * 
+     * @return boolean Gets the cacheable flag.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * The executor getter.
+     * 
+     * @return String Gets the executor name, or <code>null</code> for the default one.
+     */
+    public String getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public String toString() {
+        return pattern + " " + attributes;
+    }
+}
@@ -0,0 +1,344 @@
+package hr.fer.zemris.java.webserver.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents an immutable table of the server's routes, compiled to a character trie.
+ * 
+ * <p>Lookup walks the requested path once through the trie, so it's cost depends only on
+ * the length of the path, not on the number of routes, and it does not create any objects.
+ * If more routes match the path, the most specific one is chosen:
+ * </br>
+ * * exact routes are preferred over wildcard routes, wildcard routes over prefix routes
+ * </br>
+ * * longer prefixes are preferred over shorter ones
+ * </br>
+ * * extension routes are used only if no path route matches
+ * </br>
+ * * fallback route is used if nothing else matches
+ * </p>
+ * 
+ * Tables are created with the {@link Builder}.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class RouteTable {
+
+    /**
+     * Represents the root of the path trie.
+     */
+    private final Node paths;
+
+    /**
+     * Represents the root of the extension trie.
+     */
+    private final Node extensions;
+
+    /**
+     * Represents the route used if no other route matches.
+     */
+    private final Route fallback;
+
+    /**
+     * Represents all routes of the table.
+     */
+    private final List<Route> routes;
+
+    /**
+     * Private constructor, used by the {@link Builder}.
+     * 
+     * @param builder Builder containing the routes.
+     */
+    private RouteTable(Builder builder) {
+        this.paths = builder.paths.compile();
+        this.extensions = builder.extensions.compile();
+        this.fallback = builder.fallback;
+        this.routes = new ArrayList<>(builder.routes);
+    }
+
+    /**
+     * Finds the route which matches the given path.
+     * 
+     * @param path Requested path, without parameters.
+     * @return Matching route, or fallback route (which may be <code>null</code>) if none matches.
+     */
+    public Route lookup(String path) {
+        Route route = match(paths, path, 0);
+        if (route != null) return route;
+
+        route = matchExtension(path);
+        return route == null ? fallback : route;
+    }
+
+    /**
+     * Returns all routes of the table, in order of their registration.
+     * 
+     * @return Unmodifiable list of routes, without the fallback route.
+     */
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * Matches the rest of the path, starting at the given index, with the given node.
+     * 
+     * @param node Node reached by the previous characters.
+     * @param path Requested path.
+     * @param index Index of the first unmatched character.
+     * @return Matching route, or <code>null</code> if none matches.
+     */
+    private static Route match(Node node, String path, int index) {
+        int length = path.length();
+        if (index == length) {
+	  if (node.exact != null) return node.exact;
+        } else {
+	  Node child = node.child(path.charAt(index));
+	  if (child != null) {
+	      Route route = match(child, path, index + 1);
+	      if (route != null) return route;
+	  }
+
+	  if (node.wildcard != null && path.charAt(index - 1) == '/') {
+	      int segmentEnd = path.indexOf('/', index);
+	      if (segmentEnd < 0) segmentEnd = length;
+	      if (segmentEnd > index) {
+		Route route = match(node.wildcard, path, segmentEnd);
+		if (route != null) return route;
+	      }
+	  }
+        }
+        return node.prefix;
+    }
+
+    /**
+     * Matches the extension of the last segment of the path.
+     * 
+     * @param path Requested path.
+     * @return Matching route, or <code>null</code> if none matches.
+     */
+    private Route matchExtension(String path) {
+        int length = path.length();
+        int dot = -1;
+        for (int i = length - 1; i >= 0; i--) {
+	  char c = path.charAt(i);
+	  if (c == '/') break;
+	  if (c == '.') {
+	      dot = i;
+	      break;
+	  }
+        }
+        if (dot < 0) return null;
+
+        Node node = extensions;
+        for (int i = dot + 1; i < length && node != null; i++) {
+	  node = node.child(path.charAt(i));
+        }
+        return node == null ? null : node.exact;
+    }
+
+    /**
+     * Represents a single node of the trie.
+     * 
+     * While building, children are kept in lists; {@link #compile()} converts them to sorted
+     * arrays searched with binary search.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private static class Node {
+
+        /**
+         * Represents the sorted characters of the children.
+         */
+        private char[] keys = new char[0];
+
+        /**
+         * Represents the children, in order of their characters.
+         */
+        private Node[] children = new Node[0];
+
+        /**
+         * Represents the child which matches any single path segment.
+         */
+        private Node wildcard;
+
+        /**
+         * Represents the route which matches the path ending at this node.
+         */
+        private Route exact;
+
+        /**
+         * Represents the route which matches all paths passing through this node.
+         */
+        private Route prefix;
+
+        /**
+         * Returns the child for the given character.
+         * 
+         * @param c Character of the child.
+         * @return Child node, or <code>null</code> if there is none.
+         */
+        private Node child(char c) {
+	  int index = Arrays.binarySearch(keys, c);
+	  return index < 0 ? null : children[index];
+        }
+
+        /**
+         * Returns the child for the given character, creating it if it does not exist.
+         * 
+         * @param c Character of the child.
+         * @return Child node.
+         */
+        private Node childOrCreate(char c) {
+	  int index = Arrays.binarySearch(keys, c);
+	  if (index >= 0) return children[index];
+
+	  int insertAt = -index - 1;
+	  char[] newKeys = new char[keys.length + 1];
+	  Node[] newChildren = new Node[children.length + 1];
+	  System.arraycopy(keys, 0, newKeys, 0, insertAt);
+	  System.arraycopy(children, 0, newChildren, 0, insertAt);
+	  System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+	  System.arraycopy(children, insertAt, newChildren, insertAt + 1,
+		children.length - insertAt);
+
+	  Node child = new Node();
+	  newKeys[insertAt] = c;
+	  newChildren[insertAt] = child;
+	  keys = newKeys;
+	  children = newChildren;
+	  return child;
+        }
+
+        /**
+         * Creates a deep copy of this node, so the builder can be reused without
+         * changing the built tables.
+         * 
+         * @return Copy of the node.
+         */
+        private Node compile() {
+	  Node copy = new Node();
+	  copy.keys = keys.clone();
+	  copy.children = new Node[children.length];
+	  for (int i = 0; i < children.length; i++) {
+	      copy.children[i] = children[i].compile();
+	  }
+	  copy.wildcard = wildcard == null ? null : wildcard.compile();
+	  copy.exact = exact;
+	  copy.prefix = prefix;
+	  return copy;
+        }
+    }
+
+    /**
+     * Represents the builder of the {@link RouteTable}.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    public static class Builder {
+
+        /**
+         * Represents the root of the path trie.
+         */
+        private final Node paths = new Node();
+
+        /**
+         * Represents the root of the extension trie.
+         */
+        private final Node extensions = new Node();
+
+        /**
+         * Represents all added routes.
+         */
+        private final List<Route> routes = new ArrayList<>();
+
+        /**
+         * Represents the route used if no other route matches.
+         */
+        private Route fallback;
+
+        /**
+         * Adds the route to the table.
+         * 
+         * @param route Route to add.
+         * @return This builder.
+         * @throws IllegalArgumentException If a route with the same pattern was already added.
+         */
+        public Builder add(Route route) {
+	  String pattern = route.getPattern();
+
+	  if (route.getType() == RouteType.EXTENSION) {
+	      Node node = extensions;
+	      for (int i = 2; i < pattern.length(); i++) {
+		node = node.childOrCreate(pattern.charAt(i));
+	      }
+	      node.exact = checkFree(node.exact, route);
+	      routes.add(route);
+	      return this;
+	  }
+
+	  boolean prefix = route.getType() == RouteType.PREFIX;
+	  int end = prefix ? pattern.length() - 1 : pattern.length();
+	  Node node = paths;
+	  for (int i = 0; i < end; i++) {
+	      char c = pattern.charAt(i);
+	      if (c == '*') {
+		if (node.wildcard == null) node.wildcard = new Node();
+		node = node.wildcard;
+	      } else {
+		node = node.childOrCreate(c);
+	      }
+	  }
+
+	  if (prefix) {
+	      node.prefix = checkFree(node.prefix, route);
+	  } else {
+	      node.exact = checkFree(node.exact, route);
+	  }
+	  routes.add(route);
+	  return this;
+        }
+
+        /**
+         * Sets the route used if no other route matches.
+         * Pattern of the fallback route is not used for matching.
+         * 
+         * @param route Fallback route.
+         * @return This builder.
+         */
+        public Builder setFallback(Route route) {
+	  this.fallback = route;
+	  return this;
+        }
+
+        /**
+         * Builds the immutable table from the added routes.
+         * 
+         * @return Created table.
+         */
+        public RouteTable build() {
+	  return new RouteTable(this);
+        }
+
+        /**
+         * Checks that no route was already registered in the trie slot.
+         * 
+         * @param existing Route already in the slot.
+         * @param route Route to register.
+         * @return Route to register.
+         * @throws IllegalArgumentException If the slot is taken.
+         */
+        private static Route checkFree(Route existing, Route route) {
+	  if (existing != null) {
+	      throw new IllegalArgumentException("Duplicate route " + route.getPattern()
+		    + ", already defined as " + existing.getPattern() + ".");
+	  }
+	  return route;
+        }
+    }
+}
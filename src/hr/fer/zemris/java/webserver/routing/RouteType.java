@@ -0,0 +1,35 @@
+package hr.fer.zemris.java.webserver.routing;
+
+/**
+ * Enumeration RouteType represents the ways in which a {@link Route} can match a path.
+ * Type is determined from the route's pattern.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public enum RouteType {
+
+    /**
+     * Represents the route which matches only the path equal to it's pattern,
+     * for example "/hello".
+     */
+    EXACT,
+
+    /**
+     * Represents the route which matches all paths starting with it's pattern,
+     * written with a trailing "/*", for example "/ext/*".
+     */
+    PREFIX,
+
+    /**
+     * Represents the route whose pattern contains '*' segments which match any single
+     * path segment, for example "/users/&#42;/profile".
+     */
+    WILDCARD,
+
+    /**
+     * Represents the route which matches all paths with the given file extension,
+     * written as "*.extension", for example "*.smscr".
+     */
+    EXTENSION
+}
@@ -0,0 +1,387 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+
+import hr.fer.zemris.java.custom.collections.CompactMap;
+
+/**
+ * Represents the codec which stores session parameters into a signed cookie value.
+ * 
+ * <p>Cookie value has the form <code>keyId.body.signature</code>. Body is a base64 (URL-safe,
+ * without padding) representation of a compact binary form of the parameters, preceded by
+ * one character which tells if the body is plain ('p') or encrypted ('e'). Binary form
+ * contains the expiration time of the session and then the length prefixed UTF-8 names and
+ * values of the parameters.</p>
+ * 
+ * <p>Signature is a truncated HMAC-SHA256 of everything before it, computed with the key
+ * whose identifier is written in the cookie. That way cookies signed with older keys are
+ * still valid after the keys were rotated, as long as those keys are still configured.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SessionCookieCodec {
+
+    /**
+     * Represents the mode character of a plain body.
+     */
+    private static final char PLAIN_MODE = 'p';
+
+    /**
+     * Represents the mode character of an encrypted body.
+     */
+    private static final char ENCRYPTED_MODE = 'e';
+
+    /**
+     * Represents the number of signature bytes written to the cookie.
+     */
+    private static final int SIGNATURE_LENGTH = 16;
+
+    /**
+     * Represents the length of the initialization vector used for encryption.
+     */
+    private static final int IV_LENGTH = 12;
+
+    /**
+     * Represents the length of the authentication tag used for encryption, in bits.
+     */
+    private static final int TAG_LENGTH = 128;
+
+    /**
+     * Represents the random used for generating the initialization vectors.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Represents the keys of the codec, the first one is the active one.
+     */
+    private final List<SessionKey> keys;
+
+    /**
+     * Represents the flag which indicates if the body should be encrypted.
+     */
+    private final boolean encrypt;
+
+    /**
+     * Represents the maximal length of the encoded cookie value.
+     */
+    private final int maxSize;
+
+    /**
+     * Represents the session timeout in seconds.
+     */
+    private final int timeout;
+
+    /**
+     * Public constructor.
+     * Sets fields to the given values.
+     * 
+     * @param keys Keys of the codec, the first one is used for signing new cookies.
+     * @param encrypt Flag which indicates if the parameters should be encrypted.
+     * @param maxSize Maximal length of the encoded cookie value.
+     * @param timeout Session timeout in seconds.
+     * @throws IllegalArgumentException If no keys were given.
+     */
+    public SessionCookieCodec(List<SessionKey> keys, boolean encrypt, int maxSize, int timeout) {
+        if (keys == null || keys.isEmpty()) {
+	  throw new IllegalArgumentException("At least one session key must be provided.");
+        }
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+        this.encrypt = encrypt;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Encodes the given parameters to a cookie value, using the active key.
+     * 
+     * @param parameters Parameters to encode.
+     * @return Encoded cookie value, or <code>null</code> if the value would be larger than
+     * the maximal allowed size.
+     */
+    public String encode(Map<String, String> parameters) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeNumber(bos, currentSecond() + timeout);
+        writeNumber(bos, parameters.size());
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+	  writeString(bos, entry.getKey());
+	  writeString(bos, entry.getValue());
+        }
+        byte[] payload = bos.toByteArray();
+
+        SessionKey key = keys.get(0);
+        char mode = PLAIN_MODE;
+        if (encrypt) {
+	  payload = encrypt(key, payload);
+	  mode = ENCRYPTED_MODE;
+        }
+
+        int estimatedSize = key.getId().length() + 2 + (payload.length * 4 + 2) / 3
+	      + (SIGNATURE_LENGTH * 4 + 2) / 3 + 1;
+        if (estimatedSize > maxSize) return null;
+
+        StringBuilder sb = new StringBuilder(estimatedSize);
+        sb.append(key.getId()).append('.').append(mode);
+        sb.append(Base64.getUrlEncoder().withoutPadding().encodeToString(payload));
+        byte[] signature = sign(key, sb);
+        sb.append('.').append(Base64.getUrlEncoder().withoutPadding().encodeToString(signature));
+        return sb.toString();
+    }
+
+    /**
+     * Decodes the given cookie value.
+     * 
+     * @param value Cookie value to decode.
+     * @return Decoded cookie, or <code>null</code> if the value is not correctly formatted,
+     * was not signed by any of the known keys or has expired.
+     */
+    public DecodedCookie decode(String value) {
+        if (value == null) return null;
+
+        int firstDot = value.indexOf('.');
+        int lastDot = value.lastIndexOf('.');
+        if (firstDot <= 0 || lastDot <= firstDot + 1) return null;
+
+        SessionKey key = findKey(value, firstDot);
+        if (key == null) return null;
+
+        try {
+	  byte[] signature = Base64.getUrlDecoder().decode(value.substring(lastDot + 1));
+	  byte[] expected = sign(key, value.subSequence(0, lastDot));
+	  if (!MessageDigest.isEqual(signature, expected)) return null;
+
+	  char mode = value.charAt(firstDot + 1);
+	  byte[] payload = Base64.getUrlDecoder().decode(value.substring(firstDot + 2, lastDot));
+	  if (mode == ENCRYPTED_MODE) {
+	      payload = decrypt(key, payload);
+	  } else if (mode != PLAIN_MODE) {
+	      return null;
+	  }
+
+	  int[] position = new int[1];
+	  long validUntil = readNumber(payload, position);
+	  long remaining = validUntil - currentSecond();
+	  if (remaining <= 0) return null;
+
+	  int size = (int) readNumber(payload, position);
+	  Map<String, String> parameters = new CompactMap<>();
+	  for (int i = 0; i < size; i++) {
+	      String name = readString(payload, position);
+	      parameters.put(name, readString(payload, position));
+	  }
+
+	  boolean stale = key != keys.get(0) || (mode == ENCRYPTED_MODE) != encrypt
+		|| remaining < timeout / 2;
+	  return new DecodedCookie(parameters, stale);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException
+	      | GeneralSecurityException e) {
+	  return null;
+        }
+    }
+
+    /**
+     * Finds the key whose identifier is at the beginning of the value.
+     * 
+     * @param value Cookie value.
+     * @param idLength Length of the identifier.
+     * @return Found key, or <code>null</code> if no such key is known.
+     */
+    private SessionKey findKey(String value, int idLength) {
+        for (SessionKey key : keys) {
+	  String id = key.getId();
+	  if (id.length() == idLength && value.startsWith(id)) return key;
+        }
+        return null;
+    }
+
+    /**
+     * Signs the given text, encoded as UTF-8, with the given key.
+     * 
+     * @param key Key used for signing.
+     * @param text Text to sign.
+     * @return Truncated signature.
+     */
+    private static byte[] sign(SessionKey key, CharSequence text) {
+        Mac mac = key.mac();
+        mac.update(text.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        System.arraycopy(mac.doFinal(), 0, signature, 0, SIGNATURE_LENGTH);
+        return signature;
+    }
+
+    /**
+     * Encrypts the payload with the given key.
+     * Initialization vector is prepended to the result.
+     * 
+     * @param key Key used for encryption.
+     * @param payload Payload to encrypt.
+     * @return Encrypted payload.
+     */
+    private static byte[] encrypt(SessionKey key, byte[] payload) {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        try {
+	  Cipher cipher = key.cipher();
+	  cipher.init(Cipher.ENCRYPT_MODE, key.getCipherKey(), new GCMParameterSpec(TAG_LENGTH, iv));
+	  byte[] encrypted = cipher.doFinal(payload);
+
+	  byte[] result = new byte[IV_LENGTH + encrypted.length];
+	  System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+	  System.arraycopy(encrypted, 0, result, IV_LENGTH, encrypted.length);
+	  return result;
+        } catch (GeneralSecurityException e) {
+	  throw new IllegalStateException("Can not encrypt session cookie.", e);
+        }
+    }
+
+    /**
+     * Decrypts the payload with the given key.
+     * 
+     * @param key Key used for decryption.
+     * @param payload Payload to decrypt, starting with the initialization vector.
+     * @return Decrypted payload.
+     * @throws GeneralSecurityException If the payload can not be decrypted.
+     */
+    private static byte[] decrypt(SessionKey key, byte[] payload) throws GeneralSecurityException {
+        if (payload.length < IV_LENGTH) {
+	  throw new IllegalArgumentException("Encrypted payload too short.");
+        }
+        Cipher cipher = key.cipher();
+        cipher.init(Cipher.DECRYPT_MODE, key.getCipherKey(),
+	      new GCMParameterSpec(TAG_LENGTH, payload, 0, IV_LENGTH));
+        return cipher.doFinal(payload, IV_LENGTH, payload.length - IV_LENGTH);
+    }
+
+    /**
+     * Writes a non-negative number using as few bytes as possible (7 bits per byte).
+     * 
+     * @param bos Stream where to write.
+     * @param number Number to write.
+     */
+    private static void writeNumber(ByteArrayOutputStream bos, long number) {
+        while ((number & ~0x7FL) != 0) {
+	  bos.write((int) ((number & 0x7F) | 0x80));
+	  number >>>= 7;
+        }
+        bos.write((int) number);
+    }
+
+    /**
+     * Reads a number written by {@link #writeNumber(ByteArrayOutputStream, long)}.
+     * 
+     * @param data Data from which to read.
+     * @param position One element array containing the current position, will be updated.
+     * @return The read number.
+     */
+    private static long readNumber(byte[] data, int[] position) {
+        long number = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+	  int b = data[position[0]++];
+	  number |= (long) (b & 0x7F) << shift;
+	  if ((b & 0x80) == 0) return number;
+        }
+        throw new IllegalArgumentException("Number too long.");
+    }
+
+    /**
+     * Writes a length prefixed UTF-8 representation of the given string.
+     * 
+     * @param bos Stream where to write.
+     * @param text String to write.
+     */
+    private static void writeString(ByteArrayOutputStream bos, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeNumber(bos, bytes.length);
+        bos.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(ByteArrayOutputStream, String)}.
+     * 
+     * @param data Data from which to read.
+     * @param position One element array containing the current position, will be updated.
+     * @return The read string.
+     */
+    private static String readString(byte[] data, int[] position) {
+        int length = (int) readNumber(data, position);
+        if (length < 0 || length > data.length - position[0]) {
+	  throw new IndexOutOfBoundsException("String length out of bounds.");
+        }
+        String text = new String(data, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return text;
+    }
+
+    /**
+     * Returns the current time in seconds.
+     * 
+     * @return Number of seconds since the epoch.
+     */
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Represents the result of decoding a session cookie.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    public static class DecodedCookie {
+
+        /**
+         * Represents the decoded parameters.
+         */
+        private final Map<String, String> parameters;
+
+        /**
+         * Represents the flag which indicates if the cookie should be issued again.
+         */
+        private final boolean stale;
+
+        /**
+         * Public constructor.
+         * Sets fields to the given values.
+         * 
+         * @param parameters Decoded parameters.
+         * @param stale Flag which indicates if the cookie should be issued again.
+         */
+        public DecodedCookie(Map<String, String> parameters, boolean stale) {
+	  this.parameters = parameters;
+	  this.stale = stale;
+        }
+
+        /**
+         * The parameters getter.
+         * 
+         * @return Map Gets the parameters.
+         */
+        public Map<String, String> getParameters() {
+	  return parameters;
+        }
+
+        /**
+         * Checks if the cookie should be issued again, even if the parameters did not change.
+         * That is the case if it was signed with an older key, or if more than half of
+         * the session timeout has passed.
+         * 
+         * @return boolean True if the cookie is stale, elseway false.
+         */
+        public boolean isStale() {
+	  return stale;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Represents a single key used for signing (and optionally encrypting) session cookies.
+ * 
+ * Each key has it's own short identifier which is written to the cookie, so the server
+ * is able to verify cookies signed with older keys after the keys were rotated.
+ * Signing and encryption keys are derived from the configured secret.
+ * 
+ * <p>{@link Mac} and {@link Cipher} instances are not thread safe, so each thread keeps
+ * it's own instances.</p>
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SessionKey {
+
+    /**
+     * Represents the algorithm used for signing.
+     */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * Represents the algorithm used for encryption.
+     */
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+
+    /**
+     * Represents the minimal length of the secret in bytes.
+     */
+    private static final int MIN_SECRET_LENGTH = 16;
+
+    /**
+     * Represents the length of the derived encryption key in bytes.
+     */
+    private static final int CIPHER_KEY_LENGTH = 16;
+
+    /**
+     * Represents the identifier of the key.
+     */
+    private final String id;
+
+    /**
+     * Represents the key used for signing.
+     */
+    private final SecretKeySpec macKey;
+
+    /**
+     * Represents the key used for encryption.
+     */
+    private final SecretKeySpec cipherKey;
+
+    /**
+     * Represents the per-thread signing instances.
+     */
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Represents the per-thread encryption instances.
+     */
+    private final ThreadLocal<Cipher> ciphers;
+
+    /**
+     * Public constructor.
+     * Derives the signing and encryption key from the given secret.
+     * 
+     * @param id Identifier of the key, must consist only of letters and digits.
+     * @param secret Secret of the key, must have at least 16 bytes.
+     * @throws IllegalArgumentException In case of an invalid identifier or secret.
+     */
+    public SessionKey(String id, byte[] secret) {
+        if (id == null || id.isEmpty() || !id.chars().allMatch(Character::isLetterOrDigit)) {
+	  throw new IllegalArgumentException("Invalid session key id: " + id);
+        }
+        if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+	  throw new IllegalArgumentException(
+		"Session key " + id + " must have at least " + MIN_SECRET_LENGTH + " bytes.");
+        }
+
+        this.id = id;
+        SecretKeySpec master = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.macKey = new SecretKeySpec(derive(master, "mac"), MAC_ALGORITHM);
+        byte[] cipherBytes = new byte[CIPHER_KEY_LENGTH];
+        System.arraycopy(derive(master, "enc"), 0, cipherBytes, 0, CIPHER_KEY_LENGTH);
+        this.cipherKey = new SecretKeySpec(cipherBytes, "AES");
+
+        this.macs = ThreadLocal.withInitial(() -> {
+	  try {
+	      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+	      mac.init(macKey);
+	      return mac;
+	  } catch (GeneralSecurityException e) {
+	      throw new IllegalStateException("Can not create session cookie signer.", e);
+	  }
+        });
+        this.ciphers = ThreadLocal.withInitial(() -> {
+	  try {
+	      return Cipher.getInstance(CIPHER_ALGORITHM);
+	  } catch (GeneralSecurityException e) {
+	      throw new IllegalStateException("Can not create session cookie cipher.", e);
+	  }
+        });
+    }
+
+    /**
+     * Parses the list of keys from it's textual representation.
+     * 
+     * Keys are separated by ',' and each key is written as <code>id:base64Secret</code>.
+     * The first key in the list is the active one.
+     * 
+     * @param text Textual representation of the keys.
+     * @return List of the parsed keys.
+     * @throws IllegalArgumentException In case of not correctly formatted keys.
+     */
+    public static List<SessionKey> parseKeys(String text) {
+        List<SessionKey> keys = new ArrayList<>();
+        if (text == null) return keys;
+
+        for (String single : text.split(",")) {
+	  single = single.trim();
+	  if (single.isEmpty()) continue;
+
+	  int colon = single.indexOf(':');
+	  if (colon <= 0) {
+	      throw new IllegalArgumentException("Wrong session key format: " + single);
+	  }
+	  keys.add(new SessionKey(single.substring(0, colon),
+		Base64.getDecoder().decode(single.substring(colon + 1).trim())));
+        }
+        return keys;
+    }
+
+    /**
+     * The id getter.
+     * 
+     * @return String Gets the id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the signing instance of the current thread.
+     * 
+     * @return Initialized {@link Mac}.
+     */
+    Mac mac() {
+        Mac mac = macs.get();
+        mac.reset();
+        return mac;
+    }
+
+    /**
+     * Returns the encryption instance of the current thread.
+     * Instance must be initialized by the caller.
+     * 
+     * @return Not initialized {@link Cipher}.
+     */
+    Cipher cipher() {
+        return ciphers.get();
+    }
+
+    /**
+     * The cipher key getter.
+     * 
+     * @return SecretKeySpec Gets the cipher key.
+     */
+    SecretKeySpec getCipherKey() {
+        return cipherKey;
+    }
+
+    /**
+     * Derives a new key from the master key and the given label.
+     * 
+     * @param master Master key.
+     * @param label Label of the derived key.
+     * @return Bytes of the derived key.
+     */
+    private static byte[] derive(SecretKeySpec master, String label) {
+        try {
+	  Mac mac = Mac.getInstance(MAC_ALGORITHM);
+	  mac.init(master);
+	  return mac.doFinal(label.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+	  throw new IllegalStateException("Can not derive session key.", e);
+        }
+    }
+}
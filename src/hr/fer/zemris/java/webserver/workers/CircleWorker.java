@@ -3,42 +3,242 @@ package hr.fer.zemris.java.webserver.workers;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
-import javax.imageio.ImageIO;
-
+import hr.fer.zemris.java.webserver.HttpStatusException;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.image.PngEncoder;
 
 /**
  * Represents a type of worker.
  * 
- * This worker has a task to render a 200x200 png image, create a circle in it 
- * and fill it with red color.
+ * This worker has a task to render a png image, create a shape in it and fill it with color.
+ * By default, image is 200x200 and contains a red circle.
+ * 
+ * <p>Image is described with the parameters:
+ * </br>
+ * * size - width and height of the image, between 1 and 1024
+ * </br>
+ * * color - name of the color (for example "blue") or it's RGB value written as six hexadecimal
+ * digits (for example "00ff00")
+ * </br>
+ * * shape - "circle", "square" or "ring"
+ * </p>
+ * 
+ * Since equal parameters always produce equal images, encoded images are kept in a bounded
+ * cache. Images are drawn to rasters which each thread reuses. Encoder is configured with
+ * the system properties "circleWorker.compression" (0-9) and "circleWorker.filter"
+ * (none, sub, up, average, paeth or adaptive).
  * 
  * @author Marin Grbić
  * @version 1.0
  */
 public class CircleWorker implements IWebWorker {
 
+    /**
+     * Represents the default size of the image.
+     */
+    private static final int DEFAULT_SIZE = 200;
+
+    /**
+     * Represents the maximal size of the image.
+     */
+    private static final int MAX_SIZE = 1024;
+
+    /**
+     * Represents the maximal number of cached images.
+     */
+    private static final int MAX_CACHED_IMAGES = 64;
+
+    /**
+     * Represents the supported color names.
+     */
+    private static final Map<String, Color> COLORS = new HashMap<>();
+
+    static {
+        COLORS.put("red", Color.RED);
+        COLORS.put("green", Color.GREEN);
+        COLORS.put("blue", Color.BLUE);
+        COLORS.put("yellow", Color.YELLOW);
+        COLORS.put("orange", Color.ORANGE);
+        COLORS.put("pink", Color.PINK);
+        COLORS.put("cyan", Color.CYAN);
+        COLORS.put("magenta", Color.MAGENTA);
+        COLORS.put("white", Color.WHITE);
+        COLORS.put("gray", Color.GRAY);
+        COLORS.put("black", Color.BLACK);
+    }
+
+    /**
+     * Represents the encoder of the images.
+     */
+    private static final PngEncoder ENCODER = new PngEncoder(
+	  Integer.getInteger("circleWorker.compression", 6),
+	  PngEncoder.Filter.valueOf(System.getProperty("circleWorker.filter", "adaptive")
+		.toUpperCase(Locale.ROOT)));
+
+    /**
+     * Represents the raster each thread draws to.
+     */
+    private static final ThreadLocal<BufferedImage> RASTERS = new ThreadLocal<>();
+
+    /**
+     * Represents the cache of encoded images, by their normalized parameters.
+     */
+    private final Map<String, byte[]> images =
+	  new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+
+	      private static final long serialVersionUID = 1L;
+
+	      @Override
+	      protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+		return size() > MAX_CACHED_IMAGES;
+	      }
+	  };
+
     @Override
     public void processRequest(RequestContext context) {
-        BufferedImage bim = new BufferedImage(200, 200, BufferedImage.TYPE_3BYTE_BGR);
-        
-        Graphics2D g2d = bim.createGraphics();
-        g2d.setColor(Color.RED);
-        g2d.fillOval(0, 0, 200, 200);
-        g2d.dispose();
-        
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int size = parseSize(context.getParameter("size"));
+        Color color = parseColor(context.getParameter("color"));
+        Shape shape = parseShape(context.getParameter("shape"));
+
+        String key = size + ":" + Integer.toHexString(color.getRGB()) + ":" + shape;
+        byte[] png;
+        synchronized (images) {
+	  png = images.get(key);
+        }
+        if (png == null) {
+	  png = ENCODER.encode(draw(size, color, shape));
+	  synchronized (images) {
+	      images.put(key, png);
+	  }
+        }
+
         try {
-	  ImageIO.write(bim, "png", bos);
-	  context.write(bos.toByteArray());
+	  context.setMimeType("image/png");
+	  context.write(png);
         } catch (IOException e) {
 	  e.printStackTrace();
         }
+    }
+
+    /**
+     * Draws the image to the raster of the current thread.
+     * 
+     * @param size Width and height of the image.
+     * @param color Color of the shape.
+     * @param shape Shape to draw.
+     * @return Raster containing the image.
+     */
+    private static BufferedImage draw(int size, Color color, Shape shape) {
+        BufferedImage bim = RASTERS.get();
+        if (bim == null || bim.getWidth() != size) {
+	  bim = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+	  RASTERS.set(bim);
+        }
+
+        Graphics2D g2d = bim.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, size, size);
+        g2d.setColor(color);
+        switch (shape) {
+        case SQUARE:
+	  g2d.fillRect(0, 0, size, size);
+	  break;
+        case RING:
+	  g2d.fillOval(0, 0, size, size);
+	  g2d.setColor(Color.BLACK);
+	  g2d.fillOval(size / 4, size / 4, size / 2, size / 2);
+	  break;
+        default:
+	  g2d.fillOval(0, 0, size, size);
+        }
+        g2d.dispose();
+        return bim;
+    }
+
+    /**
+     * Parses the size of the image.
+     * 
+     * @param size Size parameter, may be <code>null</code>.
+     * @return Size of the image.
+     * @throws HttpStatusException If the size is not valid.
+     */
+    private static int parseSize(String size) {
+        if (size == null) return DEFAULT_SIZE;
+
+        try {
+	  int value = Integer.parseInt(size.trim());
+	  if (value >= 1 && value <= MAX_SIZE) return value;
+        } catch (NumberFormatException e) {}
+        throw new HttpStatusException(400, "Size must be between 1 and " + MAX_SIZE + ".");
+    }
+
+    /**
+     * Parses the color of the shape.
+     * 
+     * @param color Color parameter, may be <code>null</code>.
+     * @return Color of the shape.
+     * @throws HttpStatusException If the color is not valid.
+     */
+    private static Color parseColor(String color) {
+        if (color == null) return Color.RED;
+
+        color = color.trim().toLowerCase(Locale.ROOT);
+        Color named = COLORS.get(color);
+        if (named != null) return named;
+
+        if (color.length() == 6) {
+	  try {
+	      return new Color(Integer.parseInt(color, 16));
+	  } catch (NumberFormatException e) {}
+        }
+        throw new HttpStatusException(400, "Unknown color: " + color);
+    }
+
+    /**
+     * Parses the shape.
+     * 
+     * @param shape Shape parameter, may be <code>null</code>.
+     * @return Parsed shape.
+     * @throws HttpStatusException If the shape is not valid.
+     */
+    private static Shape parseShape(String shape) {
+        if (shape == null) return Shape.CIRCLE;
 
+        try {
+	  return Shape.valueOf(shape.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+	  throw new HttpStatusException(400, "Unknown shape: " + shape);
+        }
     }
 
+    /**
+     * Enumeration Shape represents the shapes the worker can draw.
+     * 
+     * @author Marin Grbić
+     * @version 1.0
+     */
+    private enum Shape {
+
+        /**
+         * Represents a circle filling the whole image.
+         */
+        CIRCLE,
+
+        /**
+         * Represents a square filling the whole image.
+         */
+        SQUARE,
+
+        /**
+         * Represents a circle with a hole in the middle.
+         */
+        RING
+    }
 }
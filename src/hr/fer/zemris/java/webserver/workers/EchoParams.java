@@ -1,6 +1,7 @@
 package hr.fer.zemris.java.webserver.workers;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Set;
 
 import hr.fer.zemris.java.webserver.IWebWorker;
@@ -21,22 +22,22 @@ public class EchoParams implements IWebWorker {
     public void processRequest(RequestContext context) {
         Set<String> parameterNames = context.getParameterNames();
         
-        StringBuilder sb = new StringBuilder();
-        sb.append("<table border=\"1\" style=\"border: 2px solid black;\">\r\n");
-        sb.append("  <tr>\r\n");
-	  sb.append("    <td><b>Param</b></td>\r\n");
-	  sb.append("    <td><b>Value<b> </td>\r\n");
-	  sb.append("  </tr>\r\n");
-	  
-        parameterNames.forEach(name -> {
-	  sb.append("  <tr>\r\n");
-	  sb.append("    <td>" + name + "</td>\r\n");
-	  sb.append("    <td>" + context.getParameter(name) + "</td>\r\n");
-	  sb.append("  </tr>\r\n");
-        });
-        sb.append("</table>\r\n");
+        Writer writer = context.getWriter();
         try {
-	  context.write(sb.toString());
+	  writer.write("<table border=\"1\" style=\"border: 2px solid black;\">\r\n");
+	  writer.write("  <tr>\r\n");
+	  writer.write("    <td><b>Param</b></td>\r\n");
+	  writer.write("    <td><b>Value<b> </td>\r\n");
+	  writer.write("  </tr>\r\n");
+
+	  for (String name : parameterNames) {
+	      writer.append("  <tr>\r\n")
+		    .append("    <td>").append(name).append("</td>\r\n")
+		    .append("    <td>").append(context.getParameter(name)).append("</td>\r\n")
+		    .append("  </tr>\r\n");
+	  }
+	  writer.write("</table>\r\n");
+	  writer.flush();
         } catch (IOException e) {
 	  e.printStackTrace();
         }
@@ -1,8 +1,8 @@
 package hr.fer.zemris.java.webserver.workers;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
 
@@ -16,16 +16,20 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * @version 1.0
  */
 public class HelloWorker implements IWebWorker {
+
+    /**
+     * Represents the format of the current time, shared by all requests since it is immutable.
+     */
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     @Override
     public void processRequest(RequestContext context) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        Date now = new Date();
         context.setMimeType("text/html");
         String name = context.getParameter("name");
         try {
 	  context.write("<html><body>");
 	  context.write("<h1>Hello!!!</h1>");
-	  context.write("<p>Now is: " + sdf.format(now) + "</p>");
+	  context.write("<p>Now is: " + FORMAT.format(LocalDateTime.now()) + "</p>");
 	  if (name == null || name.trim().isEmpty()) {
 	      context.write("<p>You did not send me your name!</p>");
 	  } else {
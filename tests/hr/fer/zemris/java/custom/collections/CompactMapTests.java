@@ -0,0 +1,80 @@
+package hr.fer.zemris.java.custom.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CompactMapTests {
+
+    private static void fillAndCompare(Map<String, Integer> map) {
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+	  map.put("k" + i, i);
+	  expected.put("k" + i, i);
+	  assertEquals(expected, map);
+        }
+        map.put("k3", 33);
+        expected.put("k3", 33);
+        assertEquals(expected, map);
+        assertEquals(Integer.valueOf(33), map.get("k3"));
+
+        assertEquals(Integer.valueOf(5), map.remove("k5"));
+        assertNull(map.remove("k5"));
+        assertFalse(map.containsKey("k5"));
+        assertEquals(19, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        map.put("a", 1);
+        assertEquals(Integer.valueOf(1), map.get("a"));
+    }
+
+    @Test
+    public void testCompactMap() {
+        fillAndCompare(new CompactMap<>());
+    }
+
+    @Test
+    public void testConcurrentCompactMap() {
+        fillAndCompare(new ConcurrentCompactMap<>());
+    }
+
+    @Test
+    public void testOrderAndIteratorRemove() {
+        Map<String, Integer> map = new CompactMap<>();
+        map.put("c", 1);
+        map.put("a", 2);
+        map.put("b", 3);
+        map.put(null, null);
+
+        Iterator<Map.Entry<String, Integer>> iterator = map.entrySet().iterator();
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+	  Map.Entry<String, Integer> entry = iterator.next();
+	  keys.add(entry.getKey());
+	  if ("a".equals(entry.getKey())) {
+	      iterator.remove();
+	  }
+        }
+
+        assertEquals(Arrays.asList("c", "a", "b", null), keys);
+        assertEquals(Arrays.asList("c", "b", null), new ArrayList<>(map.keySet()));
+        assertTrue(map.containsKey(null));
+    }
+}
@@ -0,0 +1,143 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.vm.ProgramCompiler;
+import hr.fer.zemris.java.custom.scripting.vm.SmartScriptVM;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ScriptClassCompilerTests {
+
+    private static final String TEXT = "Šifra \"x\\\\y\"\t{$FOR i 1 3 1$}[{$= i $}:"
+	  + "{$FOR i 5 6 1$}{$= i i * \"2\" - $},{$END$}{$= \"n\" \"0\" @paramGet $}]{$END$}";
+
+    private static final byte[] KEY = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private static RequestContext context(ByteArrayOutputStream os) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("n", "7");
+        return new RequestContext(os, parameters, new HashMap<>(), new ArrayList<>());
+    }
+
+    private static String run(ICompiledScript script) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        script.execute(context(os));
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String runOnVM(DocumentNode document) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new SmartScriptVM(ProgramCompiler.compile(document), context(os)).execute();
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSameOutputAsVM() {
+        DocumentNode document = new SmartScriptParser(TEXT).getDocumentNode();
+        ScriptClassCompiler compiler = new ScriptClassCompiler(null, null);
+
+        assertEquals(runOnVM(document), run(compiler.compile(document)));
+    }
+
+    @Test
+    public void testClassCache() throws IOException {
+        Path directory = Files.createTempDirectory("scripts");
+        try {
+	  StringBuilder sb = new StringBuilder();
+	  Files.readAllLines(Paths.get("webroot/scripts/osnovni.smscr"))
+		.forEach(l -> sb.append(l + "\r\n"));
+	  DocumentNode document = new SmartScriptParser(sb.toString()).getDocumentNode();
+
+	  ScriptClassCompiler first = new ScriptClassCompiler(directory, KEY);
+	  String output = run(first.compile(document));
+	  assertEquals(runOnVM(document), output);
+	  assertTrue(first.toString().contains("compiled=1, loaded=0"));
+
+	  ScriptClassCompiler second = new ScriptClassCompiler(directory, KEY);
+	  assertEquals(output, run(second.compile(document)));
+	  assertTrue(second.toString().contains("compiled=0, loaded=1"));
+        } finally {
+	  try (Stream<Path> files = Files.list(directory)) {
+	      files.forEach(f -> f.toFile().delete());
+	  }
+	  Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testTamperedClassIsNotLoaded() throws IOException {
+        Path directory = Files.createTempDirectory("scripts");
+        try {
+	  DocumentNode document = new SmartScriptParser(TEXT).getDocumentNode();
+	  String output = run(new ScriptClassCompiler(directory, KEY).compile(document));
+
+	  Path classFile;
+	  try (Stream<Path> files = Files.list(directory)) {
+	      classFile = files.findFirst().get();
+	  }
+	  byte[] bytes = Files.readAllBytes(classFile);
+	  bytes[bytes.length - 1] ^= 1;
+	  Files.write(classFile, bytes);
+
+	  ScriptClassCompiler second = new ScriptClassCompiler(directory, KEY);
+	  assertEquals(output, run(second.compile(document)));
+	  assertTrue(second.toString().contains("compiled=1, loaded=0"));
+
+	  ScriptClassCompiler otherKey = new ScriptClassCompiler(directory,
+		"fedcba9876543210".getBytes(StandardCharsets.UTF_8));
+	  otherKey.compile(document);
+	  assertTrue(otherKey.toString().contains("compiled=1, loaded=0"));
+        } finally {
+	  try (Stream<Path> files = Files.list(directory)) {
+	      files.forEach(f -> f.toFile().delete());
+	  }
+	  Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testSharedDirectoryIsRejected() throws IOException {
+        Path directory = Files.createTempDirectory("scripts");
+        try {
+	  if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+	      Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxrwxrwx"));
+	      try {
+		new ScriptClassCompiler(directory, KEY);
+		fail();
+	      } catch (IllegalArgumentException expected) {
+	      }
+	  }
+	  try {
+	      new ScriptClassCompiler(directory, null);
+	      fail();
+	  } catch (IllegalArgumentException expected) {
+	  }
+        } finally {
+	  Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ObjectMultistackTests {
+
+    private static String run(String text, boolean resolveSlots) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("a", "3");
+        parameters.put("b", "4");
+        RequestContext rc = new RequestContext(os, parameters, new HashMap<>(), new ArrayList<>());
+        new SmartScriptEngine(new SmartScriptParser(text, resolveSlots).getDocumentNode(), rc).execute();
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStacks() {
+        ObjectMultistack multistack = new ObjectMultistack();
+        for (int i = 0; i < 100; i++) {
+	  multistack.push("a", new ValueWrapper(i));
+        }
+        multistack.push("b", new ValueWrapper("x"));
+
+        assertEquals("x", multistack.pop("b").getValue());
+        assertTrue(multistack.isEmpty("b"));
+        assertTrue(multistack.isEmpty("c"));
+        for (int i = 99; i >= 0; i--) {
+	  assertEquals(i, multistack.peek(multistack.slotOf("a")).getValue());
+	  assertEquals(i, multistack.pop("a").getValue());
+        }
+        try {
+	  multistack.pop("a");
+	  fail();
+        } catch (EmptyStackException expected) {
+        }
+    }
+
+    @Test
+    public void testParserAssignsSlots() {
+        DocumentNode document = new SmartScriptParser(
+	      "{$FOR i 1 2 1$}{$FOR j 1 2 1$}{$= j i $}{$END$}{$END$}", true).getDocumentNode();
+
+        assertEquals(2, document.getVariableNames().length);
+        assertEquals("i", document.getVariableNames()[0]);
+        ForLoopNode inner = (ForLoopNode) document.getChild(0).getChild(0);
+        assertEquals(1, inner.getVariable().getSlot());
+        assertEquals(0, ((ElementVariable) ((EchoNode) inner.getChild(0)).getElements()[1]).getSlot());
+        assertEquals(0, new SmartScriptParser("{$= i $}").getDocumentNode().getVariableNames().length);
+    }
+
+    @Test
+    public void testSlotsProduceSameOutput() throws IOException {
+        String[] scripts = {
+	      "webroot/scripts/osnovni.smscr",
+	      "webroot/scripts/fibonacci.smscr",
+	      "webroot/scripts/zbrajanje.smscr",
+	      "examples/doc1.txt"
+        };
+        for (String script : scripts) {
+	  StringBuilder sb = new StringBuilder();
+	  Files.readAllLines(Paths.get(script)).forEach(l -> sb.append(l + "\r\n"));
+	  assertEquals(run(sb.toString(), false), run(sb.toString(), true));
+        }
+        String nested = "{$FOR i 1 3 1$}[{$= i $}:{$FOR i 5 6 1$}{$= i $},{$END$}{$= i $}]{$END$}";
+        assertEquals(run(nested, false), run(nested, true));
+    }
+}
@@ -0,0 +1,80 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class OperationsUtilTests {
+
+    private static String run(String script) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        RequestContext rc = new RequestContext(os, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        new SmartScriptEngine(new SmartScriptParser(script).getDocumentNode(), rc).execute();
+        String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+        return output.substring(output.indexOf("\r\n\r\n") + 4);
+    }
+
+    @Test
+    public void testBoundDecimalFormat() {
+        assertNotSame(OperationsUtil.resolve("decfmt"), OperationsUtil.resolve("decfmt", "0.00"));
+        assertEquals(OperationsUtil.resolve("decfmt"), OperationsUtil.resolve("decfmt", "'"));
+
+        assertEquals("1.23|2.5|3.142",
+	      run("{$= \"1.2345\" \"0.00\" @decfmt \"|\" \"0.0\" 2.5 @swap @decfmt \"|\""
+		    + " 3.14159 \"0.000\" @decfmt $}"));
+    }
+
+    @Test
+    public void testRegisteredFunction() {
+        OperationsUtil.register(new ISmartScriptFunction() {
+	  @Override
+	  public String getName() {
+	      return "twice";
+	  }
+
+	  @Override
+	  public void accept(RequestContext requestContext, ObjectStack stack) {
+	      Object value = stack.pop();
+	      stack.push(value);
+	      stack.push(value);
+	  }
+        });
+
+        assertEquals("77", run("{$= 7 @twice $}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateFunction() {
+        OperationsUtil.register(new ISmartScriptFunction() {
+	  @Override
+	  public String getName() {
+	      return "sin";
+	  }
+
+	  @Override
+	  public void accept(RequestContext requestContext, ObjectStack stack) {}
+        });
+    }
+
+    @Test(expected = SmartScriptParserException.class)
+    public void testUnknownFunction() {
+        new SmartScriptParser("{$= 7 @unknown $}");
+    }
+}
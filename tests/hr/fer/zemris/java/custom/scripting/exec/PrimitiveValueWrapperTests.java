@@ -0,0 +1,60 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class PrimitiveValueWrapperTests {
+
+    private static final Object[] VALUES = { null, 0, 3, -7, Integer.MAX_VALUE, 2.5, 0.0, "4", "1.5", "1E2" };
+
+    private static String result(ValueWrapper wrapper, BiConsumer<ValueWrapper, Object> operation,
+	  Object argument) {
+        try {
+	  operation.accept(wrapper, argument);
+        } catch (RuntimeException e) {
+	  return e.getClass().getSimpleName();
+        }
+        Object value = wrapper.getValue();
+        return value == null ? "null" : value.getClass().getSimpleName() + ":" + value;
+    }
+
+    private static void assertSameAsValueWrapper(BiConsumer<ValueWrapper, Object> operation) {
+        for (Object value : VALUES) {
+	  for (Object argument : VALUES) {
+	      assertEquals(value + " with " + argument,
+		    result(new ValueWrapper(value), operation, argument),
+		    result(new PrimitiveValueWrapper(value), operation, argument));
+	  }
+        }
+    }
+
+    @Test
+    public void testArithmetic() {
+        assertSameAsValueWrapper(ValueWrapper::increment);
+        assertSameAsValueWrapper(ValueWrapper::decrement);
+        assertSameAsValueWrapper(ValueWrapper::multiply);
+        assertSameAsValueWrapper(ValueWrapper::divide);
+        assertSameAsValueWrapper((w, a) -> w.setValue(w.numCompare(a)));
+    }
+
+    @Test
+    public void testIntegerFastPath() {
+        PrimitiveValueWrapper wrapper = new PrimitiveValueWrapper(1);
+        wrapper.increment(2);
+        wrapper.setValue(wrapper.numCompare(3) == 0 ? 10 : -1);
+        assertEquals(10, wrapper.getValue());
+        wrapper.increment("0.5");
+        assertEquals(10.5, wrapper.getValue());
+        wrapper.setValue("x");
+        assertEquals("x", wrapper.getValue());
+    }
+}
@@ -0,0 +1,65 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class LexerTests {
+
+    @Test
+    public void testTextAndTags() {
+        Lexer lexer = new Lexer("  a \\{ b \\\\ c{$= \"x  y\" i 2 @sin $} d{ $ FOR i 1 3 $ }\n");
+
+        Token token = lexer.nextToken();
+        assertEquals(TokenType.TEXT, token.getType());
+        assertEquals("a { b \\ c", token.getValue());
+
+        token = lexer.nextToken();
+        assertEquals(TokenType.TAG, token.getType());
+        assertEquals("{$= \"x  y\" i 2 @sin $}", token.getValue());
+        assertEquals("=", token.getName());
+        assertEquals(Arrays.asList("\"x  y\"", "i", "2", "@sin"), Arrays.asList(token.getElements()));
+
+        assertEquals("d", lexer.nextToken().getValue());
+
+        token = lexer.nextToken();
+        assertEquals("FOR", token.getName());
+        assertEquals(Arrays.asList("i", "1", "3"), Arrays.asList(token.getElements()));
+
+        assertEquals(TokenType.EOF, lexer.nextToken().getType());
+    }
+
+    @Test
+    public void testEscapesInTagString() {
+        Lexer lexer = new Lexer("{$= \"a\\\"b\" \"c\\\" d\\\\e\" 1 $}");
+
+        Token token = lexer.nextToken();
+        assertEquals(Arrays.asList("\"a\\\"b\"", "\"c\\\" d\\\\e\"", "1"),
+	      Arrays.asList(token.getElements()));
+    }
+
+    @Test
+    public void testMalformedTag() {
+        Lexer lexer = new Lexer("{= 1 $}");
+        assertNull(lexer.nextToken().getName());
+    }
+
+    @Test(expected = LexerException.class)
+    public void testWrongEscaping() {
+        new Lexer("a \\b").nextToken();
+    }
+
+    @Test(expected = LexerException.class)
+    public void testUnclosedTag() {
+        new Lexer("{$= 1 $").nextToken();
+    }
+}
@@ -0,0 +1,92 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SmartScriptOptimizerTests {
+
+    private static String run(DocumentNode document) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("a", "3");
+        parameters.put("b", "4");
+        RequestContext rc = new RequestContext(os, parameters, new HashMap<>(), new ArrayList<>());
+        new SmartScriptEngine(document, rc).execute();
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String read(String path) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Files.readAllLines(Paths.get(path)).forEach(l -> sb.append(l + "\r\n"));
+        return sb.toString();
+    }
+
+    @Test
+    public void testScriptsProduceSameOutput() throws IOException {
+        String[] scripts = {
+	      "webroot/scripts/osnovni.smscr",
+	      "webroot/scripts/brojPoziva.smscr",
+	      "webroot/scripts/fibonacci.smscr",
+	      "webroot/scripts/zbrajanje.smscr",
+	      "examples/doc1.txt"
+        };
+        SmartScriptOptimizer optimizer = new SmartScriptOptimizer(SmartScriptOptimizer.DEFAULT_MAX_RENDERED_LENGTH);
+        for (String script : scripts) {
+	  DocumentNode document = new SmartScriptParser(read(script)).getDocumentNode();
+	  assertEquals(run(document), run(optimizer.optimize(document)));
+        }
+    }
+
+    @Test
+    public void testConstantScriptBecomesText() throws IOException {
+        DocumentNode document = new SmartScriptParser(read("webroot/scripts/osnovni.smscr"))
+	      .getDocumentNode();
+        DocumentNode optimized = new SmartScriptOptimizer(SmartScriptOptimizer.DEFAULT_MAX_RENDERED_LENGTH)
+	      .optimize(document);
+
+        assertEquals(1, optimized.numberOfChildren());
+        assertTrue(optimized.getChild(0) instanceof TextNode);
+        String output = run(document);
+        assertEquals(output.substring(output.indexOf("\r\n\r\n") + 4),
+	      ((TextNode) optimized.getChild(0)).getText());
+    }
+
+    @Test
+    public void testDynamicPartsAreKept() {
+        String text = "a{$= \"b\" 1 2 + $}c{$FOR i 1 3 1$}{$= i \"x\" @paramGet $}{$END$}"
+	      + "{$FOR j 1 100 1$}{$= j $}{$END$}";
+        DocumentNode optimized = new SmartScriptOptimizer(10)
+	      .optimize(new SmartScriptParser(text).getDocumentNode());
+
+        assertEquals(3, optimized.numberOfChildren());
+        assertEquals("ab3c", ((TextNode) optimized.getChild(0)).getText());
+        assertTrue(optimized.getChild(1) instanceof ForLoopNode);
+        assertTrue(optimized.getChild(1).getChild(0) instanceof EchoNode);
+        assertTrue(optimized.getChild(2) instanceof ForLoopNode);
+    }
+}
@@ -0,0 +1,78 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class OperandStackTests {
+
+    private static String evaluate(Object... values) {
+        OperandStack stack = new OperandStack();
+        for (Object value : values) {
+	  if (value instanceof Character) {
+	      stack.operate(value.toString());
+	  } else {
+	      stack.push(value);
+	  }
+        }
+        return stack.toString();
+    }
+
+    @Test
+    public void testIntegersArePreserved() {
+        assertEquals("[7]", evaluate(3, 4, '+'));
+        assertEquals("[1]", evaluate(3, 4, '-'));
+        assertEquals("[12]", evaluate("3", " 4", '*'));
+        assertEquals("[81]", evaluate(4, 3, '^'));
+        assertEquals("[0.75]", evaluate(4, 3, '/'));
+        assertEquals("[7.5]", evaluate(3, 4.5, '+'));
+        assertEquals("[0.5]", evaluate(-1, 2, '^'));
+    }
+
+    @Test
+    public void testOverflowGivesDecimal() {
+        assertEquals("[" + (double) Long.MAX_VALUE * 2 + "]", evaluate(Long.MAX_VALUE, 2, '*'));
+        assertEquals("[1.0E30]", evaluate(30, 10, '^'));
+    }
+
+    @Test
+    public void testFunctionsSeeBoxedValues() {
+        OperandStack stack = new OperandStack();
+        stack.pushLong(5);
+        stack.pushDouble(1.5);
+        stack.push("x");
+        assertEquals("x", stack.pop());
+        assertEquals(Double.valueOf(1.5), stack.pop());
+        assertEquals(Integer.valueOf(5), stack.pop());
+    }
+
+    @Test
+    public void testWriteTo() {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        RequestContext rc = new RequestContext(os, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        rc.setBufferSize(0);
+        OperandStack stack = new OperandStack();
+        stack.pushLong(-120);
+        stack.push("a");
+        stack.pushDouble(2.0);
+        stack.pushLong(Long.MIN_VALUE);
+        stack.writeTo(rc);
+
+        String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("-120a2.0" + Long.MIN_VALUE, output.substring(output.indexOf("\r\n\r\n") + 4));
+        assertEquals(0, stack.size());
+    }
+}
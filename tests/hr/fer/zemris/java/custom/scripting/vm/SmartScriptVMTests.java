@@ -0,0 +1,106 @@
+package hr.fer.zemris.java.custom.scripting.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.exec.EmptyStackException;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SmartScriptVMTests {
+
+    private static String run(DocumentNode document, boolean compiled) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("a", "3");
+        parameters.put("b", "4");
+        RequestContext rc = new RequestContext(os, parameters, new HashMap<>(), new ArrayList<>());
+
+        if (compiled) {
+	  new SmartScriptVM(ProgramCompiler.compile(document), rc).execute();
+        } else {
+	  new SmartScriptEngine(document, rc).execute();
+        }
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameOutput(String text) {
+        DocumentNode document = new SmartScriptParser(text).getDocumentNode();
+        assertEquals(run(document, false), run(document, true));
+    }
+
+    @Test
+    public void testScriptsProduceSameOutput() throws IOException {
+        Path[] scripts = {
+	      Paths.get("webroot/scripts/osnovni.smscr"),
+	      Paths.get("webroot/scripts/brojPoziva.smscr"),
+	      Paths.get("webroot/scripts/fibonacci.smscr"),
+	      Paths.get("webroot/scripts/zbrajanje.smscr"),
+	      Paths.get("examples/doc1.txt")
+        };
+        for (Path script : scripts) {
+	  StringBuilder sb = new StringBuilder();
+	  Files.readAllLines(script).forEach(l -> sb.append(l + "\r\n"));
+	  assertSameOutput(sb.toString());
+        }
+    }
+
+    @Test
+    public void testIntegerResultsKeepIntegerFormatting() throws IOException {
+        String[][] expected = {
+	      {"webroot/scripts/fibonacci.smscr",
+	          "je:\r\n0\r\n\r\n1\r\n\r\n2\r\n\r\n3\r\n\r\n5\r\n\r\n8\r\n\r\n13\r\n\r\n21\r\n\r\n34\r\n"},
+	      {"webroot/scripts/zbrajanje.smscr", "a=3, b=4, rezultat=7"}
+        };
+        for (String[] entry : expected) {
+	  StringBuilder sb = new StringBuilder();
+	  Files.readAllLines(Paths.get(entry[0])).forEach(l -> sb.append(l + "\r\n"));
+	  DocumentNode document = new SmartScriptParser(sb.toString()).getDocumentNode();
+	  for (boolean compiled : new boolean[] {false, true}) {
+	      String output = run(document, compiled);
+	      assertTrue(output, output.endsWith(entry[1]));
+	  }
+        }
+    }
+
+    @Test
+    public void testNestedLoopsWithSameVariable() {
+        String text = "{$FOR i 1 3 1$}[{$= i $}:{$FOR i 5 6 1$}{$= i i * $},{$END$}{$= i 2 - $}]{$END$}"
+	      + "{$FOR j 3 1 1$}never{$END$}";
+        assertSameOutput(text);
+
+        Program program = ProgramCompiler.compile(new SmartScriptParser(text).getDocumentNode());
+        assertEquals(2, program.getSlotCount());
+    }
+
+    @Test
+    public void testUnboundVariable() {
+        DocumentNode document = new SmartScriptParser("text {$= x $}").getDocumentNode();
+        try {
+	  run(document, true);
+	  fail();
+        } catch (EmptyStackException expected) {
+        }
+    }
+}
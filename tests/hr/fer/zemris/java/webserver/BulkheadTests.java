@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class BulkheadTests {
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+	  Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testSaturatedBulkheadRejects() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead("test", 2, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable task = () -> {
+	  try {
+	      release.await();
+	  } catch (InterruptedException ignorable) {
+	  }
+        };
+
+        try {
+	  assertTrue(bulkhead.execute(task));
+	  assertTrue(bulkhead.execute(task));
+	  await(() -> bulkhead.getActiveCount() == 2);
+	  assertTrue(bulkhead.execute(task));
+	  assertEquals(1, bulkhead.getQueuedCount());
+	  assertEquals(1.0, bulkhead.getSaturation(), 1e-9);
+
+	  assertFalse(bulkhead.execute(task));
+	  assertFalse(bulkhead.execute(task));
+	  assertEquals(3, bulkhead.getAcceptedCount());
+	  assertEquals(2, bulkhead.getRejectedCount());
+	  assertEquals(bulkhead.getAcceptedCount(), bulkhead.getActiveCount()
+	      + bulkhead.getQueuedCount() + bulkhead.getCompletedCount());
+
+	  release.countDown();
+	  await(() -> bulkhead.getCompletedCount() == 3);
+	  assertEquals(0, bulkhead.getActiveCount() + bulkhead.getQueuedCount());
+	  assertEquals(bulkhead.getAcceptedCount(), bulkhead.getCompletedCount());
+	  assertEquals(0.0, bulkhead.getSaturation(), 1e-9);
+
+	  assertTrue(bulkhead.execute(task));
+	  assertEquals(4, bulkhead.getAcceptedCount());
+        } finally {
+	  release.countDown();
+	  bulkhead.shutdown();
+        }
+    }
+}
@@ -2,13 +2,19 @@ package hr.fer.zemris.java.webserver;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -17,6 +23,7 @@ import java.util.HashMap;
 import org.junit.Test;
 
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.http.EncodedText;
 
 
 /**
@@ -131,4 +138,165 @@ public class RequestContextTests {
         assertArrayEquals(expected, bos.toByteArray());
         is.close();
     }
+
+    @Test
+    public void testWriterAndStreamsKeepOrder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RequestContext rc = new RequestContext(out, null, null, null);
+        rc.setBufferSize(64);
+        rc.setMimeType("text/plain");
+
+        rc.getWriter().append("Šime ").write("\uD83D");
+        rc.getWriter().write("\uDE00 ");
+        rc.getOutputStream().write('b');
+        ByteBuffer direct = ByteBuffer.allocateDirect(2).put((byte) 'c').put((byte) '!');
+        direct.flip();
+        rc.getChannel().write(direct);
+        rc.write("čć");
+        rc.finish();
+
+        assertEquals("HTTP/1.1 200 OK\r\n"
+	      + "Content-Type: text/plain; charset=UTF-8\r\n\r\n"
+	      + "Šime \uD83D\uDE00 bc!čć", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testGatheringWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        int[] writes = new int[1];
+        GatheringByteChannel channel = new GatheringByteChannel() {
+	  public boolean isOpen() { return true; }
+	  public void close() {}
+	  public int write(ByteBuffer src) throws IOException {
+	      writes[0]++;
+	      return target.write(src);
+	  }
+	  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+	      writes[0]++;
+	      long written = 0;
+	      for (int i = offset; i < offset + length; i++) {
+		written += target.write(srcs[i]);
+	      }
+	      return written;
+	  }
+	  public long write(ByteBuffer[] srcs) throws IOException {
+	      return write(srcs, 0, srcs.length);
+	  }
+        };
+
+        RequestContext rc = new RequestContext(out, null, null, null);
+        rc.setGatheringChannel(channel);
+        rc.setBufferSize(64);
+        rc.setMimeType("text/plain");
+        rc.write("body ");
+        rc.write(ByteBuffer.wrap("end".getBytes()));
+        rc.finish();
+
+        assertEquals(1, writes[0]);
+        assertEquals("HTTP/1.1 200 OK\r\n"
+	      + "Content-Type: text/plain; charset=UTF-8\r\n\r\nbody end", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        RequestContext rc = new RequestContext(first, null, null, null);
+        rc.setBufferSize(64);
+        rc.setMimeType("text/plain");
+        rc.setEncoding("ISO-8859-1");
+        rc.setStatusCode(404);
+        rc.setTemporaryParameter("t", "1");
+        rc.getWriter().write("unfinished");
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        rc.reset(second, null);
+        rc.write("č");
+        rc.finish();
+
+        assertEquals(0, first.size());
+        assertEquals(null, rc.getTemporaryParameter("t"));
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=UTF-8\r\n\r\nč",
+	      second.toString("UTF-8"));
+    }
+
+    @Test
+    public void testFlushThreshold() throws IOException {
+        int[] flushes = new int[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+	  @Override
+	  public void flush() {
+	      flushes[0]++;
+	  }
+        };
+        RequestContext rc = new RequestContext(out, null, null, null);
+        rc.setEncoding("ISO-8859-1");
+        rc.setFlushThreshold(10);
+
+        EncodedText text = new EncodedText("čć ");
+        for (int i = 0; i < 10; i++) {
+	  rc.write(text);
+        }
+        rc.finish();
+
+        assertEquals(3, flushes[0]);
+        assertTrue(out.toString("ISO-8859-1").endsWith("charset=ISO-8859-1\r\n\r\n?? ?? ?? ?? ?? ?? ?? ?? ?? ?? "));
+    }
+
+    @Test
+    public void testFlushThresholdOfByteBuffers() throws IOException {
+        int[] flushes = new int[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+	  @Override
+	  public void flush() {
+	      flushes[0]++;
+	  }
+        };
+        RequestContext rc = new RequestContext(out, null, null, null);
+        rc.setFlushThreshold(10);
+
+        for (int i = 0; i < 5; i++) {
+	  rc.write(ByteBuffer.wrap("abcd".getBytes()));
+        }
+        assertEquals(1, flushes[0]);
+        rc.finish();
+        assertTrue(out.toString("UTF-8").endsWith("\r\n\r\nabcdabcdabcdabcdabcd"));
+    }
+
+    @Test
+    public void testRevokeBeforeCommit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RequestContext rc = new RequestContext(out, null, null, null);
+        rc.setBufferSize(1024);
+        rc.write("buffered");
+
+        assertTrue(rc.revoke());
+        try {
+	  rc.finish();
+	  fail("Finish after revoke must fail.");
+        } catch (IOException expected) {
+        }
+        try {
+	  rc.write(new byte[] { 1 });
+	  fail("Write after revoke must fail.");
+        } catch (IOException expected) {
+        }
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testRevokeAfterCommit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RequestContext rc = new RequestContext(out, null, null, null);
+        rc.write("sent");
+        int sent = out.size();
+
+        assertFalse(rc.revoke());
+        try {
+	  rc.write("late");
+	  fail("Write after revoke must fail.");
+        } catch (IOException expected) {
+        }
+        assertEquals(sent, out.size());
+    }
 }
@@ -0,0 +1,305 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SmartHttpServerTests {
+
+    /**
+     * Worker which remembers the "user" parameter in the session.
+     */
+    public static class LoginWorker implements IWebWorker {
+
+        @Override
+        public void processRequest(RequestContext context) {
+	  context.setPersistentParameter("user", context.getParameter("user"));
+        }
+    }
+
+    /**
+     * Worker which writes the user remembered in the session.
+     */
+    public static class WhoAmIWorker implements IWebWorker {
+
+        @Override
+        public void processRequest(RequestContext context) {
+	  try {
+	      context.write("user=" + context.getPersistentParameter("user"));
+	  } catch (IOException e) {
+	      throw new RuntimeException(e);
+	  }
+        }
+    }
+
+    /**
+     * Worker which waits until the test releases it.
+     */
+    public static class BlockingWorker implements IWebWorker {
+
+        /**
+         * Represents the latch the worker waits for.
+         */
+        static volatile CountDownLatch release = new CountDownLatch(0);
+
+        @Override
+        public void processRequest(RequestContext context) {
+	  try {
+	      release.await();
+	      context.write("released");
+	  } catch (InterruptedException | IOException e) {
+	      throw new RuntimeException(e);
+	  }
+        }
+    }
+
+    /**
+     * Asynchronous worker which completes only when the test completes it's response.
+     */
+    public static class LateWorker implements IAsyncWebWorker {
+
+        /**
+         * Represents the context of the last request.
+         */
+        static volatile RequestContext context;
+
+        /**
+         * Represents the response of the last request.
+         */
+        static volatile CompletableFuture<Void> response;
+
+        @Override
+        public CompletionStage<Void> processRequestAsync(RequestContext context) {
+	  CompletableFuture<Void> response = new CompletableFuture<>();
+	  LateWorker.context = context;
+	  LateWorker.response = response;
+	  return response;
+        }
+    }
+
+    private static final String WORKERS = SmartHttpServerTests.class.getName();
+
+    private static SmartHttpServer start(int port, String workers, String server) throws IOException {
+        Path workersFile = Files.createTempFile("workers", ".properties");
+        Files.write(workersFile, workers.getBytes(StandardCharsets.UTF_8));
+        workersFile.toFile().deleteOnExit();
+        Path serverFile = Files.createTempFile("server", ".properties");
+        String config = "server.address = 127.0.0.1\n"
+	  + "server.port = " + port + "\n"
+	  + "server.workerThreads = 4\n"
+	  + "server.documentRoot = webroot\n"
+	  + "server.mimeConfig = properties/mime.properties\n"
+	  + "session.timeout = 600\n"
+	  + "server.workers = " + workersFile.toString().replace('\\', '/') + "\n"
+	  + server;
+        Files.write(serverFile, config.getBytes(StandardCharsets.UTF_8));
+        serverFile.toFile().deleteOnExit();
+
+        SmartHttpServer httpServer = new SmartHttpServer(serverFile.toString());
+        httpServer.start();
+        for (int i = 0; i < 100; i++) {
+	  try (Socket socket = new Socket("127.0.0.1", port)) {
+	      return httpServer;
+	  } catch (IOException e) {
+	      try {
+		Thread.sleep(50);
+	      } catch (InterruptedException ignorable) {
+	      }
+	  }
+        }
+        throw new IOException("Server did not start.");
+    }
+
+    private static void stop(SmartHttpServer server, int port) {
+        server.stop();
+        // wakes up the server thread, so it closes the server socket
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+        } catch (IOException ignorable) {
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+	  return socket.getLocalPort();
+        }
+    }
+
+    private static Socket send(int port, String path, String... headers) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(10000);
+        StringBuilder request = new StringBuilder("GET " + path + " HTTP/1.1\r\n");
+        for (String header : headers) {
+	  request.append(header).append("\r\n");
+        }
+        request.append("\r\n");
+        socket.getOutputStream().write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return socket;
+    }
+
+    private static String get(int port, String path, String... headers) throws IOException {
+        return receive(send(port, path, headers));
+    }
+
+    private static String receive(Socket socket) throws IOException {
+        try {
+	  ByteArrayOutputStream response = new ByteArrayOutputStream();
+	  InputStream is = socket.getInputStream();
+	  byte[] buffer = new byte[4096];
+	  int read;
+	  while ((read = is.read(buffer)) >= 0) {
+	      response.write(buffer, 0, read);
+	  }
+	  return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+	  socket.close();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+	  Thread.sleep(25);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testCachedResponseDoesNotContainSessionData() throws IOException {
+        int port = freePort();
+        SmartHttpServer server = start(port,
+	  "/login = " + WORKERS + "$LoginWorker\n"
+	      + "/me = " + WORKERS + "$WhoAmIWorker; mime=text/plain\n"
+	      + "/whoami = " + WORKERS + "$WhoAmIWorker; mime=text/plain; cache=true; ttl=60\n",
+	  // sessions are kept in cookies, which do not depend on the time of day
+	  "session.cookie.enabled = true\n"
+	      + "session.cookie.keys = test:MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=\n");
+        try {
+	  String login = get(port, "/login?user=alice");
+	  Matcher session = Pattern.compile("Set-Cookie: session=\"?([^\";\\r]+)").matcher(login);
+	  assertTrue(login, session.find());
+
+	  String cookie = "Cookie: session=" + session.group(1);
+	  String me = get(port, "/me", cookie);
+	  assertTrue(me, me.endsWith("user=alice"));
+
+	  String first = get(port, "/whoami", cookie);
+	  String second = get(port, "/whoami");
+	  assertTrue(first, first.endsWith("user=null"));
+	  assertTrue(second, second.endsWith("user=null"));
+	  assertFalse(first.contains("alice") || second.contains("alice"));
+        } finally {
+	  stop(server, port);
+        }
+    }
+
+    @Test
+    public void testSaturatedExecutorRejectsWith503() throws IOException, InterruptedException {
+        int port = freePort();
+        SmartHttpServer server = start(port,
+	      "/block = " + WORKERS + "$BlockingWorker; mime=text/plain; executor=slow\n"
+		+ "executor.slow.threads = 1\n"
+		+ "executor.slow.queue = 1\n",
+	      "server.diagnosticsToken = secret\n");
+        BlockingWorker.release = new CountDownLatch(1);
+        try {
+	  Socket running = send(port, "/block");
+	  await(() -> metrics(port).contains("active=1/1"));
+	  Socket queued = send(port, "/block");
+	  await(() -> metrics(port).contains("queued=1/1"));
+
+	  String rejected = get(port, "/block");
+	  assertTrue(rejected, rejected.startsWith("HTTP/1.1 503"));
+	  assertTrue(metrics(port).contains("accepted=2 rejected=1 completed=0"));
+
+	  BlockingWorker.release.countDown();
+	  assertTrue(receive(running).endsWith("released"));
+	  assertTrue(receive(queued).endsWith("released"));
+	  await(() -> metrics(port).contains("active=0/1 queued=0/1 saturation=0"));
+	  assertTrue(metrics(port).contains("accepted=2 rejected=1 completed=2"));
+        } finally {
+	  BlockingWorker.release.countDown();
+	  stop(server, port);
+        }
+    }
+
+    private static String metrics(int port) {
+        try {
+	  return get(port, "/server/executors?token=secret");
+        } catch (IOException e) {
+	  throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testTimedOutResponseIsFencedUntilTheWorkerFinishes() throws Exception {
+        int port = freePort();
+        SmartHttpServer server = start(port,
+	      "/late = " + WORKERS + "$LateWorker; mime=text/plain\n",
+	      "server.asyncTimeout = 300\n"
+		+ "server.diagnosticsToken = secret\n");
+        LateWorker.response = null;
+        try {
+	  // the metrics request holds one buffer itself
+	  int idle = outstandingBuffers(port);
+
+	  long start = System.nanoTime();
+	  String response = get(port, "/late?id=late");
+	  assertTrue(response, response.startsWith("HTTP/1.1 504"));
+	  assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+
+	  // the worker still owns it's scope and the connection's output buffer
+	  assertEquals(idle + 1, outstandingBuffers(port));
+	  assertEquals("late", LateWorker.context.getParameter("id"));
+	  try {
+	      LateWorker.context.write("late");
+	      fail();
+	  } catch (IOException e) {
+	      assertEquals("Response was revoked.", e.getMessage());
+	  }
+
+	  LateWorker.response.complete(null);
+	  await(() -> outstandingBuffers(port) == idle);
+        } finally {
+	  if (LateWorker.response != null) {
+	      LateWorker.response.complete(null);
+	  }
+	  stop(server, port);
+        }
+    }
+
+    private static int outstandingBuffers(int port) {
+        String buffers;
+        try {
+	  buffers = get(port, "/server/buffers?token=secret");
+        } catch (IOException e) {
+	  throw new RuntimeException(e);
+        }
+        Matcher matcher = Pattern.compile("direct: .*outstanding=(\\d+)").matcher(buffers);
+        assertTrue(buffers, matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+}
@@ -0,0 +1,229 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.workers.EchoParams;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class WorkerRegistryTests {
+
+    /**
+     * Worker which counts it's instances and is slow to create.
+     */
+    public static class CountingWorker implements IWebWorker {
+
+        /**
+         * Represents the number of created instances.
+         */
+        static final AtomicInteger instances = new AtomicInteger();
+
+        public CountingWorker() throws InterruptedException {
+	  instances.incrementAndGet();
+	  Thread.sleep(50);
+        }
+
+        @Override
+        public void processRequest(RequestContext context) {
+        }
+    }
+
+    /**
+     * Worker whose first instantiation fails with an exception.
+     */
+    public static class FailingWorker implements IWebWorker {
+
+        /**
+         * Represents the number of attempted instantiations.
+         */
+        static final AtomicInteger attempts = new AtomicInteger();
+
+        public FailingWorker() {
+	  if (attempts.incrementAndGet() == 1) {
+	      throw new IllegalStateException("not yet");
+	  }
+        }
+
+        @Override
+        public void processRequest(RequestContext context) {
+        }
+    }
+
+    /**
+     * Worker whose first instantiation fails with an error.
+     */
+    public static class ErrorWorker implements IWebWorker {
+
+        /**
+         * Represents the number of attempted instantiations.
+         */
+        static final AtomicInteger attempts = new AtomicInteger();
+
+        public ErrorWorker() {
+	  if (attempts.incrementAndGet() == 1) {
+	      throw new OutOfMemoryError("simulated");
+	  }
+        }
+
+        @Override
+        public void processRequest(RequestContext context) {
+        }
+    }
+
+    /**
+     * Class loader which counts the requested classes, by their names.
+     */
+    private static class CountingLoader extends ClassLoader {
+
+        final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+        CountingLoader() {
+	  super(WorkerRegistryTests.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+	  loads.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+	  return super.loadClass(name, resolve);
+        }
+
+        int loads(String name) {
+	  AtomicInteger count = loads.get(name);
+	  return count == null ? 0 : count.get();
+        }
+    }
+
+    private static final String PACKAGE = "hr.fer.zemris.java.webserver";
+
+    @Test
+    public void testInvalidNamesDoNotReachClassLoader() {
+        CountingLoader loader = new CountingLoader();
+        WorkerRegistry registry = new WorkerRegistry(PACKAGE, loader);
+
+        for (String name : new String[] {"", "1Worker", "a.b", "../Worker", "Echo Params", "a/b"}) {
+	  assertNull(registry.getWorker(name));
+        }
+        assertTrue(loader.loads.toString(), loader.loads.isEmpty());
+    }
+
+    @Test
+    public void testUnknownNamesAreRemembered() {
+        CountingLoader loader = new CountingLoader();
+        WorkerRegistry registry = new WorkerRegistry(PACKAGE, loader);
+
+        assertNull(registry.getWorker("Missing"));
+        assertNull(registry.getWorker("Missing"));
+        assertEquals(1, loader.loads(PACKAGE + ".Missing"));
+
+        // not a worker
+        assertNull(registry.getWorker("RequestContext"));
+        assertNull(registry.getWorker("RequestContext"));
+        assertEquals(1, loader.loads(PACKAGE + ".RequestContext"));
+    }
+
+    @Test
+    public void testRememberedNamesAreLimited() {
+        CountingLoader loader = new CountingLoader();
+        WorkerRegistry registry = new WorkerRegistry(PACKAGE, loader);
+
+        for (int i = 0; i < 1024; i++) {
+	  assertNull(registry.getWorker("Missing" + i));
+        }
+        assertNull(registry.getWorker("Missing0"));
+        assertEquals(1, loader.loads(PACKAGE + ".Missing0"));
+
+        // the limit is reached, so remembered names are forgotten
+        assertNull(registry.getWorker("Missing1024"));
+        assertNull(registry.getWorker("Missing0"));
+        assertEquals(2, loader.loads(PACKAGE + ".Missing0"));
+    }
+
+    @Test
+    public void testOneInstanceUnderConcurrency() throws Exception {
+        WorkerRegistry registry =
+	      new WorkerRegistry(PACKAGE, WorkerRegistryTests.class.getClassLoader());
+        CountingWorker.instances.set(0);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+	  List<Future<IWebWorker>> results = new ArrayList<>();
+	  for (int i = 0; i < 8; i++) {
+	      results.add(executor.submit(() -> {
+		start.await();
+		return registry.getWorker("WorkerRegistryTests$CountingWorker");
+	      }));
+	  }
+	  start.countDown();
+
+	  IWebWorker first = results.get(0).get();
+	  assertNotNull(first);
+	  for (Future<IWebWorker> result : results) {
+	      assertSame(first, result.get());
+	  }
+	  assertEquals(1, CountingWorker.instances.get());
+        } finally {
+	  executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedInstantiationIsNotRemembered() {
+        WorkerRegistry registry =
+	      new WorkerRegistry(PACKAGE, WorkerRegistryTests.class.getClassLoader());
+        FailingWorker.attempts.set(0);
+        ErrorWorker.attempts.set(0);
+
+        try {
+	  registry.getWorker("WorkerRegistryTests$FailingWorker");
+	  fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertNotNull(registry.getWorker("WorkerRegistryTests$FailingWorker"));
+
+        try {
+	  registry.getWorker("WorkerRegistryTests$ErrorWorker");
+	  fail();
+        } catch (OutOfMemoryError expected) {
+        }
+        assertNotNull(registry.getWorker("WorkerRegistryTests$ErrorWorker"));
+        assertEquals(2, ErrorWorker.attempts.get());
+    }
+
+    @Test
+    public void testPreload() throws IOException {
+        CountingLoader loader = new CountingLoader();
+        WorkerRegistry registry =
+	      new WorkerRegistry(EchoParams.class.getPackage().getName(), loader);
+
+        assertEquals(3, registry.preload());
+        int loads = loader.loads(EchoParams.class.getName());
+        IWebWorker worker = registry.getWorker("EchoParams");
+        assertTrue(worker instanceof EchoParams);
+        assertSame(worker, registry.getWorker("EchoParams"));
+        assertEquals(loads, loader.loads(EchoParams.class.getName()));
+
+        assertEquals(0, registry.preload());
+    }
+}
@@ -0,0 +1,89 @@
+package hr.fer.zemris.java.webserver.buffers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class BufferPoolTests {
+
+    @Test
+    public void testSizeClasses() {
+        assertEquals(0, BufferPool.sizeClass(0));
+        assertEquals(0, BufferPool.sizeClass(1024));
+        assertEquals(1, BufferPool.sizeClass(1025));
+        assertEquals(6, BufferPool.sizeClass(64 * 1024));
+        assertEquals(-1, BufferPool.sizeClass(64 * 1024 + 1));
+    }
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool("test", true, 1, 1, false);
+        PooledBuffer first = pool.acquire(3000);
+        ByteBuffer buffer = first.buffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(4096, buffer.capacity());
+        buffer.put((byte) 1);
+        first.release();
+
+        PooledBuffer second = pool.acquire(4000);
+        assertSame(buffer, second.buffer());
+        assertEquals(0, second.buffer().position());
+        assertEquals(1, pool.getOutstandingCount());
+        second.close();
+
+        assertEquals(0, pool.getOutstandingCount());
+        assertEquals(0.5, pool.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testWriteAfterClose() throws IOException {
+        BufferPool pool = new BufferPool("test", false, 1, 1, false);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PooledOutputStream os = new PooledOutputStream(Channels.newChannel(sink), pool, 10);
+        os.write(1);
+        os.close();
+
+        PooledBuffer reused = pool.acquire(10);
+        try {
+	  os.write(2);
+	  fail("Write after close must fail.");
+        } catch (IOException expected) {
+        }
+        try {
+	  os.write(new byte[] { 3, 4 }, 0, 2);
+	  fail("Write after close must fail.");
+        } catch (IOException expected) {
+        }
+        try {
+	  os.flush();
+	  fail("Flush after close must fail.");
+        } catch (IOException expected) {
+        }
+        os.close();
+
+        assertEquals(0, reused.buffer().position());
+        assertEquals(1, sink.size());
+        reused.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        PooledBuffer buffer = new BufferPool("test", false, 1, 1, false).acquire(10);
+        buffer.release();
+        buffer.release();
+    }
+}
@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.routing.Route;
+import hr.fer.zemris.java.webserver.workers.CircleWorker;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CachePolicyTests {
+
+    private static Route configuredRoute(String pattern) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(Paths.get("properties/workers.properties"))) {
+	  properties.load(is);
+        }
+        CircleWorker worker = new CircleWorker();
+        return Route.parse(pattern, properties.getProperty(pattern),
+	      name -> (path, context) -> worker.processRequest(context));
+    }
+
+    private static byte[] fetch(Route route, CachePolicy policy, ResponseCache cache,
+	  Map<String, String> parameters) {
+        String key = policy.key(route, "/cw", parameters, Collections.emptyList());
+        return cache.get(key, policy.getTtlMillis(), () -> {
+	  ByteArrayOutputStream os = new ByteArrayOutputStream();
+	  RequestContext rc = new RequestContext(os, parameters, null, null);
+	  try {
+	      route.getHandler().handle("/cw", rc);
+	      rc.finish();
+	  } catch (IOException e) {
+	      throw new CompletionException(e);
+	  }
+	  return CompletableFuture.completedFuture(CachedResponse.parse(os.toByteArray()));
+        }).join().getBody();
+    }
+
+    @Test
+    public void testCircleVariantsAreCachedSeparately() throws IOException {
+        Route route = configuredRoute("/cw");
+        CachePolicy policy = new CachePolicy(route, 5000);
+        ResponseCache cache = new ResponseCache(1 << 20);
+
+        Map<String, String> small = new HashMap<>();
+        small.put("size", "50");
+        Map<String, String> large = new HashMap<>();
+        large.put("size", "120");
+        Map<String, String> blue = new HashMap<>(small);
+        blue.put("color", "blue");
+
+        byte[] smallBody = fetch(route, policy, cache, small);
+        assertFalse(Arrays.equals(smallBody, fetch(route, policy, cache, large)));
+        assertFalse(Arrays.equals(smallBody, fetch(route, policy, cache, blue)));
+    }
+}
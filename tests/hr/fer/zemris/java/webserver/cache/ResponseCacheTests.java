@@ -0,0 +1,174 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ResponseCacheTests {
+
+    private static final byte[] OK = "HTTP/1.1 200 OK\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static CachedResponse response(int size) {
+        return new CachedResponse(OK, new byte[size - OK.length]);
+    }
+
+    private static Supplier<CompletableFuture<CachedResponse>> loader(AtomicInteger calls, int size) {
+        return () -> {
+	  calls.incrementAndGet();
+	  return CompletableFuture.completedFuture(response(size));
+        };
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() {
+        ResponseCache cache = new ResponseCache(1000);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<CachedResponse> loading = new CompletableFuture<>();
+        Supplier<CompletableFuture<CachedResponse>> loader = () -> {
+	  calls.incrementAndGet();
+	  return loading;
+        };
+
+        CompletableFuture<CachedResponse> first = cache.get("k", 60000, loader);
+        CompletableFuture<CachedResponse> second = cache.get("k", 60000, loader);
+        assertEquals(1, calls.get());
+        assertTrue(!first.isDone() && !second.isDone());
+
+        CachedResponse created = response(100);
+        loading.complete(created);
+        assertSame(created, first.join());
+        assertSame(created, second.join());
+        assertSame(created, cache.get("k", 60000, loader).join());
+        assertEquals(1, calls.get());
+        assertTrue(cache.toString(), cache.toString().contains("hits=1 misses=1 coalesced=1"));
+    }
+
+    @Test
+    public void testErrorReachesCoalescedWaiters() {
+        ResponseCache cache = new ResponseCache(1000);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<CachedResponse> loading = new CompletableFuture<>();
+        Supplier<CompletableFuture<CachedResponse>> loader = () -> {
+	  calls.incrementAndGet();
+	  return loading;
+        };
+
+        CompletableFuture<CachedResponse> first = cache.get("k", 60000, loader);
+        CompletableFuture<CachedResponse> second = cache.get("k", 60000, loader);
+        IllegalStateException error = new IllegalStateException("broken");
+        loading.completeExceptionally(error);
+        for (CompletableFuture<CachedResponse> waiter : Arrays.asList(first, second)) {
+	  try {
+	      waiter.join();
+	      fail();
+	  } catch (CompletionException e) {
+	      assertSame(error, e.getCause());
+	  }
+        }
+
+        // failures are not stored
+        cache.get("k", 60000, loader(calls, 100)).join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testMissingResponseCompletesWaiters() {
+        ResponseCache cache = new ResponseCache(1000);
+        CompletableFuture<CachedResponse> loading = new CompletableFuture<>();
+
+        CompletableFuture<CachedResponse> first = cache.get("k", 60000, () -> loading);
+        CompletableFuture<CachedResponse> second = cache.get("k", 60000, () -> loading);
+        loading.complete(null);
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+
+        assertTrue(cache.get("l", 60000, () -> null).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        ResponseCache cache = new ResponseCache(1000);
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.get("k", 50, loader(calls, 100)).join();
+        cache.get("k", 50, loader(calls, 100)).join();
+        assertEquals(1, calls.get());
+
+        Thread.sleep(100);
+        cache.get("k", 50, loader(calls, 100)).join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testEviction() {
+        ResponseCache cache = new ResponseCache(400);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 1; i <= 4; i++) {
+	  cache.get("k" + i, 60000, loader(calls, 100)).join();
+        }
+        // k1 is used again, so k2 is the least recently used one
+        cache.get("k1", 60000, loader(calls, 100)).join();
+        cache.get("k5", 60000, loader(calls, 100)).join();
+        assertEquals(5, calls.get());
+        assertTrue(cache.toString(), cache.toString().contains("entries=4 bytes=400/400"));
+
+        cache.get("k1", 60000, loader(calls, 100)).join();
+        assertEquals(5, calls.get());
+        cache.get("k2", 60000, loader(calls, 100)).join();
+        assertEquals(6, calls.get());
+    }
+
+    @Test
+    public void testLargeAndFailedResponsesAreNotStored() {
+        ResponseCache cache = new ResponseCache(400);
+        AtomicInteger calls = new AtomicInteger();
+
+        // more than a quarter of the cache
+        cache.get("large", 60000, loader(calls, 101)).join();
+        cache.get("large", 60000, loader(calls, 101)).join();
+        assertEquals(2, calls.get());
+
+        CachedResponse notFound = new CachedResponse(
+	  "HTTP/1.1 404 Not found\r\n".getBytes(StandardCharsets.ISO_8859_1), new byte[0]);
+        Supplier<CompletableFuture<CachedResponse>> loader = () -> {
+	  calls.incrementAndGet();
+	  return CompletableFuture.completedFuture(notFound);
+        };
+        cache.get("missing", 60000, loader).join();
+        cache.get("missing", 60000, loader).join();
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testPurge() {
+        ResponseCache cache = new ResponseCache(1000);
+        AtomicInteger calls = new AtomicInteger();
+        cache.get("/a x=1", 60000, loader(calls, 100)).join();
+        cache.get("/a x=2", 60000, loader(calls, 100)).join();
+        cache.get("/ab x=1", 60000, loader(calls, 100)).join();
+
+        assertEquals(2, cache.purge("/a "));
+        cache.get("/ab x=1", 60000, loader(calls, 100)).join();
+        assertEquals(3, calls.get());
+        cache.get("/a x=1", 60000, loader(calls, 100)).join();
+        assertEquals(4, calls.get());
+
+        assertEquals(2, cache.purge(""));
+    }
+}
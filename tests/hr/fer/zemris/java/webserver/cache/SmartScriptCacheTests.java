@@ -0,0 +1,96 @@
+package hr.fer.zemris.java.webserver.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SmartScriptCacheTests {
+
+    @Test
+    public void testRevalidation() throws IOException {
+        Path file = Files.createTempFile("script", ".smscr");
+        try {
+	  Files.write(file, "a\nb".getBytes(StandardCharsets.UTF_8));
+	  AtomicInteger compilations = new AtomicInteger();
+	  SmartScriptCache<String> cache = new SmartScriptCache<>(text -> {
+	      compilations.incrementAndGet();
+	      return text;
+	  }, 0);
+
+	  String first = cache.get(file);
+	  assertEquals("a\r\nb\r\n", first);
+	  assertSame(first, cache.get(file));
+	  assertEquals(1, compilations.get());
+
+	  Files.write(file, "c\r\n".getBytes(StandardCharsets.UTF_8));
+	  Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+	  assertEquals("c\r\n", cache.get(file));
+	  assertEquals(2, compilations.get());
+        } finally {
+	  Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFailureIsCached() throws IOException {
+        Path file = Files.createTempFile("script", ".smscr");
+        try {
+	  AtomicInteger compilations = new AtomicInteger();
+	  SmartScriptCache<String> cache = new SmartScriptCache<>(text -> {
+	      compilations.incrementAndGet();
+	      throw new IllegalStateException("broken");
+	  }, 0);
+
+	  for (int i = 0; i < 3; i++) {
+	      try {
+		cache.get(file);
+		fail();
+	      } catch (IllegalStateException e) {
+		assertEquals("broken", e.getMessage());
+	      }
+	  }
+	  assertEquals(1, compilations.get());
+        } finally {
+	  Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testErrorIsNotCached() throws IOException {
+        Path file = Files.createTempFile("script", ".smscr");
+        try {
+	  AtomicInteger compilations = new AtomicInteger();
+	  SmartScriptCache<String> cache = new SmartScriptCache<>(text -> {
+	      if (compilations.incrementAndGet() == 1) {
+		throw new StackOverflowError();
+	      }
+	      return text;
+	  }, 0);
+
+	  try {
+	      cache.get(file);
+	      fail();
+	  } catch (StackOverflowError expected) {
+	  }
+	  assertEquals("", cache.get(file));
+	  assertEquals(2, compilations.get());
+        } finally {
+	  Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package hr.fer.zemris.java.webserver.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class CookieParserTests {
+
+    private static Map<String, String> parse(String header) {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        CookieParser parser = new CookieParser(header, 0, header.length());
+        while (parser.next()) {
+	  cookies.put(parser.getName(), parser.getValue());
+        }
+        return cookies;
+    }
+
+    @Test
+    public void testSimplePairs() {
+        Map<String, String> cookies = parse("sid=\"ABC\"; theme=dark");
+
+        assertEquals(2, cookies.size());
+        assertEquals("ABC", cookies.get("sid"));
+        assertEquals("dark", cookies.get("theme"));
+    }
+
+    @Test
+    public void testValueContainingEquals() {
+        Map<String, String> cookies = parse("token=a=b==; x=1");
+
+        assertEquals("a=b==", cookies.get("token"));
+        assertEquals("1", cookies.get("x"));
+    }
+
+    @Test
+    public void testMalformedPairsAreSkipped() {
+        Map<String, String> cookies = parse(" ; novalue;=nameless; ok = 2 ;;");
+
+        assertEquals(1, cookies.size());
+        assertEquals("2", cookies.get("ok"));
+    }
+
+    @Test
+    public void testEmptyValue() {
+        Map<String, String> cookies = parse("a=; b=\"\"");
+
+        assertEquals("", cookies.get("a"));
+        assertEquals("", cookies.get("b"));
+    }
+
+    @Test
+    public void testNameEquals() {
+        String header = "Cookie: sidx=1; sid=2";
+        CookieParser parser = new CookieParser(header, 7, header.length());
+
+        assertTrue(parser.next());
+        assertFalse(parser.nameEquals("sid"));
+        assertTrue(parser.next());
+        assertTrue(parser.nameEquals("sid"));
+        assertEquals("2", parser.getValue());
+        assertFalse(parser.next());
+    }
+}
@@ -0,0 +1,57 @@
+package hr.fer.zemris.java.webserver.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class HeaderFragmentsTests {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testStatusLine() {
+        byte[] ok = HeaderFragments.statusLine(200, "OK");
+
+        assertArrayEquals(bytes("HTTP/1.1 200 OK\r\n"), ok);
+        assertSame(ok, HeaderFragments.statusLine(200, "OK"));
+        assertArrayEquals(bytes("HTTP/1.1 200 Fine\r\n"), HeaderFragments.statusLine(200, "Fine"));
+        assertArrayEquals(bytes("HTTP/1.1 999 X\r\n"), HeaderFragments.statusLine(999, "X"));
+    }
+
+    @Test
+    public void testContentType() {
+        assertArrayEquals(bytes("Content-Type: text/html; charset=UTF-8\r\n"),
+	      HeaderFragments.contentType("text/html", "UTF-8"));
+        assertArrayEquals(bytes("Content-Type: text/html; charset=ISO-8859-1\r\n"),
+	      HeaderFragments.contentType("text/html", "ISO-8859-1"));
+        assertArrayEquals(bytes("Content-Type: image/png\r\n"),
+	      HeaderFragments.contentType("image/png", "UTF-8"));
+    }
+
+    @Test
+    public void testCannedResponse() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        CannedResponses.write(os, 404, true);
+        String response = new String(os.toByteArray(), StandardCharsets.ISO_8859_1);
+
+        int split = response.indexOf("\r\n\r\n");
+        String body = response.substring(split + 4);
+        assertTrue(response.startsWith("HTTP/1.1 404 Not Found\r\n"));
+        assertTrue(response.contains("\r\nDate: "));
+        assertTrue(response.contains("\r\nContent-Length: " + body.length() + "\r\n"));
+    }
+}
@@ -0,0 +1,74 @@
+package hr.fer.zemris.java.webserver.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class ParallelPngEncoderTests {
+
+    private static BufferedImage image(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < height; y++) {
+	  for (int x = 0; x < width; x++) {
+	      image.setRGB(x, y, (x * 7) << 16 | (y * 3) << 8 | ((x ^ y) & 0xFF));
+	  }
+        }
+        return image;
+    }
+
+    private static void assertRoundTrip(BufferedImage image, PngEncoder.Filter filter)
+	  throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPngEncoder(6, filter, new ForkJoinPool(3)).write(image, bos);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+
+        for (int y = 0; y < image.getHeight(); y++) {
+	  for (int x = 0; x < image.getWidth(); x++) {
+	      assertEquals(image.getRGB(x, y) & 0xFFFFFF, decoded.getRGB(x, y) & 0xFFFFFF);
+	  }
+        }
+    }
+
+    @Test
+    public void testManyBands() throws IOException {
+        assertRoundTrip(image(512, 400), PngEncoder.Filter.ADAPTIVE);
+        assertRoundTrip(image(512, 400), PngEncoder.Filter.PAETH);
+    }
+
+    @Test
+    public void testSingleBand() throws IOException {
+        assertRoundTrip(image(20, 10), PngEncoder.Filter.UP);
+    }
+
+    @Test
+    public void testCombineAdler() {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+	  data[i] = (byte) (i * 31);
+        }
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 40000);
+        Adler32 second = new Adler32();
+        second.update(data, 40000, 60000);
+
+        assertEquals(whole.getValue(),
+	      ParallelPngEncoder.combineAdler(first.getValue(), second.getValue(), 60000));
+    }
+}
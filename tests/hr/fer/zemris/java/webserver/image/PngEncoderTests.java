@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.webserver.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class PngEncoderTests {
+
+    private static BufferedImage randomImage(int type) {
+        BufferedImage image = new BufferedImage(37, 23, type);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+	  for (int x = 0; x < image.getWidth(); x++) {
+	      image.setRGB(x, y, random.nextInt(0x1000000));
+	  }
+        }
+        return image;
+    }
+
+    private static void assertRoundTrip(BufferedImage image, PngEncoder encoder)
+	  throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoder.encode(image)));
+
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+	  for (int x = 0; x < image.getWidth(); x++) {
+	      assertEquals(image.getRGB(x, y) & 0xFFFFFF, decoded.getRGB(x, y) & 0xFFFFFF);
+	  }
+        }
+    }
+
+    @Test
+    public void testAllFilters() throws IOException {
+        BufferedImage image = randomImage(BufferedImage.TYPE_3BYTE_BGR);
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+	  assertRoundTrip(image, new PngEncoder(6, filter));
+        }
+    }
+
+    @Test
+    public void testOtherImageType() throws IOException {
+        assertRoundTrip(randomImage(BufferedImage.TYPE_INT_ARGB),
+	      new PngEncoder(9, PngEncoder.Filter.PAETH));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new PngEncoder(10, PngEncoder.Filter.NONE);
+    }
+}
@@ -0,0 +1,94 @@
+package hr.fer.zemris.java.webserver.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class RouteTableTests {
+
+    private static final IRouteHandler HANDLER = (path, context) -> {};
+
+    private static RouteTable table() {
+        return new RouteTable.Builder()
+	      .add(new Route("/hello", HANDLER))
+	      .add(new Route("/ext/*", HANDLER))
+	      .add(new Route("/ext/admin/*", HANDLER))
+	      .add(new Route("/users/*/profile", HANDLER))
+	      .add(new Route("/users/me/profile", HANDLER))
+	      .add(new Route("*.smscr", HANDLER))
+	      .setFallback(new Route("/", HANDLER))
+	      .build();
+    }
+
+    private static String lookup(String path) {
+        return table().lookup(path).getPattern();
+    }
+
+    @Test
+    public void testExactAndFallback() {
+        assertEquals("/hello", lookup("/hello"));
+        assertEquals("/", lookup("/hello2"));
+        assertEquals("/", lookup("/hell"));
+        assertEquals("/", lookup("/index.html"));
+    }
+
+    @Test
+    public void testLongestPrefix() {
+        assertEquals("/ext/*", lookup("/ext/EchoParams"));
+        assertEquals("/ext/*", lookup("/ext/"));
+        assertEquals("/ext/admin/*", lookup("/ext/admin/purge"));
+        assertEquals("/", lookup("/ext"));
+    }
+
+    @Test
+    public void testWildcardSegment() {
+        assertEquals("/users/*/profile", lookup("/users/ana/profile"));
+        assertEquals("/users/me/profile", lookup("/users/me/profile"));
+        assertEquals("/", lookup("/users//profile"));
+        assertEquals("/", lookup("/users/a/b/profile"));
+    }
+
+    @Test
+    public void testExtension() {
+        assertEquals("*.smscr", lookup("/scripts/osnovni.smscr"));
+        assertEquals("/", lookup("/scripts.smscr/file"));
+        assertEquals("/ext/*", lookup("/ext/script.smscr"));
+    }
+
+    @Test
+    public void testMetadata() {
+        Map<String, String> attributes = new HashMap<>();
+        Route route = Route.parse("/cw", "some.Worker; mime=image/png; cache=true; executor=images",
+	      name -> {
+		attributes.put("name", name);
+		return HANDLER;
+	      });
+
+        assertEquals("some.Worker", attributes.get("name"));
+        assertEquals("image/png", route.getMimeType());
+        assertTrue(route.isCacheable());
+        assertEquals("images", route.getExecutor());
+        assertNull(new RouteTable.Builder().build().lookup("/cw"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRoute() {
+        new RouteTable.Builder().add(new Route("/a", HANDLER)).add(new Route("/a", HANDLER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartialWildcard() {
+        new Route("/a/b*", HANDLER);
+    }
+}
@@ -0,0 +1,83 @@
+package hr.fer.zemris.java.webserver.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Represents the testing class.
+ * 
+ * @author Marin Grbić
+ * @version 1.0
+ */
+public class SessionCookieCodecTests {
+
+    private static final SessionKey OLD_KEY = new SessionKey("old", new byte[16]);
+
+    private static final SessionKey NEW_KEY = new SessionKey("new", new byte[32]);
+
+    private static Map<String, String> parameters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("brojPoziva", "3");
+        parameters.put("ime", "Šime=; \"x\"");
+        return parameters;
+    }
+
+    @Test
+    public void testPlainRoundTrip() {
+        SessionCookieCodec codec = new SessionCookieCodec(Arrays.asList(NEW_KEY), false, 3072, 600);
+        SessionCookieCodec.DecodedCookie decoded = codec.decode(codec.encode(parameters()));
+
+        assertEquals(parameters(), decoded.getParameters());
+        assertFalse(decoded.isStale());
+    }
+
+    @Test
+    public void testEncryptedRoundTrip() {
+        SessionCookieCodec codec = new SessionCookieCodec(Arrays.asList(NEW_KEY), true, 3072, 600);
+        String value = codec.encode(parameters());
+
+        assertFalse(value.contains("brojPoziva"));
+        assertEquals(parameters(), codec.decode(value).getParameters());
+    }
+
+    @Test
+    public void testTamperedValue() {
+        SessionCookieCodec codec = new SessionCookieCodec(Arrays.asList(NEW_KEY), false, 3072, 600);
+        String value = codec.encode(parameters());
+        char changed = value.charAt(6) == 'A' ? 'B' : 'A';
+
+        assertNull(codec.decode(value.substring(0, 6) + changed + value.substring(7)));
+        assertNull(codec.decode("garbage"));
+        assertNull(codec.decode(""));
+    }
+
+    @Test
+    public void testKeyRotation() {
+        String value = new SessionCookieCodec(Arrays.asList(OLD_KEY), false, 3072, 600)
+	      .encode(parameters());
+
+        List<SessionKey> rotated = Arrays.asList(NEW_KEY, OLD_KEY);
+        SessionCookieCodec.DecodedCookie decoded =
+	      new SessionCookieCodec(rotated, false, 3072, 600).decode(value);
+        assertEquals(parameters(), decoded.getParameters());
+        assertTrue(decoded.isStale());
+
+        assertNull(new SessionCookieCodec(Arrays.asList(NEW_KEY), false, 3072, 600).decode(value));
+    }
+
+    @Test
+    public void testSizeLimit() {
+        SessionCookieCodec codec = new SessionCookieCodec(Arrays.asList(NEW_KEY), false, 40, 600);
+
+        assertNull(codec.encode(parameters()));
+    }
+}